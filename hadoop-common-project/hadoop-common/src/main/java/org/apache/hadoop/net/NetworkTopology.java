@@ -84,6 +84,7 @@ public class NetworkTopology {
       // again if another factory is specified.
       this.factory = factory;
       this.clusterMap = factory.newInnerNode(NodeBase.ROOT);
+      invalidateSnapshot();
     }
     return this;
   }
@@ -107,6 +108,17 @@ public class NetworkTopology {
   /** the lock used to manage access */
   protected ReadWriteLock netlock = new ReentrantReadWriteLock(true);
 
+  /**
+   * The snapshot of the leaves read by {@link #chooseRandom(String)},
+   * {@link #getDistance(Node, Node)} and {@link #sortByDistance(Node, Node[],
+   * int)} without locking, null when the topology has changed since it was
+   * built. It is rebuilt by the first reader after nodes are added or
+   * removed, which happens rarely compared to the reads.
+   */
+  private volatile NetworkTopologySnapshot snapshot;
+  /** Only one reader rebuilds the snapshot. */
+  private final Object snapshotLock = new Object();
+
   // keeping the constructor because other components like MR still uses this.
   public NetworkTopology() {
     this.factory = InnerNodeImpl.FACTORY;
@@ -141,7 +153,10 @@ public class NetworkTopology {
                                            + node.toString() 
                                            + " at an illegal network location");
       }
-      if (clusterMap.add(node)) {
+      // a node replacing a leaf of the same name is not counted as added
+      boolean added = clusterMap.add(node);
+      invalidateSnapshot();
+      if (added) {
         LOG.info("Adding a new node: "+NodeBase.getPath(node));
         if (rack == null) {
           incrementRacks();
@@ -158,6 +173,39 @@ public class NetworkTopology {
     }
   }
 
+  /**
+   * Discard the snapshot of the leaves after the topology has changed.
+   * Should be called with {@link #netlock}'s writelock held.
+   */
+  protected void invalidateSnapshot() {
+    snapshot = null;
+  }
+
+  /**
+   * @return the snapshot of the leaves of the topology, rebuilt if the
+   *         topology has changed since it was built.
+   */
+  @VisibleForTesting
+  NetworkTopologySnapshot getSnapshot() {
+    NetworkTopologySnapshot s = snapshot;
+    if (s != null) {
+      return s;
+    }
+    netlock.readLock().lock();
+    try {
+      synchronized (snapshotLock) {
+        s = snapshot;
+        if (s == null) {
+          s = new NetworkTopologySnapshot(clusterMap);
+          snapshot = s;
+        }
+        return s;
+      }
+    } finally {
+      netlock.readLock().unlock();
+    }
+  }
+
   protected void incrementRacks() {
     numOfRacks++;
     if (!clusterEverBeenMultiRack && numOfRacks > 1) {
@@ -220,6 +268,7 @@ public class NetworkTopology {
     netlock.writeLock().lock();
     try {
       if (clusterMap.remove(node)) {
+        invalidateSnapshot();
         InnerNode rack = (InnerNode)getNode(node.getNetworkLocation());
         if (rack == null) {
           numOfRacks--;
@@ -305,12 +354,7 @@ public class NetworkTopology {
 
   /** @return the total number of leaf nodes */
   public int getNumOfLeaves() {
-    netlock.readLock().lock();
-    try {
-      return clusterMap.getNumOfLeaves();
-    } finally {
-      netlock.readLock().unlock();
-    }
+    return getSnapshot().getNumOfLeaves();
   }
 
   /** Return the distance between two nodes
@@ -331,6 +375,10 @@ public class NetworkTopology {
       LOG.warn("One of the nodes is a null pointer");
       return Integer.MAX_VALUE;
     }
+    final int distance = getSnapshot().getDistance(node1, node2);
+    if (distance >= 0) {
+      return distance;
+    }
     Node n1=node1, n2=node2;
     int dis = 0;
     netlock.readLock().lock();
@@ -483,15 +531,10 @@ public class NetworkTopology {
    */
   public Node chooseRandom(final String scope,
       final Collection<Node> excludedNodes) {
-    netlock.readLock().lock();
-    try {
-      if (scope.startsWith("~")) {
-        return chooseRandom(NodeBase.ROOT, scope.substring(1), excludedNodes);
-      } else {
-        return chooseRandom(scope, null, excludedNodes);
-      }
-    } finally {
-      netlock.readLock().unlock();
+    if (scope.startsWith("~")) {
+      return chooseRandom(NodeBase.ROOT, scope.substring(1), excludedNodes);
+    } else {
+      return chooseRandom(scope, null, excludedNodes);
     }
   }
 
@@ -505,146 +548,24 @@ public class NetworkTopology {
         excludedScope = null;
       }
     }
-    Node node = getNode(scope);
-    if (!(node instanceof InnerNode)) {
-      return excludedNodes != null && excludedNodes.contains(node) ?
-          null : node;
-    }
-    InnerNode innerNode = (InnerNode)node;
-    int numOfDatanodes = innerNode.getNumOfLeaves();
-    if (excludedScope == null) {
-      node = null;
-    } else {
-      node = getNode(excludedScope);
-      if (!(node instanceof InnerNode)) {
-        numOfDatanodes -= 1;
-      } else {
-        numOfDatanodes -= ((InnerNode)node).getNumOfLeaves();
-      }
-    }
-    if (numOfDatanodes <= 0) {
-      LOG.debug("Failed to find datanode (scope=\"{}\" excludedScope=\"{}\")."
-              + " numOfDatanodes={}",
-          scope, excludedScope, numOfDatanodes);
-      return null;
-    }
-    final int availableNodes;
-    if (excludedScope == null) {
-      availableNodes = countNumOfAvailableNodes(scope, excludedNodes);
-    } else {
-      availableNodes =
-          countNumOfAvailableNodes("~" + excludedScope, excludedNodes);
-    }
-    LOG.debug("Choosing random from {} available nodes on node {},"
-        + " scope={}, excludedScope={}, excludeNodes={}. numOfDatanodes={}.",
-        availableNodes, innerNode, scope, excludedScope, excludedNodes,
-        numOfDatanodes);
-    Node ret = null;
-    if (availableNodes > 0) {
-      ret = chooseRandom(innerNode, node, excludedNodes, numOfDatanodes,
-          availableNodes);
+    // The probability of being chosen is equal for all the leaves of the
+    // scope which are neither in the excluded scope nor excluded.
+    Node ret = getSnapshot().chooseRandom(scope, excludedScope,
+        excludedNodes, r);
+    if (ret == null) {
+      LOG.debug("Failed to find datanode (scope=\"{}\" excludedScope=\"{}\"),"
+          + " excludedNodes={}.", scope, excludedScope, excludedNodes);
     }
     LOG.debug("chooseRandom returning {}", ret);
     return ret;
   }
 
-  /**
-   * Randomly choose one node under <i>parentNode</i>, considering the exclude
-   * nodes and scope. Should be called with {@link #netlock}'s readlock held.
-   *
-   * @param parentNode        the parent node
-   * @param excludedScopeNode the node corresponding to the exclude scope.
-   * @param excludedNodes     a collection of nodes to be excluded from
-   * @param totalInScopeNodes total number of nodes under parentNode, excluding
-   *                          the excludedScopeNode
-   * @param availableNodes    number of available nodes under parentNode that
-   *                          could be chosen, excluding excludedNodes
-   * @return the chosen node, or null if none can be chosen
-   */
-  private Node chooseRandom(final InnerNode parentNode,
-      final Node excludedScopeNode, final Collection<Node> excludedNodes,
-      final int totalInScopeNodes, final int availableNodes) {
-    Preconditions.checkArgument(
-        totalInScopeNodes >= availableNodes && availableNodes > 0, String
-            .format("%d should >= %d, and both should be positive.",
-                totalInScopeNodes, availableNodes));
-    if (excludedNodes == null || excludedNodes.isEmpty()) {
-      // if there are no excludedNodes, randomly choose a node
-      final int index = r.nextInt(totalInScopeNodes);
-      return parentNode.getLeaf(index, excludedScopeNode);
-    }
-
-    // excludedNodes non empty.
-    // Choose the nth VALID node, where n is random. VALID meaning it can be
-    // returned, after considering exclude scope and exclude nodes.
-    // The probability of being chosen should be equal for all VALID nodes.
-    // Notably, we do NOT choose nth node, and find the next valid node
-    // if n is excluded - this will make the probability of the node immediately
-    // after an excluded node higher.
-    //
-    // Start point is always 0 and that's fine, because the nth valid node
-    // logic provides equal randomness.
-    //
-    // Consider this example, where 1,3,5 out of the 10 nodes are excluded:
-    // 1 2 3 4 5 6 7 8 9 10
-    // x   x   x
-    // We will randomly choose the nth valid node where n is [0,6].
-    // We do NOT choose a random number n and just use the closest valid node,
-    // for example both n=3 and n=4 will choose 4, making it a 2/10 probability,
-    // higher than the expected 1/7
-    // totalInScopeNodes=10 and availableNodes=7 in this example.
-    int nthValidToReturn = r.nextInt(availableNodes);
-    LOG.debug("nthValidToReturn is {}", nthValidToReturn);
-    Node ret =
-        parentNode.getLeaf(r.nextInt(totalInScopeNodes), excludedScopeNode);
-    if (!excludedNodes.contains(ret)) {
-      // return if we're lucky enough to get a valid node at a random first pick
-      LOG.debug("Chosen node {} from first random", ret);
-      return ret;
-    } else {
-      ret = null;
-    }
-    Node lastValidNode = null;
-    for (int i = 0; i < totalInScopeNodes; ++i) {
-      ret = parentNode.getLeaf(i, excludedScopeNode);
-      if (!excludedNodes.contains(ret)) {
-        if (nthValidToReturn == 0) {
-          break;
-        }
-        --nthValidToReturn;
-        lastValidNode = ret;
-      } else {
-        LOG.debug("Node {} is excluded, continuing.", ret);
-        ret = null;
-      }
-    }
-    if (ret == null && lastValidNode != null) {
-      LOG.error("BUG: Found lastValidNode {} but not nth valid node. "
-              + "parentNode={}, excludedScopeNode={}, excludedNodes={}, "
-              + "totalInScopeNodes={}, availableNodes={}, nthValidToReturn={}.",
-          lastValidNode, parentNode, excludedScopeNode, excludedNodes,
-          totalInScopeNodes, availableNodes, nthValidToReturn);
-      ret = lastValidNode;
-    }
-    return ret;
-  }
-
   /** return leaves in <i>scope</i>
    * @param scope a path string
    * @return leaves nodes under specific scope
    */
   public List<Node> getLeaves(String scope) {
-    Node node = getNode(scope);
-    List<Node> leafNodes = new ArrayList<Node>();
-    if (!(node instanceof InnerNode)) {
-      leafNodes.add(node);
-    } else {
-      InnerNode innerNode = (InnerNode) node;
-      for (int i=0;i<innerNode.getNumOfLeaves();i++) {
-        leafNodes.add(innerNode.getLeaf(i, null));
-      }
-    }
-    return leafNodes;
+    return getSnapshot().getLeaves(scope);
   }
 
   /** return the number of leaves in <i>scope</i> but not in <i>excludedNodes</i>
@@ -762,6 +683,10 @@ public class NetworkTopology {
       if(reader.equals(node)) {
         return 0;
       }
+      final int distance = getSnapshot().getDistance(reader, node);
+      if (distance >= 0) {
+        return distance;
+      }
       int maxReaderLevel = reader.getLevel();
       int maxNodeLevel = node.getLevel();
       int currentLevelToCompare = maxReaderLevel > maxNodeLevel ?
@@ -0,0 +1,248 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.net;
+
+import static org.apache.hadoop.net.NumberRanges.getEnd;
+import static org.apache.hadoop.net.NumberRanges.getStart;
+import static org.apache.hadoop.net.NumberRanges.range;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * An immutable snapshot of the leaves of a {@link NetworkTopology}, used to
+ * choose random leaves and to compute the distances between leaves without
+ * locking the topology.
+ *
+ * The leaves are numbered in depth-first order, so that the leaves of any
+ * node are a range of numbers, and a leaf is chosen at random in a scope
+ * minus the excluded ranges. The parents of the leaves, the racks, are
+ * numbered too, and the distances between the racks are cached in a matrix
+ * unless there are more than {@link #MAX_RACKS_OF_DISTANCE_MATRIX} racks.
+ */
+final class NetworkTopologySnapshot {
+  /** The maximum number of racks whose distances are cached, 1 MB. */
+  @VisibleForTesting
+  static final int MAX_RACKS_OF_DISTANCE_MATRIX = 1024;
+
+  private final Node[] leaves;
+  /** The numbers of the leaves. */
+  private final Map<Node, Integer> positions;
+  /** The ranges of the numbers of the leaves of the nodes, by path. */
+  private final Map<String, Long> ranges = new HashMap<>();
+  /** The racks of the leaves. */
+  private final int[] leafRacks;
+  /**
+   * The first leaf numbers of the inner nodes from the root to the racks,
+   * which identify the inner nodes of a level.
+   */
+  private final int[][] rackAncestors;
+  /** The distances between the racks, null if there are too many racks. */
+  private final byte[] rackDistances;
+
+  /**
+   * Should be called with the read lock of the topology held.
+   *
+   * @param root the root of the topology
+   */
+  NetworkTopologySnapshot(InnerNode root) {
+    final int n = root.getNumOfLeaves();
+    leaves = new Node[n];
+    positions = new HashMap<>(n * 2);
+    leafRacks = new int[n];
+    final List<int[]> racks = new ArrayList<>();
+    final int numbered = index(root, NodeBase.ROOT, new int[0], 0, racks);
+    if (numbered != n) {
+      throw new IllegalStateException("Numbered " + numbered
+          + " leaves but the topology has " + n);
+    }
+    rackAncestors = racks.toArray(new int[racks.size()][]);
+
+    final int numOfRacks = rackAncestors.length;
+    if (numOfRacks <= MAX_RACKS_OF_DISTANCE_MATRIX) {
+      rackDistances = new byte[numOfRacks * numOfRacks];
+      for (int i = 0; i < numOfRacks; i++) {
+        for (int j = i + 1; j < numOfRacks; j++) {
+          final byte d = (byte) computeRackDistance(i, j);
+          rackDistances[i * numOfRacks + j] = d;
+          rackDistances[j * numOfRacks + i] = d;
+        }
+      }
+    } else {
+      rackDistances = null;
+    }
+  }
+
+  /**
+   * Number the leaves of a node.
+   *
+   * @param node a node of the topology
+   * @param path the path of the node
+   * @param ancestors the ancestors of the node from the root
+   * @param number the number of the first leaf of the node
+   * @param racks the ancestors of the racks numbered, including the racks
+   * @return the number following the leaves of the node
+   */
+  private int index(Node node, String path, int[] ancestors, int number,
+      List<int[]> racks) {
+    if (!(node instanceof InnerNode)) {
+      leaves[number] = node;
+      positions.put(node, number);
+      ranges.put(path, range(number, number + 1));
+      return number + 1;
+    }
+    final int start = number;
+    final int[] nodeAncestors = Arrays.copyOf(ancestors, ancestors.length + 1);
+    nodeAncestors[ancestors.length] = start;
+    final String prefix = NodeBase.ROOT.equals(path) ? "" : path;
+    int rack = -1;
+    for (Node child : ((InnerNode) node).getChildren()) {
+      if (!(child instanceof InnerNode)) {
+        if (rack < 0) {
+          rack = racks.size();
+          racks.add(nodeAncestors);
+        }
+        leafRacks[number] = rack;
+      }
+      number = index(child,
+          prefix + NodeBase.PATH_SEPARATOR_STR + child.getName(),
+          nodeAncestors, number, racks);
+    }
+    ranges.put(path, range(start, number));
+    return number;
+  }
+
+  /** @return the number of leaves. */
+  int getNumOfLeaves() {
+    return leaves.length;
+  }
+
+  /** @return whether the distances between the racks are cached. */
+  @VisibleForTesting
+  boolean hasRackDistances() {
+    return rackDistances != null;
+  }
+
+  /**
+   * @param scope the path of a node
+   * @return the leaves of the node, or a null node if there is no node at
+   *         the path.
+   */
+  List<Node> getLeaves(String scope) {
+    final Long range = ranges.get(NodeBase.normalize(scope));
+    if (range == null) {
+      final List<Node> leafNodes = new ArrayList<>(1);
+      leafNodes.add(null);
+      return leafNodes;
+    }
+    return new ArrayList<>(Arrays.asList(leaves)
+        .subList(getStart(range), getEnd(range)));
+  }
+
+  /**
+   * @return the distance between two leaves of the snapshot, or -1 if
+   *         either node is not one of its leaves.
+   */
+  int getDistance(Node node1, Node node2) {
+    final int i = getPosition(node1);
+    final int j = getPosition(node2);
+    if (i < 0 || j < 0) {
+      return -1;
+    }
+    if (i == j) {
+      return 0;
+    }
+    return getRackDistance(leafRacks[i], leafRacks[j]) + 2;
+  }
+
+  /** @return the number of a leaf, or -1 if it is not one of the leaves. */
+  private int getPosition(Node node) {
+    final Integer i = node == null ? null : positions.get(node);
+    return i != null && leaves[i] == node ? i : -1;
+  }
+
+  private int getRackDistance(int rack1, int rack2) {
+    if (rack1 == rack2) {
+      return 0;
+    }
+    if (rackDistances != null) {
+      return rackDistances[rack1 * rackAncestors.length + rack2];
+    }
+    return computeRackDistance(rack1, rack2);
+  }
+
+  private int computeRackDistance(int rack1, int rack2) {
+    final int[] ancestors1 = rackAncestors[rack1];
+    final int[] ancestors2 = rackAncestors[rack2];
+    int common = 0;
+    while (common < ancestors1.length && common < ancestors2.length
+        && ancestors1[common] == ancestors2[common]) {
+      common++;
+    }
+    return ancestors1.length + ancestors2.length - 2 * common;
+  }
+
+  /**
+   * Choose a leaf at random, with the same probability for all the leaves
+   * which may be chosen.
+   *
+   * @param scope the path of a node whose leaves may be chosen
+   * @param excludedScope the path of a node whose leaves must not be chosen,
+   *                      may be null
+   * @param excludedNodes the leaves which must not be chosen, may be null
+   * @param random the random number generator
+   * @return the chosen leaf, or null if there is none.
+   */
+  Node chooseRandom(String scope, String excludedScope,
+      Collection<Node> excludedNodes, Random random) {
+    final Long scopeRange = ranges.get(NodeBase.normalize(scope));
+    if (scopeRange == null) {
+      return null;
+    }
+    final int from = getStart(scopeRange);
+    final int to = getEnd(scopeRange);
+    final long[] excluded = new long[1
+        + (excludedNodes == null ? 0 : excludedNodes.size())];
+    int numExcluded = 0;
+    if (excludedScope != null) {
+      final Long range = ranges.get(NodeBase.normalize(excludedScope));
+      if (range != null) {
+        excluded[numExcluded++] = range;
+      }
+    }
+    if (excludedNodes != null) {
+      for (Node node : excludedNodes) {
+        final Integer i = node == null ? null : positions.get(node);
+        if (i != null) {
+          excluded[numExcluded++] = range(i, i + 1);
+        }
+      }
+    }
+
+    final int number = NumberRanges.chooseRandom(from, to, excluded,
+        numExcluded, random);
+    return number < 0 ? null : leaves[number];
+  }
+}
@@ -206,7 +206,10 @@ public class NetworkTopologyWithNodeGroup extends NetworkTopology {
             + node.toString() 
             + " at an illegal network location");
       }
-      if (clusterMap.add(node)) {
+      // a node replacing a leaf of the same name is not counted as added
+      boolean added = clusterMap.add(node);
+      invalidateSnapshot();
+      if (added) {
         LOG.info("Adding a new node: " + NodeBase.getPath(node));
         if (rack == null) {
           // We only track rack number here
@@ -236,6 +239,7 @@ public class NetworkTopologyWithNodeGroup extends NetworkTopology {
     netlock.writeLock().lock();
     try {
       if (clusterMap.remove(node)) {
+        invalidateSnapshot();
         Node nodeGroup = getNode(node.getNetworkLocation());
         if (nodeGroup == null) {
           nodeGroup = factory.newInnerNode(node.getNetworkLocation());
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.net;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Ranges of numbers, each packed in a long, used to choose a number at
+ * random out of a few excluded ranges. When the nodes of a topology are
+ * numbered so that the nodes of any scope are a range, a node is chosen
+ * uniformly in a scope minus the excluded nodes and scopes without trying
+ * the excluded ones.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS"})
+@InterfaceStability.Unstable
+public final class NumberRanges {
+  private NumberRanges() {
+  }
+
+  /** @return the range of the numbers from start, inclusive, to end. */
+  public static long range(int start, int end) {
+    return ((long) start << 32) | end;
+  }
+
+  /** @return the first number of a range. */
+  public static int getStart(long range) {
+    return (int) (range >>> 32);
+  }
+
+  /** @return the number following the last number of a range. */
+  public static int getEnd(long range) {
+    return (int) range;
+  }
+
+  /**
+   * Choose a number at random, with the same probability for all the
+   * numbers from {@code from} to {@code to} which are not excluded.
+   *
+   * @param from the first number which may be chosen
+   * @param to the number following the last number which may be chosen
+   * @param excluded the excluded ranges, which may overlap or exceed the
+   *                 numbers which may be chosen; they are sorted and merged
+   *                 in place
+   * @param numExcluded the number of excluded ranges in the array
+   * @param random the random number generator
+   * @return the chosen number, or -1 if all the numbers are excluded.
+   */
+  public static int chooseRandom(int from, int to, long[] excluded,
+      int numExcluded, Random random) {
+    // merge the excluded ranges in the range of numbers
+    Arrays.sort(excluded, 0, numExcluded);
+    int merged = 0;
+    int available = to - from;
+    for (int k = 0; k < numExcluded; k++) {
+      final int start = Math.max(getStart(excluded[k]), from);
+      final int end = Math.min(getEnd(excluded[k]), to);
+      if (start >= end) {
+        continue;
+      }
+      if (merged > 0 && start <= getEnd(excluded[merged - 1])) {
+        final int previousStart = getStart(excluded[merged - 1]);
+        final int previousEnd = getEnd(excluded[merged - 1]);
+        if (end > previousEnd) {
+          available -= end - previousEnd;
+          excluded[merged - 1] = range(previousStart, end);
+        }
+      } else {
+        available -= end - start;
+        excluded[merged++] = range(start, end);
+      }
+    }
+    if (available <= 0) {
+      return -1;
+    }
+
+    // skip the excluded ranges before the chosen number
+    int number = from + random.nextInt(available);
+    for (int k = 0; k < merged && getStart(excluded[k]) <= number; k++) {
+      number += getEnd(excluded[k]) - getStart(excluded[k]);
+    }
+    return number;
+  }
+}
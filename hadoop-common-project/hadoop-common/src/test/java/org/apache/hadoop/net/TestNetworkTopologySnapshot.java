@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the lock-free reads of a {@link NetworkTopology} from its
+ * {@link NetworkTopologySnapshot}.
+ */
+public class TestNetworkTopologySnapshot {
+  private static final int CHOOSE_TIMES = 1000;
+
+  private NetworkTopology cluster;
+  private Node[] nodes;
+
+  @Before
+  public void setUp() {
+    cluster = new NetworkTopology();
+    nodes = new Node[] {
+        new NodeBase("h0", "/d1/r1"),
+        new NodeBase("h1", "/d1/r1"),
+        new NodeBase("h2", "/d1/r2"),
+        new NodeBase("h3", "/d1/r2"),
+        new NodeBase("h4", "/d2/r3"),
+        new NodeBase("h5", "/d2/r3"),
+        new NodeBase("h6", "/d2/r4"),
+        new NodeBase("h7", "/d3/r1")};
+    for (Node node : nodes) {
+      cluster.add(node);
+    }
+  }
+
+  private Set<Node> nodes(int... indices) {
+    final Set<Node> set = new HashSet<>();
+    for (int i : indices) {
+      set.add(nodes[i]);
+    }
+    return set;
+  }
+
+  /** @return the nodes chosen by many choices. */
+  private Set<Node> choose(String scope, Collection<Node> excludedNodes) {
+    final Set<Node> chosen = new HashSet<>();
+    for (int i = 0; i < CHOOSE_TIMES; i++) {
+      final Node node = cluster.chooseRandom(scope, excludedNodes);
+      if (node == null) {
+        assertTrue(chosen.isEmpty());
+        return chosen;
+      }
+      chosen.add(node);
+    }
+    return chosen;
+  }
+
+  @Test
+  public void testDistance() {
+    final NetworkTopologySnapshot snapshot = cluster.getSnapshot();
+    assertTrue(snapshot.hasRackDistances());
+    for (Node node1 : nodes) {
+      for (Node node2 : nodes) {
+        assertEquals(NetworkTopology.getDistanceByPath(node1, node2),
+            snapshot.getDistance(node1, node2));
+        assertEquals(NetworkTopology.getDistanceByPath(node1, node2),
+            cluster.getDistance(node1, node2));
+      }
+    }
+    // a node equal to a leaf is not in the topology
+    final Node copy = new NodeBase("h0", "/d1/r1");
+    assertEquals(-1, snapshot.getDistance(copy, nodes[1]));
+  }
+
+  @Test
+  public void testDistanceWithoutMatrix() {
+    final int numOfRacks =
+        NetworkTopologySnapshot.MAX_RACKS_OF_DISTANCE_MATRIX + 1;
+    final Node[] leaves = new Node[numOfRacks];
+    for (int i = 0; i < numOfRacks; i++) {
+      leaves[i] = new NodeBase("h", "/d" + (i % 3) + "/r" + i);
+      cluster.add(leaves[i]);
+    }
+    final NetworkTopologySnapshot snapshot = cluster.getSnapshot();
+    assertFalse(snapshot.hasRackDistances());
+    for (int i = 0; i < numOfRacks; i += 97) {
+      for (Node node : nodes) {
+        assertEquals(NetworkTopology.getDistanceByPath(leaves[i], node),
+            cluster.getDistance(leaves[i], node));
+      }
+      for (int j = 0; j < numOfRacks; j += 89) {
+        assertEquals(NetworkTopology.getDistanceByPath(leaves[i], leaves[j]),
+            cluster.getDistance(leaves[i], leaves[j]));
+      }
+    }
+  }
+
+  @Test
+  public void testChooseRandom() {
+    assertEquals(nodes(0, 1, 2, 3, 4, 5, 6, 7), choose(NodeBase.ROOT, null));
+    assertEquals(nodes(0, 1, 2, 3), choose("/d1", null));
+    assertEquals(nodes(2, 3), choose("/d1/r2", null));
+    assertEquals(nodes(4, 5, 6, 7), choose("~/d1", null));
+    assertEquals(nodes(0, 1, 4, 5, 6, 7), choose("~/d1/r2", null));
+    assertEquals(nodes(3), choose("/d1/r2/h3", null));
+    assertEquals(nodes(), choose("/d4", null));
+
+    assertEquals(nodes(1, 2, 6, 7),
+        choose(NodeBase.ROOT, Arrays.asList(nodes[0], nodes[3], nodes[4],
+            nodes[5])));
+    assertEquals(nodes(0, 1, 7), choose("~/d1/r2",
+        Arrays.asList(nodes[4], nodes[5], nodes[6])));
+    assertEquals(nodes(), choose("/d1/r2/h3",
+        Collections.singletonList(nodes[3])));
+    assertEquals(nodes(), choose("/d2", Arrays.asList(nodes)));
+  }
+
+  @Test
+  public void testChooseRandomUniform() {
+    final int[] counts = new int[nodes.length];
+    final int n = 70000;
+    final List<Node> excludedNodes = Arrays.asList(nodes[1], nodes[4]);
+    for (int i = 0; i < n; i++) {
+      final Node node = cluster.chooseRandom("~/d1/r2", excludedNodes);
+      counts[Arrays.asList(nodes).indexOf(node)]++;
+    }
+    // 4 nodes, each should be chosen about 17500 times
+    for (int i : new int[] {0, 5, 6, 7}) {
+      assertTrue("counts=" + Arrays.toString(counts),
+          Math.abs(counts[i] - n / 4) < n / 40);
+    }
+    assertEquals(0, counts[1] + counts[2] + counts[3] + counts[4]);
+  }
+
+  @Test
+  public void testAddRemove() {
+    final NetworkTopologySnapshot snapshot = cluster.getSnapshot();
+    assertSame(snapshot, cluster.getSnapshot());
+    assertEquals(nodes.length, cluster.getNumOfLeaves());
+    assertEquals(Arrays.asList(nodes[2], nodes[3]),
+        cluster.getLeaves("/d1/r2"));
+    assertEquals(Collections.singletonList(null), cluster.getLeaves("/d4"));
+
+    final Node added = new NodeBase("h8", "/d1/r2");
+    cluster.add(added);
+    assertNotSame(snapshot, cluster.getSnapshot());
+    assertEquals(nodes.length + 1, cluster.getNumOfLeaves());
+    assertEquals(Arrays.asList(nodes[2], nodes[3], added),
+        cluster.getLeaves("/d1/r2"));
+    assertEquals(2, cluster.getDistance(nodes[2], added));
+
+    // a node replacing a leaf of the same name
+    final Node replacing = new NodeBase("h0", "/d1/r1");
+    cluster.add(replacing);
+    assertEquals(Arrays.asList(replacing, nodes[1]),
+        cluster.getLeaves("/d1/r1"));
+    assertEquals(2, cluster.getDistance(replacing, nodes[1]));
+
+    cluster.remove(nodes[7]);
+    assertEquals(nodes(4, 5, 6), choose("~/d1", null));
+    assertEquals(-1, cluster.getSnapshot().getDistance(nodes[0], nodes[7]));
+    assertNull(cluster.chooseRandom("/d3"));
+  }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Compares the JSON results of two runs of the benchmarks, e.g. those of a
+ * baseline build and those of a change, and fails if a benchmark regressed
+ * by more than a threshold.
+ *
+ * A benchmark regressed if its score got worse by more than the threshold,
+ * relative to the baseline, and by more than the sum of the score errors of
+ * both runs. The scores of the throughput benchmarks are better when higher
+ * and those of the other modes when lower. The benchmarks missing from the
+ * baseline are listed as new.
+ *
+ * Usage: BenchmarkComparator baseline.json result.json [threshold]
+ */
+public final class BenchmarkComparator {
+  private static final double DEFAULT_THRESHOLD = 0.1;
+
+  private BenchmarkComparator() {
+  }
+
+  /** The score of a benchmark for a set of parameters. */
+  static final class Score {
+    private final String mode;
+    private final double score;
+    private final double error;
+    private final String unit;
+
+    Score(String mode, double score, double error, String unit) {
+      this.mode = mode;
+      this.score = score;
+      this.error = error;
+      this.unit = unit;
+    }
+
+    /**
+     * @return the relative change of the score from the baseline, positive
+     *         if it got worse.
+     */
+    double getSlowdown(Score baseline) {
+      final double change = (score - baseline.score) / baseline.score;
+      return "thrpt".equals(mode) ? -change : change;
+    }
+
+    boolean isSignificant(Score baseline) {
+      final double errors = (Double.isNaN(error) ? 0 : error)
+          + (Double.isNaN(baseline.error) ? 0 : baseline.error);
+      return Math.abs(score - baseline.score) > errors;
+    }
+  }
+
+  /** @return the scores of the results by benchmark and parameters. */
+  static Map<String, Score> readScores(File file) throws IOException {
+    final Map<String, Score> scores = new TreeMap<>();
+    for (JsonNode result : new ObjectMapper().readTree(file)) {
+      final StringBuilder key = new StringBuilder(
+          result.get("benchmark").getTextValue());
+      final JsonNode params = result.get("params");
+      if (params != null) {
+        // JMH lists the parameters in a stable order
+        for (Iterator<Map.Entry<String, JsonNode>> it = params.getFields();
+            it.hasNext(); ) {
+          final Map.Entry<String, JsonNode> p = it.next();
+          key.append(key.indexOf(":") < 0 ? ':' : ',')
+              .append(p.getKey()).append('=').append(p.getValue().asText());
+        }
+      }
+      final JsonNode metric = result.get("primaryMetric");
+      scores.put(key.toString(), new Score(result.get("mode").getTextValue(),
+          metric.get("score").asDouble(),
+          metric.get("scoreError").asDouble(Double.NaN),
+          metric.get("scoreUnit").getTextValue()));
+    }
+    return scores;
+  }
+
+  /**
+   * Print the scores of the benchmarks of both runs.
+   * @return the number of regressions.
+   */
+  static int compare(Map<String, Score> baseline, Map<String, Score> result,
+      double threshold, PrintStream out) {
+    int regressions = 0;
+    out.println(String.format("%-80s %14s %14s %8s  %s", "Benchmark",
+        "Baseline", "Score", "Change", "Unit"));
+    for (Map.Entry<String, Score> e : result.entrySet()) {
+      final Score score = e.getValue();
+      final Score base = baseline.get(e.getKey());
+      if (base == null || !base.mode.equals(score.mode)
+          || !base.unit.equals(score.unit)) {
+        out.println(String.format("%-80s %14s %14.3f %8s  %s", e.getKey(),
+            "-", score.score, "new", score.unit));
+        continue;
+      }
+      final double slowdown = score.getSlowdown(base);
+      final boolean regressed = slowdown > threshold
+          && score.isSignificant(base);
+      if (regressed) {
+        regressions++;
+      }
+      out.println(String.format("%-80s %14.3f %14.3f %+7.1f%%  %s%s",
+          e.getKey(), base.score, score.score, 100 * slowdown, score.unit,
+          regressed ? "  REGRESSION" : ""));
+    }
+    return regressions;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2 || args.length > 3) {
+      System.err.println("Usage: BenchmarkComparator <baseline.json> "
+          + "<result.json> [threshold]");
+      System.exit(2);
+    }
+    final double threshold = args.length == 3
+        ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+    final int regressions = compare(readScores(new File(args[0])),
+        readScores(new File(args[1])), threshold, System.out);
+    if (regressions > 0) {
+      System.err.println(regressions + " benchmarks regressed by more than "
+          + (100 * threshold) + "%.");
+      System.exit(1);
+    }
+  }
+}
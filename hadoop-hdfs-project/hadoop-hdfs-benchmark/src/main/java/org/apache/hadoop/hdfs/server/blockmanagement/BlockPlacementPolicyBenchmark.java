@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.net.DFSNetworkTopology;
+import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.hdfs.server.protocol.StorageReport;
+import org.apache.hadoop.net.NetworkTopology;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark the choice of the targets of a new block on a large cluster
+ * whose datanodes are partly full or busy, as addBlock does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BlockPlacementPolicyBenchmark {
+  private static final int NODES_PER_RACK = 40;
+  private static final long BLOCK_SIZE = 128L << 20;
+  private static final long CAPACITY = 4L << 40;
+  private static final int LOAD = 40;
+
+  /** The block placement policy. */
+  @Param({"default", "indexed"})
+  public String policy;
+  /** The number of datanodes. */
+  @Param({"5000"})
+  public int numNodes;
+  /** The percentage of datanodes without space for a block. */
+  @Param({"0", "90"})
+  public int fullPercent;
+  /** The percentage of datanodes too busy to be chosen. */
+  @Param({"0", "30"})
+  public int busyPercent;
+
+  private BlockPlacementPolicy placementPolicy;
+  private BlockStoragePolicy storagePolicy;
+  private DatanodeDescriptor[] nodes;
+  private int writer;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setClass(DFSConfigKeys.DFS_BLOCK_REPLICATOR_CLASSNAME_KEY,
+        "indexed".equals(policy) ? IndexedBlockPlacementPolicy.class
+            : BlockPlacementPolicyDefault.class,
+        BlockPlacementPolicy.class);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_REPLICATION_CONSIDERLOAD_KEY,
+        true);
+    final NetworkTopology clusterMap = DFSNetworkTopology.getInstance(conf);
+    final Host2NodesMap host2datanodeMap = new Host2NodesMap();
+
+    final Random random = new Random(0);
+    nodes = new DatanodeDescriptor[numNodes];
+    long totalLoad = 0;
+    for (int i = 0; i < numNodes; i++) {
+      final String ip = "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff)
+          + "." + (i & 0xff);
+      final DatanodeID id = new DatanodeID(ip, "host" + i, "uuid-" + i,
+          50010, 50075, 50475, 50020);
+      final DatanodeDescriptor node = new DatanodeDescriptor(id,
+          "/rack" + (i / NODES_PER_RACK));
+      final DatanodeStorage storage = new DatanodeStorage("storage-" + i);
+      node.updateStorage(storage);
+      final long remaining =
+          random.nextInt(100) < fullPercent ? BLOCK_SIZE / 2 : CAPACITY / 2;
+      final int load = random.nextInt(100) < busyPercent ? LOAD * 10 : LOAD;
+      node.updateHeartbeat(new StorageReport[] {
+          new StorageReport(storage, false, CAPACITY, CAPACITY - remaining,
+              remaining, CAPACITY - remaining, 0)}, 0, 0, load, 0, null);
+      totalLoad += load;
+      clusterMap.add(node);
+      host2datanodeMap.add(node);
+      nodes[i] = node;
+    }
+
+    final double xceiverAverage = (double) totalLoad / numNodes;
+    placementPolicy = BlockPlacementPolicy.getInstance(conf,
+        new FSClusterStats() {
+          @Override
+          public int getTotalLoad() {
+            return (int) (xceiverAverage * numNodes);
+          }
+
+          @Override
+          public boolean isAvoidingStaleDataNodesForWrite() {
+            return false;
+          }
+
+          @Override
+          public int getNumDatanodesInService() {
+            return numNodes;
+          }
+
+          @Override
+          public double getInServiceXceiverAverage() {
+            return xceiverAverage;
+          }
+        }, clusterMap, host2datanodeMap);
+    storagePolicy =
+        BlockStoragePolicySuite.createDefaultSuite().getDefaultPolicy();
+  }
+
+  /** Choose the 3 targets of a block written from a datanode. */
+  @Benchmark
+  public DatanodeStorageInfo[] chooseTarget() {
+    writer = (writer + 1) % numNodes;
+    return placementPolicy.chooseTarget("/file", 3, nodes[writer],
+        new ArrayList<DatanodeStorageInfo>(), false, null, BLOCK_SIZE,
+        storagePolicy, null);
+  }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.security.token.block.ExportedBlockKeys;
+import org.apache.hadoop.hdfs.server.common.StorageInfo;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.apache.hadoop.hdfs.server.namenode.NameNodeBenchmarkUtil;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.util.VersionInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark {@link BlockManager#processReport} on synthetic full block
+ * reports of a storage whose replicas are all known to the NameNode, i.e.
+ * the periodic full block reports of a cluster in a steady state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BlockReportBenchmark {
+  private static final int BLOCKS_PER_FILE = 10;
+
+  /** The number of replicas of the storage. */
+  @Param({"100000"})
+  public int numBlocks;
+
+  private File baseDir;
+  private FSNamesystem fsn;
+  private BlockManager bm;
+  private DatanodeRegistration node;
+  private DatanodeStorage storage;
+  private BlockListAsLongs report;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    baseDir = Files.createTempDirectory("BlockReportBenchmark").toFile();
+    final Configuration conf =
+        NameNodeBenchmarkUtil.newConfiguration(baseDir);
+    fsn = NameNodeBenchmarkUtil.newFormattedNamesystem(conf);
+    bm = fsn.getBlockManager();
+
+    final INodeDirectory root = fsn.getFSDirectory().getRoot();
+    final List<BlockReportReplica> replicas = new ArrayList<>(numBlocks);
+    for (int i = 0; replicas.size() < numBlocks; i++) {
+      final int n = Math.min(BLOCKS_PER_FILE, numBlocks - replicas.size());
+      final BlockInfo[] blocks = new BlockInfo[n];
+      for (int j = 0; j < n; j++) {
+        final Block b = new Block(bm.nextBlockId(), 1L << 20, 1001);
+        blocks[j] = new BlockInfoContiguous(b, (short) 1);
+        replicas.add(new BlockReportReplica(b));
+      }
+      NameNodeBenchmarkUtil.addFile(fsn, root,
+          NameNodeBenchmarkUtil.childName(i), blocks, (short) 1);
+    }
+    report = BlockListAsLongs.encode(replicas);
+
+    node = new DatanodeRegistration(
+        new DatanodeID("127.0.0.1", "localhost", UUID.randomUUID().toString(),
+            50010, 50075, 50475, 50020),
+        new StorageInfo(fsn.getFSImage().getStorage()),
+        ExportedBlockKeys.DUMMY_KEYS, VersionInfo.getVersion());
+    storage = new DatanodeStorage(DatanodeStorage.generateUuid());
+    fsn.writeLock();
+    try {
+      bm.getDatanodeManager().registerDatanode(node);
+    } finally {
+      fsn.writeUnlock();
+    }
+    // the first report adds the storage to all the blocks
+    bm.processReport(node, storage, report, null);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    fsn.close();
+    FileUtil.fullyDelete(baseDir);
+  }
+
+  /** Process a full block report with no changes. */
+  @Benchmark
+  public boolean processReport() throws IOException {
+    return bm.processReport(node, storage, report, null);
+  }
+}
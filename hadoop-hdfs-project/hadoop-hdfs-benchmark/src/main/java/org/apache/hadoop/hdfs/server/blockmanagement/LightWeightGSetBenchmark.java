@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.util.LightWeightGSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark the lookups of blocks in a {@link LightWeightGSet}, the set
+ * backing the blocks map. The blocks have sequential ids, as those allocated
+ * by the NameNode, and are looked up in a random order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LightWeightGSetBenchmark {
+  private static final int NUM_KEYS = 1 << 16;
+  private static final long FIRST_BLOCK_ID = 1L << 30;
+
+  /** The number of blocks in the set. */
+  @Param({"1000000"})
+  public int numBlocks;
+  /** The capacity of the set relative to the number of blocks. */
+  @Param({"0.5", "2"})
+  public double loadFactor;
+
+  private LightWeightGSet<Block, BlockInfo> blocks;
+  private final Block[] present = new Block[NUM_KEYS];
+  private final Block[] absent = new Block[NUM_KEYS];
+  private int next;
+
+  @Setup
+  public void setup() {
+    blocks = new LightWeightGSet<>((int) (numBlocks / loadFactor));
+    for (int i = 0; i < numBlocks; i++) {
+      blocks.put(new BlockInfoContiguous(
+          new Block(FIRST_BLOCK_ID + i, 1L << 20, 1001), (short) 3));
+    }
+    final Random random = new Random(0);
+    for (int i = 0; i < NUM_KEYS; i++) {
+      present[i] = new Block(FIRST_BLOCK_ID + random.nextInt(numBlocks));
+      absent[i] = new Block(FIRST_BLOCK_ID + numBlocks
+          + random.nextInt(numBlocks));
+    }
+  }
+
+  /** Look up a block in the set. */
+  @Benchmark
+  public BlockInfo getPresent() {
+    return blocks.get(present[next++ & (NUM_KEYS - 1)]);
+  }
+
+  /** Look up a block not in the set, e.g. a block of a deleted file. */
+  @Benchmark
+  public BlockInfo getAbsent() {
+    return blocks.get(absent[next++ & (NUM_KEYS - 1)]);
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.XAttr;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.AddOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.CloseOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.DeleteOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.MkdirOp;
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogOp.OpInstanceCache;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark the serialization of the edit log ops, the way the NameNode
+ * writes them to the edit log and the JournalNodes and the standby NameNode
+ * read them. The ops create, close and delete files in directories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FSEditLogOpBenchmark {
+  /** The number of ops written or read by every invocation. */
+  @Param({"1000"})
+  public int numOps;
+
+  private final List<FSEditLogOp> ops = new ArrayList<>();
+  private final DataOutputBuffer buffer = new DataOutputBuffer();
+  private FSEditLogOp.Writer writer;
+  private byte[] serialized;
+
+  @Setup
+  public void setup() throws IOException {
+    final OpInstanceCache cache = new OpInstanceCache();
+    // every op is a new instance
+    cache.disableCache();
+    final Random random = new Random(0);
+    final byte[] clientId = new byte[16];
+    random.nextBytes(clientId);
+    long inodeId = INodeId.ROOT_INODE_ID;
+    long blockId = 1L << 30;
+    for (int i = 0; ops.size() < numOps; i++) {
+      final String dir = "/benchmark/" + NameNodeBenchmarkUtil.childName(i);
+      final String file = dir + "/file";
+      final MkdirOp mkdir = MkdirOp.getInstance(cache)
+          .setInodeId(++inodeId)
+          .setPath(dir)
+          .setTimestamp(i)
+          .setPermissionStatus(NameNodeBenchmarkUtil.dirPermission(
+              NameNodeBenchmarkUtil.USER, NameNodeBenchmarkUtil.GROUP));
+      ops.add(mkdir);
+
+      final AddOp add = AddOp.getInstance(cache);
+      setFileFields(add, ++inodeId, file, i);
+      add.setBlocks(new Block[0]);
+      add.setAclEntries(Collections.<AclEntry>emptyList());
+      add.setXAttrs(Collections.<XAttr>emptyList());
+      add.setClientName("DFSClient_NONMAPREDUCE_" + random.nextInt());
+      add.setClientMachine("127.0.0.1");
+      add.setOverwrite(false);
+      add.setStoragePolicyId((byte) 0);
+      add.setRpcClientId(clientId);
+      add.setRpcCallId(i);
+      ops.add(add);
+
+      final CloseOp close = CloseOp.getInstance(cache);
+      setFileFields(close, inodeId, file, i);
+      close.setBlocks(new Block[] {
+          new Block(++blockId, 128L << 20, 1001),
+          new Block(++blockId, random.nextInt(128 << 20), 1001)});
+      ops.add(close);
+
+      final DeleteOp delete = DeleteOp.getInstance(cache)
+          .setPath(dir)
+          .setTimestamp(i);
+      delete.setRpcClientId(clientId);
+      delete.setRpcCallId(i);
+      ops.add(delete);
+    }
+    for (int i = 0; i < ops.size(); i++) {
+      ops.get(i).setTransactionId(i + 1);
+    }
+    while (ops.size() > numOps) {
+      ops.remove(ops.size() - 1);
+    }
+
+    writer = new FSEditLogOp.Writer(buffer);
+    serialize();
+    serialized = new byte[buffer.getLength()];
+    System.arraycopy(buffer.getData(), 0, serialized, 0, serialized.length);
+  }
+
+  private static void setFileFields(FSEditLogOp.AddCloseOp op, long inodeId,
+      String path, long time) {
+    op.setInodeId(inodeId);
+    op.setPath(path);
+    op.setReplication((short) 3);
+    op.setModificationTime(time);
+    op.setAccessTime(time);
+    op.setBlockSize(128L << 20);
+    op.setPermissionStatus(NameNodeBenchmarkUtil.filePermission(
+        NameNodeBenchmarkUtil.USER, NameNodeBenchmarkUtil.GROUP));
+  }
+
+  /** Serialize the ops, as the edit log output streams do. */
+  @Benchmark
+  public int serialize() throws IOException {
+    buffer.reset();
+    for (FSEditLogOp op : ops) {
+      writer.writeOp(op);
+    }
+    return buffer.getLength();
+  }
+
+  /** Deserialize the ops, as the edit log input streams do. */
+  @Benchmark
+  public void deserialize(Blackhole blackhole) throws IOException {
+    final FSEditLogLoader.PositionTrackingInputStream in =
+        new FSEditLogLoader.PositionTrackingInputStream(
+            new ByteArrayInputStream(serialized));
+    final FSEditLogOp.Reader reader = FSEditLogOp.Reader.create(
+        new DataInputStream(in), in,
+        NameNodeLayoutVersion.CURRENT_LAYOUT_VERSION);
+    for (int i = 0; i < numOps; i++) {
+      blackhole.consume(reader.readOp(false));
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoContiguous;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark loading a protobuf fsimage, i.e. parsing its sections into a
+ * namesystem. Every load starts with an empty namesystem.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class FSImageLoadBenchmark {
+  /** The number of files in the image, each with one block. */
+  @Param({"100000"})
+  public int numFiles;
+  /** The number of files per directory. */
+  @Param({"100"})
+  public int filesPerDir;
+
+  private File baseDir;
+  private Configuration conf;
+  private File imageFile;
+  private FSNamesystem fsn;
+
+  @Setup(Level.Trial)
+  public void createImage() throws IOException {
+    baseDir = Files.createTempDirectory("FSImageLoadBenchmark").toFile();
+    conf = NameNodeBenchmarkUtil.newConfiguration(baseDir);
+    final FSNamesystem source =
+        NameNodeBenchmarkUtil.newFormattedNamesystem(conf);
+    try {
+      final INodeDirectory root = source.getFSDirectory().getRoot();
+      INodeDirectory dir = null;
+      for (int i = 0; i < numFiles; i++) {
+        if (i % filesPerDir == 0) {
+          dir = NameNodeBenchmarkUtil.addDirectory(source, root,
+              NameNodeBenchmarkUtil.childName(i / filesPerDir));
+        }
+        final BlockInfo block = new BlockInfoContiguous(
+            new Block(source.getBlockManager().nextBlockId(),
+                1L << 20, 1001), (short) 3);
+        NameNodeBenchmarkUtil.addFile(source, dir,
+            NameNodeBenchmarkUtil.childName(i), new BlockInfo[] {block},
+            (short) 3);
+      }
+      source.getFSImage().saveFSImageInAllDirs(source, 1);
+      imageFile = source.getFSImage().getStorage().getFsImageName(1);
+    } finally {
+      source.close();
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteImage() {
+    FileUtil.fullyDelete(baseDir);
+  }
+
+  @Setup(Level.Invocation)
+  public void createNamesystem() throws IOException {
+    fsn = NameNodeBenchmarkUtil.newNamesystem(conf);
+  }
+
+  @TearDown(Level.Invocation)
+  public void closeNamesystem() {
+    fsn.close();
+  }
+
+  /** Load the image, as the NameNode does on startup. */
+  @Benchmark
+  public FSNamesystem load() throws IOException {
+    final FSImageFormatProtobuf.Loader loader =
+        new FSImageFormatProtobuf.Loader(conf, fsn, false);
+    fsn.writeLock();
+    try {
+      loader.load(imageFile);
+    } finally {
+      fsn.writeUnlock();
+    }
+    return fsn;
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark the permission checks of a user who is not a superuser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FSPermissionCheckerBenchmark {
+  /** The number of path components. */
+  @Param({"4", "16"})
+  public int depth;
+  /** Whether the attributes come from an {@link INodeAttributeProvider}. */
+  @Param({"false", "true"})
+  public boolean attributeProvider;
+  /** Whether the checks granted are cached in a {@link PermissionCache}. */
+  @Param({"false", "true"})
+  public boolean permissionCache;
+
+  private File baseDir;
+  private FSNamesystem fsn;
+  private FSPermissionChecker checker;
+  private INodesInPath file;
+  private INodesInPath missing;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    PermissionCache cache = null;
+    if (permissionCache) {
+      // the cache is created by the namesystem, whose tree is not used; the
+      // namesystem is created first since it resets the user serial numbers
+      baseDir = Files.createTempDirectory("FSPermissionCheckerBenchmark")
+          .toFile();
+      final Configuration conf =
+          NameNodeBenchmarkUtil.newConfiguration(baseDir);
+      conf.setBoolean(
+          DFSConfigKeys.DFS_NAMENODE_PERMISSION_CACHE_ENABLED_KEY, true);
+      fsn = NameNodeBenchmarkUtil.newFormattedNamesystem(conf);
+      cache = fsn.getFSDirectory().getPermissionCache();
+    }
+    final int width = 10;
+    final INodeDirectory root = NameNodeBenchmarkUtil.createTree(depth,
+        width);
+    final String path = NameNodeBenchmarkUtil.getPath(depth, width);
+    file = INodesInPath.resolve(root, INode.getPathComponents(path));
+    // missing directories in the parent of the file
+    final String parent = path.substring(0, path.lastIndexOf('/'));
+    missing = INodesInPath.resolve(root,
+        INode.getPathComponents(parent + "/missing/child"));
+    checker = new FSPermissionChecker(NameNodeBenchmarkUtil.OWNER,
+        NameNodeBenchmarkUtil.SUPERGROUP,
+        UserGroupInformation.createUserForTesting(NameNodeBenchmarkUtil.USER,
+            new String[] {NameNodeBenchmarkUtil.GROUP}),
+        attributeProvider ? new PassThroughAttributeProvider() : null,
+        cache);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (fsn != null) {
+      fsn.close();
+      FileUtil.fullyDelete(baseDir);
+    }
+  }
+
+  /** Check the traverse access to the ancestors, as getFileInfo does. */
+  @Benchmark
+  public void checkTraverse() throws AccessControlException {
+    checker.checkPermission(file, false, null, null, null, null, false);
+  }
+
+  /** Check the read access to a file, as getBlockLocations does. */
+  @Benchmark
+  public void checkRead() throws AccessControlException {
+    checker.checkPermission(file, false, null, null, FsAction.READ, null,
+        false);
+  }
+
+  /** Check the write access to the parent of a file, as create does. */
+  @Benchmark
+  public void checkParentWrite() throws AccessControlException {
+    checker.checkPermission(file, false, null, FsAction.WRITE, null, null,
+        false);
+  }
+
+  /** Check the write access to the ancestor of a path, as mkdirs does. */
+  @Benchmark
+  public void checkAncestorWrite() throws AccessControlException {
+    checker.checkPermission(missing, false, FsAction.WRITE, null, null, null,
+        false);
+  }
+
+  /** Returns the attributes of the inodes, as a plugin would. */
+  private static class PassThroughAttributeProvider
+      extends INodeAttributeProvider {
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public INodeAttributes getAttributes(String[] pathElements,
+        INodeAttributes inode) {
+      return inode;
+    }
+  }
+}
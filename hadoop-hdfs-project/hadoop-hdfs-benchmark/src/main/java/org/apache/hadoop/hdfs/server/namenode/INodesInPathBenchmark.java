@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark the resolution of a path to its inodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class INodesInPathBenchmark {
+  /** The number of path components. */
+  @Param({"4", "16"})
+  public int depth;
+  /** The number of children of every directory. */
+  @Param({"1000"})
+  public int width;
+
+  private INodeDirectory root;
+  private String path;
+  private byte[][] components;
+
+  @Setup
+  public void setup() {
+    root = NameNodeBenchmarkUtil.createTree(depth, width);
+    path = NameNodeBenchmarkUtil.getPath(depth, width);
+    components = INode.getPathComponents(path);
+  }
+
+  /** Resolve the components of a path. */
+  @Benchmark
+  public INodesInPath resolveComponents() {
+    return INodesInPath.resolve(root, components);
+  }
+
+  /** Split a path into its components and resolve them, as an RPC does. */
+  @Benchmark
+  public INodesInPath resolvePath() {
+    return INodesInPath.resolve(root, INode.getPathComponents(path));
+  }
+
+  /**
+   * Split a path in a reused {@link PathComponents} buffer and resolve it,
+   * as an RPC does with {@link FSDirectory#resolvePath}.
+   */
+  @Benchmark
+  public INodesInPath resolvePathComponents() {
+    return INodesInPath.resolve(root, PathComponents.get(path));
+  }
+}
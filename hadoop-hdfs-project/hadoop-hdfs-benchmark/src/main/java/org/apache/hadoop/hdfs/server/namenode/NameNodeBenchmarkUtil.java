@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+
+/**
+ * Builds the namespaces of the benchmarks without starting a NameNode.
+ */
+public final class NameNodeBenchmarkUtil {
+  public static final String OWNER = "hdfs";
+  public static final String SUPERGROUP = "supergroup";
+  public static final String USER = "user";
+  public static final String GROUP = "users";
+
+  private NameNodeBenchmarkUtil() {
+  }
+
+  /** @return the configuration of a NameNode storing its metadata in dir. */
+  public static Configuration newConfiguration(File dir) {
+    // do not fail on the metrics sources registered by every namesystem
+    DefaultMetricsSystem.setMiniClusterMode(true);
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        new File(dir, "name").toURI().toString());
+    conf.set(DFSConfigKeys.DFS_NAMENODE_EDITS_DIR_KEY,
+        new File(dir, "name").toURI().toString());
+    conf.set(DFSConfigKeys.DFS_PERMISSIONS_SUPERUSERGROUP_KEY, SUPERGROUP);
+    return conf;
+  }
+
+  /** @return a namesystem with a formatted, empty namespace. */
+  public static FSNamesystem newFormattedNamesystem(Configuration conf)
+      throws IOException {
+    FSImage image = new FSImage(conf);
+    FSNamesystem fsn = new FSNamesystem(conf, image, true);
+    image.getEditLog().initJournalsForWrite();
+    image.format(fsn, "benchmark");
+    return fsn;
+  }
+
+  /** @return a namesystem to load an image into. */
+  public static FSNamesystem newNamesystem(Configuration conf)
+      throws IOException {
+    return new FSNamesystem(conf, new FSImage(conf), true);
+  }
+
+  static PermissionStatus dirPermission(String owner, String group) {
+    return new PermissionStatus(owner, group, new FsPermission((short) 0755));
+  }
+
+  static PermissionStatus filePermission(String owner, String group) {
+    return new PermissionStatus(owner, group, new FsPermission((short) 0644));
+  }
+
+  /**
+   * Build a standalone tree of the given depth below the root. Every
+   * directory has width children, the directories and files named
+   * {@link #childName(int)}, and only the middle child of every directory
+   * is a directory with children, so that resolving the path returned by
+   * {@link #getPath(int, int)} searches width children at every level.
+   * The directories are owned by {@link #OWNER} except for the deepest one,
+   * which is owned by {@link #USER}, and the files are owned by
+   * {@link #USER}.
+   */
+  public static INodeDirectory createTree(int depth, int width) {
+    long id = INodeId.ROOT_INODE_ID;
+    final INodeDirectory root = new INodeDirectory(id++,
+        DFSUtilClient.EMPTY_BYTES, dirPermission(OWNER, SUPERGROUP), 0L);
+    INodeDirectory dir = root;
+    for (int level = 1; level <= depth; level++) {
+      final boolean deepest = level == depth;
+      INodeDirectory next = null;
+      for (int i = 0; i < width; i++) {
+        final byte[] name = DFSUtil.string2Bytes(childName(i));
+        final INode child;
+        if (deepest) {
+          child = new INodeFile(id++, name, filePermission(USER, GROUP), 0L,
+              0L, BlockInfo.EMPTY_ARRAY, (short) 3, 128L << 20);
+        } else {
+          final String owner = level == depth - 1 ? USER : OWNER;
+          child = new INodeDirectory(id++, name,
+              dirPermission(owner, owner.equals(USER) ? GROUP : SUPERGROUP),
+              0L);
+          if (i == width / 2) {
+            next = child.asDirectory();
+          }
+        }
+        dir.addChild(child);
+      }
+      dir = next;
+    }
+    return root;
+  }
+
+  /** @return the path of the deepest file of {@link #createTree}. */
+  public static String getPath(int depth, int width) {
+    final StringBuilder b = new StringBuilder();
+    for (int level = 1; level <= depth; level++) {
+      b.append('/').append(childName(width / 2));
+    }
+    return b.toString();
+  }
+
+  public static String childName(int i) {
+    return String.format("child%08d", i);
+  }
+
+  /**
+   * Add a directory to the namespace of a namesystem.
+   */
+  public static INodeDirectory addDirectory(FSNamesystem fsn,
+      INodeDirectory parent, String name) {
+    final FSDirectory fsd = fsn.getFSDirectory();
+    final INodeDirectory dir = new INodeDirectory(fsd.allocateNewInodeId(),
+        DFSUtil.string2Bytes(name), dirPermission(USER, GROUP), 0L);
+    parent.addChild(dir);
+    fsd.addToInodeMap(dir);
+    return dir;
+  }
+
+  /**
+   * Add a complete file to the namespace of a namesystem and its blocks to
+   * the blocks map.
+   */
+  public static INodeFile addFile(FSNamesystem fsn, INodeDirectory parent,
+      String name, BlockInfo[] blocks, short replication) {
+    final FSDirectory fsd = fsn.getFSDirectory();
+    final INodeFile file = new INodeFile(fsd.allocateNewInodeId(),
+        DFSUtil.string2Bytes(name), filePermission(USER, GROUP), 0L, 0L,
+        blocks, replication, 128L << 20);
+    parent.addChild(file);
+    fsd.addToInodeMap(file);
+    final BlockManager bm = fsn.getBlockManager();
+    for (BlockInfo b : blocks) {
+      bm.addBlockCollection(b, file);
+    }
+    return file;
+  }
+}
@@ -100,6 +100,7 @@ import org.apache.hadoop.hdfs.client.impl.DfsClientConf;
 import org.apache.hadoop.hdfs.client.impl.LeaseRenewer;
 import org.apache.hadoop.hdfs.net.Peer;
 import org.apache.hadoop.hdfs.protocol.AclException;
+import org.apache.hadoop.hdfs.protocol.BatchEntryResult;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -132,6 +133,7 @@ import org.apache.hadoop.hdfs.protocol.QuotaByStorageTypeExceededException;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotAccessControlException;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
 import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferProtoUtil;
@@ -217,6 +219,8 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
   volatile long lastLeaseRenewal;
   private volatile FsServerDefaults serverDefaults;
   private volatile long serverDefaultsLastUpdate;
+  /** Set to false once the NameNode turned out not to support batch ops. */
+  private volatile boolean batchOpsSupported = true;
   final String clientName;
   final SocketFactory socketFactory;
   final ReplaceDatanodeOnFailure dtpReplaceDatanodeOnFailure;
@@ -1655,6 +1659,28 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
     }
   }
 
+  /**
+   * Get a partial depth-first listing of the subtree of the indicated
+   * directory.
+   *
+   * Use HdfsFileStatus.EMPTY_NAME as startAfter to start the listing from
+   * the first entry of the subtree.
+   *
+   * @see ClientProtocol#getListingRecursive(String, byte[], boolean)
+   */
+  public DirectoryListing listPathsRecursive(String src, byte[] startAfter,
+      boolean needLocation) throws IOException {
+    checkOpen();
+    try (TraceScope ignored = newPathTraceScope("listPathsRecursive", src)) {
+      return namenode.getListingRecursive(src, startAfter, needLocation);
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+          FileNotFoundException.class,
+          UnresolvedPathException.class,
+          RpcNoSuchMethodException.class);
+    }
+  }
+
   /**
    * Get the file info for a specific file or directory.
    * @param src The string representation of the path to the file
@@ -2290,6 +2316,24 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
     }
   }
 
+  /**
+   * Get a page of the difference between two snapshots, or between a
+   * snapshot and the current tree of a directory.
+   * @see ClientProtocol#getSnapshotDiffReportListing
+   */
+  public SnapshotDiffReportListing getSnapshotDiffReportListing(
+      String snapshotDir, String fromSnapshot, String toSnapshot,
+      byte[] startPath, int index) throws IOException {
+    checkOpen();
+    try (TraceScope ignored =
+             tracer.newScope("getSnapshotDiffReportListing")) {
+      return namenode.getSnapshotDiffReportListing(snapshotDir, fromSnapshot,
+          toSnapshot, startPath, index);
+    } catch (RemoteException re) {
+      throw re.unwrapRemoteException();
+    }
+  }
+
   public long addCacheDirective(
       CacheDirectiveInfo info, EnumSet<CacheFlag> flags) throws IOException {
     checkOpen();
@@ -2637,6 +2681,149 @@ public class DFSClient implements java.io.Closeable, RemotePeerFactory,
     }
   }
 
+  /**
+   * Get the file info of a batch of paths.
+   * @see ClientProtocol#batchGetFileInfo(String[])
+   */
+  public List<BatchEntryResult<HdfsFileStatus>> batchGetFileInfo(
+      List<String> srcs) throws IOException {
+    checkOpen();
+    try (TraceScope ignored = tracer.newScope("batchGetFileInfo")) {
+      return new BatchedCall<HdfsFileStatus>() {
+        @Override
+        List<BatchEntryResult<HdfsFileStatus>> call(String[] batch)
+            throws IOException {
+          return namenode.batchGetFileInfo(batch);
+        }
+
+        @Override
+        HdfsFileStatus callOne(String src) throws IOException {
+          return namenode.getFileInfo(src);
+        }
+      }.run(srcs);
+    }
+  }
+
+  /**
+   * Create a batch of directories, with the permission masked by the umask.
+   * @see ClientProtocol#batchMkdirs(String[], FsPermission, boolean)
+   */
+  public List<BatchEntryResult<Boolean>> batchMkdirs(List<String> srcs,
+      FsPermission permission, final boolean createParent)
+      throws IOException {
+    checkOpen();
+    final FsPermission masked = applyUMask(permission);
+    try (TraceScope ignored = tracer.newScope("batchMkdirs")) {
+      return new BatchedCall<Boolean>() {
+        @Override
+        List<BatchEntryResult<Boolean>> call(String[] batch)
+            throws IOException {
+          return namenode.batchMkdirs(batch, masked, createParent);
+        }
+
+        @Override
+        Boolean callOne(String src) throws IOException {
+          return namenode.mkdirs(src, masked, createParent);
+        }
+      }.run(srcs);
+    }
+  }
+
+  /**
+   * Delete a batch of files or directories.
+   * @see ClientProtocol#batchDelete(String[], boolean)
+   */
+  public List<BatchEntryResult<Boolean>> batchDelete(List<String> srcs,
+      final boolean recursive) throws IOException {
+    checkOpen();
+    try (TraceScope ignored = tracer.newScope("batchDelete")) {
+      return new BatchedCall<Boolean>() {
+        @Override
+        List<BatchEntryResult<Boolean>> call(String[] batch)
+            throws IOException {
+          return namenode.batchDelete(batch, recursive);
+        }
+
+        @Override
+        Boolean callOne(String src) throws IOException {
+          return namenode.delete(src, recursive);
+        }
+      }.run(srcs);
+    }
+  }
+
+  /**
+   * Set the modification and access time of a batch of files.
+   * @see ClientProtocol#batchSetTimes(String[], long, long)
+   */
+  public List<BatchEntryResult<Void>> batchSetTimes(List<String> srcs,
+      final long mtime, final long atime) throws IOException {
+    checkOpen();
+    try (TraceScope ignored = tracer.newScope("batchSetTimes")) {
+      return new BatchedCall<Void>() {
+        @Override
+        List<BatchEntryResult<Void>> call(String[] batch) throws IOException {
+          return namenode.batchSetTimes(batch, mtime, atime);
+        }
+
+        @Override
+        Void callOne(String src) throws IOException {
+          namenode.setTimes(src, mtime, atime);
+          return null;
+        }
+      }.run(srcs);
+    }
+  }
+
+  /**
+   * A batched operation, sent in RPCs of up to
+   * {@link DfsClientConf#getBatchOpsSize()} paths. If the NameNode does not
+   * support batched operations, each path is sent in its own RPC.
+   */
+  private abstract class BatchedCall<T> {
+    /** Run the operation for a batch of paths in one RPC. */
+    abstract List<BatchEntryResult<T>> call(String[] batch)
+        throws IOException;
+
+    /** Run the operation for a single path. */
+    abstract T callOne(String src) throws IOException;
+
+    List<BatchEntryResult<T>> run(List<String> srcs) throws IOException {
+      final int batchSize = dfsClientConf.getBatchOpsSize();
+      final List<BatchEntryResult<T>> results = new ArrayList<>(srcs.size());
+      for (int start = 0; start < srcs.size(); start += batchSize) {
+        final String[] batch = srcs.subList(start,
+            Math.min(srcs.size(), start + batchSize)).toArray(new String[0]);
+        if (batchOpsSupported) {
+          try {
+            results.addAll(call(batch));
+            continue;
+          } catch (RemoteException re) {
+            IOException ioe = re.unwrapRemoteException(
+                RpcNoSuchMethodException.class,
+                AccessControlException.class,
+                SafeModeException.class);
+            if (!(ioe instanceof RpcNoSuchMethodException)) {
+              throw ioe;
+            }
+            LOG.debug("The version of namenode doesn't support batched " +
+                "operations. Fall back to one call per path.");
+            batchOpsSupported = false;
+          }
+        }
+        for (String src : batch) {
+          try {
+            results.add(BatchEntryResult.success(callOne(src)));
+          } catch (RemoteException re) {
+            results.add(BatchEntryResult.<T>failure(
+                re.unwrapRemoteException()));
+          }
+        }
+      }
+      return results;
+    }
+  }
+
   /**
    * @deprecated use {@link HdfsDataInputStream} instead.
    */
@@ -26,8 +26,12 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.classification.InterfaceAudience;
@@ -74,6 +78,7 @@ import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
 import org.apache.hadoop.hdfs.client.HdfsDataOutputStream;
 import org.apache.hadoop.hdfs.client.impl.CorruptFileBlockIterator;
 import org.apache.hadoop.hdfs.DFSOpsCountStatistics.OpType;
+import org.apache.hadoop.hdfs.protocol.BatchEntryResult;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -91,10 +96,16 @@ import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffReportEntry;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing.DiffReportListingEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.security.token.block.InvalidBlockTokenException;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.RpcNoSuchMethodException;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.Credentials;
 import org.apache.hadoop.security.token.Token;
@@ -124,6 +135,10 @@ public class DistributedFileSystem extends FileSystem
   private boolean verifyChecksum = true;
 
   private DFSOpsCountStatistics storageStatistics;
+  /** Whether the NameNode supports the recursive listing. */
+  private volatile boolean recursiveListingSupported = true;
+  /** Whether the NameNode supports the paged snapshot diff report. */
+  private volatile boolean snapshotDiffListingSupported = true;
 
   static{
     HdfsConfiguration.init();
@@ -1080,6 +1095,54 @@ public class DistributedFileSystem extends FileSystem
     }.resolve(this, absF);
   }
 
+  /**
+   * List the files of a subtree with the depth-first listing of the
+   * NameNode, see {@link DFSClient#listPathsRecursive}, which returns the
+   * entries of many directories per call instead of listing each directory
+   * separately. Falls back to the listing of each directory if the NameNode
+   * does not support it.
+   */
+  @Override
+  public RemoteIterator<LocatedFileStatus> listFiles(final Path p,
+      final boolean recursive) throws IOException {
+    if (!recursive || !recursiveListingSupported) {
+      return super.listFiles(p, recursive);
+    }
+    Path absF = fixRelativePart(p);
+    return new FileSystemLinkResolver<RemoteIterator<LocatedFileStatus>>() {
+      @Override
+      public RemoteIterator<LocatedFileStatus> doCall(final Path p)
+          throws IOException {
+        if (getPathName(p).endsWith(
+            HdfsConstants.SEPARATOR_DOT_SNAPSHOT_DIR)) {
+          // the NameNode does not walk the snapshots of a directory
+          return DistributedFileSystem.super.listFiles(p, true);
+        }
+        try {
+          return new RecursiveListingIterator(p);
+        } catch (RpcNoSuchMethodException e) {
+          DFSClient.LOG.debug("The NameNode does not support recursive "
+              + "listing, fall back to listing each directory", e);
+        } catch (RemoteException e) {
+          // e.g. a router, which does not support it
+          if (!UnsupportedOperationException.class.getName().equals(
+              e.getClassName())) {
+            throw e;
+          }
+          DFSClient.LOG.debug("Recursive listing is not supported, fall "
+              + "back to listing each directory", e);
+        }
+        recursiveListingSupported = false;
+        return DistributedFileSystem.super.listFiles(p, true);
+      }
+
+      @Override
+      public RemoteIterator<LocatedFileStatus> next(final FileSystem fs,
+          final Path p) throws IOException {
+        return fs.listFiles(p, true);
+      }
+    }.resolve(this, absF);
+  }
 
   /**
    * Returns a remote iterator so that followup calls are made on demand
@@ -1200,6 +1263,71 @@ public class DistributedFileSystem extends FileSystem
     }
   }
 
+  /**
+   * Iterates over the files of a subtree, fetching the depth-first listing
+   * of the subtree page by page.
+   */
+  private class RecursiveListingIterator
+      implements RemoteIterator<LocatedFileStatus> {
+    private final Path p;
+    private final String src;
+    private DirectoryListing thisListing;
+    private int i = 0;
+    private LocatedFileStatus curStat = null;
+
+    private RecursiveListingIterator(Path p) throws IOException {
+      this.p = p;
+      this.src = getPathName(p);
+      thisListing = dfs.listPathsRecursive(src, HdfsFileStatus.EMPTY_NAME,
+          true);
+      statistics.incrementReadOps(1);
+      storageStatistics.incrementOpCounter(OpType.LIST_LOCATED_STATUS);
+      if (thisListing == null) { // the path does not exist
+        throw new FileNotFoundException("File " + p + " does not exist.");
+      }
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      while (curStat == null && hasNextEntry()) {
+        HdfsFileStatus fileStat = thisListing.getPartialListing()[i++];
+        // like FileSystem#listFiles, skip directories and symlinks
+        if (!fileStat.isDir() && !fileStat.isSymlink()) {
+          curStat = ((HdfsLocatedFileStatus) fileStat)
+              .makeQualifiedLocated(getUri(), p);
+        }
+      }
+      return curStat != null;
+    }
+
+    private boolean hasNextEntry() throws IOException {
+      if (thisListing == null) {
+        return false;
+      }
+      if (i >= thisListing.getPartialListing().length
+          && thisListing.hasMore()) {
+        thisListing = dfs.listPathsRecursive(src, thisListing.getLastName(),
+            true);
+        statistics.incrementReadOps(1);
+        if (thisListing == null) {
+          return false;
+        }
+        i = 0;
+      }
+      return i < thisListing.getPartialListing().length;
+    }
+
+    @Override
+    public LocatedFileStatus next() throws IOException {
+      if (hasNext()) {
+        LocatedFileStatus tmp = curStat;
+        curStat = null;
+        return tmp;
+      }
+      throw new java.util.NoSuchElementException("No more entry in " + p);
+    }
+  }
+
   /**
    * Create a directory, only when the parent directories exist.
    *
@@ -1741,6 +1869,99 @@ public class DistributedFileSystem extends FileSystem
     }.resolve(this, absF);
   }
 
+  private List<String> getPathNames(List<Path> paths) {
+    List<String> srcs = new ArrayList<>(paths.size());
+    for (Path p : paths) {
+      srcs.add(getPathName(fixRelativePart(p)));
+    }
+    return srcs;
+  }
+
+  /**
+   * Get the file status of a batch of paths. The paths are sent to the
+   * NameNode in batches, see
+   * {@link org.apache.hadoop.hdfs.protocol.ClientProtocol#batchGetFileInfo}.
+   * Unlike {@link #getFileStatus(Path)}, symlinks are not resolved: the
+   * entry of a path containing a symlink fails with an
+   * {@link org.apache.hadoop.fs.UnresolvedLinkException}.
+   *
+   * @param paths the paths
+   * @return the result of each path, in order. The value of an entry is
+   *         null if the path does not exist.
+   */
+  public List<BatchEntryResult<FileStatus>> getFileStatus(List<Path> paths)
+      throws IOException {
+    statistics.incrementReadOps(1);
+    storageStatistics.incrementOpCounter(OpType.GET_FILE_STATUS);
+    final List<BatchEntryResult<HdfsFileStatus>> results =
+        dfs.batchGetFileInfo(getPathNames(paths));
+    final List<BatchEntryResult<FileStatus>> statuses =
+        new ArrayList<>(results.size());
+    for (int i = 0; i < results.size(); i++) {
+      final BatchEntryResult<HdfsFileStatus> r = results.get(i);
+      if (!r.isSuccess()) {
+        statuses.add(BatchEntryResult.<FileStatus>failure(r.getException()));
+      } else if (r.getValue() == null) {
+        statuses.add(BatchEntryResult.<FileStatus>success(null));
+      } else {
+        statuses.add(BatchEntryResult.success(r.getValue().makeQualified(
+            getUri(), fixRelativePart(paths.get(i)))));
+      }
+    }
+    return statuses;
+  }
+
+  /**
+   * Create a batch of directories and their missing parents, see
+   * {@link #mkdirs(Path, FsPermission)} and
+   * {@link org.apache.hadoop.hdfs.protocol.ClientProtocol#batchMkdirs}.
+   * Symlinks are not resolved.
+   *
+   * @param paths the directories
+   * @param permission the permission of the directories, masked by the umask
+   * @return the result of each path, in order
+   */
+  public List<BatchEntryResult<Boolean>> mkdirs(List<Path> paths,
+      FsPermission permission) throws IOException {
+    statistics.incrementWriteOps(1);
+    storageStatistics.incrementOpCounter(OpType.MKDIRS);
+    return dfs.batchMkdirs(getPathNames(paths), permission, true);
+  }
+
+  /**
+   * Delete a batch of files or directories, see {@link #delete(Path,
+   * boolean)} and
+   * {@link org.apache.hadoop.hdfs.protocol.ClientProtocol#batchDelete}.
+   * Symlinks are not resolved.
+   *
+   * @param paths the paths to delete
+   * @param recursive if true deletes non empty directories recursively
+   * @return the result of each path, in order
+   */
+  public List<BatchEntryResult<Boolean>> delete(List<Path> paths,
+      boolean recursive) throws IOException {
+    statistics.incrementWriteOps(1);
+    storageStatistics.incrementOpCounter(OpType.DELETE);
+    return dfs.batchDelete(getPathNames(paths), recursive);
+  }
+
+  /**
+   * Set the modification and access time of a batch of files, see
+   * {@link #setTimes(Path, long, long)} and
+   * {@link org.apache.hadoop.hdfs.protocol.ClientProtocol#batchSetTimes}.
+   * Symlinks are not resolved.
+   *
+   * @param paths the paths
+   * @param mtime the modification time, or -1 to leave it unchanged
+   * @param atime the access time, or -1 to leave it unchanged
+   * @return the result of each path, in order
+   */
+  public List<BatchEntryResult<Void>> setTimes(List<Path> paths, long mtime,
+      long atime) throws IOException {
+    statistics.incrementWriteOps(1);
+    storageStatistics.incrementOpCounter(OpType.SET_TIMES);
+    return dfs.batchSetTimes(getPathNames(paths), mtime, atime);
+  }
 
   @Override
   protected int getDefaultPort() {
@@ -1981,6 +2202,205 @@ public class DistributedFileSystem extends FileSystem
     }.resolve(this, absF);
   }
 
+  /**
+   * Get the difference between two snapshots, or between a snapshot and the
+   * current tree of a directory, with the entries fetched from the NameNode
+   * page by page, see {@link DFSClient#getSnapshotDiffReportListing}. The
+   * NameNode only holds its lock while a page is computed, and neither the
+   * NameNode nor the client holds the whole difference at once, except for
+   * the renamed files and directories, which are returned last. Falls back
+   * to {@link #getSnapshotDiffReport} if the NameNode does not support it.
+   */
+  public RemoteIterator<DiffReportEntry> snapshotDiffReportIterator(
+      final Path snapshotDir, final String fromSnapshot,
+      final String toSnapshot) throws IOException {
+    Path absF = fixRelativePart(snapshotDir);
+    return new FileSystemLinkResolver<RemoteIterator<DiffReportEntry>>() {
+      @Override
+      public RemoteIterator<DiffReportEntry> doCall(final Path p)
+          throws IOException {
+        if (snapshotDiffListingSupported) {
+          try {
+            return new SnapshotDiffReportIterator(getPathName(p),
+                fromSnapshot, toSnapshot);
+          } catch (RpcNoSuchMethodException e) {
+            DFSClient.LOG.debug("The NameNode does not support the paged "
+                + "snapshot diff report, fall back to the whole report", e);
+          } catch (RemoteException e) {
+            // e.g. a router, which does not support it
+            if (!UnsupportedOperationException.class.getName().equals(
+                e.getClassName())) {
+              throw e;
+            }
+            DFSClient.LOG.debug("The paged snapshot diff report is not "
+                + "supported, fall back to the whole report", e);
+          }
+          snapshotDiffListingSupported = false;
+        }
+        final Iterator<DiffReportEntry> entries = dfs.getSnapshotDiffReport(
+            getPathName(p), fromSnapshot, toSnapshot).getDiffList()
+            .iterator();
+        return new RemoteIterator<DiffReportEntry>() {
+          @Override
+          public boolean hasNext() {
+            return entries.hasNext();
+          }
+
+          @Override
+          public DiffReportEntry next() {
+            return entries.next();
+          }
+        };
+      }
+
+      @Override
+      public RemoteIterator<DiffReportEntry> next(final FileSystem fs,
+          final Path p) throws IOException {
+        if (fs instanceof DistributedFileSystem) {
+          DistributedFileSystem myDfs = (DistributedFileSystem)fs;
+          return myDfs.snapshotDiffReportIterator(p, fromSnapshot,
+              toSnapshot);
+        }
+        throw new UnsupportedOperationException("Cannot perform snapshot"
+            + " operations on a symlink to a non-DistributedFileSystem: "
+            + snapshotDir + " -> " + p);
+      }
+    }.resolve(this, absF);
+  }
+
+  /**
+   * Iterates over the entries of a snapshot diff report, fetching the
+   * entries page by page. The pages describe the changes from the earlier
+   * to the later snapshot and list a renamed file or directory as a deleted
+   * and a created reference, so the entries are reversed if the from
+   * snapshot is the later one, and the references are combined into RENAME
+   * entries after the last page, the same way the NameNode combines them
+   * for {@link #getSnapshotDiffReport}.
+   */
+  private class SnapshotDiffReportIterator
+      implements RemoteIterator<DiffReportEntry> {
+    private final String snapshotDir;
+    private final String fromSnapshot;
+    private final String toSnapshot;
+    private final boolean fromEarlier;
+    private SnapshotDiffReportListing thisListing;
+    private int i = 0;
+    /** The deleted references, i.e. the possible sources of renames. */
+    private final List<DiffReportListingEntry> deletedRefs =
+        new ArrayList<>();
+    private final List<DiffReportListingEntry> createdRefs =
+        new ArrayList<>();
+    private Iterator<DiffReportEntry> renames = null;
+    private DiffReportEntry curEntry = null;
+
+    private SnapshotDiffReportIterator(String snapshotDir,
+        String fromSnapshot, String toSnapshot) throws IOException {
+      this.snapshotDir = snapshotDir;
+      this.fromSnapshot = fromSnapshot;
+      this.toSnapshot = toSnapshot;
+      thisListing = dfs.getSnapshotDiffReportListing(snapshotDir,
+          fromSnapshot, toSnapshot, DFSUtilClient.EMPTY_BYTES, 0);
+      fromEarlier = thisListing.isFromEarlier();
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      while (curEntry == null) {
+        if (thisListing != null) {
+          if (i < thisListing.getEntries().size()) {
+            curEntry = toEntry(thisListing.getEntries().get(i++));
+          } else if (thisListing.hasMore()) {
+            thisListing = dfs.getSnapshotDiffReportListing(snapshotDir,
+                fromSnapshot, toSnapshot, thisListing.getLastPath(),
+                thisListing.getLastIndex());
+            i = 0;
+          } else {
+            thisListing = null;
+            renames = resolveReferences().iterator();
+          }
+        } else if (renames.hasNext()) {
+          curEntry = renames.next();
+        } else {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @return the entry of the report, or null if the entry is a reference,
+     *         which is only resolved after the last page.
+     */
+    private DiffReportEntry toEntry(DiffReportListingEntry entry) {
+      if (entry.isReference()) {
+        if (entry.getType() == DiffType.DELETE) {
+          deletedRefs.add(entry);
+        } else {
+          createdRefs.add(entry);
+        }
+        return null;
+      }
+      return new DiffReportEntry(orient(entry.getType()), entry.getPath());
+    }
+
+    /** @return the type of a change from the from to the to snapshot. */
+    private DiffType orient(DiffType type) {
+      if (fromEarlier || type == DiffType.MODIFY) {
+        return type;
+      }
+      return type == DiffType.CREATE ? DiffType.DELETE : DiffType.CREATE;
+    }
+
+    /**
+     * A deleted reference is renamed to its path in the later snapshot, or
+     * else to the first created reference to the same inode. The other
+     * references are deleted or created entries.
+     */
+    private List<DiffReportEntry> resolveReferences() {
+      final Map<Long, byte[]> createdPaths = new HashMap<>();
+      for (DiffReportListingEntry created : createdRefs) {
+        if (!createdPaths.containsKey(created.getInodeId())) {
+          createdPaths.put(created.getInodeId(), created.getPath());
+        }
+      }
+      final List<DiffReportEntry> entries = new ArrayList<>();
+      final Set<Long> renamed = new HashSet<>();
+      for (DiffReportListingEntry deleted : deletedRefs) {
+        byte[] target = deleted.getTargetPath() != null ?
+            deleted.getTargetPath() : createdPaths.get(deleted.getInodeId());
+        if (target != null) {
+          renamed.add(deleted.getInodeId());
+          entries.add(new DiffReportEntry(DiffType.RENAME,
+              fromEarlier ? deleted.getPath() : target,
+              fromEarlier ? target : deleted.getPath()));
+        } else {
+          entries.add(new DiffReportEntry(orient(DiffType.DELETE),
+              deleted.getPath()));
+        }
+      }
+      for (DiffReportListingEntry created : createdRefs) {
+        if (!renamed.contains(created.getInodeId())) {
+          entries.add(new DiffReportEntry(orient(DiffType.CREATE),
+              created.getPath()));
+        }
+      }
+      deletedRefs.clear();
+      createdRefs.clear();
+      return entries;
+    }
+
+    @Override
+    public DiffReportEntry next() throws IOException {
+      if (hasNext()) {
+        DiffReportEntry tmp = curEntry;
+        curEntry = null;
+        return tmp;
+      }
+      throw new java.util.NoSuchElementException("No more entry in "
+          + snapshotDir);
+    }
+  }
+
   /**
    * Get the close status of a file
    * @param src The path to the file
@@ -40,6 +40,8 @@ import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_BYTES_PER_C
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_BYTES_PER_CHECKSUM_KEY;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CHECKSUM_TYPE_DEFAULT;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CHECKSUM_TYPE_KEY;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_BATCH_OPS_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_BATCH_OPS_SIZE_KEY;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CACHED_CONN_RETRY_DEFAULT;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_CACHED_CONN_RETRY_KEY;
 import static org.apache.hadoop.hdfs.client.HdfsClientConfigKeys.DFS_CLIENT_DATANODE_RESTART_TIMEOUT_DEFAULT;
@@ -132,6 +134,7 @@ public class DfsClientConf {
   private final int retryIntervalForGetLastBlockLength;
   private final long datanodeRestartTimeout;
   private final long slowIoWarningThresholdMs;
+  private final int batchOpsSize;
 
   private final ShortCircuitConf shortCircuitConf;
 
@@ -253,6 +256,11 @@ public class DfsClientConf {
     slowIoWarningThresholdMs = conf.getLong(
         DFS_CLIENT_SLOW_IO_WARNING_THRESHOLD_KEY,
         DFS_CLIENT_SLOW_IO_WARNING_THRESHOLD_DEFAULT);
+    batchOpsSize = conf.getInt(
+        DFS_CLIENT_BATCH_OPS_SIZE_KEY,
+        DFS_CLIENT_BATCH_OPS_SIZE_DEFAULT);
+    Preconditions.checkArgument(batchOpsSize > 0,
+        DFS_CLIENT_BATCH_OPS_SIZE_KEY + " must be positive");
 
     shortCircuitConf = new ShortCircuitConf(conf);
 
@@ -564,6 +572,13 @@ public class DfsClientConf {
     return slowIoWarningThresholdMs;
   }
 
+  /**
+   * @return the maximum number of entries sent in one batched RPC
+   */
+  public int getBatchOpsSize() {
+    return batchOpsSize;
+  }
+
   /**
    * @return the hedgedReadThresholdMillis
    */
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The result of one entry of a batched namespace operation: either the
+ * value the operation returned for the entry or the exception it failed
+ * with.
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public final class BatchEntryResult<T> {
+  private final T value;
+  private final IOException exception;
+
+  private BatchEntryResult(T value, IOException exception) {
+    this.value = value;
+    this.exception = exception;
+  }
+
+  public static <T> BatchEntryResult<T> success(T value) {
+    return new BatchEntryResult<T>(value, null);
+  }
+
+  public static <T> BatchEntryResult<T> failure(IOException exception) {
+    Preconditions.checkNotNull(exception);
+    return new BatchEntryResult<T>(null, exception);
+  }
+
+  /** @return true if the operation succeeded for the entry. */
+  public boolean isSuccess() {
+    return exception == null;
+  }
+
+  /** @return the value of the entry, or null if it failed. */
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * @return the value of the entry.
+   * @throws IOException the exception the entry failed with.
+   */
+  public T get() throws IOException {
+    if (exception != null) {
+      throw exception;
+    }
+    return value;
+  }
+
+  /** @return the exception the entry failed with, or null. */
+  public IOException getException() {
+    return exception;
+  }
+
+  @Override
+  public String toString() {
+    return isSuccess() ? "success: " + value : "failure: " + exception;
+  }
+}
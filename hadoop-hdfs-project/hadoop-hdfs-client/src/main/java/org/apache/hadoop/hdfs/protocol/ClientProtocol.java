@@ -684,6 +684,38 @@ public interface ClientProtocol {
   DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException;
 
+  /**
+   * Get a partial depth-first listing of the subtree of the indicated
+   * directory. A directory is listed before its children and the children of
+   * a directory are listed in the same order as by
+   * {@link #getListing(String, byte[], boolean)}.
+   * <p>
+   * The local name of each returned file status is the path of the entry
+   * relative to <code>src</code>, so the last name of a partial listing is
+   * the cursor to continue the listing with. The remaining entries of a
+   * partial listing only tell whether there are more entries, not how many.
+   * If <code>src</code> is a file, the listing only contains the file, with
+   * an empty local name.
+   *
+   * @param src the directory name
+   * @param startAfter the relative path to start listing after encoded in
+   *          java UTF8, or an empty array to start from the beginning
+   * @param needLocation if the FileStatus should contain block locations
+   *
+   * @return a partial listing starting after startAfter, or null if
+   *         <code>src</code> does not exist
+   *
+   * @throws org.apache.hadoop.security.AccessControlException permission
+   *           denied on <code>src</code> or a directory of the subtree
+   * @throws org.apache.hadoop.fs.UnresolvedLinkException If <code>src</code>
+   *           contains a symlink
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  @ReadOnly(isCoordinated = true)
+  DirectoryListing getListingRecursive(String src, byte[] startAfter,
+      boolean needLocation) throws IOException;
+
   /**
    * Get listing of all the snapshottable directories.
    *
@@ -1273,6 +1305,36 @@ public interface ClientProtocol {
   SnapshotDiffReport getSnapshotDiffReport(String snapshotRoot,
       String fromSnapshot, String toSnapshot) throws IOException;
 
+  /**
+   * Get a page of the difference between two snapshots, or between a
+   * snapshot and the current tree of a directory. The NameNode walks the
+   * snapshot diffs of the subtree depth-first and returns at most a
+   * configured number of entries per call, so that a large difference is
+   * neither computed nor returned in a single call.
+   *
+   * @param snapshotRoot
+   *          full path of the directory where snapshots are taken
+   * @param fromSnapshot
+   *          snapshot name of the from point. Null indicates the current
+   *          tree
+   * @param toSnapshot
+   *          snapshot name of the to point. Null indicates the current
+   *          tree.
+   * @param startPath
+   *          the path to start the listing at, relative to the snapshot
+   *          root, as returned by the previous page, or an empty array to
+   *          start from the beginning
+   * @param index
+   *          the number of entries of startPath already listed
+   * @return a page of the difference, see {@link SnapshotDiffReportListing}
+   * @throws IOException on error
+   */
+  @Idempotent
+  @ReadOnly(isCoordinated = true)
+  SnapshotDiffReportListing getSnapshotDiffReportListing(String snapshotRoot,
+      String fromSnapshot, String toSnapshot, byte[] startPath, int index)
+      throws IOException;
+
   /**
    * Add a CacheDirective to the CacheManager.
    *
@@ -1587,4 +1649,75 @@ public interface ClientProtocol {
   @Idempotent
   @ReadOnly(activeOnly = true)
   void msync() throws IOException;
+
+  /**
+   * Get the file info of a batch of paths. The NameNode processes the
+   * entries in order and takes the namesystem lock once for many entries,
+   * instead of once per RPC.
+   *
+   * An entry fails with the exception {@link #getFileInfo(String)} would
+   * throw for the path, e.g. an AccessControlException, without failing the
+   * other entries. If the batch fails as a whole after some entries were
+   * processed, e.g. on a failover, the remaining entries fail with that
+   * exception.
+   *
+   * @param srcs The string representations of the paths
+   * @return the result of each path, in order. The value of an entry is
+   *         null if the path does not exist.
+   * @throws IOException If the batch failed before any entry was processed
+   */
+  @Idempotent
+  @ReadOnly(isCoordinated = true)
+  List<BatchEntryResult<HdfsFileStatus>> batchGetFileInfo(String[] srcs)
+      throws IOException;
+
+  /**
+   * Create a batch of directories, see {@link #mkdirs(String, FsPermission,
+   * boolean)}. The entries are processed in order, and entries failing do
+   * not fail the other entries, as described in {@link #batchGetFileInfo}.
+   *
+   * @param srcs The paths of the directories being created
+   * @param masked The masked permission of the directories being created
+   * @param createParent create missing parent directories if true
+   * @return the result of each path, in order
+   * @throws IOException If the batch failed before any entry was processed
+   */
+  @Idempotent
+  List<BatchEntryResult<Boolean>> batchMkdirs(String[] srcs,
+      FsPermission masked, boolean createParent) throws IOException;
+
+  /**
+   * Delete a batch of files or directories, see {@link #delete(String,
+   * boolean)}. The entries are processed in order, and entries failing do
+   * not fail the other entries, as described in {@link #batchGetFileInfo}.
+   *
+   * @param srcs existing names
+   * @param recursive if true deletes non empty directories recursively
+   * @return the result of each path, in order
+   * @throws IOException If the batch failed before any entry was processed
+   */
+  @AtMostOnce
+  List<BatchEntryResult<Boolean>> batchDelete(String[] srcs,
+      boolean recursive) throws IOException;
+
+  /**
+   * Set the modification and access time of a batch of files, see
+   * {@link #setTimes(String, long, long)}. The entries are processed in
+   * order, and entries failing do not fail the other entries, as described
+   * in {@link #batchGetFileInfo}.
+   *
+   * @param srcs The string representations of the paths
+   * @param mtime The number of milliseconds since Jan 1, 1970.
+   *              Setting negative mtime means that modification time should
+   *              not be set.
+   * @param atime The number of milliseconds since Jan 1, 1970.
+   *              Setting negative atime means that access time should not be
+   *              set.
+   * @return the result of each path, in order. The value of an entry is
+   *         always null.
+   * @throws IOException If the batch failed before any entry was processed
+   */
+  @Idempotent
+  List<BatchEntryResult<Void>> batchSetTimes(String[] srcs, long mtime,
+      long atime) throws IOException;
 }
@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
+
+/**
+ * A page of the difference between two snapshots of a directory, or between
+ * a snapshot of the directory and its current state, as returned by
+ * {@link ClientProtocol#getSnapshotDiffReportListing}.
+ *
+ * Unlike a {@link SnapshotDiffReport}, the entries always describe the
+ * changes from the earlier to the later of the two snapshots, and renames
+ * are not resolved: a renamed file or directory is listed as a deleted and
+ * a created reference with the same inode id. The client combines them once
+ * all the pages were listed.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class SnapshotDiffReportListing {
+
+  /** A modified, created or deleted file or directory. */
+  public static class DiffReportListingEntry {
+    /** MODIFY, CREATE or DELETE from the earlier to the later snapshot. */
+    private final DiffType type;
+    /** The path relative to the snapshot root. */
+    private final byte[] path;
+    private final long inodeId;
+    private final boolean isReference;
+    /** The path of a deleted reference in the later snapshot, or null. */
+    private final byte[] targetPath;
+
+    public DiffReportListingEntry(DiffType type, byte[] path, long inodeId,
+        boolean isReference, byte[] targetPath) {
+      this.type = type;
+      this.path = path;
+      this.inodeId = inodeId;
+      this.isReference = isReference;
+      this.targetPath = targetPath;
+    }
+
+    public DiffReportListingEntry(DiffType type, byte[][] pathComponents,
+        long inodeId, boolean isReference, byte[][] targetPathComponents) {
+      this(type, DFSUtilClient.byteArray2bytes(pathComponents), inodeId,
+          isReference, targetPathComponents == null ? null :
+              DFSUtilClient.byteArray2bytes(targetPathComponents));
+    }
+
+    public DiffType getType() {
+      return type;
+    }
+
+    public byte[] getPath() {
+      return path;
+    }
+
+    public long getInodeId() {
+      return inodeId;
+    }
+
+    public boolean isReference() {
+      return isReference;
+    }
+
+    public byte[] getTargetPath() {
+      return targetPath;
+    }
+
+    @Override
+    public String toString() {
+      return type.getLabel() + "\t" + DFSUtilClient.bytes2String(path)
+          + (targetPath == null ? "" :
+              " -> " + DFSUtilClient.bytes2String(targetPath));
+    }
+  }
+
+  private final List<DiffReportListingEntry> entries;
+  /** Whether the from snapshot is earlier than the to snapshot. */
+  private final boolean isFromEarlier;
+  /** The path of the node the next page starts at. */
+  private final byte[] lastPath;
+  /** The number of entries of that node already listed. */
+  private final int lastIndex;
+  private final boolean hasMore;
+
+  public SnapshotDiffReportListing(List<DiffReportListingEntry> entries,
+      boolean isFromEarlier, byte[] lastPath, int lastIndex,
+      boolean hasMore) {
+    this.entries = entries;
+    this.isFromEarlier = isFromEarlier;
+    this.lastPath = lastPath;
+    this.lastIndex = lastIndex;
+    this.hasMore = hasMore;
+  }
+
+  public List<DiffReportListingEntry> getEntries() {
+    return entries;
+  }
+
+  public boolean isFromEarlier() {
+    return isFromEarlier;
+  }
+
+  /**
+   * @return the start path of the next page, relative to the snapshot root.
+   */
+  public byte[] getLastPath() {
+    return lastPath;
+  }
+
+  /** @return the start index of the next page. */
+  public int getLastIndex() {
+    return lastIndex;
+  }
+
+  /** @return true if there are more entries after this page. */
+  public boolean hasMore() {
+    return hasMore;
+  }
+}
@@ -61,6 +61,7 @@ import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.inotify.Event;
 import org.apache.hadoop.hdfs.inotify.EventBatch;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.protocol.BatchEntryResult;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
@@ -94,6 +95,8 @@ import org.apache.hadoop.hdfs.protocol.RollingUpgradeStatus;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffReportEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing.DiffReportListingEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.AclEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.AclEntryProto.AclEntryScopeProto;
@@ -102,6 +105,9 @@ import org.apache.hadoop.hdfs.protocol.proto.AclProtos.AclEntryProto.FsActionPro
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.AclStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.AclProtos.GetAclStatusResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AddBlockFlagProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchEntryExceptionProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchEntryResultProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchGetFileInfoEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoExpirationProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CacheDirectiveInfoProto;
@@ -148,6 +154,8 @@ import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.LocatedBlocksProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.QuotaUsageProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.RollingUpgradeStatusProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshotDiffReportEntryProto;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshotDiffReportListingEntryProto;
+import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshotDiffReportListingProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshotDiffReportProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshottableDirectoryListingProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.SnapshottableDirectoryStatusProto;
@@ -171,6 +179,7 @@ import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.ShmId;
 import org.apache.hadoop.hdfs.shortcircuit.ShortCircuitShm.SlotId;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.ipc.RemoteException;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.util.ChunkedArrayList;
@@ -1361,6 +1370,37 @@ public class PBHelperClient {
         .toByteArray() : null);
   }
 
+  public static SnapshotDiffReportListing convert(
+      SnapshotDiffReportListingProto reportProto) {
+    if (reportProto == null) {
+      return null;
+    }
+    List<DiffReportListingEntry> entries = new ChunkedArrayList<>();
+    for (SnapshotDiffReportListingEntryProto entryProto :
+        reportProto.getDiffReportEntriesList()) {
+      DiffReportListingEntry entry = convert(entryProto);
+      if (entry != null) {
+        entries.add(entry);
+      }
+    }
+    return new SnapshotDiffReportListing(entries,
+        reportProto.getIsFromEarlier(),
+        reportProto.getLastPath().toByteArray(), reportProto.getLastIndex(),
+        reportProto.getHasMore());
+  }
+
+  public static DiffReportListingEntry convert(
+      SnapshotDiffReportListingEntryProto entry) {
+    if (entry == null) {
+      return null;
+    }
+    DiffType type = DiffType.getTypeFromLabel(entry.getModificationLabel());
+    return type == null ? null : new DiffReportListingEntry(type,
+        entry.getFullpath().toByteArray(), entry.getInodeId(),
+        entry.getIsReference(), entry.hasTargetPath() ?
+            entry.getTargetPath().toByteArray() : null);
+  }
+
   public static SnapshottableDirectoryStatus[] convert(
       SnapshottableDirectoryListingProto sdlp) {
     if (sdlp == null)
@@ -2205,6 +2245,41 @@ public class PBHelperClient {
         .addAllDiffReportEntries(entryProtos).build();
   }
 
+  public static SnapshotDiffReportListingEntryProto convert(
+      DiffReportListingEntry entry) {
+    if (entry == null) {
+      return null;
+    }
+    SnapshotDiffReportListingEntryProto.Builder builder =
+        SnapshotDiffReportListingEntryProto.newBuilder()
+            .setModificationLabel(entry.getType().getLabel())
+            .setFullpath(getByteString(entry.getPath()))
+            .setInodeId(entry.getInodeId())
+            .setIsReference(entry.isReference());
+    if (entry.getTargetPath() != null) {
+      builder.setTargetPath(getByteString(entry.getTargetPath()));
+    }
+    return builder.build();
+  }
+
+  public static SnapshotDiffReportListingProto convert(
+      SnapshotDiffReportListing report) {
+    if (report == null) {
+      return null;
+    }
+    List<SnapshotDiffReportListingEntryProto> entryProtos =
+        new ChunkedArrayList<>();
+    for (DiffReportListingEntry entry : report.getEntries()) {
+      entryProtos.add(convert(entry));
+    }
+    return SnapshotDiffReportListingProto.newBuilder()
+        .addAllDiffReportEntries(entryProtos)
+        .setIsFromEarlier(report.isFromEarlier())
+        .setLastPath(getByteString(report.getLastPath()))
+        .setLastIndex(report.getLastIndex())
+        .setHasMore(report.hasMore()).build();
+  }
+
   public static CacheDirectiveStatsProto convert(CacheDirectiveStats stats) {
     CacheDirectiveStatsProto.Builder builder =
         CacheDirectiveStatsProto.newBuilder();
@@ -2544,4 +2619,93 @@ public class PBHelperClient {
     }
     return ret;
   }
+
+  public static BatchEntryExceptionProto convertBatchEntryException(
+      IOException e) {
+    BatchEntryExceptionProto.Builder builder =
+        BatchEntryExceptionProto.newBuilder().setClassName(
+            e instanceof RemoteException ?
+                ((RemoteException) e).getClassName() : e.getClass().getName());
+    if (e.getMessage() != null) {
+      builder.setMessage(e.getMessage());
+    }
+    return builder.build();
+  }
+
+  public static IOException convert(BatchEntryExceptionProto e) {
+    return new RemoteException(e.getClassName(),
+        e.hasMessage() ? e.getMessage() : null).unwrapRemoteException();
+  }
+
+  public static List<BatchGetFileInfoEntryProto> convertFileInfoResults(
+      List<BatchEntryResult<HdfsFileStatus>> results) {
+    List<BatchGetFileInfoEntryProto> ret = new ArrayList<>(results.size());
+    for (BatchEntryResult<HdfsFileStatus> r : results) {
+      BatchGetFileInfoEntryProto.Builder builder =
+          BatchGetFileInfoEntryProto.newBuilder();
+      if (!r.isSuccess()) {
+        builder.setException(convertBatchEntryException(r.getException()));
+      } else if (r.getValue() != null) {
+        builder.setFs(convert(r.getValue()));
+      }
+      ret.add(builder.build());
+    }
+    return ret;
+  }
+
+  public static List<BatchEntryResult<HdfsFileStatus>> convertFileInfoEntries(
+      List<BatchGetFileInfoEntryProto> entries) {
+    List<BatchEntryResult<HdfsFileStatus>> ret =
+        new ArrayList<>(entries.size());
+    for (BatchGetFileInfoEntryProto p : entries) {
+      if (p.hasException()) {
+        ret.add(BatchEntryResult.<HdfsFileStatus>failure(
+            convert(p.getException())));
+      } else {
+        ret.add(BatchEntryResult.success(p.hasFs() ? convert(p.getFs()) : null));
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Convert the results of a batched operation with bool or no values.
+   */
+  public static List<BatchEntryResultProto> convertBatchResults(
+      List<? extends BatchEntryResult<?>> results) {
+    List<BatchEntryResultProto> ret = new ArrayList<>(results.size());
+    for (BatchEntryResult<?> r : results) {
+      BatchEntryResultProto.Builder builder =
+          BatchEntryResultProto.newBuilder();
+      if (!r.isSuccess()) {
+        builder.setException(convertBatchEntryException(r.getException()));
+      } else if (r.getValue() instanceof Boolean) {
+        builder.setResult((Boolean) r.getValue());
+      }
+      ret.add(builder.build());
+    }
+    return ret;
+  }
+
+  public static List<BatchEntryResult<Boolean>> convertBooleanResults(
+      List<BatchEntryResultProto> entries) {
+    List<BatchEntryResult<Boolean>> ret = new ArrayList<>(entries.size());
+    for (BatchEntryResultProto p : entries) {
+      ret.add(p.hasException() ?
+          BatchEntryResult.<Boolean>failure(convert(p.getException())) :
+          BatchEntryResult.success(p.getResult()));
+    }
+    return ret;
+  }
+
+  public static List<BatchEntryResult<Void>> convertVoidResults(
+      List<BatchEntryResultProto> entries) {
+    List<BatchEntryResult<Void>> ret = new ArrayList<>(entries.size());
+    for (BatchEntryResultProto p : entries) {
+      ret.add(p.hasException() ?
+          BatchEntryResult.<Void>failure(convert(p.getException())) :
+          BatchEntryResult.<Void>success(null));
+    }
+    return ret;
+  }
 }
@@ -39,6 +39,7 @@ public class TestReadOnly {
           "getStoragePolicies",
           "getStoragePolicy",
           "getListing",
+          "getListingRecursive",
           "getSnapshottableDirListing",
           "getPreferredBlockSize",
           "listCorruptFileBlocks",
@@ -48,6 +49,7 @@ public class TestReadOnly {
           "getContentSummary",
           "getLinkTarget",
           "getSnapshotDiffReport",
+          "getSnapshotDiffReportListing",
           "listCacheDirectives",
           "listCachePools",
           "getAclStatus",
@@ -65,7 +67,8 @@ public class TestReadOnly {
           "getEditsFromTxid",
           "getQuotaUsage",
           "msync",
-          "getHAServiceState"
+          "getHAServiceState",
+          "batchGetFileInfo"
       )
   );
 
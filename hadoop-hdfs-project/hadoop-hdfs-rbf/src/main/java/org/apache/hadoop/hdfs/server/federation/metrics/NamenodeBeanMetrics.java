@@ -617,6 +617,11 @@ public class NamenodeBeanMetrics
     return "N/A";
   }
 
+  @Override
+  public String getLockProfile() {
+    return "N/A";
+  }
+
   @Override
   public int getFsLockQueueLength() {
     return 0;
@@ -39,6 +39,7 @@ import org.apache.hadoop.hdfs.AddBlockFlag;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.protocol.BatchEntryResult;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -59,6 +60,7 @@ import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
@@ -79,6 +81,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -581,6 +584,14 @@ public class RouterClientProtocol implements ClientProtocol {
     rpcClient.invokeConcurrent(nss, method, false, false);
   }
 
+  @Override
+  public DirectoryListing getListingRecursive(String src, byte[] startAfter,
+      boolean needLocation) throws IOException {
+    // the subtree may span mount points, clients list each directory
+    rpcServer.checkOperation(OperationCategory.READ, false);
+    return null;
+  }
+
   @Override
   public DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException {
@@ -1065,6 +1076,15 @@ public class RouterClientProtocol implements ClientProtocol {
     return null;
   }
 
+  @Override
+  public SnapshotDiffReportListing getSnapshotDiffReportListing(
+      String snapshotRoot, String earlierSnapshotName,
+      String laterSnapshotName, byte[] startPath, int index)
+      throws IOException {
+    rpcServer.checkOperation(OperationCategory.READ, false);
+    return null;
+  }
+
   @Override
   public long addCacheDirective(CacheDirectiveInfo path,
       EnumSet<CacheFlag> flags) throws IOException {
@@ -1404,6 +1424,70 @@ public class RouterClientProtocol implements ClientProtocol {
         "msync is not supported for router");
   }
 
+  /*
+   * The entries of a batch may be in different subclusters, so the router
+   * executes them one by one.
+   */
+
+  @Override
+  public List<BatchEntryResult<HdfsFileStatus>> batchGetFileInfo(
+      String[] srcs) throws IOException {
+    List<BatchEntryResult<HdfsFileStatus>> results =
+        new ArrayList<>(srcs.length);
+    for (String src : srcs) {
+      try {
+        results.add(BatchEntryResult.success(getFileInfo(src)));
+      } catch (IOException e) {
+        results.add(BatchEntryResult.<HdfsFileStatus>failure(e));
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public List<BatchEntryResult<Boolean>> batchMkdirs(String[] srcs,
+      FsPermission masked, boolean createParent) throws IOException {
+    List<BatchEntryResult<Boolean>> results = new ArrayList<>(srcs.length);
+    for (String src : srcs) {
+      try {
+        results.add(BatchEntryResult.success(
+            mkdirs(src, masked, createParent)));
+      } catch (IOException e) {
+        results.add(BatchEntryResult.<Boolean>failure(e));
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public List<BatchEntryResult<Boolean>> batchDelete(String[] srcs,
+      boolean recursive) throws IOException {
+    List<BatchEntryResult<Boolean>> results = new ArrayList<>(srcs.length);
+    for (String src : srcs) {
+      try {
+        results.add(BatchEntryResult.success(delete(src, recursive)));
+      } catch (IOException e) {
+        results.add(BatchEntryResult.<Boolean>failure(e));
+      }
+    }
+    return results;
+  }
+
+  @Override
+  public List<BatchEntryResult<Void>> batchSetTimes(String[] srcs,
+      long mtime, long atime) throws IOException {
+    List<BatchEntryResult<Void>> results = new ArrayList<>(srcs.length);
+    for (String src : srcs) {
+      try {
+        setTimes(src, mtime, atime);
+        results.add(BatchEntryResult.<Void>success(null));
+      } catch (IOException e) {
+        results.add(BatchEntryResult.<Void>failure(e));
+      }
+    }
+    return results;
+  }
+
   @Override
   public HAServiceProtocol.HAServiceState getHAServiceState()
       throws IOException {
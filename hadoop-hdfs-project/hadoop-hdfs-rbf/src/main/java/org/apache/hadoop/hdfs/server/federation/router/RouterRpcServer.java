@@ -62,6 +62,7 @@ import org.apache.hadoop.ha.HAServiceProtocol;
 import org.apache.hadoop.hdfs.AddBlockFlag;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
+import org.apache.hadoop.hdfs.protocol.BatchEntryResult;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveInfo;
@@ -84,6 +85,7 @@ import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.OpenFileEntry;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ClientNamenodeProtocol;
 import org.apache.hadoop.hdfs.protocol.proto.NamenodeProtocolProtos.NamenodeProtocolService;
@@ -686,6 +688,12 @@ public class RouterRpcServer extends AbstractService
     clientProto.renewLease(clientName);
   }
 
+  @Override // ClientProtocol
+  public DirectoryListing getListingRecursive(String src, byte[] startAfter,
+      boolean needLocation) throws IOException {
+    return clientProto.getListingRecursive(src, startAfter, needLocation);
+  }
+
   @Override // ClientProtocol
   public DirectoryListing getListing(String src, byte[] startAfter,
       boolean needLocation) throws IOException {
@@ -903,6 +911,15 @@ public class RouterRpcServer extends AbstractService
         snapshotRoot, earlierSnapshotName, laterSnapshotName);
   }
 
+  @Override // ClientProtocol
+  public SnapshotDiffReportListing getSnapshotDiffReportListing(
+      String snapshotRoot, String earlierSnapshotName,
+      String laterSnapshotName, byte[] startPath, int index)
+      throws IOException {
+    return clientProto.getSnapshotDiffReportListing(snapshotRoot,
+        earlierSnapshotName, laterSnapshotName, startPath, index);
+  }
+
   @Override // ClientProtocol
   public long addCacheDirective(CacheDirectiveInfo path,
       EnumSet<CacheFlag> flags) throws IOException {
@@ -1082,6 +1099,30 @@ public class RouterRpcServer extends AbstractService
     return clientProto.listOpenFiles(prevId);
   }
 
+  @Override // ClientProtocol
+  public List<BatchEntryResult<HdfsFileStatus>> batchGetFileInfo(
+      String[] srcs) throws IOException {
+    return clientProto.batchGetFileInfo(srcs);
+  }
+
+  @Override // ClientProtocol
+  public List<BatchEntryResult<Boolean>> batchMkdirs(String[] srcs,
+      FsPermission masked, boolean createParent) throws IOException {
+    return clientProto.batchMkdirs(srcs, masked, createParent);
+  }
+
+  @Override // ClientProtocol
+  public List<BatchEntryResult<Boolean>> batchDelete(String[] srcs,
+      boolean recursive) throws IOException {
+    return clientProto.batchDelete(srcs, recursive);
+  }
+
+  @Override // ClientProtocol
+  public List<BatchEntryResult<Void>> batchSetTimes(String[] srcs,
+      long mtime, long atime) throws IOException {
+    return clientProto.batchSetTimes(srcs, mtime, atime);
+  }
+
   @Override
   public HAServiceProtocol.HAServiceState getHAServiceState()
       throws IOException {
@@ -236,6 +236,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_REPLICATION_MAX_STREAMS_DEFAULT = 2;
   public static final String  DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_KEY = "dfs.namenode.replication.max-streams-hard-limit";
   public static final int     DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_DEFAULT = 4;
+  public static final String  DFS_NAMENODE_REPLICATION_STREAMS_ADAPTIVE_KEY =
+      "dfs.namenode.replication.max-streams.adaptive";
+  public static final boolean DFS_NAMENODE_REPLICATION_STREAMS_ADAPTIVE_DEFAULT =
+      false;
+  public static final String  DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY =
+      "dfs.namenode.replication.work.threads";
+  public static final int     DFS_NAMENODE_REPLICATION_WORK_THREADS_DEFAULT = 1;
+  public static final String  DFS_NAMENODE_REPLICATION_WORK_COMMIT_BATCH_KEY =
+      "dfs.namenode.replication.work.commit-batch";
+  public static final int     DFS_NAMENODE_REPLICATION_WORK_COMMIT_BATCH_DEFAULT =
+      1000;
   public static final String  DFS_WEBHDFS_AUTHENTICATION_FILTER_KEY = "dfs.web.authentication.filter";
   /* Phrased as below to avoid javac inlining as a constant, to match the behavior when
      this was AuthFilter.class.getName(). Note that if you change the import for AuthFilter, you
@@ -303,6 +314,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_EDITS_ASYNC_LOGGING =
       "dfs.namenode.edits.asynclogging";
   public static final boolean DFS_NAMENODE_EDITS_ASYNC_LOGGING_DEFAULT = true;
+  public static final String
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_MAX_DELAY_US_KEY =
+      "dfs.namenode.edits.asynclogging.group-commit.max-delay.us";
+  public static final long
+      DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_MAX_DELAY_US_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_EDITS_PARALLEL_FLUSH_KEY =
+      "dfs.namenode.edits.parallel-flush";
+  public static final boolean DFS_NAMENODE_EDITS_PARALLEL_FLUSH_DEFAULT = false;
+  public static final String  DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_KEY =
+      "dfs.namenode.edits.replay.prefetch.ops";
+  public static final int     DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_DEFAULT = 0;
 
   public static final String  DFS_LIST_LIMIT = "dfs.ls.limit";
   public static final int     DFS_LIST_LIMIT_DEFAULT = 1000;
@@ -310,6 +332,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CONTENT_SUMMARY_LIMIT_DEFAULT = 5000;
   public static final String  DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY = "dfs.content-summary.sleep-microsec";
   public static final long    DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT = 500;
+  public static final String  DFS_CONTENT_SUMMARY_USAGE_INDEX_ENABLED_KEY = "dfs.content-summary.usage-index.enabled";
+  public static final boolean DFS_CONTENT_SUMMARY_USAGE_INDEX_ENABLED_DEFAULT = false;
+  public static final String  DFS_CONTENT_SUMMARY_USAGE_INDEX_MIN_ENTRIES_KEY = "dfs.content-summary.usage-index.min-entries";
+  public static final long    DFS_CONTENT_SUMMARY_USAGE_INDEX_MIN_ENTRIES_DEFAULT = 1000;
   public static final String  DFS_DATANODE_FAILED_VOLUMES_TOLERATED_KEY = "dfs.datanode.failed.volumes.tolerated";
   public static final int     DFS_DATANODE_FAILED_VOLUMES_TOLERATED_DEFAULT = 0;
   public static final String
@@ -349,6 +375,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_BLOCK_DELETION_INCREMENT_KEY =
       "dfs.namenode.block.deletion.increment";
   public static final int DFS_NAMENODE_BLOCK_DELETION_INCREMENT_DEFAULT = 1000;
+  public static final String DFS_NAMENODE_BATCH_OPS_PER_LOCK_KEY =
+      "dfs.namenode.batch.ops.per.lock";
+  public static final int DFS_NAMENODE_BATCH_OPS_PER_LOCK_DEFAULT = 1000;
+  public static final String DFS_NAMENODE_DELETE_ASYNC_ENABLED_KEY =
+      "dfs.namenode.delete.async.enabled";
+  public static final boolean DFS_NAMENODE_DELETE_ASYNC_ENABLED_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_DELETE_ASYNC_BATCH_SIZE_KEY =
+      "dfs.namenode.delete.async.batch.size";
+  public static final int DFS_NAMENODE_DELETE_ASYNC_BATCH_SIZE_DEFAULT =
+      10000;
 
   public static final String DFS_NAMENODE_SNAPSHOT_CAPTURE_OPENFILES =
       HdfsClientConfigKeys.DFS_NAMENODE_SNAPSHOT_CAPTURE_OPENFILES;
@@ -357,6 +394,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
 
   public static final String DFS_NAMENODE_SNAPSHOT_SKIP_CAPTURE_ACCESSTIME_ONLY_CHANGE = "dfs.namenode.snapshot.skip.capture.accesstime-only-change";
   public static final boolean DFS_NAMENODE_SNAPSHOT_SKIP_CAPTURE_ACCESSTIME_ONLY_CHANGE_DEFAULT = false;
+  public static final String DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT =
+      "dfs.namenode.snapshotdiff.listing.limit";
+  public static final int DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT_DEFAULT =
+      1000;
 
   // Whether to enable datanode's stale state detection and usage for reads
   public static final String DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_READ_KEY = "dfs.namenode.avoid.read.stale.datanode";
@@ -427,11 +468,40 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_FSLOCK_FAIR_KEY =
       "dfs.namenode.fslock.fair";
   public static final boolean DFS_NAMENODE_FSLOCK_FAIR_DEFAULT = true;
+  public static final String DFS_NAMENODE_FSLOCK_PARTITIONS_KEY =
+      "dfs.namenode.fslock.partitions";
+  public static final int DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT = 0;
+  public static final String DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY =
+      "dfs.namenode.fslock.block.separate";
+  public static final boolean DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY =
+      "dfs.namenode.fslock.optimistic-reads";
+  public static final boolean DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_DEFAULT =
+      false;
+  public static final String DFS_NAMENODE_BLOCKSMAP_OFFHEAP_KEY =
+      "dfs.namenode.blocksmap.offheap";
+  public static final boolean DFS_NAMENODE_BLOCKSMAP_OFFHEAP_DEFAULT = false;
 
   public static final String  DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY =
       "dfs.namenode.lock.detailed-metrics.enabled";
   public static final boolean DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT =
       false;
+  public static final String  DFS_NAMENODE_LOCK_PROFILING_ENABLED_KEY =
+      "dfs.namenode.lock.profiling.enabled";
+  public static final boolean DFS_NAMENODE_LOCK_PROFILING_ENABLED_DEFAULT =
+      false;
+  public static final String  DFS_NAMENODE_LOCK_PROFILING_INTERVAL_SECONDS_KEY =
+      "dfs.namenode.lock.profiling.interval.seconds";
+  public static final int     DFS_NAMENODE_LOCK_PROFILING_INTERVAL_SECONDS_DEFAULT =
+      60;
+  public static final String  DFS_NAMENODE_LOCK_PROFILING_TRACE_SIZE_KEY =
+      "dfs.namenode.lock.profiling.trace.size";
+  public static final int     DFS_NAMENODE_LOCK_PROFILING_TRACE_SIZE_DEFAULT = 10;
+  public static final String  DFS_NAMENODE_LOCK_PROFILING_TRACE_THRESHOLD_MS_KEY =
+      "dfs.namenode.lock.profiling.trace.threshold-ms";
+  public static final long    DFS_NAMENODE_LOCK_PROFILING_TRACE_THRESHOLD_MS_DEFAULT =
+      100L;
   // Threshold for how long namenode locks must be held for the
   // event to be logged
   public static final String  DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY =
@@ -489,6 +559,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_NAMENODE_AUDIT_LOG_TOKEN_TRACKING_ID_DEFAULT = false;
   public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY = "dfs.namenode.audit.log.async";
   public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT = false;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_BATCHED_BUFFER_SIZE_KEY = "dfs.namenode.audit.log.batched.buffer.size";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_BATCHED_BUFFER_SIZE_DEFAULT = 65536;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_BATCHED_OVERFLOW_POLICY_KEY = "dfs.namenode.audit.log.batched.overflow.policy";
+  public static final String  DFS_NAMENODE_AUDIT_LOG_BATCHED_OVERFLOW_POLICY_DEFAULT = "BLOCK";
   public static final String  DFS_NAMENODE_AUDIT_LOG_DEBUG_CMDLIST = "dfs.namenode.audit.log.debug.cmdlist";
   public static final String  DFS_NAMENODE_METRICS_LOGGER_PERIOD_SECONDS_KEY =
       "dfs.namenode.metrics.logger.period.seconds";
@@ -599,6 +673,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_INTERVAL_DEFAULT = 500000;
   public static final String  DFS_NAMENODE_DECOMMISSION_MAX_CONCURRENT_TRACKED_NODES = "dfs.namenode.decommission.max.concurrent.tracked.nodes";
   public static final int     DFS_NAMENODE_DECOMMISSION_MAX_CONCURRENT_TRACKED_NODES_DEFAULT = 100;
+  public static final String  DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_KEY = "dfs.namenode.decommission.incremental-tracking.enabled";
+  public static final boolean DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_DEFAULT = false;
+  public static final String  DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_PRUNE_INTERVAL_KEY = "dfs.namenode.decommission.incremental-tracking.prune-interval";
+  public static final int     DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_PRUNE_INTERVAL_DEFAULT = 10;
+  public static final String  DFS_NAMENODE_DECOMMISSION_PRIORITIZE_SOURCES_KEY = "dfs.namenode.decommission.prioritize-sources";
+  public static final boolean DFS_NAMENODE_DECOMMISSION_PRIORITIZE_SOURCES_DEFAULT = false;
   public static final String  DFS_NAMENODE_HANDLER_COUNT_KEY = "dfs.namenode.handler.count";
   public static final int     DFS_NAMENODE_HANDLER_COUNT_DEFAULT = 10;
   public static final String  DFS_NAMENODE_LIFELINE_HANDLER_RATIO_KEY =
@@ -629,6 +709,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_KEY = "dfs.namenode.inode.attributes.provider.class";
   public static final String  DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_BYPASS_USERS_KEY = "dfs.namenode.inode.attributes.provider.bypass.users";
   public static final String  DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_BYPASS_USERS_DEFAULT = "";
+  public static final String  DFS_NAMENODE_PERMISSION_CACHE_ENABLED_KEY = "dfs.namenode.permission.cache.enabled";
+  public static final boolean DFS_NAMENODE_PERMISSION_CACHE_ENABLED_DEFAULT = false;
+  public static final String  DFS_NAMENODE_PERMISSION_CACHE_SIZE_KEY = "dfs.namenode.permission.cache.size";
+  public static final int     DFS_NAMENODE_PERMISSION_CACHE_SIZE_DEFAULT = 100000;
+  public static final String  DFS_NAMENODE_PERMISSION_CACHE_EXPIRY_MS_KEY = "dfs.namenode.permission.cache.expiry-ms";
+  public static final long    DFS_NAMENODE_PERMISSION_CACHE_EXPIRY_MS_DEFAULT = 30000;
 
   public static final String  DFS_DATANODE_BP_READY_TIMEOUT_KEY = "dfs.datanode.bp-ready.timeout";
   public static final long    DFS_DATANODE_BP_READY_TIMEOUT_DEFAULT = 20;
@@ -661,6 +747,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_MAX_FULL_BLOCK_REPORT_LEASES_DEFAULT = 6;
   public static final String  DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS = "dfs.namenode.full.block.report.lease.length.ms";
   public static final long    DFS_NAMENODE_FULL_BLOCK_REPORT_LEASE_LENGTH_MS_DEFAULT = 5L * 60L * 1000L;
+  public static final String  DFS_NAMENODE_FULL_BLOCK_REPORT_CHUNK_SIZE_KEY = "dfs.namenode.full.block.report.chunk.size";
+  public static final int     DFS_NAMENODE_FULL_BLOCK_REPORT_CHUNK_SIZE_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_INITIAL_BLOCK_REPORT_THREADS_KEY = "dfs.namenode.initial.block.report.threads";
+  public static final int     DFS_NAMENODE_INITIAL_BLOCK_REPORT_THREADS_DEFAULT = 1;
+  public static final String  DFS_NAMENODE_INITIAL_BLOCK_REPORT_PARALLEL_MIN_KEY = "dfs.namenode.initial.block.report.parallel.min";
+  public static final int     DFS_NAMENODE_INITIAL_BLOCK_REPORT_PARALLEL_MIN_DEFAULT = 10000;
   public static final String  DFS_CACHEREPORT_INTERVAL_MSEC_KEY = "dfs.cachereport.intervalMsec";
   public static final long    DFS_CACHEREPORT_INTERVAL_MSEC_DEFAULT = 10 * 1000;
   public static final String  DFS_BLOCK_INVALIDATE_LIMIT_KEY = "dfs.block.invalidate.limit";
@@ -811,6 +903,9 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_BLOCKPLACEMENTPOLICY_DEFAULT_PREFER_LOCAL_NODE_KEY =
       "dfs.namenode.block-placement-policy.default.prefer-local-node";
   public static final boolean  DFS_NAMENODE_BLOCKPLACEMENTPOLICY_DEFAULT_PREFER_LOCAL_NODE_DEFAULT = true;
+  public static final String  DFS_NAMENODE_BLOCKPLACEMENTPOLICY_INDEXED_REFRESH_INTERVAL_MS_KEY =
+      "dfs.namenode.block-placement-policy.indexed.refresh-interval-ms";
+  public static final long    DFS_NAMENODE_BLOCKPLACEMENTPOLICY_INDEXED_REFRESH_INTERVAL_MS_DEFAULT = 3000;
 
   public static final String DFS_BLOCK_LOCAL_PATH_ACCESS_USER_KEY = "dfs.block.local-path-access.user";
   public static final String DFS_DOMAIN_SOCKET_PATH_KEY =
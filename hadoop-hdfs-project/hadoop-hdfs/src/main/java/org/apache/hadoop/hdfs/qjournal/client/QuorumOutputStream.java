@@ -54,6 +54,12 @@ class QuorumOutputStream extends EditLogOutputStream {
     buf.writeRaw(bytes, offset, length);
   }
 
+  @Override
+  public void writeSerialized(FSEditLogOp op, byte[] bytes, int offset,
+      int length) throws IOException {
+    buf.writeSerializedOp(op.getTransactionId(), bytes, offset, length);
+  }
+
   @Override
   public void create(int layoutVersion) throws IOException {
     throw new UnsupportedOperationException();
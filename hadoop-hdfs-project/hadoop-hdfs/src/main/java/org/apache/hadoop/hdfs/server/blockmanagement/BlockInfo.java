@@ -67,9 +67,17 @@ public abstract class BlockInfo extends Block
    * {@link LinkedList} list to efficiently use memory. With LinkedList the cost
    * per replica is 42 bytes (LinkedList#Entry object per replica) versus 16
    * bytes using the triplets.
+   *
+   * The array is null if the triplets are kept in {@link OffHeapTriplets}.
    */
   protected Object[] triplets;
 
+  /** The store of the triplets, null if they are kept in the array. */
+  private OffHeapTriplets offHeap;
+
+  /** Index of this block in {@link OffHeapTriplets}, if any. */
+  private int offHeapIndex = OffHeapTriplets.NONE;
+
   private BlockUnderConstructionFeature uc;
 
   /**
@@ -98,6 +106,81 @@ public abstract class BlockInfo extends Block
     this.bcId = from.bcId;
   }
 
+  /**
+   * Keep the triplets of this block in the given store from now on, unless
+   * the block already has a replica. A block with replicas keeps its
+   * on-heap triplets, which may be linked with blocks kept off heap.
+   */
+  void moveOffHeap(OffHeapTriplets store) {
+    if (triplets == null || offHeapIndex != OffHeapTriplets.NONE) {
+      return;
+    }
+    for (Object o : triplets) {
+      if (o != null) {
+        return;
+      }
+    }
+    triplets = null;
+    offHeap = store;
+  }
+
+  /** @return true if the triplets of this block are kept off heap. */
+  boolean isOffHeap() {
+    return triplets == null;
+  }
+
+  int getOffHeapIndex() {
+    return offHeapIndex;
+  }
+
+  void setOffHeapIndex(int index) {
+    this.offHeapIndex = index;
+  }
+
+  /**
+   * Make sure this block owns an off heap record which can hold the triplet
+   * at the given index.
+   */
+  private OffHeapTriplets offHeapRecord(int index) {
+    if (offHeapIndex == OffHeapTriplets.NONE) {
+      offHeapIndex = offHeap.allocate(this, Math.max(replication, index + 1));
+    } else {
+      offHeap.ensureCapacity(offHeapIndex, index + 1);
+    }
+    return offHeap;
+  }
+
+  /**
+   * Grow the off heap record of this block to the given capacity.
+   */
+  void ensureOffHeapCapacity(int capacity) {
+    if (capacity > 0) {
+      offHeapRecord(capacity - 1);
+    }
+  }
+
+  /**
+   * Release the off heap record of this block once it has no replicas.
+   */
+  void releaseOffHeapRecord() {
+    if (offHeapIndex != OffHeapTriplets.NONE) {
+      offHeap.release(offHeapIndex);
+      offHeapIndex = OffHeapTriplets.NONE;
+    }
+  }
+
+  /**
+   * Release the index the given store assigned to this block for linking it
+   * from off heap records, if the block keeps its triplets on heap. Only
+   * called once the block left the blocks map and all the block lists.
+   */
+  void releaseOffHeapIndex(OffHeapTriplets store) {
+    if (!isOffHeap() && offHeapIndex != OffHeapTriplets.NONE) {
+      store.release(offHeapIndex);
+      offHeapIndex = OffHeapTriplets.NONE;
+    }
+  }
+
   public short getReplication() {
     return replication;
   }
@@ -128,13 +211,21 @@ public abstract class BlockInfo extends Block
   }
 
   DatanodeStorageInfo getStorageInfo(int index) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets == null) {
+      assert index >= 0 && index < getCapacity() : "Index is out of bound";
+      return offHeapIndex == OffHeapTriplets.NONE ? null
+          : offHeap.getStorageInfo(offHeapIndex, index);
+    }
     assert index >= 0 && index*3 < triplets.length : "Index is out of bound";
     return (DatanodeStorageInfo)triplets[index*3];
   }
 
   BlockInfo getPrevious(int index) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets == null) {
+      assert index >= 0 && index < getCapacity() : "Index is out of bound";
+      return offHeapIndex == OffHeapTriplets.NONE ? null
+          : offHeap.getPrevious(offHeapIndex, index);
+    }
     assert index >= 0 && index*3+1 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+1];
     assert info == null ||
@@ -144,7 +235,11 @@ public abstract class BlockInfo extends Block
   }
 
   BlockInfo getNext(int index) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets == null) {
+      assert index >= 0 && index < getCapacity() : "Index is out of bound";
+      return offHeapIndex == OffHeapTriplets.NONE ? null
+          : offHeap.getNext(offHeapIndex, index);
+    }
     assert index >= 0 && index*3+2 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+2];
     assert info == null || info.getClass().getName().startsWith(
@@ -154,7 +249,12 @@ public abstract class BlockInfo extends Block
   }
 
   void setStorageInfo(int index, DatanodeStorageInfo storage) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets == null) {
+      if (storage != null || offHeapIndex != OffHeapTriplets.NONE) {
+        offHeapRecord(index).setStorageInfo(offHeapIndex, index, storage);
+      }
+      return;
+    }
     assert index >= 0 && index*3 < triplets.length : "Index is out of bound";
     triplets[index*3] = storage;
   }
@@ -168,7 +268,13 @@ public abstract class BlockInfo extends Block
    * @return current previous block on the list of blocks
    */
   BlockInfo setPrevious(int index, BlockInfo to) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets == null) {
+      BlockInfo info = getPrevious(index);
+      if (to != null || offHeapIndex != OffHeapTriplets.NONE) {
+        offHeapRecord(index).setPrevious(offHeapIndex, index, to);
+      }
+      return info;
+    }
     assert index >= 0 && index*3+1 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+1];
     triplets[index*3+1] = to;
@@ -184,7 +290,13 @@ public abstract class BlockInfo extends Block
    *    * @return current next block on the list of blocks
    */
   BlockInfo setNext(int index, BlockInfo to) {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets == null) {
+      BlockInfo info = getNext(index);
+      if (to != null || offHeapIndex != OffHeapTriplets.NONE) {
+        offHeapRecord(index).setNext(offHeapIndex, index, to);
+      }
+      return info;
+    }
     assert index >= 0 && index*3+2 < triplets.length : "Index is out of bound";
     BlockInfo info = (BlockInfo)triplets[index*3+2];
     triplets[index*3+2] = to;
@@ -192,7 +304,10 @@ public abstract class BlockInfo extends Block
   }
 
   public int getCapacity() {
-    assert this.triplets != null : "BlockInfo is not initialized";
+    if (triplets == null) {
+      return offHeapIndex == OffHeapTriplets.NONE ? replication
+          : offHeap.getCapacity(offHeapIndex);
+    }
     assert triplets.length % 3 == 0 : "Malformed BlockInfo";
     return triplets.length / 3;
   }
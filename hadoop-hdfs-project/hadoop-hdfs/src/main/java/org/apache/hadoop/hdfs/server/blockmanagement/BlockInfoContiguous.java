@@ -48,8 +48,11 @@ public class BlockInfoContiguous extends BlockInfo {
    * @return first free triplet index.
    */
   private int ensureCapacity(int num) {
-    assert this.triplets != null : "BlockInfo is not initialized";
     int last = numNodes();
+    if (isOffHeap()) {
+      ensureOffHeapCapacity(last + num);
+      return last;
+    }
     if (triplets.length >= (last+num)*3) {
       return last;
     }
@@ -89,13 +92,15 @@ public class BlockInfoContiguous extends BlockInfo {
     setStorageInfo(lastNode, null);
     setNext(lastNode, null);
     setPrevious(lastNode, null);
+    if (lastNode == 0 && isOffHeap()) {
+      releaseOffHeapRecord();
+    }
     return true;
   }
 
   @Override
   public int numNodes() {
-    assert this.triplets != null : "BlockInfo is not initialized";
-    assert triplets.length % 3 == 0 : "Malformed BlockInfo";
+    assert isOffHeap() || triplets.length % 3 == 0 : "Malformed BlockInfo";
 
     for (int idx = getCapacity()-1; idx >= 0; idx--) {
       if (getDatanode(idx) != null) {
@@ -41,7 +41,11 @@ import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
@@ -102,6 +106,7 @@ import org.apache.hadoop.hdfs.server.namenode.CacheManager;
 import org.apache.hadoop.metrics2.util.MBeans;
 import org.apache.hadoop.net.Node;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.ChunkedArrayList;
 import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.ExitUtil;
 import org.apache.hadoop.util.LightWeightGSet;
@@ -110,6 +115,9 @@ import org.apache.hadoop.util.Time;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -275,6 +283,13 @@ public class BlockManager implements BlockStatsMXBean {
   /** Stores information about block recovery attempts. */
   private final PendingRecoveryBlocks pendingRecoveryBlocks;
 
+  /**
+   * Committed blocks which reached the minimal replication while only the
+   * block lock was held, to be completed with the write lock.
+   */
+  private final Queue<BlockInfo> pendingCompleteBlocks =
+      new ConcurrentLinkedQueue<>();
+
   /** The maximum number of replicas allowed for a block */
   public final short maxReplication;
   /**
@@ -287,6 +302,21 @@ public class BlockManager implements BlockStatsMXBean {
    * at one time.
    */
   int replicationStreamsHardLimit;
+  /**
+   * Whether the number of blocks queued for replication from a node follows
+   * its observed replication transfer rate instead of maxReplicationStreams.
+   */
+  boolean replicationStreamsAdaptive;
+  /**
+   * Whether a block stored on several nodes leaving service is replicated
+   * from the node with the most blocks left to replicate.
+   */
+  boolean prioritizeLeavingServiceSources;
+  /** Maximum number of replication work scheduled per lock hold. */
+  final int replicationWorkCommitBatch;
+  /** Chooses the replication targets in parallel, or null. */
+  private final ExecutorService replicationWorkExecutor;
+  private final int replicationWorkThreads;
   /** Minimum copies needed or else write is disallowed */
   public final short minReplication;
   /** Default number of replicas */
@@ -303,6 +333,20 @@ public class BlockManager implements BlockStatsMXBean {
   // Max number of blocks to log info about during a block report.
   private final long maxNumBlocksToLog;
 
+  /**
+   * Max number of replicas of a full block report processed under one
+   * acquisition of the lock, 0 for no limit.
+   */
+  private final int fullBlockReportChunkSize;
+  /**
+   * Adds the replicas of the first block reports in startup safe mode in
+   * parallel, or null.
+   */
+  private final ExecutorService initialBlockReportExecutor;
+  private final int initialBlockReportThreads;
+  /** Min number of replicas of a first block report added in parallel. */
+  private final int initialBlockReportParallelMin;
+
   /**
    * When running inside a Standby node, the node may receive block reports
    * from datanodes before receiving the corresponding namespace edits from
@@ -367,9 +411,15 @@ public class BlockManager implements BlockStatsMXBean {
         datanodeManager.getBlockInvalidateLimit(),
         startupDelayBlockDeletionInMs);
 
+    final boolean offHeap = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_DEFAULT);
+    if (offHeap) {
+      LOG.info("Replica locations of blocks are kept off heap");
+    }
     // Compute the map capacity by allocating 2% of total memory
     blocksMap = new BlocksMap(
-        LightWeightGSet.computeCapacity(2.0, "BlocksMap"));
+        LightWeightGSet.computeCapacity(2.0, "BlocksMap"), offHeap);
     blockplacement = BlockPlacementPolicy.getInstance(
       conf, datanodeManager.getFSClusterStats(),
       datanodeManager.getNetworkTopology(),
@@ -415,6 +465,25 @@ public class BlockManager implements BlockStatsMXBean {
         conf.getInt(
             DFSConfigKeys.DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_KEY,
             DFSConfigKeys.DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_DEFAULT);
+    this.replicationStreamsAdaptive = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_STREAMS_ADAPTIVE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_STREAMS_ADAPTIVE_DEFAULT);
+    this.prioritizeLeavingServiceSources = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_PRIORITIZE_SOURCES_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_PRIORITIZE_SOURCES_DEFAULT);
+    this.replicationWorkCommitBatch = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_COMMIT_BATCH_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_COMMIT_BATCH_DEFAULT));
+    this.replicationWorkThreads = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_DEFAULT));
+    if (replicationWorkThreads > 1) {
+      this.replicationWorkExecutor = Executors.newFixedThreadPool(
+          replicationWorkThreads, new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("ReplicationWork-%d").build());
+    } else {
+      this.replicationWorkExecutor = null;
+    }
     this.blocksInvalidateWorkPct = DFSUtil.getInvalidateWorkPctPerIteration(conf);
     this.blocksReplWorkMultiplier = DFSUtil.getReplWorkMultiplier(conf);
 
@@ -429,6 +498,22 @@ public class BlockManager implements BlockStatsMXBean {
     this.maxNumBlocksToLog =
         conf.getLong(DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_KEY,
             DFSConfigKeys.DFS_MAX_NUM_BLOCKS_TO_LOG_DEFAULT);
+    this.fullBlockReportChunkSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_FULL_BLOCK_REPORT_CHUNK_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_FULL_BLOCK_REPORT_CHUNK_SIZE_DEFAULT);
+    this.initialBlockReportThreads = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_INITIAL_BLOCK_REPORT_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INITIAL_BLOCK_REPORT_THREADS_DEFAULT));
+    this.initialBlockReportParallelMin = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_INITIAL_BLOCK_REPORT_PARALLEL_MIN_KEY,
+        DFSConfigKeys.DFS_NAMENODE_INITIAL_BLOCK_REPORT_PARALLEL_MIN_DEFAULT);
+    if (initialBlockReportThreads > 1) {
+      this.initialBlockReportExecutor = Executors.newFixedThreadPool(
+          initialBlockReportThreads, new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("InitialBlockReport-%d").build());
+    } else {
+      this.initialBlockReportExecutor = null;
+    }
     this.numBlocksPerIteration = conf.getInt(
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT,
         DFSConfigKeys.DFS_BLOCK_MISREPLICATION_PROCESSING_LIMIT_DEFAULT);
@@ -600,6 +685,12 @@ public class BlockManager implements BlockStatsMXBean {
       blockReportThread.join(3000);
     } catch (InterruptedException ie) {
     }
+    if (replicationWorkExecutor != null) {
+      replicationWorkExecutor.shutdownNow();
+    }
+    if (initialBlockReportExecutor != null) {
+      initialBlockReportExecutor.shutdownNow();
+    }
     datanodeManager.close();
     pendingReplications.stop();
     blocksMap.close();
@@ -947,6 +1038,52 @@ public class BlockManager implements BlockStatsMXBean {
     namesystem.getFSDirectory().updateSpaceForCompleteBlock(curBlock, iip);
   }
 
+  /**
+   * Queue a committed block which reached the minimal replication to be
+   * completed by {@link #completePendingBlocks()}, if the write lock is not
+   * held. Completing a block updates the quota usage of its file, which the
+   * block lock does not guard.
+   * @return true if the block was queued.
+   */
+  private boolean deferCompleteBlock(BlockInfo block) {
+    if (namesystem.hasWriteLock()) {
+      return false;
+    }
+    pendingCompleteBlocks.add(block);
+    return true;
+  }
+
+  /** @return true if there are blocks to be completed with the write lock. */
+  public boolean hasPendingCompleteBlocks() {
+    return !pendingCompleteBlocks.isEmpty();
+  }
+
+  /**
+   * Complete the blocks queued while only the block lock was held, unless
+   * they were deleted or completed meanwhile.
+   */
+  public void completePendingBlocks() {
+    assert namesystem.hasWriteLock();
+    BlockInfo block;
+    while ((block = pendingCompleteBlocks.poll()) != null) {
+      if (block.isDeleted()
+          || block.getBlockUCState() != BlockUCState.COMMITTED) {
+        continue;
+      }
+      NumberReplicas num = countNodes(block);
+      if (num.liveReplicas() + num.decommissioning()
+          + num.liveEnteringMaintenanceReplicas() < minReplication) {
+        continue;
+      }
+      try {
+        addExpectedReplicasToPending(block);
+        completeBlock(block, null, false);
+      } catch (IOException e) {
+        LOG.warn("Failed to complete block " + block, e);
+      }
+    }
+  }
+
   /**
    * Force the given block in the given file to be marked as complete,
    * regardless of whether enough replicas are present. This is necessary
@@ -1155,7 +1292,7 @@ public class BlockManager implements BlockStatsMXBean {
       final long length, final boolean needBlockToken,
       final boolean inSnapshot, FileEncryptionInfo feInfo)
       throws IOException {
-    assert namesystem.hasReadLock();
+    assert namesystem.hasReadLock() || namesystem.isOptimisticReading();
     if (blocks == null) {
       return null;
     } else if (blocks.length == 0) {
@@ -1340,7 +1477,7 @@ public class BlockManager implements BlockStatsMXBean {
 
   /** Remove the blocks associated to the given DatanodeStorageInfo. */
   void removeBlocksAssociatedTo(final DatanodeStorageInfo storageInfo) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     final Iterator<? extends Block> it = storageInfo.getBlockIterator();
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     while(it.hasNext()) {
@@ -1399,7 +1536,7 @@ public class BlockManager implements BlockStatsMXBean {
    */
   public void findAndMarkBlockAsCorrupt(final ExtendedBlock blk,
       final DatanodeInfo dn, String storageID, String reason) throws IOException {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     final BlockInfo storedBlock = getStoredBlock(blk.getLocalBlock());
     if (storedBlock == null) {
       // Check if the replica is in the blockMap, if not
@@ -1582,13 +1719,13 @@ public class BlockManager implements BlockStatsMXBean {
    */
   int computeReplicationWork(int blocksToProcess) {
     List<List<BlockInfo>> blocksToReplicate = null;
-    namesystem.writeLock();
+    namesystem.blockWriteLock();
     try {
       // Choose the blocks to be replicated
       blocksToReplicate = neededReplications
           .chooseUnderReplicatedBlocks(blocksToProcess);
     } finally {
-      namesystem.writeUnlock();
+      namesystem.blockWriteUnlock();
     }
     return computeReplicationWorkForBlocks(blocksToReplicate);
   }
@@ -1603,7 +1740,7 @@ public class BlockManager implements BlockStatsMXBean {
     int scheduledWork = 0;
     final List<ReplicationWork> work = new LinkedList<>();
 
-    namesystem.writeLock();
+    namesystem.blockWriteLock();
     try {
       synchronized (neededReplications) {
         for (int priority = 0; priority < blocksToReplicate.size(); priority++) {
@@ -1616,39 +1753,34 @@ public class BlockManager implements BlockStatsMXBean {
         }
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.blockWriteUnlock();
     }
 
-    final Set<Node> excludedNodes = new HashSet<>();
-    for(ReplicationWork rw : work){
-      // Exclude all of the containing nodes from being targets.
-      // This list includes decommissioning or corrupt nodes.
-      excludedNodes.clear();
-      for (DatanodeDescriptor dn : rw.getContainingNodes()) {
-        excludedNodes.add(dn);
-      }
+    // choose replication targets: NOT HOLDING THE GLOBAL LOCK
+    chooseReplicationTargets(work);
 
-      // choose replication targets: NOT HOLDING THE GLOBAL LOCK
-      rw.chooseTargets(blockplacement, storagePolicySuite, excludedNodes);
-    }
-
-    namesystem.writeLock();
-    try {
-      for(ReplicationWork rw : work){
-        final DatanodeStorageInfo[] targets = rw.getTargets();
-        if(targets == null || targets.length == 0){
-          rw.resetTargets();
-          continue;
-        }
+    // schedule the work in batches to release the lock in between
+    final Iterator<ReplicationWork> it = work.iterator();
+    while (it.hasNext()) {
+      namesystem.blockWriteLock();
+      try {
+        for (int i = 0; i < replicationWorkCommitBatch && it.hasNext(); i++) {
+          final ReplicationWork rw = it.next();
+          final DatanodeStorageInfo[] targets = rw.getTargets();
+          if(targets == null || targets.length == 0){
+            rw.resetTargets();
+            continue;
+          }
 
-        synchronized (neededReplications) {
-          if (validateReplicationWork(rw)) {
-            scheduledWork++;
+          synchronized (neededReplications) {
+            if (validateReplicationWork(rw)) {
+              scheduledWork++;
+            }
           }
         }
+      } finally {
+        namesystem.blockWriteUnlock();
       }
-    } finally {
-      namesystem.writeUnlock();
     }
 
     if (blockLog.isDebugEnabled()) {
@@ -1673,6 +1805,74 @@ public class BlockManager implements BlockStatsMXBean {
     return scheduledWork;
   }
 
+  /**
+   * Choose the targets of the given replication work, using
+   * {@link #replicationWorkThreads} threads.
+   */
+  private void chooseReplicationTargets(List<ReplicationWork> work) {
+    final int numThreads = Math.min(replicationWorkThreads, work.size());
+    if (replicationWorkExecutor == null || numThreads < 2) {
+      chooseReplicationTargets(work, 0, 1);
+      return;
+    }
+    final List<ReplicationWork> workList = new ArrayList<>(work);
+    final List<Future<?>> futures = new ArrayList<>(numThreads);
+    for (int t = 0; t < numThreads; t++) {
+      final int first = t;
+      futures.add(replicationWorkExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          chooseReplicationTargets(workList, first, numThreads);
+        }
+      }));
+    }
+    for (Future<?> f : futures) {
+      try {
+        f.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while choosing targets", e);
+      } catch (ExecutionException e) {
+        Throwables.propagate(e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Choose the targets of every step-th work in the list starting at first.
+   */
+  private void chooseReplicationTargets(List<ReplicationWork> work,
+      int first, int step) {
+    final Set<Node> excludedNodes = new HashSet<>();
+    for (int i = first; i < work.size(); i += step) {
+      final ReplicationWork rw = work.get(i);
+      // Exclude all of the containing nodes from being targets.
+      // This list includes decommissioning or corrupt nodes.
+      excludedNodes.clear();
+      for (DatanodeDescriptor dn : rw.getContainingNodes()) {
+        excludedNodes.add(dn);
+      }
+      rw.chooseTargets(blockplacement, storagePolicySuite, excludedNodes);
+    }
+  }
+
+  /**
+   * @return the number of blocks which may be queued for replication from
+   *         the given node by replication work below the highest priority.
+   */
+  int getReplicationStreamsLimit(DatanodeDescriptor node) {
+    if (!replicationStreamsAdaptive) {
+      return maxReplicationStreams;
+    }
+    final float capacity = node.getReplicationCapacity();
+    if (capacity < 0) {
+      return maxReplicationStreams;
+    }
+    // queue up to two heartbeats of the transfers the node has room for
+    return Math.max(1, Math.min(Math.round(2 * capacity),
+        replicationStreamsHardLimit));
+  }
+
   // Check if the number of live + pending replicas satisfies
   // the expected redundancy.
   boolean hasEnoughEffectiveReplicas(BlockInfo block,
@@ -1941,7 +2141,8 @@ public class BlockManager implements BlockStatsMXBean {
         continue;
       if(priority != UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY
           && !node.isDecommissionInProgress() && !node.isEnteringMaintenance()
-          && node.getNumberOfBlocksToBeReplicated() >= maxReplicationStreams) {
+          && node.getNumberOfBlocksToBeReplicated() >=
+              getReplicationStreamsLimit(node)) {
         continue; // already reached replication limit
       }
       if (node.getNumberOfBlocksToBeReplicated() >= replicationStreamsHardLimit)
@@ -1972,6 +2173,15 @@ public class BlockManager implements BlockStatsMXBean {
         srcNode = node;
         continue;
       }
+      if (prioritizeLeavingServiceSources) {
+        final int cmp = compareLeavingServiceSources(node, srcNode);
+        if (cmp != 0) {
+          if (cmp > 0) {
+            srcNode = node;
+          }
+          continue;
+        }
+      }
       // switch to a different node randomly
       // this to prevent from deterministically selecting the same node even
       // if the node failed to replicate the block on previous iterations
@@ -1988,6 +2198,31 @@ public class BlockManager implements BlockStatsMXBean {
     return srcNode;
   }
 
+  /**
+   * Compare two candidate replication sources. A node leaving service is
+   * preferred over a node in service, and of two nodes leaving service the
+   * one with more insufficiently replicated blocks left is preferred, so
+   * that the nodes leaving service at the same time finish together.
+   * @return a positive value if node a is preferred, a negative value if
+   *         node b is preferred, or 0 if neither is.
+   */
+  private static int compareLeavingServiceSources(DatanodeDescriptor a,
+      DatanodeDescriptor b) {
+    final boolean aLeaving =
+        a.isDecommissionInProgress() || a.isEnteringMaintenance();
+    final boolean bLeaving =
+        b.isDecommissionInProgress() || b.isEnteringMaintenance();
+    if (aLeaving != bLeaving) {
+      return aLeaving ? 1 : -1;
+    }
+    if (!aLeaving) {
+      return 0;
+    }
+    return Integer.compare(
+        a.getLeavingServiceStatus().getUnderReplicatedBlocks(),
+        b.getLeavingServiceStatus().getUnderReplicatedBlocks());
+  }
+
   /**
    * If there were any replication requests that timed out, reap them
    * and put them back into the neededReplication queue
@@ -1995,7 +2230,7 @@ public class BlockManager implements BlockStatsMXBean {
   private void processPendingReplications() {
     BlockInfo[] timedOutItems = pendingReplications.getTimedOutBlocks();
     if (timedOutItems != null) {
-      namesystem.writeLock();
+      namesystem.blockWriteLock();
       try {
         for (int i = 0; i < timedOutItems.length; i++) {
           /*
@@ -2014,7 +2249,7 @@ public class BlockManager implements BlockStatsMXBean {
           }
         }
       } finally {
-        namesystem.writeUnlock();
+        namesystem.blockWriteUnlock();
       }
       /* If we know the target datanodes where the replication timedout,
        * we could invoke decBlocksScheduled() on it. Its ok for now.
@@ -2163,7 +2398,7 @@ public class BlockManager implements BlockStatsMXBean {
       final DatanodeStorage storage,
       final BlockListAsLongs newReport,
       BlockReportContext context) throws IOException {
-    namesystem.writeLock();
+    namesystem.blockWriteLock();
     final long startTime = Time.monotonicNow(); //after acquiring write lock
     final long endTime;
     DatanodeDescriptor node;
@@ -2195,6 +2430,8 @@ public class BlockManager implements BlockStatsMXBean {
         blockReportLeaseManager.removeLease(node);
         return !node.hasStaleStorages();
       }
+      // the report supersedes any older one still processed in chunks
+      storageInfo.endChunkedReport();
 
       if (storageInfo.getBlockReportCount() == 0) {
         // The first block report can be processed a lot more efficiently than
@@ -2212,7 +2449,7 @@ public class BlockManager implements BlockStatsMXBean {
       storageInfo.receivedBlockReport();
     } finally {
       endTime = Time.monotonicNow();
-      namesystem.writeUnlock();
+      namesystem.blockWriteUnlock();
     }
 
     for (Block b : invalidatedBlocks) {
@@ -2234,9 +2471,40 @@ public class BlockManager implements BlockStatsMXBean {
     return !node.hasStaleStorages();
   }
 
+  /**
+   * Process a full storage block report in the block report processing
+   * thread. A report with more replicas than the configured
+   * {@link DFSConfigKeys#DFS_NAMENODE_FULL_BLOCK_REPORT_CHUNK_SIZE_KEY} is
+   * processed in chunks, each queued as a separate block op, so that the lock
+   * is released and other block ops run between the chunks.
+   *
+   * @return true if all known storages of the given DN have finished reporting.
+   * @throws IOException
+   */
+  public boolean runBlockReport(final DatanodeID nodeID,
+      final DatanodeStorage storage,
+      final BlockListAsLongs newReport,
+      final BlockReportContext context) throws IOException {
+    if (fullBlockReportChunkSize <= 0 || newReport == null
+        || newReport.getNumberOfBlocks() <= fullBlockReportChunkSize) {
+      return runBlockOp(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws IOException {
+          return processReport(nodeID, storage, newReport, context);
+        }
+      });
+    }
+    final ChunkedBlockReport report =
+        new ChunkedBlockReport(nodeID, storage, newReport, context);
+    do {
+      runBlockOp(report);
+    } while (!report.isDone());
+    return report.logCompletion();
+  }
+
   public void removeBRLeaseIfNeeded(final DatanodeID nodeID,
       final BlockReportContext context) throws IOException {
-    namesystem.writeLock();
+    namesystem.blockWriteLock();
     DatanodeDescriptor node;
     try {
       node = datanodeManager.getDatanode(nodeID);
@@ -2253,7 +2521,7 @@ public class BlockManager implements BlockStatsMXBean {
             context.getTotalRpcs(), Long.toHexString(context.getReportId()));
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.blockWriteUnlock();
     }
   }
 
@@ -2264,7 +2532,7 @@ public class BlockManager implements BlockStatsMXBean {
     if (getPostponedMisreplicatedBlocksCount() == 0) {
       return;
     }
-    namesystem.writeLock();
+    namesystem.blockWriteLock();
     long startTime = Time.monotonicNow();
     long startSize = postponedMisreplicatedBlocks.size();
     try {
@@ -2295,7 +2563,7 @@ public class BlockManager implements BlockStatsMXBean {
       postponedMisreplicatedBlocks.addAll(rescannedMisreplicatedBlocks);
       rescannedMisreplicatedBlocks.clear();
       long endSize = postponedMisreplicatedBlocks.size();
-      namesystem.writeUnlock();
+      namesystem.blockWriteUnlock();
       LOG.info("Rescan of postponedMisreplicatedBlocks completed in " +
           (Time.monotonicNow() - startTime) + " msecs. " +
           endSize + " blocks are left. " +
@@ -2325,31 +2593,46 @@ public class BlockManager implements BlockStatsMXBean {
       strBlockReportId = Long.toHexString(context.getReportId());
     }
    
+    int numBlocksLogged = applyReportDiff(storageInfo,
+        toAdd, toRemove, toInvalidate, toCorrupt, toUC, 0);
+    if (numBlocksLogged > maxNumBlocksToLog) {
+      blockLog.info("BLOCK* processReport 0x{}: logged info for {} of {} " +
+          "reported.", strBlockReportId, maxNumBlocksToLog, numBlocksLogged);
+    }
+
+    return toInvalidate;
+  }
+
+  /**
+   * Process the blocks on each queue computed by {@link #reportDiff}.
+   * @param numBlocksLogged the number of added blocks logged so far
+   * @return numBlocksLogged plus the number of added blocks
+   */
+  private int applyReportDiff(DatanodeStorageInfo storageInfo,
+      Collection<BlockInfo> toAdd,
+      Collection<Block> toRemove,
+      Collection<Block> toInvalidate,
+      Collection<BlockToMarkCorrupt> toCorrupt,
+      Collection<StatefulBlockInfo> toUC,
+      int numBlocksLogged) throws IOException {
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
-    // Process the blocks on each queue
     for (StatefulBlockInfo b : toUC) { 
       addStoredBlockUnderConstruction(b, storageInfo);
     }
     for (Block b : toRemove) {
       removeStoredBlock(b, node);
     }
-    int numBlocksLogged = 0;
     for (BlockInfo b : toAdd) {
       addStoredBlock(b, storageInfo, null, numBlocksLogged < maxNumBlocksToLog);
       numBlocksLogged++;
     }
-    if (numBlocksLogged > maxNumBlocksToLog) {
-      blockLog.info("BLOCK* processReport 0x{}: logged info for {} of {} " +
-          "reported.", strBlockReportId, maxNumBlocksToLog, numBlocksLogged);
-    }
     for (Block b : toInvalidate) {
       addToInvalidates(b, node);
     }
     for (BlockToMarkCorrupt b : toCorrupt) {
       markBlockAsCorrupt(b, storageInfo, node);
     }
-
-    return toInvalidate;
+    return numBlocksLogged;
   }
 
   /**
@@ -2359,7 +2642,7 @@ public class BlockManager implements BlockStatsMXBean {
   public void markBlockReplicasAsCorrupt(BlockInfo block,
       long oldGenerationStamp, long oldNumBytes, 
       DatanodeStorageInfo[] newStorages) throws IOException {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     BlockToMarkCorrupt b = null;
     if (block.getGenerationStamp() != oldGenerationStamp) {
       b = new BlockToMarkCorrupt(block, oldGenerationStamp,
@@ -2407,67 +2690,196 @@ public class BlockManager implements BlockStatsMXBean {
       final DatanodeStorageInfo storageInfo,
       final BlockListAsLongs report) throws IOException {
     if (report == null) return;
-    assert (namesystem.hasWriteLock());
+    assert (namesystem.hasBlockWriteLock());
     assert (storageInfo.getBlockReportCount() == 0);
 
+    if (initialBlockReportExecutor != null
+        && report.getNumberOfBlocks() >= initialBlockReportParallelMin
+        && namesystem.isInStartupSafeMode() && !isPopulatingReplQueues()) {
+      processFirstBlockReportInParallel(storageInfo, report);
+      return;
+    }
     for (BlockReportReplica iblk : report) {
-      ReplicaState reportedState = iblk.getState();
+      processFirstBlockReportReplica(storageInfo, iblk);
+    }
+  }
 
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Initial report of block " + iblk.getBlockName()
-            + " on " + storageInfo.getDatanodeDescriptor() + " size " +
-            iblk.getNumBytes() + " replicaState = " + reportedState);
+  /** The replicas of an initial block report of a partition of block IDs. */
+  private static class InitialReportPartition {
+    private final int index;
+    /** The blocks the storage was added to, not linked to the storage yet. */
+    private final List<BlockInfo> added = new ChunkedArrayList<>();
+    /** The replicas to be processed the usual way. */
+    private final List<BlockReportReplica> deferred = new ArrayList<>();
+    /** The number of added blocks which reached the safe replication. */
+    private int safe = 0;
+
+    InitialReportPartition(int index) {
+      this.index = index;
+    }
+  }
+
+  /**
+   * Process an initial block report in startup safe mode, using
+   * {@link #initialBlockReportThreads} threads. The block IDs are partitioned
+   * among the threads, which add the storage to the complete blocks of the
+   * matching finalized replicas on behalf of this thread holding the lock.
+   * The blocks are then linked to the list of the storage and counted towards
+   * safe mode at once, and the other replicas are processed one by one.
+   */
+  private void processFirstBlockReportInParallel(
+      final DatanodeStorageInfo storageInfo,
+      final BlockListAsLongs report) throws IOException {
+    final long startTime = Time.monotonicNow();
+    final int numThreads = initialBlockReportThreads;
+    final List<InitialReportPartition> partitions =
+        new ArrayList<>(numThreads);
+    final List<Future<?>> futures = new ArrayList<>(numThreads);
+    for (int t = 0; t < numThreads; t++) {
+      final InitialReportPartition partition = new InitialReportPartition(t);
+      partitions.add(partition);
+      futures.add(initialBlockReportExecutor.submit(new Runnable() {
+        @Override
+        public void run() {
+          addFirstBlockReportReplicas(storageInfo, report, partition,
+              numThreads);
+        }
+      }));
+    }
+    Throwable error = null;
+    for (Future<?> f : futures) {
+      // the lock is held for the threads, they must finish in any case
+      try {
+        Uninterruptibles.getUninterruptibly(f);
+      } catch (ExecutionException e) {
+        error = e.getCause();
       }
-      if (shouldPostponeBlocksFromFuture && isGenStampInFuture(iblk)) {
-        queueReportedBlock(storageInfo, iblk, reportedState,
-            QUEUE_REASON_FUTURE_GENSTAMP);
-        continue;
+    }
+    // link the blocks added by a failed thread as well
+    int added = 0;
+    int safe = 0;
+    for (InitialReportPartition partition : partitions) {
+      for (BlockInfo b : partition.added) {
+        storageInfo.linkBlock(b);
       }
+      added += partition.added.size();
+      safe += partition.safe;
+    }
+    bmSafeMode.addSafeBlockCount(safe);
+    if (error != null) {
+      Throwables.propagateIfPossible(error, IOException.class);
+      throw new IOException("Failed to process the initial block report of "
+          + storageInfo, error);
+    }
+    int deferred = 0;
+    for (InitialReportPartition partition : partitions) {
+      for (BlockReportReplica iblk : partition.deferred) {
+        processFirstBlockReportReplica(storageInfo, iblk);
+      }
+      deferred += partition.deferred.size();
+    }
+    final long elapsed = Math.max(1, Time.monotonicNow() - startTime);
+    blockLog.info("BLOCK* processFirstBlockReport: added {} replicas of {} "
+        + "with {} threads and {} replicas serially in {} msecs ({} "
+        + "replicas/sec)", added, storageInfo, numThreads, deferred, elapsed,
+        (added + deferred) * 1000L / elapsed);
+  }
 
-      BlockInfo storedBlock = getStoredBlock(iblk);
-
-      // If block does not belong to any file, we check if it violates
-      // an integrity assumption of Name node
-      if (storedBlock == null) {
-        bmSafeMode.checkBlocksWithFutureGS(iblk);
+  /**
+   * Add the storage to the complete blocks of the finalized replicas of an
+   * initial block report in the given partition, if the replica matches the
+   * stored block. The other replicas of the partition are deferred. Every
+   * block is only modified by the thread of its partition.
+   */
+  private void addFirstBlockReportReplicas(DatanodeStorageInfo storageInfo,
+      BlockListAsLongs report, InitialReportPartition partition,
+      int numPartitions) {
+    final DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
+    final int safeReplication = bmSafeMode.getSafeReplication();
+    for (BlockReportReplica iblk : report) {
+      if ((iblk.getBlockId() & Long.MAX_VALUE) % numPartitions
+          != partition.index) {
         continue;
       }
-
-      // If block is corrupt, mark it and continue to next block.
-      BlockUCState ucState = storedBlock.getBlockUCState();
-      BlockToMarkCorrupt c = checkReplicaCorrupt(
-          iblk, reportedState, storedBlock, ucState,
-          storageInfo.getDatanodeDescriptor());
-      if (c != null) {
-        if (shouldPostponeBlocksFromFuture) {
-          // In the Standby, we may receive a block report for a file that we
-          // just have an out-of-date gen-stamp or state for, for example.
-          queueReportedBlock(storageInfo, iblk, reportedState,
-              QUEUE_REASON_CORRUPT_STATE);
-        } else {
-          markBlockAsCorrupt(c, storageInfo, storageInfo.getDatanodeDescriptor());
-        }
+      final BlockInfo storedBlock = getStoredBlock(iblk);
+      if (iblk.getState() != ReplicaState.FINALIZED
+          || storedBlock == null || !storedBlock.isComplete()
+          || (shouldPostponeBlocksFromFuture && isGenStampInFuture(iblk))
+          || checkReplicaCorrupt(iblk, ReplicaState.FINALIZED, storedBlock,
+              BlockUCState.COMPLETE, node) != null
+          || storedBlock.findStorageInfo(node) != null) {
+        // the iterator reuses the replica
+        partition.deferred.add(new BlockReportReplica(iblk));
         continue;
       }
-      
-      // If block is under construction, add this replica to its list
-      if (isBlockUnderConstruction(storedBlock, ucState, reportedState)) {
-        storedBlock.getUnderConstructionFeature()
-            .addReplicaIfNotPresent(storageInfo, iblk, reportedState);
-        // OpenFileBlocks only inside snapshots also will be added to safemode
-        // threshold. So we need to update such blocks to safemode
-        // refer HDFS-5283
-        if (namesystem.isInSnapshot(storedBlock.getBlockCollectionId())) {
-          int numOfReplicas = storedBlock.getUnderConstructionFeature()
-              .getNumExpectedLocations();
-          bmSafeMode.incrementSafeBlockCount(numOfReplicas);
-        }
-        //and fall through to next clause
-      }      
-      //add replica if appropriate
-      if (reportedState == ReplicaState.FINALIZED) {
-        addStoredBlockImmediate(storedBlock, storageInfo);
+      storedBlock.addStorage(storageInfo);
+      partition.added.add(storedBlock);
+      if (countStartupLiveNodes(storedBlock) == safeReplication) {
+        partition.safe++;
+      }
+    }
+  }
+
+  /** Process a replica of an initial block report. */
+  private void processFirstBlockReportReplica(
+      final DatanodeStorageInfo storageInfo,
+      final BlockReportReplica iblk) throws IOException {
+    ReplicaState reportedState = iblk.getState();
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Initial report of block " + iblk.getBlockName()
+          + " on " + storageInfo.getDatanodeDescriptor() + " size " +
+          iblk.getNumBytes() + " replicaState = " + reportedState);
+    }
+    if (shouldPostponeBlocksFromFuture && isGenStampInFuture(iblk)) {
+      queueReportedBlock(storageInfo, iblk, reportedState,
+          QUEUE_REASON_FUTURE_GENSTAMP);
+      return;
+    }
+
+    BlockInfo storedBlock = getStoredBlock(iblk);
+
+    // If block does not belong to any file, we check if it violates
+    // an integrity assumption of Name node
+    if (storedBlock == null) {
+      bmSafeMode.checkBlocksWithFutureGS(iblk);
+      return;
+    }
+
+    // If block is corrupt, mark it and continue to next block.
+    BlockUCState ucState = storedBlock.getBlockUCState();
+    BlockToMarkCorrupt c = checkReplicaCorrupt(
+        iblk, reportedState, storedBlock, ucState,
+        storageInfo.getDatanodeDescriptor());
+    if (c != null) {
+      if (shouldPostponeBlocksFromFuture) {
+        // In the Standby, we may receive a block report for a file that we
+        // just have an out-of-date gen-stamp or state for, for example.
+        queueReportedBlock(storageInfo, iblk, reportedState,
+            QUEUE_REASON_CORRUPT_STATE);
+      } else {
+        markBlockAsCorrupt(c, storageInfo, storageInfo.getDatanodeDescriptor());
       }
+      return;
+    }
+    
+    // If block is under construction, add this replica to its list
+    if (isBlockUnderConstruction(storedBlock, ucState, reportedState)) {
+      storedBlock.getUnderConstructionFeature()
+          .addReplicaIfNotPresent(storageInfo, iblk, reportedState);
+      // OpenFileBlocks only inside snapshots also will be added to safemode
+      // threshold. So we need to update such blocks to safemode
+      // refer HDFS-5283
+      if (namesystem.isInSnapshot(storedBlock.getBlockCollectionId())) {
+        int numOfReplicas = storedBlock.getUnderConstructionFeature()
+            .getNumExpectedLocations();
+        bmSafeMode.incrementSafeBlockCount(numOfReplicas);
+      }
+      //and fall through to next clause
+    }      
+    //add replica if appropriate
+    if (reportedState == ReplicaState.FINALIZED) {
+      addStoredBlockImmediate(storedBlock, storageInfo);
     }
   }
 
@@ -2820,7 +3232,7 @@ public class BlockManager implements BlockStatsMXBean {
   private void addStoredBlockImmediate(BlockInfo storedBlock,
       DatanodeStorageInfo storageInfo)
   throws IOException {
-    assert (storedBlock != null && namesystem.hasWriteLock());
+    assert (storedBlock != null && namesystem.hasBlockWriteLock());
     if (!namesystem.isInStartupSafeMode() 
         || isPopulatingReplQueues()) {
       addStoredBlock(storedBlock, storageInfo, null, false);
@@ -2834,7 +3246,9 @@ public class BlockManager implements BlockStatsMXBean {
     int numCurrentReplica = countLiveNodes(storedBlock);
     if (storedBlock.getBlockUCState() == BlockUCState.COMMITTED
         && numCurrentReplica >= minReplication) {
-      completeBlock(storedBlock, null, false);
+      if (!deferCompleteBlock(storedBlock)) {
+        completeBlock(storedBlock, null, false);
+      }
     } else if (storedBlock.isComplete() && result == AddBlockResult.ADDED) {
       // check whether safe replication is reached for the block
       // only complete blocks are counted towards that.
@@ -2854,7 +3268,7 @@ public class BlockManager implements BlockStatsMXBean {
                                DatanodeDescriptor delNodeHint,
                                boolean logEveryBlock)
   throws IOException {
-    assert block != null && namesystem.hasWriteLock();
+    assert block != null && namesystem.hasBlockWriteLock();
     BlockInfo storedBlock;
     DatanodeDescriptor node = storageInfo.getDatanodeDescriptor();
     if (!block.isComplete()) {
@@ -2875,6 +3289,10 @@ public class BlockManager implements BlockStatsMXBean {
 
     // add block to the datanode
     AddBlockResult result = storageInfo.addBlock(storedBlock);
+    if (result == AddBlockResult.ADDED) {
+      datanodeManager.getDatanodeAdminManager().blockChanged(storedBlock,
+          null);
+    }
 
     int curReplicaDelta;
     if (result == AddBlockResult.ADDED) {
@@ -2910,8 +3328,10 @@ public class BlockManager implements BlockStatsMXBean {
 
     if(storedBlock.getBlockUCState() == BlockUCState.COMMITTED &&
         numUsableReplicas >= minReplication) {
-      addExpectedReplicasToPending(storedBlock);
-      completeBlock(storedBlock, null, false);
+      if (!deferCompleteBlock(storedBlock)) {
+        addExpectedReplicasToPending(storedBlock);
+        completeBlock(storedBlock, null, false);
+      }
     } else if (storedBlock.isComplete() && result == AddBlockResult.ADDED) {
       // check whether safe replication is reached for the block
       // only complete blocks are counted towards that
@@ -3188,6 +3608,7 @@ public class BlockManager implements BlockStatsMXBean {
 
     // update needReplication priority queues
     b.setReplication(newRepl);
+    datanodeManager.getDatanodeAdminManager().blockChanged(b, null);
     NumberReplicas num = countNodes(b);
     updateNeededReplications(b, 0, newRepl - oldRepl);
 
@@ -3204,7 +3625,7 @@ public class BlockManager implements BlockStatsMXBean {
   private void processOverReplicatedBlock(final BlockInfo block,
       final short replication, final DatanodeDescriptor addedNode,
       DatanodeDescriptor delNodeHint) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     if (addedNode == delNodeHint) {
       delNodeHint = null;
     }
@@ -3243,7 +3664,7 @@ public class BlockManager implements BlockStatsMXBean {
       BlockInfo storedBlock, short replication,
       DatanodeDescriptor addedNode,
       DatanodeDescriptor delNodeHint) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     // first form a rack to datanodes map and
     BlockCollection bc = getBlockCollection(storedBlock);
     final BlockStoragePolicy storagePolicy = storagePolicySuite.getPolicy(
@@ -3278,7 +3699,7 @@ public class BlockManager implements BlockStatsMXBean {
   }
 
   private void addToExcessReplicate(DatanodeInfo dn, Block block) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     LightWeightHashSet<Block> excessBlocks = excessReplicateMap.get(
         dn.getDatanodeUuid());
     if (excessBlocks == null) {
@@ -3308,7 +3729,7 @@ public class BlockManager implements BlockStatsMXBean {
    */
   public void removeStoredBlock(Block block, DatanodeDescriptor node) {
     blockLog.debug("BLOCK* removeStoredBlock: {} from {}", block, node);
-    assert (namesystem.hasWriteLock());
+    assert (namesystem.hasBlockWriteLock());
     {
       BlockInfo storedBlock = getStoredBlock(block);
       if (storedBlock == null || !blocksMap.removeNode(storedBlock, node)) {
@@ -3316,6 +3737,8 @@ public class BlockManager implements BlockStatsMXBean {
             " removed from node {}", block, node);
         return;
       }
+      datanodeManager.getDatanodeAdminManager().blockChanged(storedBlock,
+          node);
 
       CachedBlock cblock = namesystem.getCacheManager().getCachedBlocks()
           .get(new CachedBlock(block.getBlockId(), (short) 0, false));
@@ -3483,7 +3906,7 @@ public class BlockManager implements BlockStatsMXBean {
    */
   public void processIncrementalBlockReport(final DatanodeID nodeID,
       final StorageReceivedDeletedBlocks srdb) throws IOException {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
     if (node == null || !node.isRegistered()) {
       blockLog.warn("BLOCK* processIncrementalBlockReport"
@@ -3618,6 +4041,14 @@ public class BlockManager implements BlockStatsMXBean {
       return countNodes(b).liveReplicas();
     }
     // else proceed with fast case
+    return countStartupLiveNodes(b);
+  }
+
+  /**
+   * Count the live nodes of a block the way {@link #countLiveNodes} does in
+   * startup safe mode.
+   */
+  private int countStartupLiveNodes(BlockInfo b) {
     int live = 0;
     Collection<DatanodeDescriptor> nodesCorrupt = corruptReplicas.getNodes(b);
     for (DatanodeStorageInfo storage : blocksMap.getStorages(b)) {
@@ -3741,6 +4172,7 @@ public class BlockManager implements BlockStatsMXBean {
     // file already removes them from the block map below.
     block.setNumBytes(BlockCommand.NO_ACK);
     addToInvalidates(block);
+    datanodeManager.getDatanodeAdminManager().blockChanged(block, null);
     removeBlockFromMap(block);
     // Remove the block from pendingReplications and neededReplications
     pendingReplications.remove(block);
@@ -3762,7 +4194,7 @@ public class BlockManager implements BlockStatsMXBean {
   /** updates a block in under replication queue */
   private void updateNeededReplications(final BlockInfo block,
       final int curReplicasDelta, int expectedReplicasDelta) {
-    namesystem.writeLock();
+    namesystem.blockWriteLock();
     try {
       if (!isPopulatingReplQueues() || !block.isComplete()) {
         return;
@@ -3781,7 +4213,7 @@ public class BlockManager implements BlockStatsMXBean {
             repl.outOfServiceReplicas(), oldExpectedReplicas);
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.blockWriteUnlock();
     }
   }
 
@@ -3814,7 +4246,7 @@ public class BlockManager implements BlockStatsMXBean {
   private int invalidateWorkForOneNode(DatanodeInfo dn) {
     final List<Block> toInvalidate;
     
-    namesystem.writeLock();
+    namesystem.blockWriteLock();
     try {
       // blocks should not be replicated or removed if safe mode is on
       if (namesystem.isInSafeMode()) {
@@ -3838,7 +4270,7 @@ public class BlockManager implements BlockStatsMXBean {
         return 0;
       }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.blockWriteUnlock();
     }
     blockLog.debug("BLOCK* {}: ask {} to delete {}", getClass().getSimpleName(),
         dn, toInvalidate);
@@ -4043,15 +4475,26 @@ public class BlockManager implements BlockStatsMXBean {
     final int nodesToProcess = (int) Math.ceil(numlive
         * this.blocksInvalidateWorkPct);
 
+    final long start = Time.monotonicNow();
     int workFound = this.computeReplicationWork(blocksToProcess);
+    final long elapsed = Time.monotonicNow() - start;
 
     // Update counters
-    namesystem.writeLock();
+    long queued = 0;
+    namesystem.blockWriteLock();
     try {
       this.updateState();
       this.scheduledReplicationBlocksCount = workFound;
+      for (DatanodeDescriptor node : heartbeatManager.getDatanodes()) {
+        queued += node.getNumberOfBlocksToBeReplicated();
+      }
     } finally {
-      namesystem.writeUnlock();
+      namesystem.blockWriteUnlock();
+    }
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addReReplicationWork(workFound, elapsed);
+      metrics.setReReplicationsQueued(queued);
     }
     workFound += this.computeInvalidateWork(nodesToProcess);
     return workFound;
@@ -4222,6 +4665,229 @@ public class BlockManager implements BlockStatsMXBean {
     return blockReportThread.queue.size();
   }
 
+  /**
+   * A full storage block report processed in chunks of at most
+   * {@link #fullBlockReportChunkSize} replicas, one chunk per call.
+   *
+   * Each chunk is processed under the lock and applies its changes before
+   * the lock is released, so other operations see a consistent state
+   * between chunks. As in {@link #reportDiff}, the replicas reported so far
+   * are moved to the head of the storage's block list. Instead of a
+   * delimiter block, which other users of the list would see between the
+   * chunks, the storage tracks the first block not reported yet. Replicas
+   * added concurrently are inserted at the head of the list and deleted
+   * replicas are unlinked from it, so the blocks from that one to the tail
+   * of the list after the last chunk are the ones the DataNode did not
+   * report. A newer report of the same storage, first or not, chunked or
+   * not, cancels the processing.
+   *
+   * The first report of a storage only adds replicas.
+   */
+  @VisibleForTesting
+  class ChunkedBlockReport implements Callable<Void> {
+    private final DatanodeID nodeID;
+    private final DatanodeStorage storage;
+    private final BlockListAsLongs report;
+    private final Iterator<BlockReportReplica> replicas;
+    private final String strBlockReportId;
+
+    private DatanodeDescriptor node = null;
+    private DatanodeStorageInfo storageInfo = null;
+    private boolean firstReport;
+
+    private boolean done = false;
+    private boolean discarded = false;
+    private int numChunks = 0;
+    private long processingTime = 0;
+    private int numBlocksLogged = 0;
+    private final Collection<Block> invalidatedBlocks =
+        new LinkedList<Block>();
+
+    ChunkedBlockReport(DatanodeID nodeID, DatanodeStorage storage,
+        BlockListAsLongs report, BlockReportContext context) {
+      this.nodeID = nodeID;
+      this.storage = storage;
+      this.report = report;
+      this.replicas = report.iterator();
+      this.strBlockReportId =
+          context != null ? Long.toHexString(context.getReportId()) : "";
+    }
+
+    boolean isDone() {
+      return done;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      namesystem.blockWriteLock();
+      final long startTime = Time.monotonicNow();
+      try {
+        if (storageInfo == null ? start() : checkStorage()) {
+          processChunk();
+          numChunks++;
+          if (!replicas.hasNext()) {
+            finish();
+          }
+        }
+      } catch (IOException e) {
+        abort();
+        throw e;
+      } catch (RuntimeException e) {
+        abort();
+        throw e;
+      } finally {
+        processingTime += Time.monotonicNow() - startTime;
+        namesystem.blockWriteUnlock();
+      }
+      return null;
+    }
+
+    /** @return false if the report is discarded. */
+    private boolean start() throws IOException {
+      node = datanodeManager.getDatanode(nodeID);
+      if (node == null || !node.isRegistered()) {
+        throw new IOException(
+            "ProcessReport from dead or unregistered node: " + nodeID);
+      }
+      storageInfo = node.getStorageInfo(storage.getStorageID());
+      if (storageInfo == null) {
+        storageInfo = node.updateStorage(storage);
+      }
+      if (namesystem.isInStartupSafeMode()
+          && storageInfo.getBlockReportCount() > 0) {
+        blockLog.info("BLOCK* processReport 0x{}: "
+            + "discarded non-initial block report from {}"
+            + " because namenode still in startup phase",
+            strBlockReportId, nodeID);
+        blockReportLeaseManager.removeLease(node);
+        discarded = true;
+        done = true;
+        return false;
+      }
+      firstReport = storageInfo.getBlockReportCount() == 0;
+      blockLog.info("BLOCK* processReport 0x{}: Processing {}storage report"
+          + " for {} from datanode {} in chunks of {} replicas",
+          strBlockReportId, firstReport ? "first " : "",
+          storageInfo.getStorageID(), nodeID.getDatanodeUuid(),
+          fullBlockReportChunkSize);
+      storageInfo.startChunkedReport(this);
+      return true;
+    }
+
+    /**
+     * Check that the storage did not change since the previous chunk.
+     * @return false if the report was superseded by a newer one.
+     */
+    private boolean checkStorage() throws IOException {
+      if (!node.isRegistered() || datanodeManager.getDatanode(nodeID) != node
+          || node.getStorageInfo(storage.getStorageID()) != storageInfo) {
+        throw new IOException("ProcessReport from dead or unregistered node: "
+            + nodeID + " while processing block report 0x"
+            + strBlockReportId);
+      }
+      if (!storageInfo.isChunkedReport(this)) {
+        blockLog.info("BLOCK* processReport 0x{}: stopped processing the"
+            + " report from storage {} node {} after {} chunks because it"
+            + " was superseded", strBlockReportId, storage.getStorageID(),
+            nodeID, numChunks);
+        done = true;
+        return false;
+      }
+      return true;
+    }
+
+    private void processChunk() throws IOException {
+      if (firstReport) {
+        for (int i = 0; i < fullBlockReportChunkSize && replicas.hasNext();
+            i++) {
+          processFirstBlockReportReplica(storageInfo, replicas.next());
+        }
+        return;
+      }
+      Collection<BlockInfo> toAdd = new LinkedList<BlockInfo>();
+      Collection<Block> toInvalidate = new LinkedList<Block>();
+      Collection<BlockToMarkCorrupt> toCorrupt =
+          new LinkedList<BlockToMarkCorrupt>();
+      Collection<StatefulBlockInfo> toUC = new LinkedList<StatefulBlockInfo>();
+      // the head may have changed since the previous chunk
+      int headIndex = storageInfo.getHeadIndex();
+      int curIndex;
+      for (int i = 0; i < fullBlockReportChunkSize && replicas.hasNext(); i++) {
+        BlockReportReplica iblk = replicas.next();
+        BlockInfo storedBlock = processReportedBlock(storageInfo,
+            iblk, iblk.getState(), toAdd, toInvalidate, toCorrupt, toUC);
+        // move block to the head of the list
+        if (storedBlock != null &&
+            (curIndex = storedBlock.findStorageInfo(storageInfo)) >= 0) {
+          headIndex =
+              storageInfo.moveBlockToHead(storedBlock, curIndex, headIndex);
+        }
+      }
+      numBlocksLogged = applyReportDiff(storageInfo, toAdd,
+          Collections.<Block>emptyList(), toInvalidate, toCorrupt, toUC,
+          numBlocksLogged);
+      invalidatedBlocks.addAll(toInvalidate);
+    }
+
+    private void finish() {
+      if (!firstReport) {
+        // collect blocks that have not been reported
+        // all of them are at the tail of the list
+        Collection<Block> toRemove = new TreeSet<Block>();
+        Iterator<BlockInfo> it =
+            storageInfo.new BlockIterator(storageInfo.getFirstUnreported());
+        while (it.hasNext()) {
+          toRemove.add(it.next());
+        }
+        storageInfo.endChunkedReport();
+        for (Block b : toRemove) {
+          removeStoredBlock(b, node);
+        }
+      } else {
+        storageInfo.endChunkedReport();
+      }
+      storageInfo.receivedBlockReport();
+      done = true;
+    }
+
+    private void abort() {
+      done = true;
+      if (storageInfo != null && storageInfo.isChunkedReport(this)) {
+        storageInfo.endChunkedReport();
+      }
+    }
+
+    /**
+     * Log the processing of a completed report.
+     * @return true if all known storages of the DN have finished reporting.
+     */
+    boolean logCompletion() {
+      if (discarded) {
+        return !node.hasStaleStorages();
+      }
+      for (Block b : invalidatedBlocks) {
+        blockLog.debug("BLOCK* processReport 0x{}: {} on node {} size {} does"
+            + " not belong to any file", strBlockReportId, b, node,
+            b.getNumBytes());
+      }
+      if (numBlocksLogged > maxNumBlocksToLog) {
+        blockLog.info("BLOCK* processReport 0x{}: logged info for {} of {} " +
+            "reported.", strBlockReportId, maxNumBlocksToLog, numBlocksLogged);
+      }
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        metrics.addBlockReport((int) processingTime);
+      }
+      blockLog.info("BLOCK* processReport 0x{}: from storage {} node {}, " +
+          "blocks: {}, hasStaleStorage: {}, processing time: {} msecs " +
+          "in {} chunks, invalidatedBlocks: {}", strBlockReportId,
+          storage.getStorageID(), nodeID, report.getNumberOfBlocks(),
+          node.hasStaleStorages(), processingTime, numChunks,
+          invalidatedBlocks.size());
+      return !node.hasStaleStorages();
+    }
+  }
+
   private class BlockReportProcessingThread extends Thread {
     private static final long MAX_LOCK_HOLD_MS = 4;
     private long lastFull = 0;
@@ -4252,7 +4918,7 @@ public class BlockManager implements BlockStatsMXBean {
           // batch as many operations in the write lock until the queue
           // runs dry, or the max lock hold is reached.
           int processed = 0;
-          namesystem.writeLock();
+          namesystem.blockWriteLock();
           metrics.setBlockOpsQueued(queue.size() + 1);
           try {
             long start = Time.monotonicNow();
@@ -4265,7 +4931,7 @@ public class BlockManager implements BlockStatsMXBean {
               action = queue.poll();
             } while (action != null);
           } finally {
-            namesystem.writeUnlock();
+            namesystem.blockWriteUnlock();
             metrics.addBlockOpsBatched(processed - 1);
           }
         } catch (InterruptedException e) {
@@ -200,7 +200,7 @@ class BlockManagerSafeMode {
    * If safe mode is not currently on, this is a no-op.
    */
   void checkSafeMode() {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     if (namesystem.inTransitionToActive()) {
       return;
     }
@@ -241,7 +241,7 @@ class BlockManagerSafeMode {
    * @param deltaTotal the change in number of total blocks expected
    */
   void adjustBlockTotals(int deltaSafe, int deltaTotal) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     if (!isSafeModeTrackingBlocks()) {
       return;
     }
@@ -275,7 +275,7 @@ class BlockManagerSafeMode {
    * set after the image has been loaded.
    */
   boolean isSafeModeTrackingBlocks() {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     return haEnabled && status != BMSafeModeStatus.OFF;
   }
 
@@ -425,7 +425,7 @@ class BlockManagerSafeMode {
    *                    of a striped block group
    */
   synchronized void incrementSafeBlockCount(int storageNum) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     if (status == BMSafeModeStatus.OFF) {
       return;
     }
@@ -447,13 +447,43 @@ class BlockManagerSafeMode {
     }
   }
 
+  /**
+   * Add the given number of blocks which have reached minimal replication to
+   * the safe blocks at once.
+   * If safe mode is not currently on, this is a no-op.
+   */
+  synchronized void addSafeBlockCount(int numBlocks) {
+    assert namesystem.hasBlockWriteLock();
+    if (status == BMSafeModeStatus.OFF || numBlocks <= 0) {
+      return;
+    }
+
+    this.blockSafe += numBlocks;
+    StartupProgress prog = NameNode.getStartupProgress();
+    if (prog.getStatus(Phase.SAFEMODE) != Status.COMPLETE) {
+      if (this.awaitingReportedBlocksCounter == null) {
+        this.awaitingReportedBlocksCounter = prog.getCounter(Phase.SAFEMODE,
+            STEP_AWAITING_REPORTED_BLOCKS);
+      }
+      for (int i = 0; i < numBlocks; i++) {
+        this.awaitingReportedBlocksCounter.increment();
+      }
+    }
+    checkSafeMode();
+  }
+
+  /** @return the number of replicas for a block to be safe. */
+  int getSafeReplication() {
+    return safeReplication;
+  }
+
   /**
    * Decrement number of safe blocks if current block has fallen below minimal
    * replication.
    * If safe mode is not currently on, this is a no-op.
    */
   synchronized void decrementSafeBlockCount(BlockInfo b) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     if (status == BMSafeModeStatus.OFF) {
       return;
     }
@@ -474,7 +504,7 @@ class BlockManagerSafeMode {
    * @param brr block report replica which belongs to no file in BlockManager
    */
   void checkBlocksWithFutureGS(BlockReportReplica brr) {
-    assert namesystem.hasWriteLock();
+    assert namesystem.hasBlockWriteLock();
     if (status == BMSafeModeStatus.OFF) {
       return;
     }
@@ -60,9 +60,22 @@ class BlocksMap {
   
   private GSet<Block, BlockInfo> blocks;
 
+  /** The store of the triplets of the blocks, null if kept on heap. */
+  private final OffHeapTriplets offHeapTriplets;
+
   BlocksMap(int capacity) {
+    this(capacity, false);
+  }
+
+  /**
+   * @param capacity the capacity of the map
+   * @param offHeap whether to keep the triplets of the blocks added to the
+   *                map in {@link OffHeapTriplets}
+   */
+  BlocksMap(int capacity, boolean offHeap) {
     // Use 2% of total memory to size the GSet capacity
     this.capacity = capacity;
+    this.offHeapTriplets = offHeap ? new OffHeapTriplets() : null;
     this.blocks = new LightWeightGSet<Block, BlockInfo>(capacity) {
       @Override
       public Iterator<BlockInfo> iterator() {
@@ -83,6 +96,14 @@ class BlocksMap {
   void close() {
     clear();
     blocks = null;
+    if (offHeapTriplets != null) {
+      offHeapTriplets.close();
+    }
+  }
+
+  /** @return the store of the triplets, null if they are kept on heap. */
+  OffHeapTriplets getOffHeapTriplets() {
+    return offHeapTriplets;
   }
   
   void clear() {
@@ -99,6 +120,9 @@ class BlocksMap {
     if (info != b) {
       info = b;
       blocks.put(info);
+      if (offHeapTriplets != null) {
+        info.moveOffHeap(offHeapTriplets);
+      }
     }
     info.setBlockCollectionId(bc.getId());
     return info;
@@ -121,6 +145,7 @@ class BlocksMap {
         removeBlock(dn, blockInfo); // remove from the list and wipe the location
       }
     }
+    releaseOffHeapIndex(blockInfo);
   }
   
   /** Returns the block object it it exists in the map. */
@@ -171,10 +196,22 @@ class BlocksMap {
     if (info.getDatanode(0) == null     // no datanodes left
               && info.isDeleted()) {  // does not belong to a file
       blocks.remove(b);  // remove block from the map
+      releaseOffHeapIndex(info);
     }
     return removed;
   }
 
+  /**
+   * Release the index of an on-heap block removed from the map, which it
+   * got by being linked from an off heap record. Off heap blocks release
+   * theirs with their last replica.
+   */
+  private void releaseOffHeapIndex(BlockInfo info) {
+    if (offHeapTriplets != null) {
+      info.releaseOffHeapIndex(offHeapTriplets);
+    }
+  }
+
   /**
    * Remove block from the list of blocks belonging to the data-node. Remove
    * data-node from the block.
@@ -20,7 +20,8 @@ package org.apache.hadoop.hdfs.server.blockmanagement;
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.hadoop.util.Time.monotonicNow;
 
-import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,6 +41,7 @@ import org.apache.hadoop.hdfs.server.namenode.INodeId;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.Namesystem;
 import org.apache.hadoop.hdfs.util.CyclicIteration;
+import org.apache.hadoop.hdfs.util.LightWeightHashSet;
 import org.apache.hadoop.util.ChunkedArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +70,14 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
  * as blocks become replicated, so monitor scans will become more efficient
  * over time.
  * <p/>
+ * With incremental tracking enabled, the list of insufficiently replicated
+ * blocks of a node is a set which is updated from the block events reported
+ * by the {@link BlockManager} instead of being pruned on every tick: the
+ * monitor only checks the blocks whose replicas were added or removed since
+ * the previous tick. The full block list of the node is still scanned when it
+ * starts being tracked and before it is finally marked as DECOMMISSIONED or
+ * IN_MAINTENANCE.
+ * <p/>
  * DECOMMISSION_INPROGRESS nodes that become dead do not progress to
  * DECOMMISSIONED until they become live again. This prevents potential
  * durability loss for singly-replicated blocks (see HDFS-6791).
@@ -111,12 +121,32 @@ public class DatanodeAdminManager {
    * will be null on initial add
    * <p/>
    * However, this map can become out-of-date since it is not updated by block
-   * reports or other events. Before being finally marking as decommissioned,
-   * another check is done with the actual block map.
+   * reports or other events, unless incremental tracking is enabled. Before
+   * being finally marking as decommissioned, another check is done with the
+   * actual block map.
    */
-  private final TreeMap<DatanodeDescriptor, AbstractList<BlockInfo>>
+  private final TreeMap<DatanodeDescriptor, Collection<BlockInfo>>
       outOfServiceNodeBlocks;
 
+  /**
+   * Whether the blocks of the tracked nodes are updated from block events,
+   * see {@link #blockChanged(BlockInfo, DatanodeDescriptor)}.
+   */
+  private boolean incrementalTracking = false;
+
+  /**
+   * With incremental tracking, the number of checks of a node after which all
+   * its tracked blocks are checked again.
+   */
+  private int incrementalPruneInterval;
+
+  /**
+   * The blocks of the nodes leaving service whose replicas changed since the
+   * previous monitor tick. Only used with incremental tracking.
+   */
+  private final LightWeightHashSet<BlockInfo> changedBlocks =
+      new LightWeightHashSet<>();
+
   /**
    * Tracking a node in outOfServiceNodeBlocks consumes additional memory. To
    * limit the impact on NN memory consumption, we limit the number of nodes in
@@ -184,6 +214,18 @@ public class DatanodeAdminManager {
         "value for "
         + DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_MAX_CONCURRENT_TRACKED_NODES);
 
+    incrementalTracking = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_DEFAULT);
+    incrementalPruneInterval = conf.getInt(
+        DFSConfigKeys
+            .DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_PRUNE_INTERVAL_KEY,
+        DFSConfigKeys
+            .DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_PRUNE_INTERVAL_DEFAULT);
+    checkArgument(incrementalPruneInterval > 0, "Must set a positive value "
+        + "for " + DFSConfigKeys
+            .DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_PRUNE_INTERVAL_KEY);
+
     monitor = new Monitor(blocksPerInterval, 
         nodesPerInterval, maxConcurrentTrackedNodes);
     executor.scheduleAtFixedRate(monitor, intervalSecs, intervalSecs,
@@ -191,8 +233,9 @@ public class DatanodeAdminManager {
 
     LOG.debug("Activating DatanodeAdminManager with interval {} seconds, " +
             "{} max blocks per interval, " +
-            "{} max concurrently tracked nodes.", intervalSecs,
-        blocksPerInterval, nodesPerInterval, maxConcurrentTrackedNodes);
+            "{} max concurrently tracked nodes, incremental tracking {}.",
+        intervalSecs, blocksPerInterval, maxConcurrentTrackedNodes,
+        incrementalTracking);
   }
 
   /**
@@ -331,6 +374,32 @@ public class DatanodeAdminManager {
     }
   }
 
+  /**
+   * Called by the {@link BlockManager} when a replica of the block was added
+   * or removed, the block was deleted or its replication changed. With
+   * incremental tracking, the block is checked again on the next tick if it
+   * is stored on a node leaving service.
+   * @param block the block
+   * @param removedFrom the node the replica was removed from, or null
+   */
+  void blockChanged(BlockInfo block, DatanodeDescriptor removedFrom) {
+    if (!incrementalTracking || outOfServiceNodeBlocks.isEmpty()) {
+      return;
+    }
+    boolean leaving = removedFrom != null && isLeavingService(removedFrom);
+    for (int i = 0; !leaving && i < block.numNodes(); i++) {
+      final DatanodeDescriptor dn = block.getDatanode(i);
+      leaving = dn != null && isLeavingService(dn);
+    }
+    if (leaving) {
+      changedBlocks.add(block);
+    }
+  }
+
+  private static boolean isLeavingService(DatanodeDescriptor dn) {
+    return dn.isDecommissionInProgress() || dn.isEnteringMaintenance();
+  }
+
   private void setDecommissioned(DatanodeDescriptor dn) {
     dn.setDecommissioned();
     LOG.info("Decommissioning complete for node {}", dn);
@@ -438,6 +507,21 @@ public class DatanodeAdminManager {
     return monitor.numNodesChecked;
   }
 
+  @VisibleForTesting
+  public int getNumBlocksChecked() {
+    return monitor.numBlocksChecked;
+  }
+
+  /**
+   * @return the number of insufficiently replicated blocks tracked for the
+   *         node, or -1 if the node is not tracked or not scanned yet.
+   */
+  @VisibleForTesting
+  public int getNumTrackedBlocks(DatanodeDescriptor dn) {
+    final Collection<BlockInfo> blocks = outOfServiceNodeBlocks.get(dn);
+    return blocks == null ? -1 : blocks.size();
+  }
+
   /**
    * Checks to see if datanodes have finished DECOMMISSION_INPROGRESS or
    * ENTERING_MAINTENANCE state.
@@ -477,6 +561,12 @@ public class DatanodeAdminManager {
      */
     private DatanodeDescriptor iterkey = new DatanodeDescriptor(
         new DatanodeID("", "", "", 0, 0, 0, 0));
+    /**
+     * With incremental tracking, the number of checks of each tracked node
+     * since all its tracked blocks were checked.
+     */
+    private final Map<DatanodeDescriptor, Integer> checksSincePrune =
+        new HashMap<>();
 
     Monitor(int numBlocksPerCheck, int numNodesPerCheck, int 
         maxConcurrentTrackedNodes) {
@@ -512,6 +602,7 @@ public class DatanodeAdminManager {
       namesystem.writeLock();
       try {
         processPendingNodes();
+        processChangedBlocks();
         check();
       } catch (Exception e) {
         LOG.warn("DatanodeAdminMonitor caught exception when processing node.",
@@ -537,8 +628,92 @@ public class DatanodeAdminManager {
       }
     }
 
+    /**
+     * Check the blocks which changed since the previous tick against the
+     * tracked nodes, adding the insufficiently replicated ones to the blocks
+     * of the nodes and removing the others.
+     */
+    private void processChangedBlocks() {
+      if (changedBlocks.isEmpty()) {
+        return;
+      }
+      final List<BlockInfo> blocks = changedBlocks.pollN(
+          Math.max(numBlocksPerCheck - numBlocksChecked, 0));
+      for (BlockInfo block : blocks) {
+        numBlocksChecked++;
+        final BlockInfo stored = blockManager.blocksMap.getStoredBlock(block);
+        for (Map.Entry<DatanodeDescriptor, Collection<BlockInfo>> entry :
+            outOfServiceNodeBlocks.entrySet()) {
+          final DatanodeDescriptor dn = entry.getKey();
+          final Collection<BlockInfo> tracked = entry.getValue();
+          if (tracked == null || !isLeavingService(dn)) {
+            // not scanned yet, or no longer waiting for its blocks
+            continue;
+          }
+          if (stored == null || stored.findStorageInfo(dn) == null) {
+            tracked.remove(block);
+          } else if (stored.getBlockCollectionId() ==
+              INodeId.INVALID_INODE_ID) {
+            // Orphan block, will be invalidated eventually. Skip.
+            continue;
+          } else if (isBlockSufficient(dn, stored)) {
+            tracked.remove(stored);
+          } else {
+            tracked.add(stored);
+          }
+        }
+      }
+      for (Map.Entry<DatanodeDescriptor, Collection<BlockInfo>> entry :
+          outOfServiceNodeBlocks.entrySet()) {
+        final Collection<BlockInfo> tracked = entry.getValue();
+        if (tracked != null) {
+          final DatanodeDescriptor.LeavingServiceStatus status =
+              entry.getKey().getLeavingServiceStatus();
+          status.set(tracked.size(), status.getOutOfServiceOnlyReplicas(),
+              status.getUnderReplicatedInOpenFiles());
+        }
+      }
+    }
+
+    /**
+     * Schedule the block for replication if needed.
+     * @return true if the block does not prevent the datanode from leaving
+     *         service.
+     */
+    private boolean isBlockSufficient(DatanodeDescriptor datanode,
+        BlockInfo block) {
+      final NumberReplicas num = blockManager.countNodes(block);
+      scheduleReplication(datanode, block, num);
+      return isSufficientlyReplicated(block,
+          blockManager.getBlockCollection(block), num,
+          datanode.isDecommissionInProgress(),
+          datanode.isEnteringMaintenance());
+    }
+
+    /**
+     * Schedule under-replicated blocks for replication if not already
+     * pending.
+     */
+    private void scheduleReplication(DatanodeDescriptor datanode,
+        BlockInfo block, NumberReplicas num) {
+      boolean neededReplication = datanode.isDecommissionInProgress() ?
+          blockManager.isNeededReplication(block, num) :
+          blockManager.isNeededReplicationForMaintenance(block, num);
+      if (neededReplication) {
+        if (!blockManager.neededReplications.contains(block) &&
+            blockManager.pendingReplications.getNumReplicas(block) == 0 &&
+            blockManager.isPopulatingReplQueues()) {
+          // Process these blocks only when active NN is out of safe mode.
+          blockManager.neededReplications.add(block,
+              num.liveReplicas(), num.readOnlyReplicas(),
+              num.outOfServiceReplicas(),
+              block.getReplication());
+        }
+      }
+    }
+
     private void check() {
-      final Iterator<Map.Entry<DatanodeDescriptor, AbstractList<BlockInfo>>>
+      final Iterator<Map.Entry<DatanodeDescriptor, Collection<BlockInfo>>>
           it = new CyclicIteration<>(outOfServiceNodeBlocks,
               iterkey).iterator();
       final LinkedList<DatanodeDescriptor> toRemove = new LinkedList<>();
@@ -548,11 +723,11 @@ public class DatanodeAdminManager {
           && !exceededNumNodesPerCheck()
           && namesystem.isRunning()) {
         numNodesChecked++;
-        final Map.Entry<DatanodeDescriptor, AbstractList<BlockInfo>>
+        final Map.Entry<DatanodeDescriptor, Collection<BlockInfo>>
             entry = it.next();
         final DatanodeDescriptor dn = entry.getKey();
         try {
-          AbstractList<BlockInfo> blocks = entry.getValue();
+          Collection<BlockInfo> blocks = entry.getValue();
           boolean fullScan = false;
           if (dn.isMaintenance() && dn.maintenanceExpired()) {
             // If maintenance expires, stop tracking it.
@@ -573,10 +748,11 @@ public class DatanodeAdminManager {
             blocks = handleInsufficientlyReplicated(dn);
             outOfServiceNodeBlocks.put(dn, blocks);
             fullScan = true;
-          } else {
+          } else if (!incrementalTracking || isPruneDue(dn)) {
             // This is a known datanode, check if its # of insufficiently
             // replicated blocks has dropped to zero and if it can move
-            // to the next state.
+            // to the next state. With incremental tracking, this is only
+            // done periodically for the blocks missed by the block events.
             LOG.debug("Processing {} node {}", dn.getAdminState(), dn);
             pruneSufficientlyReplicated(dn, blocks);
           }
@@ -645,6 +821,27 @@ public class DatanodeAdminManager {
             dn);
         outOfServiceNodeBlocks.remove(dn);
       }
+      if (!checksSincePrune.isEmpty()) {
+        checksSincePrune.keySet().retainAll(outOfServiceNodeBlocks.keySet());
+      }
+    }
+
+    /**
+     * With incremental tracking, a tracked block may become sufficiently
+     * replicated without a block event, e.g. when another node storing it
+     * returns to service, so all the tracked blocks of a node are checked
+     * once every {@link #incrementalPruneInterval} checks of the node.
+     * @return true if the tracked blocks of the node should be checked.
+     */
+    private boolean isPruneDue(DatanodeDescriptor dn) {
+      final Integer checks = checksSincePrune.get(dn);
+      final int n = checks == null ? 1 : checks + 1;
+      if (n >= incrementalPruneInterval) {
+        checksSincePrune.remove(dn);
+        return true;
+      }
+      checksSincePrune.put(dn, n);
+      return false;
     }
 
     /**
@@ -652,7 +849,7 @@ public class DatanodeAdminManager {
      * datanode.
      */
     private void pruneSufficientlyReplicated(final DatanodeDescriptor datanode,
-        AbstractList<BlockInfo> blocks) {
+        Collection<BlockInfo> blocks) {
       processBlocksInternal(datanode, blocks.iterator(), null, true);
     }
 
@@ -665,11 +862,14 @@ public class DatanodeAdminManager {
      * any under-replicated blocks.
      *
      * @param datanode
-     * @return List of insufficiently replicated blocks 
+     * @return List of insufficiently replicated blocks, or a set of them with
+     *         incremental tracking.
      */
-    private AbstractList<BlockInfo> handleInsufficientlyReplicated(
+    private Collection<BlockInfo> handleInsufficientlyReplicated(
         final DatanodeDescriptor datanode) {
-      AbstractList<BlockInfo> insufficient = new ChunkedArrayList<>();
+      Collection<BlockInfo> insufficient = incrementalTracking ?
+          new LightWeightHashSet<BlockInfo>() :
+          new ChunkedArrayList<BlockInfo>();
       processBlocksInternal(datanode, datanode.getBlockIterator(),
           insufficient, false);
       return insufficient;
@@ -695,7 +895,7 @@ public class DatanodeAdminManager {
     private void processBlocksInternal(
         final DatanodeDescriptor datanode,
         final Iterator<BlockInfo> it,
-        final List<BlockInfo> insufficientlyReplicated,
+        final Collection<BlockInfo> insufficientlyReplicated,
         boolean pruneSufficientlyReplicated) {
       boolean firstReplicationLog = true;
       int underReplicatedBlocks = 0;
@@ -746,24 +946,9 @@ public class DatanodeAdminManager {
         final int liveReplicas = num.liveReplicas();
         final int curReplicas = liveReplicas;
 
-        // Schedule under-replicated blocks for replication if not already
-        // pending
         boolean isDecommission = datanode.isDecommissionInProgress();
         boolean isMaintenance = datanode.isEnteringMaintenance();
-        boolean neededReplication = isDecommission ?
-            blockManager.isNeededReplication(block, num) :
-            blockManager.isNeededReplicationForMaintenance(block, num);
-        if (neededReplication) {
-          if (!blockManager.neededReplications.contains(block) &&
-              blockManager.pendingReplications.getNumReplicas(block) == 0 &&
-              blockManager.isPopulatingReplQueues()) {
-            // Process these blocks only when active NN is out of safe mode.
-            blockManager.neededReplications.add(block,
-                liveReplicas, num.readOnlyReplicas(),
-                num.outOfServiceReplicas(),
-                block.getReplication());
-          }
-        }
+        scheduleReplication(datanode, block, num);
 
         // Even if the block is under-replicated,
         // it doesn't block decommission if it's sufficiently replicated 
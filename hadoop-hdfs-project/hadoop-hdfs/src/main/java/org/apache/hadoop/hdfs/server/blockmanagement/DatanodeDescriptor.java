@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -218,8 +219,16 @@ public class DatanodeDescriptor extends DatanodeInfo {
    */
   private boolean disallowed = false;
 
-  // The number of replication work pending before targets are determined
-  private int PendingReplicationWithoutTargets = 0;
+  // The number of replication work pending before targets are determined.
+  // The targets may be chosen by several threads.
+  private final AtomicInteger pendingReplicationWithoutTargets =
+      new AtomicInteger();
+
+  /**
+   * Moving average of the replication transfers the node had room for at its
+   * heartbeats, or -1 before its first heartbeat.
+   */
+  private volatile float replicationCapacity = -1;
 
   // HB processing can use it to tell if it is the first HB since DN restarted
   private boolean heartbeatedSinceRegistration = false;
@@ -586,11 +595,11 @@ public class DatanodeDescriptor extends DatanodeInfo {
   }
 
   void incrementPendingReplicationWithoutTargets() {
-    PendingReplicationWithoutTargets++;
+    pendingReplicationWithoutTargets.incrementAndGet();
   }
 
   void decrementPendingReplicationWithoutTargets() {
-    PendingReplicationWithoutTargets--;
+    pendingReplicationWithoutTargets.decrementAndGet();
   }
 
   /**
@@ -629,7 +638,26 @@ public class DatanodeDescriptor extends DatanodeInfo {
    * The number of work items that are pending to be replicated
    */
   int getNumberOfBlocksToBeReplicated() {
-    return PendingReplicationWithoutTargets + replicateBlocks.size();
+    return pendingReplicationWithoutTargets.get() + replicateBlocks.size();
+  }
+
+  /**
+   * Update the replication transfer rate of the node at a heartbeat.
+   * @param maxTransfers the number of replication transfers the node has
+   *                     room for
+   */
+  void updateReplicationCapacity(int maxTransfers) {
+    final int transfers = Math.max(maxTransfers, 0);
+    final float c = replicationCapacity;
+    replicationCapacity = c < 0 ? transfers : 0.75f * c + 0.25f * transfers;
+  }
+
+  /**
+   * @return the average number of replication transfers the node had room
+   *         for at its recent heartbeats, or -1 if it is unknown.
+   */
+  float getReplicationCapacity() {
+    return replicationCapacity;
   }
 
   public List<BlockTargetPair> getReplicationCommand(int maxTransfers) {
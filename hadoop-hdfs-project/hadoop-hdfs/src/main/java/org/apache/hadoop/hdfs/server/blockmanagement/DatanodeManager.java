@@ -1592,6 +1592,7 @@ public class DatanodeManager {
 
     final List<DatanodeCommand> cmds = new ArrayList<>();
     // check pending replication
+    nodeinfo.updateReplicationCapacity(maxTransfers);
     List<BlockTargetPair> pendingList = nodeinfo.getReplicationCommand(
         maxTransfers);
     if (pendingList != null) {
@@ -0,0 +1,307 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.apache.hadoop.net.NumberRanges.range;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage.State;
+import org.apache.hadoop.net.Node;
+import org.apache.hadoop.net.NodeBase;
+import org.apache.hadoop.net.NumberRanges;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * An immutable index of the datanodes which may store the replicas of a
+ * storage type, used by {@link IndexedBlockPlacementPolicy} to choose a
+ * datanode at random without trying the datanodes which are not eligible.
+ *
+ * The datanodes are grouped by rack, and the racks are sorted by network
+ * location so that the racks in any scope of the topology are contiguous.
+ * The datanodes of a rack are sorted by decreasing remaining space, so that
+ * the datanodes with enough space for a block are a prefix of their rack.
+ * Numbering the eligible datanodes of all the racks in order, the eligible
+ * datanodes of a scope are a range of numbers, and the excluded datanodes
+ * and racks are a few ranges in it. A datanode is then chosen uniformly among
+ * the others in O(log n) time, with n the number of datanodes.
+ */
+final class DatanodePlacementIndex {
+  private static final String SEPARATOR = NodeBase.PATH_SEPARATOR_STR;
+
+  /** The eligible datanodes of the racks for a required space. */
+  private static final class Counts {
+    private final long requiredSize;
+    /** The numbers of eligible datanodes in the racks before every rack. */
+    private final int[] cumulative;
+
+    Counts(long requiredSize, int[] cumulative) {
+      this.requiredSize = requiredSize;
+      this.cumulative = cumulative;
+    }
+  }
+
+  /** A datanode to index. */
+  private static final class Entry {
+    static final Comparator<Entry> COMPARATOR = new Comparator<Entry>() {
+      @Override
+      public int compare(Entry a, Entry b) {
+        final int d = a.rack.compareTo(b.rack);
+        return d != 0 ? d : Long.compare(b.remaining, a.remaining);
+      }
+    };
+
+    private final DatanodeDescriptor node;
+    private final String rack;
+    private final long remaining;
+
+    Entry(DatanodeDescriptor node, long remaining) {
+      this.node = node;
+      this.rack = node.getNetworkLocation() + SEPARATOR;
+      this.remaining = remaining;
+    }
+  }
+
+  /** The network locations of the racks followed by a separator, sorted. */
+  private final String[] racks;
+  /** The offsets of the datanodes of the racks, followed by their number. */
+  private final int[] rackOffsets;
+  private final DatanodeDescriptor[] nodes;
+  /** The remaining space of the storage type of the datanodes. */
+  private final long[] remaining;
+  /** The rack of the datanodes. */
+  private final int[] nodeRacks;
+  private final Map<Node, Integer> positions;
+  private final int numOfLeaves;
+  private final long creationTime;
+  /** The counts of the last required space, usually the same. */
+  private volatile Counts counts;
+
+  /**
+   * @param candidates the datanodes which may be chosen, those without a
+   *                   storage of the storage type are ignored
+   * @param type the storage type of the replicas
+   * @param numOfLeaves the number of leaves of the topology of the datanodes
+   * @param creationTime the creation time of the index
+   */
+  DatanodePlacementIndex(Collection<DatanodeDescriptor> candidates,
+      StorageType type, int numOfLeaves, long creationTime) {
+    this.numOfLeaves = numOfLeaves;
+    this.creationTime = creationTime;
+
+    final List<Entry> entries = new ArrayList<>(candidates.size());
+    for (DatanodeDescriptor node : candidates) {
+      final long r = getRemaining(node, type);
+      if (r >= 0) {
+        entries.add(new Entry(node, r));
+      }
+    }
+    Collections.sort(entries, Entry.COMPARATOR);
+
+    final int n = entries.size();
+    final List<String> rackList = new ArrayList<>();
+    final List<Integer> offsetList = new ArrayList<>();
+    nodes = new DatanodeDescriptor[n];
+    remaining = new long[n];
+    nodeRacks = new int[n];
+    positions = new HashMap<>(n * 2);
+    for (int i = 0; i < n; i++) {
+      final Entry e = entries.get(i);
+      if (rackList.isEmpty()
+          || !rackList.get(rackList.size() - 1).equals(e.rack)) {
+        rackList.add(e.rack);
+        offsetList.add(i);
+      }
+      nodes[i] = e.node;
+      remaining[i] = e.remaining;
+      nodeRacks[i] = rackList.size() - 1;
+      positions.put(e.node, i);
+    }
+    racks = rackList.toArray(new String[rackList.size()]);
+    rackOffsets = new int[racks.length + 1];
+    for (int r = 0; r < racks.length; r++) {
+      rackOffsets[r] = offsetList.get(r);
+    }
+    rackOffsets[racks.length] = n;
+  }
+
+  /**
+   * @return the remaining space of the normal storages of a storage type of
+   *         a datanode, or -1 if it has none. It is at least the space
+   *         {@link DatanodeDescriptor#chooseStorage4Block} finds available.
+   */
+  @VisibleForTesting
+  static long getRemaining(DatanodeDescriptor node, StorageType type) {
+    long r = -1;
+    for (DatanodeStorageInfo s : node.getStorageInfos()) {
+      if (s.getState() == State.NORMAL && s.getStorageType() == type) {
+        r = Math.max(r, 0) + Math.max(s.getRemaining(), 0);
+      }
+    }
+    return r;
+  }
+
+  /** @return the number of leaves of the topology when it was indexed. */
+  int getNumOfLeaves() {
+    return numOfLeaves;
+  }
+
+  long getCreationTime() {
+    return creationTime;
+  }
+
+  /** @return the number of datanodes indexed. */
+  int size() {
+    return nodes.length;
+  }
+
+  /**
+   * Choose a datanode at random among those in a scope with at least the
+   * required space.
+   *
+   * @param scope a network location, or a network location prefixed by ~ to
+   *              choose a datanode out of it
+   * @param excludedNodes the datanodes which must not be chosen, may be null
+   * @param excludedRacks the network locations of the racks which must not be
+   *                      chosen, may be null
+   * @param requiredSize the required remaining space
+   * @param random the random number generator
+   * @return the chosen datanode, or null if there is none.
+   */
+  DatanodeDescriptor chooseRandom(String scope,
+      Collection<? extends Node> excludedNodes,
+      Collection<String> excludedRacks, long requiredSize, Random random) {
+    final int[] cumulative = getCounts(requiredSize).cumulative;
+    final boolean isExcludedScope = scope.startsWith("~");
+    final String location =
+        NodeBase.normalize(isExcludedScope ? scope.substring(1) : scope);
+    // the racks of the scope
+    final String prefix = location + SEPARATOR;
+    final int first = lowerBound(prefix);
+    final int last = lowerBound(location + (char) (SEPARATOR.charAt(0) + 1));
+
+    // the numbers of the datanodes which may be chosen, minus the excluded
+    // ranges of numbers
+    final int from;
+    final int to;
+    final long[] excluded = new long[1
+        + (excludedNodes == null ? 0 : excludedNodes.size())
+        + (excludedRacks == null ? 0 : excludedRacks.size())];
+    int numExcluded = 0;
+    if (isExcludedScope) {
+      from = 0;
+      to = cumulative[racks.length];
+      excluded[numExcluded++] = range(cumulative[first], cumulative[last]);
+    } else {
+      from = cumulative[first];
+      to = cumulative[last];
+    }
+    if (from >= to) {
+      return null;
+    }
+    if (excludedRacks != null) {
+      for (String rack : excludedRacks) {
+        final int r = Arrays.binarySearch(racks, rack + SEPARATOR);
+        if (r >= 0) {
+          excluded[numExcluded++] = range(cumulative[r], cumulative[r + 1]);
+        }
+      }
+    }
+    if (excludedNodes != null) {
+      for (Node node : excludedNodes) {
+        final Integer i = positions.get(node);
+        if (i != null) {
+          final int r = nodeRacks[i];
+          final int number = cumulative[r] + i - rackOffsets[r];
+          if (number < cumulative[r + 1]) {
+            excluded[numExcluded++] = range(number, number + 1);
+          }
+        }
+      }
+    }
+
+    final int number = NumberRanges.chooseRandom(from, to, excluded,
+        numExcluded, random);
+    if (number < 0) {
+      return null;
+    }
+    final int r = getRack(cumulative, number);
+    return nodes[rackOffsets[r] + number - cumulative[r]];
+  }
+
+  /** @return the index of the first rack not before a key. */
+  private int lowerBound(String key) {
+    final int i = Arrays.binarySearch(racks, key);
+    return i >= 0 ? i : -i - 1;
+  }
+
+  /** @return the rack of an eligible datanode number. */
+  private int getRack(int[] cumulative, int number) {
+    // the last rack starting at or before the number, the empty racks
+    // before it start at the same number
+    int lower = 0;
+    int upper = racks.length - 1;
+    while (lower < upper) {
+      final int mid = (lower + upper + 1) >>> 1;
+      if (cumulative[mid] <= number) {
+        lower = mid;
+      } else {
+        upper = mid - 1;
+      }
+    }
+    return lower;
+  }
+
+  private Counts getCounts(long requiredSize) {
+    Counts c = counts;
+    if (c == null || c.requiredSize != requiredSize) {
+      final int[] cumulative = new int[racks.length + 1];
+      for (int r = 0; r < racks.length; r++) {
+        cumulative[r + 1] = cumulative[r] + countEligible(r, requiredSize);
+      }
+      c = new Counts(requiredSize, cumulative);
+      counts = c;
+    }
+    return c;
+  }
+
+  /** @return the number of datanodes of a rack with the required space. */
+  private int countEligible(int rack, long requiredSize) {
+    int lower = rackOffsets[rack];
+    int upper = rackOffsets[rack + 1];
+    while (lower < upper) {
+      final int mid = (lower + upper) >>> 1;
+      if (remaining[mid] >= requiredSize) {
+        lower = mid + 1;
+      } else {
+        upper = mid;
+      }
+    }
+    return lower - rackOffsets[rack];
+  }
+}
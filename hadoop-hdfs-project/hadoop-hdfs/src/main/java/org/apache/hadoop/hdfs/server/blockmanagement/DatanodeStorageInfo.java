@@ -142,6 +142,18 @@ public class DatanodeStorageInfo {
    */
   private boolean blockContentsStale = true;
 
+  /** Id of this storage in {@link OffHeapTriplets}, assigned on first use. */
+  private int offHeapId = OffHeapTriplets.NONE;
+
+  /**
+   * The full block report being processed in chunks, or null if there is
+   * none. Reported and newly added blocks are moved to the head of the
+   * block list, so the blocks from {@link #firstUnreported} to the tail of
+   * the list are the ones the report did not contain so far.
+   */
+  private Object chunkedReport = null;
+  private BlockInfo firstUnreported = null;
+
   DatanodeStorageInfo(DatanodeDescriptor dn, DatanodeStorage s) {
     this.dn = dn;
     this.storageID = s.getStorageID();
@@ -252,7 +264,19 @@ public class DatanodeStorageInfo {
     return result;
   }
 
+  /**
+   * Add a block, which this storage was already added to, to the head of the
+   * block list of the storage.
+   */
+  void linkBlock(BlockInfo b) {
+    blockList = b.listInsert(blockList, this);
+    numBlocks++;
+  }
+
   public boolean removeBlock(BlockInfo b) {
+    if (b == firstUnreported) {
+      firstUnreported = b.getNext(b.findStorageInfo(this));
+    }
     blockList = b.listRemove(blockList, this);
     if (b.removeStorage(this)) {
       numBlocks--;
@@ -276,10 +300,52 @@ public class DatanodeStorageInfo {
    * @return the index of the head of the blockList
    */
   int moveBlockToHead(BlockInfo b, int curIndex, int headIndex) {
+    if (b == firstUnreported) {
+      firstUnreported = b.getNext(curIndex);
+    }
     blockList = b.moveBlockToHead(blockList, this, curIndex, headIndex);
     return curIndex;
   }
 
+  /**
+   * @return the index of this storage in the head of the blockList, or -1 if
+   * the list is empty.
+   */
+  int getHeadIndex() {
+    return blockList == null ? -1 : blockList.findStorageInfo(this);
+  }
+
+  /**
+   * Start tracking the blocks not reported by a full block report processed
+   * in chunks, which supersedes the one tracked so far, if any.
+   */
+  void startChunkedReport(Object report) {
+    chunkedReport = report;
+    firstUnreported = blockList;
+  }
+
+  /**
+   * @return true if the given report is the chunked report tracked by this
+   * storage, false if it has been superseded.
+   */
+  boolean isChunkedReport(Object report) {
+    return report != null && chunkedReport == report;
+  }
+
+  /** Stop tracking the chunked report, if any. */
+  void endChunkedReport() {
+    chunkedReport = null;
+    firstUnreported = null;
+  }
+
+  /**
+   * @return the first block not reported by the chunked report so far, or
+   * null if there is none.
+   */
+  BlockInfo getFirstUnreported() {
+    return firstUnreported;
+  }
+
   /**
    * Used for testing only
    * @return the head of the blockList
@@ -289,6 +355,14 @@ public class DatanodeStorageInfo {
     return blockList;
   }
 
+  int getOffHeapId() {
+    return offHeapId;
+  }
+
+  void setOffHeapId(int id) {
+    this.offHeapId = id;
+  }
+
   void updateState(StorageReport r) {
     capacity = r.getCapacity();
     dfsUsed = r.getDfsUsed();
@@ -0,0 +1,238 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.net.Node;
+import org.apache.hadoop.net.NodeBase;
+
+/**
+ * A block placement policy placing the replicas as
+ * {@link BlockPlacementPolicyDefault} does, but choosing the random datanodes
+ * from an index of the datanodes which may store them rather than from the
+ * whole network topology.
+ *
+ * The default policy picks a random datanode of a scope and checks that it
+ * is in service, not stale, not too busy, on a rack without too many
+ * replicas and with enough space, then picks another one until a datanode
+ * is good. On a large cluster with many full or busy datanodes, a block
+ * allocation may try many datanodes. This policy indexes the datanodes in
+ * service, not too busy and, when stale datanodes are avoided, not stale, by
+ * rack and remaining space in a {@link DatanodePlacementIndex}, and picks a
+ * datanode among those with enough space on the racks without too many
+ * replicas in O(log n) time.
+ *
+ * The index is rebuilt from the heartbeats of the datanodes when datanodes
+ * are added or removed, and at most every
+ * {@link DFSConfigKeys#DFS_NAMENODE_BLOCKPLACEMENTPOLICY_INDEXED_REFRESH_INTERVAL_MS_KEY}
+ * otherwise. The datanodes picked are still checked as the default policy
+ * does, so that a datanode whose state has changed since is not chosen.
+ */
+public class IndexedBlockPlacementPolicy extends BlockPlacementPolicyDefault {
+  /** The arguments of the current choice of random datanodes. */
+  private static final class Choice {
+    private final long blocksize;
+    private final int maxNodesPerRack;
+    private final List<DatanodeStorageInfo> results;
+    private final boolean avoidStaleNodes;
+    private final EnumMap<StorageType, Integer> storageTypes;
+
+    Choice(long blocksize, int maxNodesPerRack,
+        List<DatanodeStorageInfo> results, boolean avoidStaleNodes,
+        EnumMap<StorageType, Integer> storageTypes) {
+      this.blocksize = blocksize;
+      this.maxNodesPerRack = maxNodesPerRack;
+      this.results = results;
+      this.avoidStaleNodes = avoidStaleNodes;
+      this.storageTypes = storageTypes;
+    }
+  }
+
+  private static final ThreadLocal<Choice> CHOICE = new ThreadLocal<>();
+
+  private FSClusterStats stats;
+  private long staleInterval;
+  private long refreshInterval;
+  /**
+   * The indexes of the datanodes by storage type, including and excluding
+   * the stale datanodes, and the times they are to be rebuilt at.
+   */
+  private final AtomicReferenceArray<DatanodePlacementIndex> indexes =
+      new AtomicReferenceArray<>(StorageType.values().length * 2);
+  private final AtomicLongArray refreshTimes =
+      new AtomicLongArray(StorageType.values().length * 2);
+
+  @Override
+  public void initialize(Configuration conf, FSClusterStats stats,
+      NetworkTopology clusterMap, Host2NodesMap host2datanodeMap) {
+    super.initialize(conf, stats, clusterMap, host2datanodeMap);
+    this.stats = stats;
+    this.staleInterval = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_STALE_DATANODE_INTERVAL_KEY,
+        DFSConfigKeys.DFS_NAMENODE_STALE_DATANODE_INTERVAL_DEFAULT);
+    this.refreshInterval = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_INDEXED_REFRESH_INTERVAL_MS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_BLOCKPLACEMENTPOLICY_INDEXED_REFRESH_INTERVAL_MS_DEFAULT);
+  }
+
+  @Override
+  protected DatanodeStorageInfo chooseRandom(int numOfReplicas,
+      String scope, Set<Node> excludedNodes, long blocksize,
+      int maxNodesPerRack, List<DatanodeStorageInfo> results,
+      boolean avoidStaleNodes, EnumMap<StorageType, Integer> storageTypes)
+      throws NotEnoughReplicasException {
+    // chooseDataNode is given the scope and the excluded nodes only
+    final Choice previous = CHOICE.get();
+    CHOICE.set(new Choice(blocksize, maxNodesPerRack, results,
+        avoidStaleNodes, storageTypes));
+    try {
+      return super.chooseRandom(numOfReplicas, scope, excludedNodes,
+          blocksize, maxNodesPerRack, results, avoidStaleNodes, storageTypes);
+    } finally {
+      CHOICE.set(previous);
+    }
+  }
+
+  @Override
+  protected DatanodeDescriptor chooseDataNode(final String scope,
+      final Collection<Node> excludedNodes) {
+    final Choice choice = CHOICE.get();
+    if (choice == null || choice.storageTypes.isEmpty()) {
+      return super.chooseDataNode(scope, excludedNodes);
+    }
+    // a datanode with any of the storage types may store a replica, tried in
+    // order as with a DFSNetworkTopology
+    for (StorageType type : choice.storageTypes.keySet()) {
+      final DatanodeDescriptor node =
+          chooseDataNode(scope, excludedNodes, type, choice);
+      if (node != null) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  protected DatanodeDescriptor chooseDataNode(final String scope,
+      final Collection<Node> excludedNodes, StorageType type) {
+    final Choice choice = CHOICE.get();
+    if (choice == null) {
+      return super.chooseDataNode(scope, excludedNodes, type);
+    }
+    return chooseDataNode(scope, excludedNodes, type, choice);
+  }
+
+  private DatanodeDescriptor chooseDataNode(String scope,
+      Collection<Node> excludedNodes, StorageType type, Choice choice) {
+    final long requiredSize =
+        choice.blocksize * HdfsServerConstants.MIN_BLOCKS_FOR_WRITE;
+    final Collection<String> fullRacks = getFullRacks(choice);
+    DatanodePlacementIndex index = getIndex(type, choice.avoidStaleNodes,
+        false);
+    DatanodeDescriptor node = index.chooseRandom(scope, excludedNodes,
+        fullRacks, requiredSize, ThreadLocalRandom.current());
+    if (node != null && !clusterMap.contains(node)) {
+      // the datanode was replaced since the index was built
+      index = getIndex(type, choice.avoidStaleNodes, true);
+      node = index.chooseRandom(scope, excludedNodes, fullRacks,
+          requiredSize, ThreadLocalRandom.current());
+    }
+    return node;
+  }
+
+  /** @return the racks which already have the maximum number of replicas. */
+  private static Collection<String> getFullRacks(Choice choice) {
+    if (choice.results.isEmpty()) {
+      return null;
+    }
+    final Map<String, Integer> counts = new HashMap<>();
+    final List<String> fullRacks = new ArrayList<>();
+    for (DatanodeStorageInfo storage : choice.results) {
+      final String rack =
+          storage.getDatanodeDescriptor().getNetworkLocation();
+      final Integer count = counts.get(rack);
+      final int n = count == null ? 1 : count + 1;
+      counts.put(rack, n);
+      if (n == choice.maxNodesPerRack) {
+        fullRacks.add(rack);
+      }
+    }
+    return fullRacks;
+  }
+
+  /**
+   * @return the index of the datanodes with a storage type, rebuilt if it
+   *         is out of date or if {@code rebuild} is true.
+   */
+  private DatanodePlacementIndex getIndex(StorageType type,
+      boolean avoidStaleNodes, boolean rebuild) {
+    final int i = type.ordinal() * 2 + (avoidStaleNodes ? 1 : 0);
+    DatanodePlacementIndex index = indexes.get(i);
+    final long now = monotonicNow();
+    final long refreshTime = refreshTimes.get(i);
+    // a single thread refreshes an index, the others use the previous one
+    if (rebuild || index == null
+        || index.getNumOfLeaves() != clusterMap.getNumOfLeaves()
+        || (now >= refreshTime
+            && refreshTimes.compareAndSet(i, refreshTime,
+                now + refreshInterval))) {
+      index = buildIndex(type, avoidStaleNodes, now);
+      indexes.set(i, index);
+    }
+    return index;
+  }
+
+  private DatanodePlacementIndex buildIndex(StorageType type,
+      boolean avoidStaleNodes, long now) {
+    // counted first so that a datanode added meanwhile rebuilds it again
+    final int numOfLeaves = clusterMap.getNumOfLeaves();
+    final double maxLoad = considerLoad
+        ? considerLoadFactor * stats.getInServiceXceiverAverage()
+        : Double.MAX_VALUE;
+    final List<DatanodeDescriptor> candidates = new ArrayList<>(numOfLeaves);
+    for (Node leaf : clusterMap.getLeaves(NodeBase.ROOT)) {
+      if (!(leaf instanceof DatanodeDescriptor)) {
+        continue;
+      }
+      final DatanodeDescriptor node = (DatanodeDescriptor) leaf;
+      if (node.isInService()
+          && !(avoidStaleNodes && node.isStale(staleInterval))
+          && node.getXceiverCount() <= maxLoad) {
+        candidates.add(node);
+      }
+    }
+    return new DatanodePlacementIndex(candidates, type, numOfLeaves, now);
+  }
+}
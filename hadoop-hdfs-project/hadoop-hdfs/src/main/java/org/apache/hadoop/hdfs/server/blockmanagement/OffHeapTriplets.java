@@ -0,0 +1,334 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Keeps the storage triplets of {@link BlockInfo}s in direct memory slabs
+ * instead of an Object[] per block.
+ *
+ * Each block with at least one replica owns a fixed-width record:
+ * <pre>
+ *   int capacity | capacity x (int storage, int prev, int next)
+ * </pre>
+ * The storage is an id assigned to every {@link DatanodeStorageInfo} and
+ * prev/next are the indexes of the neighbouring blocks in the storage's
+ * block list. The only per-block state left on the heap is the index table
+ * mapping an index back to its {@link BlockInfo} and record address.
+ *
+ * A record is allocated when the first replica is added to a block and
+ * released when its last replica is removed, so blocks without locations
+ * (e.g. while loading the fsimage) do not use any direct memory.
+ * Freed records are reused for blocks of the same capacity.
+ *
+ * Each {@link BlocksMap} owns a store, which it closes with the map.
+ * Allocation is synchronized; reads and writes of a record are guarded by
+ * the lock of the namesystem owning the block.
+ */
+@InterfaceAudience.Private
+class OffHeapTriplets {
+  static final int NONE = -1;
+
+  private static final int SLAB_BYTES = 64 << 20;
+  private static final int HEADER_BYTES = 4;
+  private static final int TRIPLET_BYTES = 12;
+  private static final int TABLE_CHUNK_BITS = 16;
+  private static final int TABLE_CHUNK_SIZE = 1 << TABLE_CHUNK_BITS;
+  private static final int TABLE_CHUNK_MASK = TABLE_CHUNK_SIZE - 1;
+
+  /** Direct memory slabs holding the records. */
+  private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+  /** Next free offset in the last slab. */
+  private int slabOffset = SLAB_BYTES;
+  /** Freed record addresses, by capacity. */
+  private final Map<Integer, AddressStack> freeRecords =
+      new HashMap<Integer, AddressStack>();
+
+  /** Block and record address of every index, in chunks. */
+  private volatile BlockInfo[][] blocks = new BlockInfo[0][];
+  private volatile long[][] addresses = new long[0][];
+  private int nextIndex = 0;
+  private int[] freeIndexes = new int[16];
+  private int numFreeIndexes = 0;
+
+  private volatile DatanodeStorageInfo[] storages =
+      new DatanodeStorageInfo[16];
+  private int numStorages = 0;
+
+  private long usedBytes = 0;
+
+  /**
+   * Drop the slabs and the references to the blocks and storages. The
+   * direct memory of the slabs is freed once they are garbage collected,
+   * since a thread still reading a record must not see it unmapped.
+   * The store must not be used afterwards.
+   */
+  synchronized void close() {
+    slabs = new ByteBuffer[0];
+    slabOffset = SLAB_BYTES;
+    freeRecords.clear();
+    blocks = new BlockInfo[0][];
+    addresses = new long[0][];
+    nextIndex = 0;
+    numFreeIndexes = 0;
+    storages = new DatanodeStorageInfo[16];
+    numStorages = 0;
+    usedBytes = 0;
+  }
+
+  /**
+   * Allocate a record for the given block.
+   * @return the index of the block.
+   */
+  synchronized int allocate(BlockInfo b, int capacity) {
+    Preconditions.checkArgument(capacity > 0);
+    final int index = newIndex(b);
+    final long address = allocateRecord(capacity);
+    addresses[index >>> TABLE_CHUNK_BITS][index & TABLE_CHUNK_MASK] = address;
+    return index;
+  }
+
+  /**
+   * Grow the record of the block at the given index to at least the given
+   * capacity, keeping its triplets.
+   */
+  synchronized void ensureCapacity(int index, int capacity) {
+    final long old = address(index);
+    final int oldCapacity = slab(old).getInt(offset(old));
+    if (oldCapacity >= capacity) {
+      return;
+    }
+    final long address = allocateRecord(capacity);
+    final ByteBuffer from = slab(old);
+    final ByteBuffer to = slab(address);
+    final int fromOffset = offset(old) + HEADER_BYTES;
+    final int toOffset = offset(address) + HEADER_BYTES;
+    for (int i = 0; i < oldCapacity * TRIPLET_BYTES; i += 4) {
+      to.putInt(toOffset + i, from.getInt(fromOffset + i));
+    }
+    freeRecord(old, oldCapacity);
+    addresses[index >>> TABLE_CHUNK_BITS][index & TABLE_CHUNK_MASK] = address;
+  }
+
+  /** Release the record and the index of a block. */
+  synchronized void release(int index) {
+    final long address = address(index);
+    if (address != 0) {
+      freeRecord(address, slab(address).getInt(offset(address)));
+    }
+    blocks[index >>> TABLE_CHUNK_BITS][index & TABLE_CHUNK_MASK] = null;
+    addresses[index >>> TABLE_CHUNK_BITS][index & TABLE_CHUNK_MASK] = 0;
+    if (numFreeIndexes == freeIndexes.length) {
+      freeIndexes = Arrays.copyOf(freeIndexes, freeIndexes.length * 2);
+    }
+    freeIndexes[numFreeIndexes++] = index;
+  }
+
+  int getCapacity(int index) {
+    final long address = address(index);
+    return slab(address).getInt(offset(address));
+  }
+
+  DatanodeStorageInfo getStorageInfo(int index, int i) {
+    final int id = getField(index, i, 0);
+    return id == NONE ? null : storages[id];
+  }
+
+  BlockInfo getPrevious(int index, int i) {
+    return getBlock(getField(index, i, 1));
+  }
+
+  BlockInfo getNext(int index, int i) {
+    return getBlock(getField(index, i, 2));
+  }
+
+  void setStorageInfo(int index, int i, DatanodeStorageInfo storage) {
+    setField(index, i, 0, storage == null ? NONE : storageId(storage));
+  }
+
+  void setPrevious(int index, int i, BlockInfo to) {
+    setField(index, i, 1, indexOf(to));
+  }
+
+  void setNext(int index, int i, BlockInfo to) {
+    setField(index, i, 2, indexOf(to));
+  }
+
+  /** @return the number of direct memory bytes reserved for slabs. */
+  long getReservedBytes() {
+    return (long) slabs.length * SLAB_BYTES;
+  }
+
+  /** @return the number of direct memory bytes used by live records. */
+  synchronized long getUsedBytes() {
+    return usedBytes;
+  }
+
+  private BlockInfo getBlock(int index) {
+    return index == NONE ? null
+        : blocks[index >>> TABLE_CHUNK_BITS][index & TABLE_CHUNK_MASK];
+  }
+
+  private int getField(int index, int i, int field) {
+    final long address = address(index);
+    final ByteBuffer slab = slab(address);
+    final int offset = offset(address);
+    assert i >= 0 && i < slab.getInt(offset) : "Index is out of bound";
+    return slab.getInt(offset + HEADER_BYTES + i * TRIPLET_BYTES + field * 4);
+  }
+
+  private void setField(int index, int i, int field, int value) {
+    final long address = address(index);
+    final ByteBuffer slab = slab(address);
+    final int offset = offset(address);
+    assert i >= 0 && i < slab.getInt(offset) : "Index is out of bound";
+    slab.putInt(offset + HEADER_BYTES + i * TRIPLET_BYTES + field * 4, value);
+  }
+
+  private long address(int index) {
+    return addresses[index >>> TABLE_CHUNK_BITS][index & TABLE_CHUNK_MASK];
+  }
+
+  private ByteBuffer slab(long address) {
+    return slabs[(int) (address >>> 32)];
+  }
+
+  private static int offset(long address) {
+    return (int) address;
+  }
+
+  /**
+   * @return the index of a block referenced from a record. Blocks created
+   * before the store was enabled do not own a record but still get an index
+   * so that they can be linked with blocks which do.
+   */
+  private int indexOf(BlockInfo b) {
+    if (b == null) {
+      return NONE;
+    }
+    int index = b.getOffHeapIndex();
+    if (index == NONE) {
+      Preconditions.checkState(!b.isOffHeap(),
+          "Block %s is not allocated off heap", b);
+      synchronized (this) {
+        index = newIndex(b);
+      }
+      b.setOffHeapIndex(index);
+    }
+    return index;
+  }
+
+  private int storageId(DatanodeStorageInfo storage) {
+    int id = storage.getOffHeapId();
+    if (id == NONE) {
+      synchronized (this) {
+        id = storage.getOffHeapId();
+        if (id == NONE) {
+          if (numStorages == storages.length) {
+            storages = Arrays.copyOf(storages, storages.length * 2);
+          }
+          id = numStorages++;
+          storages[id] = storage;
+          storage.setOffHeapId(id);
+        }
+      }
+    }
+    return id;
+  }
+
+  private int newIndex(BlockInfo b) {
+    final int index;
+    if (numFreeIndexes > 0) {
+      index = freeIndexes[--numFreeIndexes];
+    } else {
+      index = nextIndex++;
+      final int chunk = index >>> TABLE_CHUNK_BITS;
+      if (chunk == blocks.length) {
+        BlockInfo[][] newBlocks = Arrays.copyOf(blocks, chunk + 1);
+        newBlocks[chunk] = new BlockInfo[TABLE_CHUNK_SIZE];
+        long[][] newAddresses = Arrays.copyOf(addresses, chunk + 1);
+        newAddresses[chunk] = new long[TABLE_CHUNK_SIZE];
+        addresses = newAddresses;
+        blocks = newBlocks;
+      }
+    }
+    blocks[index >>> TABLE_CHUNK_BITS][index & TABLE_CHUNK_MASK] = b;
+    return index;
+  }
+
+  private long allocateRecord(int capacity) {
+    final int size = HEADER_BYTES + capacity * TRIPLET_BYTES;
+    final long address;
+    final AddressStack free = freeRecords.get(capacity);
+    if (free != null && free.size > 0) {
+      address = free.pop();
+    } else {
+      if (slabOffset + size > SLAB_BYTES) {
+        ByteBuffer[] newSlabs = Arrays.copyOf(slabs, slabs.length + 1);
+        newSlabs[slabs.length] = ByteBuffer.allocateDirect(SLAB_BYTES);
+        slabs = newSlabs;
+        // offset 0 of the first slab is never used, so 0 means no record
+        slabOffset = slabs.length == 1 ? HEADER_BYTES : 0;
+      }
+      address = ((long) (slabs.length - 1) << 32) | slabOffset;
+      slabOffset += size;
+    }
+    final ByteBuffer slab = slab(address);
+    final int offset = offset(address);
+    slab.putInt(offset, capacity);
+    for (int i = offset + HEADER_BYTES; i < offset + size; i += 4) {
+      slab.putInt(i, NONE);
+    }
+    usedBytes += size;
+    return address;
+  }
+
+  private void freeRecord(long address, int capacity) {
+    AddressStack free = freeRecords.get(capacity);
+    if (free == null) {
+      free = new AddressStack();
+      freeRecords.put(capacity, free);
+    }
+    free.push(address);
+    usedBytes -= HEADER_BYTES + capacity * TRIPLET_BYTES;
+  }
+
+  /** Addresses of freed records of one capacity. */
+  private static class AddressStack {
+    private long[] addresses = new long[16];
+    private int size = 0;
+
+    void push(long address) {
+      if (size == addresses.length) {
+        addresses = Arrays.copyOf(addresses, size * 2);
+      }
+      addresses[size++] = address;
+    }
+
+    long pop() {
+      return addresses[--size];
+    }
+  }
+}
@@ -0,0 +1,336 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenSecretManager;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem.DefaultAuditLogger;
+import org.apache.hadoop.ipc.CallerContext;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.metrics2.annotation.Metric;
+import org.apache.hadoop.metrics2.annotation.Metrics;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Daemon;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * An audit logger writing the same messages as the default audit logger
+ * from a background thread.
+ *
+ * A handler only captures the fields of an event which depend on the call,
+ * e.g. the RPC protocol and the token tracking id, and puts the record into
+ * a bounded ring buffer. The ring is lock-free for the handlers: a slot is
+ * claimed by advancing the tail sequence and the record is then published
+ * into it. The writer thread drains the published records in batches,
+ * formats them and writes them to the audit log.
+ *
+ * When the ring is full the event is handled according to
+ * {@link DFSConfigKeys#DFS_NAMENODE_AUDIT_LOG_BATCHED_OVERFLOW_POLICY_KEY}.
+ * The number of queued, written and dropped events are published as
+ * metrics.
+ *
+ * Enable it by setting {@link DFSConfigKeys#DFS_NAMENODE_AUDIT_LOGGERS_KEY}
+ * to the name of this class.
+ */
+@InterfaceAudience.Private
+@Metrics(context="dfs")
+public class BatchedAuditLogger extends DefaultAuditLogger
+    implements Closeable, Runnable {
+  public static final Log LOG = LogFactory.getLog(BatchedAuditLogger.class);
+
+  static final String METRICS_SOURCE_NAME = "BatchedAuditLogger";
+  /** Maximum number of records written per batch. */
+  private static final int MAX_BATCH_SIZE = 1024;
+  /** Maximum time the writer sleeps before checking the ring again. */
+  private static final long MAX_PARK_NANOS = 100 * 1000 * 1000L;
+  /** Time a blocked handler waits before checking for free space again. */
+  private static final long BLOCKED_PARK_NANOS = 100 * 1000L;
+
+  /** What to do with an event when the ring is full. */
+  enum OverflowPolicy {
+    /** Wait for the writer to free up a slot. */
+    BLOCK,
+    /** Drop the event. */
+    DROP
+  }
+
+  private AtomicReferenceArray<AuditRecord> ring;
+  private int mask;
+  private OverflowPolicy overflowPolicy;
+
+  /** Sequence of the next slot to be claimed by a handler. */
+  private final AtomicLong tail = new AtomicLong();
+  /** Sequence of the next slot to be written, only set by the writer. */
+  private volatile long head = 0;
+  private volatile boolean writerParked = false;
+  private volatile boolean running = false;
+  private boolean closed = false;
+  private Daemon writer;
+  private boolean registeredMetrics = false;
+
+  private final AtomicLong numDropped = new AtomicLong();
+  private volatile long numWritten = 0;
+
+  @Override
+  public void initialize(Configuration conf) {
+    super.initialize(conf);
+    final int bufferSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_BATCHED_BUFFER_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_BATCHED_BUFFER_SIZE_DEFAULT);
+    Preconditions.checkArgument(bufferSize > 0 && bufferSize <= 1 << 30,
+        "%s is out of range: %s",
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_BATCHED_BUFFER_SIZE_KEY,
+        bufferSize);
+    final int capacity = Integer.highestOneBit(bufferSize) == bufferSize
+        ? bufferSize : Integer.highestOneBit(bufferSize) << 1;
+    ring = new AtomicReferenceArray<AuditRecord>(capacity);
+    mask = capacity - 1;
+    overflowPolicy = OverflowPolicy.valueOf(conf.getTrimmed(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_BATCHED_OVERFLOW_POLICY_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_BATCHED_OVERFLOW_POLICY_DEFAULT)
+        .toUpperCase());
+    LOG.info("Batched audit logger buffer size = " + capacity
+        + ", overflow policy = " + overflowPolicy);
+  }
+
+  /**
+   * Start the writer with the first event, so that namesystems which never
+   * log an event, e.g. the one used for formatting, do not start a thread.
+   * @return false if the logger is already closed.
+   */
+  private synchronized boolean start() {
+    if (closed) {
+      return false;
+    }
+    if (!running) {
+      if (DefaultMetricsSystem.instance().getSource(METRICS_SOURCE_NAME)
+          == null) {
+        DefaultMetricsSystem.instance().register(METRICS_SOURCE_NAME,
+            "Batched audit logger", this);
+        registeredMetrics = true;
+      }
+      writer = new Daemon(this);
+      writer.setName("BatchedAuditLogger");
+      running = true;
+      writer.start();
+    }
+    return true;
+  }
+
+  @Override
+  public void logAuditEvent(boolean succeeded, String userName,
+      InetAddress addr, String cmd, String src, String dst,
+      FileStatus status, CallerContext callerContext, UserGroupInformation ugi,
+      DelegationTokenSecretManager dtSecretManager) {
+    if (!isLogged(cmd)) {
+      return;
+    }
+    final AuditRecord record = new AuditRecord(succeeded, userName, addr,
+        cmd, src, dst, status, callerContext,
+        getTrackingId(ugi, dtSecretManager), Server.getProtocol());
+    if (!running && !start()) {
+      // the writer is gone, write the event directly
+      write(record);
+    } else if (!offer(record)) {
+      if (numDropped.incrementAndGet() == 1) {
+        LOG.warn("The audit log buffer is full, dropping audit events");
+      }
+    }
+  }
+
+  /**
+   * Put a record into the ring.
+   * @return false if the record was dropped since the ring is full.
+   */
+  private boolean offer(AuditRecord record) {
+    final int capacity = mask + 1;
+    long seq;
+    while (true) {
+      seq = tail.get();
+      if (seq - head >= capacity) {
+        if (overflowPolicy == OverflowPolicy.DROP) {
+          return false;
+        } else if (!running) {
+          write(record);
+          return true;
+        }
+        LockSupport.unpark(writer);
+        LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+      } else if (tail.compareAndSet(seq, seq + 1)) {
+        break;
+      }
+    }
+    ring.set((int) seq & mask, record);
+    if (writerParked) {
+      LockSupport.unpark(writer);
+    }
+    return true;
+  }
+
+  /**
+   * Move up to {@link #MAX_BATCH_SIZE} published records from the ring to
+   * the given list and release their slots.
+   */
+  private int drain(List<AuditRecord> batch) {
+    long seq = head;
+    while (batch.size() < MAX_BATCH_SIZE) {
+      final int slot = (int) seq & mask;
+      final AuditRecord record = ring.get(slot);
+      if (record == null) {
+        break;
+      }
+      ring.lazySet(slot, null);
+      batch.add(record);
+      seq++;
+    }
+    head = seq;
+    return batch.size();
+  }
+
+  @Override
+  public void run() {
+    final List<AuditRecord> batch = new ArrayList<AuditRecord>(MAX_BATCH_SIZE);
+    while (running || head != tail.get()) {
+      if (drain(batch) == 0) {
+        writerParked = true;
+        // check again after announcing the park to not miss a wake up
+        if (running && ring.get((int) head & mask) == null) {
+          LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+        writerParked = false;
+        continue;
+      }
+      for (AuditRecord record : batch) {
+        try {
+          write(record);
+        } catch (RuntimeException e) {
+          LOG.warn("Failed to write audit event " + record.cmd + " "
+              + record.src, e);
+        }
+      }
+      numWritten += batch.size();
+      batch.clear();
+    }
+  }
+
+  private void write(AuditRecord r) {
+    logAuditMessage(formatAuditEvent(r.succeeded, r.userName, r.addr, r.cmd,
+        r.src, r.dst, r.status, r.callerContext, r.trackingId, r.protocol));
+  }
+
+  /**
+   * Stop the writer after it wrote all the queued events. Events logged
+   * afterwards are written by the calling thread.
+   */
+  @Override
+  public synchronized void close() {
+    closed = true;
+    if (!running) {
+      return;
+    }
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      LOG.warn("Interrupted while waiting for the audit log writer", e);
+      Thread.currentThread().interrupt();
+    }
+    // write the events published while the writer was exiting
+    final List<AuditRecord> rest = new ArrayList<AuditRecord>();
+    while (drain(rest) > 0) {
+      for (AuditRecord record : rest) {
+        write(record);
+      }
+      numWritten += rest.size();
+      rest.clear();
+    }
+    if (registeredMetrics) {
+      DefaultMetricsSystem.instance().unregisterSource(METRICS_SOURCE_NAME);
+      registeredMetrics = false;
+    }
+  }
+
+  @Metric({"QueuedAuditEvents", "Number of audit events waiting to be written"})
+  public long getNumQueued() {
+    return tail.get() - head;
+  }
+
+  @Metric(value={"WrittenAuditEvents", "Number of audit events written"},
+      type=Metric.Type.COUNTER)
+  public long getNumWritten() {
+    return numWritten;
+  }
+
+  @Metric(value={"DroppedAuditEvents",
+      "Number of audit events dropped since the buffer was full"},
+      type=Metric.Type.COUNTER)
+  public long getNumDropped() {
+    return numDropped.get();
+  }
+
+  @VisibleForTesting
+  int getCapacity() {
+    return mask + 1;
+  }
+
+  /** The fields of an audit event which are needed to format it. */
+  private static class AuditRecord {
+    private final boolean succeeded;
+    private final String userName;
+    private final InetAddress addr;
+    private final String cmd;
+    private final String src;
+    private final String dst;
+    private final FileStatus status;
+    private final CallerContext callerContext;
+    private final String trackingId;
+    private final String protocol;
+
+    AuditRecord(boolean succeeded, String userName, InetAddress addr,
+        String cmd, String src, String dst, FileStatus status,
+        CallerContext callerContext, String trackingId, String protocol) {
+      this.succeeded = succeeded;
+      this.userName = userName;
+      this.addr = addr;
+      this.cmd = cmd;
+      this.src = src;
+      this.dst = dst;
+      this.status = status;
+      this.callerContext = callerContext;
+      this.trackingId = trackingId;
+      this.protocol = protocol;
+    }
+  }
+}
@@ -136,6 +136,11 @@ public class ContentCounts {
     types.add(that.types);
   }
 
+  public void subtractContents(ContentCounts that) {
+    contents.subtract(that.contents);
+    types.subtract(that.types);
+  }
+
   public void addTypeSpace(StorageType t, long val) {
     types.add(t, val);
   }
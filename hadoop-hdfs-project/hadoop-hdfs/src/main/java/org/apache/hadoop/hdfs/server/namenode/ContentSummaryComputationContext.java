@@ -17,6 +17,9 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.google.common.base.Preconditions;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
@@ -39,6 +42,10 @@ public class ContentSummaryComputationContext {
   private int sleepNanoSec = 0;
 
   private FSPermissionChecker pc;
+  /** The open files counted so far if the usage index is used. */
+  private List<INodeFile> openFiles = null;
+  /** If true, the open files are only collected, not counted. */
+  private boolean deferOpenFiles = false;
   /**
    * Constructor
    *
@@ -65,6 +72,11 @@ public class ContentSummaryComputationContext {
     this.sleepMilliSec = sleepMicroSec/1000;
     this.sleepNanoSec = (int)((sleepMicroSec%1000)*1000);
     this.pc = pc;
+    if (dir != null && dir.isUsageIndexEnabled()
+        && (!dir.isPermissionEnabled() || pc == null || pc.isSuperUser())) {
+      // the maintained counts skip the permission checks of the subtree
+      this.openFiles = new ArrayList<>();
+    }
   }
 
   /** Constructor for blocking computation. */
@@ -73,6 +85,45 @@ public class ContentSummaryComputationContext {
     this.bsps = bsps;
   }
 
+  /**
+   * @return a computation of the usage of a subtree for a
+   *         {@link DirectoryUsageFeature}, which collects the open files
+   *         without counting them and does not check the permissions. It
+   *         releases the locks the same way as this computation, continuing
+   *         from its count since the last release.
+   */
+  ContentSummaryComputationContext newUsageComputation() {
+    final ContentSummaryComputationContext usage =
+        new ContentSummaryComputationContext(dir, fsn, limitPerRun, 0);
+    usage.bsps = bsps;
+    usage.sleepMilliSec = sleepMilliSec;
+    usage.sleepNanoSec = sleepNanoSec;
+    usage.nextCountLimit = nextCountLimit - getCurrentCount();
+    usage.openFiles = new ArrayList<>();
+    usage.deferOpenFiles = true;
+    return usage;
+  }
+
+  /**
+   * Add the counts of a computation created by
+   * {@link #newUsageComputation()}, except for its open files, and continue
+   * from its count since the last release of the locks.
+   */
+  void addUsageComputation(ContentSummaryComputationContext usage) {
+    counts.addContents(usage.counts);
+    snapshotCounts.addContents(usage.snapshotCounts);
+    yieldCount += usage.yieldCount;
+    nextCountLimit = getCurrentCount()
+        + usage.nextCountLimit - usage.getCurrentCount();
+  }
+
+  private long getCurrentCount() {
+    return counts.getFileCount() +
+        counts.getSymlinkCount() +
+        counts.getDirectoryCount() +
+        counts.getSnapshotableDirectoryCount();
+  }
+
   /** Return current yield count */
   public long getYieldCount() {
     return yieldCount;
@@ -92,10 +143,7 @@ public class ContentSummaryComputationContext {
     }
 
     // Have we reached the limit?
-    long currentCount = counts.getFileCount() +
-        counts.getSymlinkCount() +
-        counts.getDirectoryCount() +
-        counts.getSnapshotableDirectoryCount();
+    long currentCount = getCurrentCount();
     if (currentCount <= nextCountLimit) {
       return false;
     }
@@ -149,6 +197,34 @@ public class ContentSummaryComputationContext {
         fsn.getBlockManager().getStoragePolicySuite();
   }
 
+  /**
+   * @return true if the counts of {@link DirectoryUsageFeature}s can be used
+   *         by this computation.
+   */
+  boolean isUsageIndexed() {
+    return openFiles != null;
+  }
+
+  /** Get the open files counted so far, if the usage index is used. */
+  List<INodeFile> getOpenFiles() {
+    return openFiles;
+  }
+
+  void addOpenFile(INodeFile file) {
+    if (openFiles != null) {
+      openFiles.add(file);
+    }
+  }
+
+  /** @return true if the open files are collected without counting them. */
+  boolean isDeferringOpenFiles() {
+    return deferOpenFiles;
+  }
+
+  FSDirectory getFSDirectory() {
+    return dir;
+  }
+
   void checkPermission(INodeDirectory inode, int snapshotId, FsAction access)
       throws AccessControlException {
     if (dir != null && dir.isPermissionEnabled()
@@ -0,0 +1,422 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.INode.BlocksMapUpdateInfo;
+import org.apache.hadoop.hdfs.server.namenode.INode.QuotaDelta;
+import org.apache.hadoop.hdfs.server.namenode.INode.ReclaimContext;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.SnapshotManager;
+import org.apache.hadoop.hdfs.util.ReadOnlyList;
+import org.apache.hadoop.util.ChunkedArrayList;
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Reclaims the subtrees of the directories removed by asynchronous deletes.
+ *
+ * A recursive delete of a large directory only detaches the directory from
+ * its parent, without walking its subtree: its files, directories and blocks
+ * stay in the inode map and the blocks map. A background thread then
+ * destroys the detached subtree bottom-up, at most
+ * {@link DFSConfigKeys#DFS_NAMENODE_DELETE_ASYNC_BATCH_SIZE_KEY} inodes per
+ * acquisition of the namesystem lock. Each batch releases the quota usage
+ * of the inodes it destroys from the ancestors of the former parent of the
+ * subtree, and the leases of the open files it destroys. It also removes
+ * their content summary counts from the {@link DirectoryUsageFeature}s which
+ * counted the subtree when it was detached. The quota usage of
+ * a subtree whose former parent was deleted meanwhile is released with the
+ * parent if the usage of an ancestor with a quota is cached, and otherwise
+ * stays counted in the former ancestors until the quota usage is computed
+ * again when the namespace is loaded.
+ *
+ * The edit log only records the delete of the directory. The reclamation is
+ * derived from it: the standby NameNode detaches the directory when it
+ * replays the delete and reclaims the subtree the same way, and the detached
+ * subtrees saved in an image, i.e. the directories of the inode map without
+ * a parent, are reclaimed again after the image is loaded.
+ *
+ * Only the subtrees without snapshottable directories and without snapshot
+ * data at their root are detached; the others are deleted at once. The
+ * references and the directories with snapshot data of a detached subtree
+ * are destroyed at once when the reclamation reaches them, the way a delete
+ * destroys them, so that the snapshots of other directories see the same
+ * changes.
+ */
+class DetachedSubtreeReclaimer implements Runnable {
+  static final Logger LOG =
+      LoggerFactory.getLogger(DetachedSubtreeReclaimer.class);
+  /** The wait after an error or during safe mode, in milliseconds. */
+  private static final long RETRY_INTERVAL_MS = 1000;
+
+  private final FSDirectory fsd;
+  private final boolean enabled;
+  private final int batchSize;
+
+  /** A detached subtree and the directory it was removed from. */
+  private static final class Detached {
+    private final INodeDirectory root;
+    /** The former parent, or null if it is not known after a restart. */
+    private final INodeDirectory parent;
+    /** The features which count the subtree, or null if there are none. */
+    private final DirectoryUsageFeature.DetachedUsage usage;
+
+    Detached(INodeDirectory root, INodeDirectory parent,
+        DirectoryUsageFeature.DetachedUsage usage) {
+      this.root = root;
+      this.parent = parent;
+      this.usage = usage;
+    }
+  }
+
+  /** The detached subtrees to be reclaimed, in the order of the deletes. */
+  private final Deque<Detached> detached = new ArrayDeque<>();
+  private volatile boolean shouldRun = false;
+  private Daemon daemon;
+
+  DetachedSubtreeReclaimer(FSDirectory fsd, Configuration conf) {
+    this.fsd = fsd;
+    this.enabled = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_ENABLED_DEFAULT);
+    this.batchSize = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_BATCH_SIZE_DEFAULT);
+    Preconditions.checkArgument(batchSize > 0,
+        DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_BATCH_SIZE_KEY +
+            " must be a positive integer.");
+  }
+
+  /**
+   * @return true if the subtree of a directory to be deleted is larger than
+   *         a batch and can be destroyed later, see the class comment.
+   */
+  boolean canDetach(INode target) {
+    assert fsd.hasWriteLock();
+    if (!enabled || !target.isDirectory() || target.isReference()
+        || target.asDirectory().isWithSnapshot()) {
+      return false;
+    }
+    final INodeDirectory root = target.asDirectory();
+    return !containsSnapshottableDir(root,
+        fsd.getFSNamesystem().getSnapshotManager())
+        && isLargerThanBatch(root);
+  }
+
+  /**
+   * Remove a directory accepted by {@link #canDetach(INode)} from its
+   * parent and detach its subtree. The quota usage, the content summary
+   * counts and the open files of the subtree are released by the batches
+   * which destroy them.
+   *
+   * @return false if the directory is not a child of the parent.
+   */
+  boolean detach(INodeDirectory parent, INodeDirectory root) {
+    assert fsd.hasWriteLock();
+    if (!parent.detachChild(root)) {
+      return false;
+    }
+    root.setParent(null);
+    add(new Detached(root, parent, DirectoryUsageFeature.detach(parent)));
+    if (NameNode.stateChangeLog.isDebugEnabled()) {
+      NameNode.stateChangeLog.debug("DIR* DetachedSubtreeReclaimer: detached "
+          + root.getLocalName());
+    }
+    return true;
+  }
+
+  /**
+   * @return true if the directory or one of its descendants is snapshottable.
+   */
+  private static boolean containsSnapshottableDir(INodeDirectory root,
+      SnapshotManager snapshotManager) {
+    if (snapshotManager.getNumSnapshottableDirs() == 0) {
+      return false;
+    }
+    for (INodeDirectory dir : snapshotManager.getSnapshottableDirs()) {
+      for (INodeDirectory d = dir; d != null; d = d.getParent()) {
+        if (d == root) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return true if the subtree has more inodes than a batch, visiting at
+   *         most a batch of them.
+   */
+  private boolean isLargerThanBatch(INodeDirectory root) {
+    final Deque<INodeDirectory> dirs = new ArrayDeque<>();
+    dirs.push(root);
+    int count = 0;
+    while (!dirs.isEmpty()) {
+      final INodeDirectory dir = dirs.pop();
+      if (++count > batchSize) {
+        return true;
+      }
+      for (INode child : dir.getChildrenList(Snapshot.CURRENT_STATE_ID)) {
+        if (child.isDirectory()) {
+          dirs.push(child.asDirectory());
+        } else if (++count > batchSize) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private synchronized void add(Detached subtree) {
+    detached.add(subtree);
+    notifyAll();
+  }
+
+  /**
+   * Add the detached subtrees of a loaded image, i.e. the directories of the
+   * inode map which are neither the root nor in a directory or a reference.
+   */
+  void addDetachedSubtrees() {
+    final Iterator<INodeWithAdditionalFields> it =
+        fsd.getINodeMap().getMapIterator();
+    int count = 0;
+    while (it.hasNext()) {
+      final INodeWithAdditionalFields inode = it.next();
+      if (inode.isDirectory() && !inode.isRoot()
+          && inode.getParent() == null && inode.getParentReference() == null) {
+        // the quota usage of the subtree was not computed with the namespace
+        add(new Detached(inode.asDirectory(), null, null));
+        count++;
+      }
+    }
+    if (count > 0) {
+      LOG.info("Found " + count + " detached subtrees to be reclaimed.");
+    }
+  }
+
+  /** @return the number of detached subtrees not reclaimed yet. */
+  synchronized int getPendingSubtrees() {
+    return detached.size();
+  }
+
+  synchronized void clear() {
+    detached.clear();
+  }
+
+  /**
+   * Start reclaiming the detached subtrees, if asynchronous deletes are
+   * enabled or subtrees detached before they were disabled are pending.
+   */
+  synchronized void start() {
+    if (daemon == null && (enabled || !detached.isEmpty())) {
+      shouldRun = true;
+      daemon = new Daemon(this);
+      daemon.setName("DetachedSubtreeReclaimer");
+      daemon.start();
+    }
+  }
+
+  @VisibleForTesting
+  synchronized boolean isRunning() {
+    return daemon != null;
+  }
+
+  void stop() {
+    final Daemon d;
+    synchronized (this) {
+      shouldRun = false;
+      d = daemon;
+      daemon = null;
+      notifyAll();
+    }
+    if (d != null) {
+      d.interrupt();
+      try {
+        d.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    while (shouldRun) {
+      try {
+        synchronized (this) {
+          while (shouldRun && detached.isEmpty()) {
+            wait();
+          }
+        }
+        if (fsd.getFSNamesystem().getBlockManager().isInSafeMode()) {
+          // the blocks of the detached subtrees are in the safe mode total
+          Thread.sleep(RETRY_INTERVAL_MS);
+        } else if (shouldRun) {
+          reclaimBatch();
+        }
+      } catch (InterruptedException e) {
+        break;
+      } catch (Throwable t) {
+        LOG.error("Failed to reclaim a detached subtree, retrying.", t);
+        try {
+          Thread.sleep(RETRY_INTERVAL_MS);
+        } catch (InterruptedException ie) {
+          break;
+        }
+      }
+    }
+    LOG.info("Stopping DetachedSubtreeReclaimer.");
+  }
+
+  /**
+   * Reclaim a batch of the first detached subtree, holding the namesystem
+   * lock.
+   * @return false if there are no more detached subtrees.
+   */
+  @VisibleForTesting
+  boolean reclaimBatch() {
+    final FSNamesystem fsn = fsd.getFSNamesystem();
+    final BlocksMapUpdateInfo collectedBlocks = new BlocksMapUpdateInfo();
+    final List<INode> removedINodes = new ChunkedArrayList<>();
+    final List<Long> removedUCFiles = new ChunkedArrayList<>();
+    final ReclaimContext context = new ReclaimContext(
+        fsd.getBlockStoragePolicySuite(), collectedBlocks, removedINodes,
+        removedUCFiles);
+    // the checkpointer of the standby NameNode must not see a partial batch
+    fsn.cpLock();
+    try {
+      fsn.writeLock();
+      try {
+        final Detached subtree;
+        synchronized (this) {
+          subtree = detached.peek();
+        }
+        if (subtree == null) {
+          return false;
+        }
+        fsd.writeLock();
+        try {
+          if (reclaim(subtree, context)) {
+            synchronized (this) {
+              detached.poll();
+            }
+          }
+          fsd.updateReplicationFactor(collectedBlocks
+              .toUpdateReplicationInfo());
+          releaseQuota(subtree.parent, context.quotaDelta());
+        } finally {
+          fsd.writeUnlock();
+        }
+        fsn.removeLeasesAndINodes(removedUCFiles, removedINodes, true);
+        fsn.getBlockManager().removeBlocksAndUpdateSafemodeTotal(
+            collectedBlocks);
+        return getPendingSubtrees() > 0;
+      } finally {
+        fsn.writeUnlock("reclaimDetachedSubtree");
+      }
+    } finally {
+      fsn.cpUnlock();
+    }
+  }
+
+  /**
+   * Release the quota usage of the inodes destroyed by a batch from the
+   * current ancestors of the former parent of their subtree, if the parent
+   * is still in the namespace, and from the other paths of the references
+   * they refer to.
+   */
+  private void releaseQuota(INodeDirectory parent, QuotaDelta quotaDelta) {
+    if (parent != null && !FSDirectory.isDetached(parent)) {
+      final INodesInPath iip = INodesInPath.fromINode(parent);
+      fsd.updateCountNoQuotaCheck(iip, iip.length(),
+          quotaDelta.getCountsCopy().negation());
+    }
+    for (Map.Entry<INode, QuotaCounts> entry :
+        quotaDelta.getUpdateMap().entrySet()) {
+      final INodesInPath iip = INodesInPath.fromINode(entry.getKey());
+      fsd.updateCountNoQuotaCheck(iip, iip.length() - 1,
+          entry.getValue().negation());
+    }
+    for (Map.Entry<INodeDirectory, QuotaCounts> entry :
+        quotaDelta.getQuotaDirMap().entrySet()) {
+      entry.getKey().getDirectoryWithQuotaFeature().addSpaceConsumed2Cache(
+          entry.getValue().negation());
+    }
+  }
+
+  /**
+   * Destroy at most a batch of inodes of a detached subtree, starting with
+   * the last child of the deepest last directory, so that the subtree stays
+   * connected and the next batch continues where this one stopped. A
+   * reference is destroyed at once with the inodes it refers to, and so is a
+   * directory with snapshot data with its subtree.
+   * @return true if the whole subtree was destroyed.
+   */
+  private boolean reclaim(Detached subtree, ReclaimContext context) {
+    final INodeDirectory root = subtree.root;
+    INodeDirectory dir = root;
+    for (int reclaimed = 0; reclaimed < batchSize; ) {
+      final ReadOnlyList<INode> children =
+          dir.getChildrenList(Snapshot.CURRENT_STATE_ID);
+      if (children.isEmpty()) {
+        if (dir == root) {
+          destroy(subtree, root, context);
+          return true;
+        }
+        final INodeDirectory parent = dir.getParent();
+        parent.removeChild(dir);
+        destroy(subtree, dir, context);
+        reclaimed++;
+        dir = parent;
+        continue;
+      }
+      final INode child = children.get(children.size() - 1);
+      if (child.isDirectory() && !child.isReference()
+          && !child.asDirectory().isWithSnapshot() && !child.asDirectory()
+          .getChildrenList(Snapshot.CURRENT_STATE_ID).isEmpty()) {
+        dir = child.asDirectory();
+      } else {
+        dir.removeChild(child);
+        destroy(subtree, child, context);
+        reclaimed++;
+      }
+    }
+    return false;
+  }
+
+  /** Destroy an inode removed from a detached subtree. */
+  private static void destroy(Detached subtree, INode inode,
+      ReclaimContext context) {
+    if (subtree.usage != null) {
+      subtree.usage.removeUsage(inode);
+    }
+    inode.destroyAndCollectBlocks(context);
+  }
+}
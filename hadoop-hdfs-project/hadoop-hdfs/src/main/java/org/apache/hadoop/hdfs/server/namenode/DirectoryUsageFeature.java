@@ -0,0 +1,341 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.security.AccessControlException;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Maintains the content summary counts of the subtree of a large directory,
+ * so that a content summary computation does not traverse the subtree.
+ *
+ * The counts are updated incrementally, the same way the quota usage of a
+ * {@link DirectoryWithQuotaFeature} is: adding a child to a directory adds
+ * the counts of the subtree of the child to the features of the directory
+ * and its ancestors, and removing a child subtracts them. The counts of a
+ * subtree are computed by traversing it, except for the subtrees of the
+ * directories with a feature. Changing the space consumed by a closed file,
+ * i.e. setting its replication, truncating it or concatenating files into
+ * it, removes the counts of the file before the change and adds them after.
+ *
+ * The length of an open file changes without a namespace operation, so the
+ * features keep the open files of their subtree instead of their counts,
+ * and a content summary computes the counts of these files. Opening a file
+ * moves it from the counts to the open files, and closing it moves it back.
+ *
+ * The changes which also change the snapshot data of a directory, i.e.
+ * adding or removing a child of a directory in the latest snapshot and
+ * replacing a child with a reference, reset the features of the directory
+ * and its ancestors. The operations which change the counts of a subtree
+ * without modifying it, e.g. setting a storage policy or creating a
+ * snapshot, also reset the features in the subtree, see
+ * {@link FSDirectory#invalidateUsage(INode)}.
+ *
+ * A reset feature computes its counts again in the next content summary
+ * computation, which releases the read lock as usual meanwhile, and does not
+ * traverse the subtrees of the descendants with a feature. The feature
+ * counts the changes of its subtree, and only keeps the computed counts if
+ * there were none while the lock was released.
+ *
+ * A content summary computation which traverses a directory with at least
+ * {@link FSDirectory#getUsageIndexMinEntries()} entries in its subtree gives
+ * the directory to the {@link DirectoryUsageIndexer}, which adds the feature
+ * holding the write lock. The next computation computes its counts.
+ */
+@InterfaceAudience.Private
+public class DirectoryUsageFeature implements INode.Feature {
+  private final FSDirectory fsd;
+  /** The number of changes of the subtree, whether counted or not. */
+  private long modification = 0;
+  /** The number of times the counts were computed. */
+  private long generation = 0;
+  /** The counts of the subtree, or null if they were not computed. */
+  private ContentCounts counts = null;
+  private ContentCounts snapshotCounts = null;
+  /** The open files of the subtree, which are not in the counts. */
+  private Set<INodeFile> openFiles = null;
+
+  DirectoryUsageFeature(FSDirectory fsd) {
+    this.fsd = fsd;
+  }
+
+  /** The counts of a subtree, without the counts of its open files. */
+  private static final class Usage {
+    private final ContentCounts counts;
+    private final ContentCounts snapshotCounts;
+    private final List<INodeFile> openFiles;
+
+    /**
+     * @param summary the computation of the subtree only, see
+     *        {@link ContentSummaryComputationContext#newUsageComputation()}.
+     */
+    Usage(ContentSummaryComputationContext summary) {
+      this.counts = summary.getCounts();
+      this.snapshotCounts = summary.getSnapshotCounts();
+      this.openFiles = summary.getOpenFiles();
+    }
+  }
+
+  /**
+   * Compute the usage of the subtree of an inode, holding the write lock.
+   */
+  private static Usage computeUsage(FSDirectory fsd, INode inode) {
+    final ContentSummaryComputationContext summary =
+        new ContentSummaryComputationContext(fsd, fsd.getFSNamesystem(), 0, 0)
+            .newUsageComputation();
+    try {
+      inode.computeContentSummary(Snapshot.CURRENT_STATE_ID, summary);
+    } catch (AccessControlException e) {
+      // should not happen since the permissions are not checked
+      throw new IllegalStateException(e);
+    }
+    return new Usage(summary);
+  }
+
+  /** The same as {@link #isCounted()}, holding the lock of the feature. */
+  private boolean isCounting() {
+    return counts != null;
+  }
+
+  /** @return true if the counts of the given generation are maintained. */
+  private synchronized boolean isCounting(long gen) {
+    return isCounting() && generation == gen;
+  }
+
+  /** @return true if the counts are maintained. */
+  @VisibleForTesting
+  synchronized boolean isCounted() {
+    return isCounting();
+  }
+
+  /**
+   * Keep the counts computed by a computation which started after the
+   * given number of changes, if there were no changes since.
+   */
+  private synchronized void initialize(Usage usage, long mod) {
+    if (isCounting() || modification != mod) {
+      return;
+    }
+    counts = usage.counts;
+    snapshotCounts = usage.snapshotCounts;
+    openFiles = new HashSet<>(usage.openFiles);
+    generation++;
+  }
+
+  /** Drop the counts, which are computed again when they are used. */
+  synchronized void reset() {
+    modification++;
+    counts = null;
+    snapshotCounts = null;
+    openFiles = null;
+  }
+
+  /**
+   * Add the usage of a subtree to the counts, or subtract it.
+   * @param gen the generation of the counts to be updated, or -1 for any.
+   */
+  private synchronized void update(Usage usage, boolean add, long gen) {
+    modification++;
+    if (!isCounting() || (gen >= 0 && generation != gen)) {
+      return;
+    }
+    if (usage == null) {
+      // the counts were computed after the caller checked them
+      reset();
+      return;
+    }
+    if (add) {
+      counts.addContents(usage.counts);
+      snapshotCounts.addContents(usage.snapshotCounts);
+      openFiles.addAll(usage.openFiles);
+    } else {
+      counts.subtractContents(usage.counts);
+      snapshotCounts.subtractContents(usage.snapshotCounts);
+      openFiles.removeAll(usage.openFiles);
+    }
+  }
+
+  /**
+   * Add the counts of the subtree to the summary, computing them with the
+   * summary if they were reset.
+   */
+  private void addTo(INodeDirectory dir,
+      ContentSummaryComputationContext summary)
+      throws AccessControlException {
+    INodeFile[] open = null;
+    final long mod;
+    synchronized (this) {
+      mod = modification;
+      if (isCounting()) {
+        summary.getCounts().addContents(counts);
+        summary.getSnapshotCounts().addContents(snapshotCounts);
+        open = openFiles.toArray(new INodeFile[openFiles.size()]);
+      }
+    }
+    if (open == null) {
+      // the feature must not be locked, since the computation may release
+      // the read lock and wait for the writers which update it
+      final ContentSummaryComputationContext usage =
+          summary.newUsageComputation();
+      dir.computeUncachedContentSummary(Snapshot.CURRENT_STATE_ID, usage);
+      summary.addUsageComputation(usage);
+      final Usage u = new Usage(usage);
+      open = u.openFiles.toArray(new INodeFile[u.openFiles.size()]);
+      initialize(u, mod);
+    }
+    for (INodeFile file : open) {
+      file.computeContentSummary(Snapshot.CURRENT_STATE_ID, summary);
+    }
+  }
+
+  /**
+   * Add the usage of the subtree of an inode to the features of a directory
+   * and its ancestors, after the inode was added to the subtree of the
+   * directory, or after a change of the usage of the inode.
+   */
+  static void addUsage(INodeDirectory dir, INode inode) {
+    updateAncestors(dir, inode, true);
+  }
+
+  /**
+   * Remove the usage of the subtree of an inode from the features of a
+   * directory and its ancestors, after the inode was removed from the
+   * subtree of the directory, or before a change of the usage of the inode.
+   */
+  static void removeUsage(INodeDirectory dir, INode inode) {
+    updateAncestors(dir, inode, false);
+  }
+
+  private static void updateAncestors(INodeDirectory dir, INode inode,
+      boolean add) {
+    Usage usage = null;
+    for (; dir != null; dir = dir.getParent()) {
+      final DirectoryUsageFeature f = dir.getDirectoryUsageFeature();
+      if (f != null) {
+        if (usage == null && f.isCounted()) {
+          usage = computeUsage(f.fsd, inode);
+        }
+        // also counts the change for a computation of the counts
+        f.update(usage, add, -1);
+      }
+    }
+  }
+
+  /**
+   * Reset the features of a directory and its ancestors, whose counts are
+   * computed again when they are used.
+   */
+  static void resetAncestors(INodeDirectory dir) {
+    for (; dir != null; dir = dir.getParent()) {
+      final DirectoryUsageFeature f = dir.getDirectoryUsageFeature();
+      if (f != null) {
+        f.reset();
+      }
+    }
+  }
+
+  /**
+   * The features which still count a subtree detached from a directory,
+   * i.e. the features of the directory and its ancestors which counted the
+   * subtree when it was detached, see {@link DetachedSubtreeReclaimer}. The
+   * usage of the subtree is removed from these features as it is destroyed,
+   * unless their counts were computed again meanwhile.
+   */
+  static final class DetachedUsage {
+    private final List<DirectoryUsageFeature> features = new ArrayList<>();
+    private final List<Long> generations = new ArrayList<>();
+
+    private DetachedUsage(INodeDirectory dir) {
+      for (; dir != null; dir = dir.getParent()) {
+        final DirectoryUsageFeature f = dir.getDirectoryUsageFeature();
+        if (f != null) {
+          synchronized (f) {
+            if (f.isCounting()) {
+              features.add(f);
+              generations.add(f.generation);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Remove the usage of the subtree of an inode of the detached subtree,
+     * before the inode is destroyed.
+     */
+    void removeUsage(INode inode) {
+      Usage usage = null;
+      for (int i = 0; i < features.size(); i++) {
+        final DirectoryUsageFeature f = features.get(i);
+        final long gen = generations.get(i);
+        if (f.isCounting(gen)) {
+          if (usage == null) {
+            usage = computeUsage(f.fsd, inode);
+          }
+          f.update(usage, false, gen);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the features which count a subtree detached from a directory,
+   *         or null if there are none.
+   */
+  static DetachedUsage detach(INodeDirectory dir) {
+    final DetachedUsage usage = new DetachedUsage(dir);
+    return usage.features.isEmpty() ? null : usage;
+  }
+
+  /**
+   * Add the counts of the subtree of the given directory to the summary,
+   * from the feature of the directory if it has one. Otherwise the subtree
+   * is traversed, and the feature is added later if the subtree is large
+   * enough.
+   */
+  static ContentSummaryComputationContext computeContentSummary(
+      INodeDirectory dir, ContentSummaryComputationContext summary)
+      throws AccessControlException {
+    final DirectoryUsageFeature f = dir.getDirectoryUsageFeature();
+    if (f != null) {
+      f.addTo(dir, summary);
+      return summary;
+    }
+    final long entries = getEntries(summary.getCounts());
+    dir.computeUncachedContentSummary(Snapshot.CURRENT_STATE_ID, summary);
+    final FSDirectory fsd = summary.getFSDirectory();
+    if (getEntries(summary.getCounts()) - entries
+        >= fsd.getUsageIndexMinEntries()) {
+      fsd.addDirectoryUsageFeatureLater(dir);
+    }
+    return summary;
+  }
+
+  private static long getEntries(ContentCounts counts) {
+    return counts.getFileCount() + counts.getDirectoryCount()
+        + counts.getSymlinkCount();
+  }
+}
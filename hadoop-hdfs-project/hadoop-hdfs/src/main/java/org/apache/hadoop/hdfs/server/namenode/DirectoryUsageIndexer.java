@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.util.Daemon;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Adds the {@link DirectoryUsageFeature}s of the large directories found by
+ * the content summary computations. The computations only hold the read
+ * lock, so they give the directories to a background thread, which adds the
+ * features holding the write lock. The directories given while the thread
+ * waits for the lock are added in the same batch.
+ */
+class DirectoryUsageIndexer implements Runnable {
+  static final Logger LOG =
+      LoggerFactory.getLogger(DirectoryUsageIndexer.class);
+
+  private final FSDirectory fsd;
+  /** The directories to add a feature to. */
+  private final Set<INodeDirectory> pending = new LinkedHashSet<>();
+  private volatile boolean shouldRun = false;
+  private Daemon daemon;
+
+  DirectoryUsageIndexer(FSDirectory fsd) {
+    this.fsd = fsd;
+  }
+
+  /** Add a feature to a directory in the next batch. */
+  synchronized void add(INodeDirectory dir) {
+    if (pending.add(dir)) {
+      notifyAll();
+    }
+  }
+
+  /** @return the number of directories waiting for a feature. */
+  synchronized int getPendingDirectories() {
+    return pending.size();
+  }
+
+  synchronized void clear() {
+    pending.clear();
+  }
+
+  /** Start adding the features, if the usage index is enabled. */
+  synchronized void start() {
+    if (daemon == null && fsd.isUsageIndexEnabled()) {
+      shouldRun = true;
+      daemon = new Daemon(this);
+      daemon.setName("DirectoryUsageIndexer");
+      daemon.start();
+    }
+  }
+
+  void stop() {
+    final Daemon d;
+    synchronized (this) {
+      shouldRun = false;
+      d = daemon;
+      daemon = null;
+      notifyAll();
+    }
+    if (d != null) {
+      d.interrupt();
+      try {
+        d.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public void run() {
+    while (shouldRun) {
+      try {
+        synchronized (this) {
+          while (shouldRun && pending.isEmpty()) {
+            wait();
+          }
+        }
+        if (shouldRun) {
+          addPendingFeatures();
+        }
+      } catch (InterruptedException e) {
+        break;
+      } catch (Throwable t) {
+        LOG.error("Failed to add directory usage features.", t);
+      }
+    }
+    LOG.info("Stopping DirectoryUsageIndexer.");
+  }
+
+  /**
+   * Add the features of the pending directories which are still in the
+   * namespace, holding the write lock.
+   */
+  @VisibleForTesting
+  void addPendingFeatures() {
+    final FSNamesystem fsn = fsd.getFSNamesystem();
+    fsn.writeLock();
+    try {
+      final List<INodeDirectory> dirs;
+      synchronized (this) {
+        dirs = new ArrayList<>(pending);
+        pending.clear();
+      }
+      fsd.addDirectoryUsageFeatures(dirs);
+    } finally {
+      fsn.writeUnlock("addDirectoryUsageFeatures");
+    }
+  }
+}
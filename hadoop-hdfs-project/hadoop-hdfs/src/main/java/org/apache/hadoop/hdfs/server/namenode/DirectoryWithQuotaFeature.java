@@ -131,8 +131,10 @@ public final class DirectoryWithQuotaFeature implements INode.Feature {
     final long original = summary.getCounts().getStoragespace();
     long oldYieldCount = summary.getYieldCount();
     dir.computeDirectoryContentSummary(summary, Snapshot.CURRENT_STATE_ID);
-    // Check only when the content has not changed in the middle.
-    if (oldYieldCount == summary.getYieldCount()) {
+    // Check only when the content has not changed in the middle, and all
+    // the files were counted.
+    if (oldYieldCount == summary.getYieldCount()
+        && !summary.isDeferringOpenFiles()) {
       checkStoragespace(dir, summary.getCounts().getStoragespace() - original);
     }
     return summary;
@@ -110,6 +110,12 @@ public class EditLogFileOutputStream extends EditLogOutputStream {
     doubleBuf.writeRaw(bytes, offset, length);
   }
 
+  @Override
+  public void writeSerialized(FSEditLogOp op, byte[] bytes, int offset,
+      int length) throws IOException {
+    doubleBuf.writeSerializedOp(op.getTransactionId(), bytes, offset, length);
+  }
+
   /**
    * Create empty edits logs file.
    */
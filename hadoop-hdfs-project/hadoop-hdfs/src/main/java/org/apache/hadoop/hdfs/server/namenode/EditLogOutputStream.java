@@ -62,6 +62,23 @@ public abstract class EditLogOutputStream implements Closeable {
   abstract public void writeRaw(byte[] bytes, int offset, int length)
       throws IOException;
 
+  /**
+   * Write an edits log operation which was already serialized by
+   * {@link FSEditLogOp.Writer}, e.g. once for several streams. Streams which
+   * buffer serialized operations copy the given bytes instead of serializing
+   * the operation again.
+   *
+   * @param op the operation
+   * @param bytes the serialized operation
+   * @param offset offset of the operation in the bytes
+   * @param length length of the serialized operation
+   * @throws IOException
+   */
+  public void writeSerialized(FSEditLogOp op, byte[] bytes, int offset,
+      int length) throws IOException {
+    write(op);
+  }
+
   /**
    * Create and initialize underlying persistent edits log storage.
    * 
@@ -63,6 +63,15 @@ public class EditsDoubleBuffer {
   public void writeRaw(byte[] bytes, int offset, int length) throws IOException {
     bufCurrent.write(bytes, offset, length);
   }
+
+  /**
+   * Write an op serialized by {@link FSEditLogOp.Writer}.
+   * @param txid the transaction id of the op
+   */
+  public void writeSerializedOp(long txid, byte[] bytes, int offset,
+      int length) throws IOException {
+    bufCurrent.writeSerializedOp(txid, bytes, offset, length);
+  }
   
   public void close() throws IOException {
     Preconditions.checkNotNull(bufCurrent);
@@ -149,12 +158,22 @@ public class EditsDoubleBuffer {
     }
 
     public void writeOp(FSEditLogOp op) throws IOException {
+      addTxn(op.txid);
+      writer.writeOp(op);
+    }
+
+    void writeSerializedOp(long txid, byte[] bytes, int offset, int length)
+        throws IOException {
+      addTxn(txid);
+      write(bytes, offset, length);
+    }
+
+    private void addTxn(long txid) {
       if (firstTxId == HdfsServerConstants.INVALID_TXID) {
-        firstTxId = op.txid;
+        firstTxId = txid;
       } else {
-        assert op.txid > firstTxId;
+        assert txid > firstTxId;
       }
-      writer.writeOp(op);
       numTxns++;
     }
     
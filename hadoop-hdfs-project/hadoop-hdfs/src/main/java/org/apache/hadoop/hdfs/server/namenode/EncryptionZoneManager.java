@@ -200,7 +200,7 @@ public class EncryptionZoneManager {
    */
   boolean isInAnEZ(INodesInPath iip) throws UnresolvedLinkException,
       SnapshotAccessControlException, IOException {
-    assert dir.hasReadLock();
+    assert dir.hasReadLock() || dir.isOptimisticReading();
     return (getEncryptionZoneForPath(iip) != null);
   }
 
@@ -210,7 +210,7 @@ public class EncryptionZoneManager {
    * Called while holding the FSDirectory lock.
    */
   private String getFullPathName(EncryptionZoneInt ezi) {
-    assert dir.hasReadLock();
+    assert dir.hasReadLock() || dir.isOptimisticReading();
     return dir.getInode(ezi.getINodeId()).getFullPathName();
   }
 
@@ -237,7 +237,7 @@ public class EncryptionZoneManager {
    */
   private EncryptionZoneInt getEncryptionZoneForPath(INodesInPath iip)
       throws IOException {
-    assert dir.hasReadLock();
+    assert dir.hasReadLock() || dir.isOptimisticReading();
     Preconditions.checkNotNull(iip);
     if (!hasCreatedEncryptionZone()) {
       return null;
@@ -51,6 +51,7 @@ class FSDirAclOp {
       List<AclEntry> newAcl = AclTransformation.mergeAclEntries(
           existingAcl, aclSpec);
       AclStorage.updateINodeAcl(inode, newAcl, snapshotId);
+      fsd.invalidatePermissionCache(inode);
       fsd.getEditLog().logSetAcl(src, newAcl);
     } finally {
       fsd.writeUnlock();
@@ -76,6 +77,7 @@ class FSDirAclOp {
       List<AclEntry> newAcl = AclTransformation.filterAclEntriesByAclSpec(
         existingAcl, aclSpec);
       AclStorage.updateINodeAcl(inode, newAcl, snapshotId);
+      fsd.invalidatePermissionCache(inode);
       fsd.getEditLog().logSetAcl(src, newAcl);
     } finally {
       fsd.writeUnlock();
@@ -100,6 +102,7 @@ class FSDirAclOp {
       List<AclEntry> newAcl = AclTransformation.filterDefaultAclEntries(
         existingAcl);
       AclStorage.updateINodeAcl(inode, newAcl, snapshotId);
+      fsd.invalidatePermissionCache(inode);
       fsd.getEditLog().logSetAcl(src, newAcl);
     } finally {
       fsd.writeUnlock();
@@ -189,6 +192,7 @@ class FSDirAclOp {
       newAcl = AclTransformation.replaceAclEntries(existingAcl, aclSpec);
     }
     AclStorage.updateINodeAcl(inode, newAcl, snapshotId);
+    fsd.invalidatePermissionCache(inode);
     return newAcl;
   }
 
@@ -229,5 +233,6 @@ class FSDirAclOp {
     }
 
     inode.removeAclFeature(snapshotId);
+    fsd.invalidatePermissionCache(inode);
   }
 }
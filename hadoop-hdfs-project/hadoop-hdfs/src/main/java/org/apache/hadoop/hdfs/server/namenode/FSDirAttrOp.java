@@ -274,6 +274,7 @@ public class FSDirAttrOp {
     final INode inode = FSDirectory.resolveLastINode(iip);
     int snapshotId = iip.getLatestSnapshotId();
     inode.setPermission(permissions, snapshotId);
+    fsd.invalidatePermissionCache(inode);
   }
 
   static void unprotectedSetOwner(
@@ -288,6 +289,7 @@ public class FSDirAttrOp {
     if (groupname != null) {
       inode.setGroup(groupname, iip.getLatestSnapshotId());
     }
+    fsd.invalidatePermissionCache(inode);
   }
 
   static boolean setTimes(
@@ -398,7 +400,12 @@ public class FSDirAttrOp {
       fsd.updateCount(iip, 0L, size, oldBR, replication, true);
     }
 
-    file.setFileReplication(replication, iip.getLatestSnapshotId());
+    DirectoryUsageFeature.removeUsage(file.getParent(), file);
+    try {
+      file.setFileReplication(replication, iip.getLatestSnapshotId());
+    } finally {
+      DirectoryUsageFeature.addUsage(file.getParent(), file);
+    }
     short targetReplication = (short) Math.max(
         replication, file.getPreferredBlockReplication());
 
@@ -455,6 +462,8 @@ public class FSDirAttrOp {
       throw new FileNotFoundException(iip.getPath()
           + " is not a file or directory");
     }
+    // the storage type usage of the files depends on the policy
+    fsd.invalidateUsage(inode);
   }
 
   private static void setDirStoragePolicy(
@@ -236,24 +236,27 @@ class FSDirConcatOp {
     QuotaCounts deltas = computeQuotaDeltas(fsd, trgInode, srcList);
     verifyQuota(fsd, targetIIP, deltas);
 
+    INodeDirectory trgParent = targetIIP.getINode(-2).asDirectory();
+    DirectoryUsageFeature.removeUsage(trgParent, trgInode);
     // the target file can be included in a snapshot
     trgInode.recordModification(targetIIP.getLatestSnapshotId());
-    INodeDirectory trgParent = targetIIP.getINode(-2).asDirectory();
     trgInode.concatBlocks(srcList, fsd.getBlockManager());
 
     // since we are in the same dir - we can use same parent to remove files
     int count = 0;
     for (INodeFile nodeToRemove : srcList) {
       if(nodeToRemove != null) {
-        nodeToRemove.clearBlocks();
-        // Ensure the nodeToRemove is cleared from snapshot diff list
+        // Ensure the nodeToRemove is cleared from snapshot diff list. It is
+        // removed with its blocks, which the target counts now.
         nodeToRemove.getParent().removeChild(nodeToRemove,
             targetIIP.getLatestSnapshotId());
+        nodeToRemove.clearBlocks();
         fsd.getINodeMap().remove(nodeToRemove);
         count++;
       }
     }
 
+    DirectoryUsageFeature.addUsage(trgParent, trgInode);
     trgInode.setModificationTime(timestamp, targetIIP.getLatestSnapshotId());
     trgParent.updateModificationTime(timestamp, targetIIP.getLatestSnapshotId());
     // update quota on the parent directory with deltas
@@ -248,19 +248,33 @@ class FSDirDeleteOp {
     final int latestSnapshot = iip.getLatestSnapshotId();
     targetNode.recordModification(latestSnapshot);
 
+    // a large subtree is only detached and reclaimed in the background
+    final boolean inLatestSnapshot =
+        targetNode.isInLatestSnapshot(latestSnapshot);
+    final DetachedSubtreeReclaimer reclaimer = fsd.getSubtreeReclaimer();
+    final boolean detach = !inLatestSnapshot && reclaimer.canDetach(targetNode);
+    final INodeDirectory parent = targetNode.getParent();
+
     // Remove the node from the namespace
-    long removed = fsd.removeLastINode(iip);
+    long removed;
+    if (detach) {
+      removed = reclaimer.detach(parent, targetNode.asDirectory()) ? 1 : -1;
+    } else {
+      removed = fsd.removeLastINode(iip);
+    }
     if (removed == -1) {
       return false;
     }
 
     // set the parent's modification time
-    final INodeDirectory parent = targetNode.getParent();
     parent.updateModificationTime(mtime, latestSnapshot);
 
     // collect block and update quota
-    if (!targetNode.isInLatestSnapshot(latestSnapshot)) {
-      targetNode.destroyAndCollectBlocks(reclaimContext);
+    if (!inLatestSnapshot) {
+      // a detached subtree is destroyed by the reclaimer
+      if (!detach) {
+        targetNode.destroyAndCollectBlocks(reclaimContext);
+      }
     } else {
       targetNode.cleanSubtree(reclaimContext, CURRENT_STATE_ID, latestSnapshot);
     }
@@ -695,6 +695,10 @@ class FSDirRenameOp {
         toDst = new INodeReference.DstReference(dstParent.asDirectory(),
             withCount, dstIIP.getLatestSnapshotId());
       }
+      if (toDst.isDirectory()) {
+        // the ancestors of the subtree change
+        fsd.invalidatePermissionCache(toDst);
+      }
       return fsd.addLastINodeNoQuotaCheck(dstParentIIP, toDst);
     }
 
@@ -27,6 +27,7 @@ import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.fs.QuotaUsage;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.FsPermissionExtension;
@@ -44,7 +45,11 @@ import org.apache.hadoop.security.AccessControlException;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
 
 import static org.apache.hadoop.util.Time.now;
 
@@ -81,6 +86,28 @@ class FSDirStatAndListingOp {
     return getListing(fsd, iip, startAfter, needLocation, isSuperUser);
   }
 
+  static DirectoryListing getListingRecursiveInt(FSDirectory fsd,
+      final String srcArg, byte[] startAfter, boolean needLocation)
+      throws IOException {
+    final FSPermissionChecker pc = fsd.getPermissionChecker();
+    final INodesInPath iip = fsd.resolvePath(pc, srcArg, DirOp.READ);
+    if (FSDirectory.isExactReservedName(iip.getPathComponents())
+        || iip.isDotSnapshotDir()) {
+      // the subtrees of the virtual directories are not walked
+      return getListing(fsd, iip, startAfter, needLocation, false);
+    }
+
+    boolean isSuperUser = true;
+    if (fsd.isPermissionEnabled()) {
+      if (iip.getLastINode() != null && iip.getLastINode().isDirectory()) {
+        fsd.checkPathAccess(pc, iip, FsAction.READ_EXECUTE);
+      }
+      isSuperUser = pc.isSuperUser();
+    }
+    return getListingRecursive(fsd, isSuperUser ? null : pc, iip, startAfter,
+        needLocation, isSuperUser);
+  }
+
   /**
    * Get the file info for a specific file.
    *
@@ -273,13 +300,172 @@ class FSDirStatAndListingOp {
     }
   }
 
+  /**
+   * A directory on the path of a depth-first listing.
+   */
+  private static class ListingFrame {
+    private final INodesInPath iip;
+    /** The path of the directory relative to the listed one. */
+    private final byte[] relativePath;
+    private final byte storagePolicy;
+    private final ReadOnlyList<INode> children;
+    /** The index of the next child to list. */
+    private int next = 0;
+
+    ListingFrame(INodesInPath iip, byte[] relativePath, byte storagePolicy) {
+      this.iip = iip;
+      this.relativePath = relativePath;
+      this.storagePolicy = storagePolicy;
+      this.children = iip.getLastINode().asDirectory().getChildrenList(
+          iip.getPathSnapshotId());
+    }
+
+    boolean hasNext() {
+      return next < children.size();
+    }
+
+    byte[] getChildPath(byte[] name) {
+      return relativePath.length == 0 ? name
+          : DFSUtilClient.byteArray2bytes(new byte[][] {relativePath, name});
+    }
+  }
+
+  /**
+   * Get a partial depth-first listing of the subtree of the indicated
+   * directory, see {@link ClientProtocol#getListingRecursive}.
+   *
+   * The walk keeps a stack of the directories on the path to the current
+   * entry. It is resumed by looking up each component of startAfter, the
+   * relative path of the last listed entry, in the children of the directory
+   * of the previous component; an entry removed since is skipped by starting
+   * with the next child in name order. The limits of a listing are the same
+   * as for {@link #getListing}.
+   *
+   * @param fsd FSDirectory
+   * @param pc the permission checker for the directories of the subtree, or
+   *           null to not check the permissions
+   * @param iip the INodesInPath of the listed path
+   * @param startAfter the relative path to start listing after
+   * @param needLocation if block locations are returned
+   * @param includeStoragePolicy if storage policy is returned
+   * @return a partial listing starting after startAfter
+   */
+  private static DirectoryListing getListingRecursive(FSDirectory fsd,
+      FSPermissionChecker pc, INodesInPath iip, byte[] startAfter,
+      boolean needLocation, boolean includeStoragePolicy)
+      throws IOException {
+    fsd.readLock();
+    try {
+      final INode targetNode = iip.getLastINode();
+      if (targetNode == null) {
+        return null;
+      }
+      final byte parentStoragePolicy = includeStoragePolicy
+          ? targetNode.getStoragePolicyID()
+          : HdfsConstants.BLOCK_STORAGE_POLICY_ID_UNSPECIFIED;
+      if (!targetNode.isDirectory()) {
+        // the listing of a file only contains the file
+        return new DirectoryListing(startAfter.length > 0
+            ? new HdfsFileStatus[0]
+            : new HdfsFileStatus[]{ createFileStatus(
+                fsd, iip, null, parentStoragePolicy, needLocation)
+            }, 0);
+      }
+
+      final Deque<ListingFrame> stack = new ArrayDeque<>();
+      ListingFrame frame = new ListingFrame(iip, HdfsFileStatus.EMPTY_NAME,
+          parentStoragePolicy);
+      stack.push(frame);
+      if (startAfter.length > 0) {
+        for (byte[] name : DFSUtil.bytes2byteArray(startAfter,
+            (byte) Path.SEPARATOR_CHAR)) {
+          if (name == null) {
+            break;
+          }
+          final int i = ReadOnlyList.Util.binarySearch(frame.children, name);
+          frame.next = i < 0 ? -i - 1 : i + 1;
+          if (i < 0 || !frame.children.get(i).isDirectory()) {
+            break;
+          }
+          // the directory was listed, but not all of its children
+          final INode child = frame.children.get(i);
+          frame = descend(pc, child,
+              INodesInPath.append(frame.iip, child, name),
+              frame.getChildPath(name),
+              getChildStoragePolicy(child, frame, includeStoragePolicy));
+          stack.push(frame);
+        }
+      }
+
+      final int lsLimit = fsd.getLsLimit();
+      int locationBudget = lsLimit;
+      final List<HdfsFileStatus> listing = new ArrayList<>();
+      while (!stack.isEmpty() && listing.size() < lsLimit
+          && locationBudget > 0) {
+        frame = stack.peek();
+        if (!frame.hasNext()) {
+          stack.pop();
+          continue;
+        }
+        final INode child = frame.children.get(frame.next++);
+        final byte[] name = child.getLocalNameBytes();
+        final INodesInPath childIip = INodesInPath.append(frame.iip, child,
+            name);
+        final byte childStoragePolicy =
+            getChildStoragePolicy(child, frame, includeStoragePolicy);
+        final byte[] childPath = frame.getChildPath(name);
+        final HdfsFileStatus status = createNamedFileStatus(fsd, childIip,
+            childPath, childStoragePolicy, needLocation);
+        listing.add(status);
+        if (status instanceof HdfsLocatedFileStatus) {
+          LocatedBlocks blks =
+              ((HdfsLocatedFileStatus) status).getBlockLocations();
+          locationBudget -= (blks == null) ? 0 :
+              blks.locatedBlockCount() * status.getReplication();
+        }
+        if (child.isDirectory()) {
+          stack.push(descend(pc, child, childIip, childPath,
+              childStoragePolicy));
+        }
+      }
+      // drop the listed directories to tell whether there are more entries
+      while (!stack.isEmpty() && !stack.peek().hasNext()) {
+        stack.pop();
+      }
+      return new DirectoryListing(
+          listing.toArray(new HdfsFileStatus[listing.size()]),
+          stack.isEmpty() ? 0 : 1);
+    } finally {
+      fsd.readUnlock();
+    }
+  }
+
+  private static byte getChildStoragePolicy(INode child, ListingFrame parent,
+      boolean includeStoragePolicy) {
+    return (includeStoragePolicy && !child.isSymlink())
+        ? getStoragePolicyID(child.getLocalStoragePolicyID(),
+            parent.storagePolicy)
+        : parent.storagePolicy;
+  }
+
+  /** Check the access to list a directory of the subtree. */
+  private static ListingFrame descend(FSPermissionChecker pc, INode dir,
+      INodesInPath dirIip, byte[] relativePath, byte storagePolicy)
+      throws AccessControlException {
+    if (pc != null) {
+      pc.checkPermission(dir, dirIip.getPathSnapshotId(),
+          FsAction.READ_EXECUTE);
+    }
+    return new ListingFrame(dirIip, relativePath, storagePolicy);
+  }
+
   /**
    * Get a listing of all the snapshots of a snapshottable directory
    */
   private static DirectoryListing getSnapshotsListing(
       FSDirectory fsd, INodesInPath iip, byte[] startAfter)
       throws IOException {
-    Preconditions.checkState(fsd.hasReadLock());
+    Preconditions.checkState(fsd.hasReadLock() || fsd.isOptimisticReading());
     Preconditions.checkArgument(iip.isDotSnapshotDir(),
         "%s does not end with %s",
         iip.getPath(), HdfsConstants.SEPARATOR_DOT_SNAPSHOT_DIR);
@@ -387,7 +573,7 @@ class FSDirStatAndListingOp {
   private static HdfsFileStatus createFileStatus(
       FSDirectory fsd, INodesInPath iip, INode child, byte storagePolicy,
       boolean needLocation) throws IOException {
-    assert fsd.hasReadLock();
+    assert fsd.hasReadLock() || fsd.isOptimisticReading();
     // only directory listing sets the status name.
     byte[] name = HdfsFileStatus.EMPTY_NAME;
     if (child != null) {
@@ -395,7 +581,17 @@ class FSDirStatAndListingOp {
       // have to do this for EC and EZ lookups...
       iip = INodesInPath.append(iip, child, name);
     }
+    return createNamedFileStatus(fsd, iip, name, storagePolicy,
+        needLocation);
+  }
 
+  /**
+   * create a hdfs file status with the given name for the last inode of an
+   * iip.
+   */
+  private static HdfsFileStatus createNamedFileStatus(FSDirectory fsd,
+      INodesInPath iip, byte[] name, byte storagePolicy,
+      boolean needLocation) throws IOException {
     long size = 0;     // length is zero for directories
     short replication = 0;
     long blocksize = 0;
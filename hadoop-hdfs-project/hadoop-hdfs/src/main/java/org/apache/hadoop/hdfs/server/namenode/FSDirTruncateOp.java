@@ -287,13 +287,19 @@ final class FSDirTruncateOp {
 
     INodeFile file = iip.getLastINode().asFile();
     int latestSnapshot = iip.getLatestSnapshotId();
-    file.recordModification(latestSnapshot, true);
+    final long remainingLength;
+    DirectoryUsageFeature.removeUsage(file.getParent(), file);
+    try {
+      file.recordModification(latestSnapshot, true);
 
-    verifyQuotaForTruncate(fsn, iip, file, newLength, delta);
+      verifyQuotaForTruncate(fsn, iip, file, newLength, delta);
 
-    Set<BlockInfo> toRetain = file.getSnapshotBlocksToRetain(latestSnapshot);
-    long remainingLength = file.collectBlocksBeyondMax(newLength,
-        collectedBlocks, toRetain);
+      Set<BlockInfo> toRetain = file.getSnapshotBlocksToRetain(latestSnapshot);
+      remainingLength = file.collectBlocksBeyondMax(newLength,
+          collectedBlocks, toRetain);
+    } finally {
+      DirectoryUsageFeature.addUsage(file.getParent(), file);
+    }
     file.setModificationTime(mtime);
     // return whether on a block boundary
     return (remainingLength - newLength) == 0;
@@ -194,6 +194,9 @@ class FSDirXAttrOp {
                                               removedXAttrs);
     if (existingXAttrs.size() != newXAttrs.size()) {
       XAttrStorage.updateINodeXAttrs(inode, newXAttrs, snapshotId);
+      if (hasSecurityXAttr(removedXAttrs)) {
+        fsd.invalidatePermissionCache(inode);
+      }
       return removedXAttrs;
     }
     return null;
@@ -283,9 +286,25 @@ class FSDirXAttrOp {
     }
 
     XAttrStorage.updateINodeXAttrs(inode, newXAttrs, iip.getLatestSnapshotId());
+    if (hasSecurityXAttr(xAttrs)) {
+      fsd.invalidatePermissionCache(inode);
+    }
     return inode;
   }
 
+  /**
+   * @return true if one of the xattrs is in the security namespace. The
+   *         other xattrs do not change the permission checks.
+   */
+  private static boolean hasSecurityXAttr(List<XAttr> xAttrs) {
+    for (XAttr xAttr : xAttrs) {
+      if (xAttr.getNameSpace() == XAttr.NameSpace.SECURITY) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   static List<XAttr> setINodeXAttrs(
       FSDirectory fsd, final List<XAttr> existingXAttrs,
       final List<XAttr> toSet, final EnumSet<XAttrSetFlag> flag)
@@ -71,11 +71,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -151,7 +155,17 @@ public class FSDirectory implements Closeable {
   private final int lsLimit;  // max list limit
   private final int contentCountLimit; // max content summary counts per run
   private final long contentSleepMicroSec;
+  private final boolean usageIndexEnabled;
+  private final long usageIndexMinEntries;
+  /** The directories with a {@link DirectoryUsageFeature}. */
+  private final Set<INodeDirectory> indexedDirs =
+      Collections.newSetFromMap(
+          new ConcurrentHashMap<INodeDirectory, Boolean>());
+  private final DirectoryUsageIndexer usageIndexer;
+  private final DetachedSubtreeReclaimer subtreeReclaimer;
   private final INodeMap inodeMap; // Synchronized by dirLock
+  /** Serializes quota usage updates of partitioned writers. */
+  private final Object quotaUpdateLock = new Object();
   private long yieldCount = 0; // keep track of lock yield count.
   private int quotaInitThreads;
 
@@ -194,6 +208,9 @@ public class FSDirectory implements Closeable {
 
   private INodeAttributeProvider attributeProvider;
 
+  // null if the permission checks are not cached
+  private final PermissionCache permissionCache;
+
   // A HashSet of principals of users for whom the external attribute provider
   // will be bypassed
   private HashSet<String> usersToBypassExtAttrProvider = null;
@@ -202,31 +219,54 @@ public class FSDirectory implements Closeable {
     attributeProvider = provider;
   }
 
-  // utility methods to acquire and release read lock and write lock
+  // utility methods to acquire and release read lock and write lock.
+  // A thread holding namespace partition locks of the FSNamesystem already
+  // has exclusive access to the directories it modifies, so the directory
+  // lock is bypassed; otherwise it would serialize all partitioned writers.
   void readLock() {
-    this.dirLock.readLock().lock();
+    // optimistic readers are validated against the writers instead
+    if (!namesystem.hasPartitionWriteLock() &&
+        !namesystem.isOptimisticReading()) {
+      this.dirLock.readLock().lock();
+    }
   }
 
   void readUnlock() {
-    this.dirLock.readLock().unlock();
+    if (!namesystem.hasPartitionWriteLock() &&
+        !namesystem.isOptimisticReading()) {
+      this.dirLock.readLock().unlock();
+    }
   }
 
   void writeLock() {
-    this.dirLock.writeLock().lock();
+    if (!namesystem.hasPartitionWriteLock()) {
+      this.dirLock.writeLock().lock();
+    }
   }
 
   void writeUnlock() {
-    this.dirLock.writeLock().unlock();
+    if (!namesystem.hasPartitionWriteLock()) {
+      this.dirLock.writeLock().unlock();
+    }
   }
 
   boolean hasWriteLock() {
-    return this.dirLock.isWriteLockedByCurrentThread();
+    return this.dirLock.isWriteLockedByCurrentThread() ||
+        namesystem.hasPartitionWriteLock();
   }
 
   boolean hasReadLock() {
     return this.dirLock.getReadHoldCount() > 0 || hasWriteLock();
   }
 
+  /**
+   * @return true if the current thread reads without any lock, see
+   *         {@link FSNamesystem#isOptimisticReading()}.
+   */
+  boolean isOptimisticReading() {
+    return namesystem.isOptimisticReading();
+  }
+
   public int getReadHoldCount() {
     return this.dirLock.getReadHoldCount();
   }
@@ -312,6 +352,14 @@ public class FSDirectory implements Closeable {
     this.contentSleepMicroSec = conf.getLong(
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_KEY,
         DFSConfigKeys.DFS_CONTENT_SUMMARY_SLEEP_MICROSEC_DEFAULT);
+    this.usageIndexEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_USAGE_INDEX_ENABLED_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_USAGE_INDEX_ENABLED_DEFAULT);
+    this.usageIndexMinEntries = conf.getLong(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_USAGE_INDEX_MIN_ENTRIES_KEY,
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_USAGE_INDEX_MIN_ENTRIES_DEFAULT);
+    this.subtreeReclaimer = new DetachedSubtreeReclaimer(this, conf);
+    this.usageIndexer = new DirectoryUsageIndexer(this);
     
     // filesystem limits
     this.maxComponentLength = conf.getInt(
@@ -348,6 +396,21 @@ public class FSDirectory implements Closeable {
     this.editLog = ns.getEditLog();
     ezManager = new EncryptionZoneManager(this, conf);
 
+    if (conf.getBoolean(DFSConfigKeys.DFS_NAMENODE_PERMISSION_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_PERMISSION_CACHE_ENABLED_DEFAULT)) {
+      final long size = conf.getLong(
+          DFSConfigKeys.DFS_NAMENODE_PERMISSION_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_NAMENODE_PERMISSION_CACHE_SIZE_DEFAULT);
+      final long expiryMs = conf.getLong(
+          DFSConfigKeys.DFS_NAMENODE_PERMISSION_CACHE_EXPIRY_MS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_PERMISSION_CACHE_EXPIRY_MS_DEFAULT);
+      NameNode.LOG.info("Caching up to " + size + " permission checks for "
+          + expiryMs + " ms");
+      permissionCache = new PermissionCache(ns, size, expiryMs);
+    } else {
+      permissionCache = null;
+    }
+
     this.quotaInitThreads = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_QUOTA_INIT_THREADS_KEY,
         DFSConfigKeys.DFS_NAMENODE_QUOTA_INIT_THREADS_DEFAULT);
@@ -546,6 +609,78 @@ public class FSDirectory implements Closeable {
     return contentSleepMicroSec;
   }
 
+  boolean isUsageIndexEnabled() {
+    return usageIndexEnabled;
+  }
+
+  long getUsageIndexMinEntries() {
+    return usageIndexMinEntries;
+  }
+
+  DetachedSubtreeReclaimer getSubtreeReclaimer() {
+    return subtreeReclaimer;
+  }
+
+  DirectoryUsageIndexer getUsageIndexer() {
+    return usageIndexer;
+  }
+
+  /**
+   * Reset the content summary counts of the subtree of an inode, after an
+   * operation which changes them without adding or removing inodes, e.g.
+   * setting a storage policy. The {@link DirectoryUsageFeature}s of the
+   * ancestors of the inode and of the directories in its subtree compute
+   * their counts again when they are used.
+   */
+  public void invalidateUsage(INode inode) {
+    if (!usageIndexEnabled) {
+      return;
+    }
+    if (!inode.isDirectory()) {
+      DirectoryUsageFeature.resetAncestors(inode.getParent());
+      return;
+    }
+    final INodeDirectory root = inode.asDirectory();
+    DirectoryUsageFeature.resetAncestors(root);
+    for (Iterator<INodeDirectory> it = indexedDirs.iterator();
+         it.hasNext();) {
+      final INodeDirectory dir = it.next();
+      final DirectoryUsageFeature f = dir.getDirectoryUsageFeature();
+      if (f == null || isDetached(dir)) {
+        it.remove();
+      } else if (dir.isAncestorDirectory(root)) {
+        f.reset();
+      }
+    }
+  }
+
+  /**
+   * Add a {@link DirectoryUsageFeature} to a directory later, since the
+   * content summary computations only hold the read lock.
+   */
+  void addDirectoryUsageFeatureLater(INodeDirectory dir) {
+    usageIndexer.add(dir);
+  }
+
+  /**
+   * Add a {@link DirectoryUsageFeature} to the given directories which are
+   * still in the namespace.
+   */
+  void addDirectoryUsageFeatures(Collection<INodeDirectory> dirs) {
+    assert namesystem.hasWriteLock();
+    writeLock();
+    try {
+      for (INodeDirectory dir : dirs) {
+        if (!isDetached(dir)) {
+          dir.addDirectoryUsageFeature(this);
+          indexedDirs.add(dir);
+        }
+      }
+    } finally {
+      writeUnlock();
+    }
+  }
+
   int getInodeXAttrsLimit() {
     return inodeXAttrsLimit;
   }
@@ -621,20 +756,26 @@ public class FSDirectory implements Closeable {
       throw new InvalidPathException("Invalid file name: " + src);
     }
 
-    byte[][] components = INode.getPathComponents(src);
-    boolean isRaw = isReservedRawName(components);
-    if (isPermissionEnabled && pc != null && isRaw) {
-      switch(dirOp) {
-        case READ_LINK:
-        case READ:
-          break;
-        default:
-          pc.checkSuperuserPrivilege();
-          break;
+    // most paths are resolved without copying their components
+    final PathComponents pathComponents = PathComponents.get(src);
+    INodesInPath iip = isReservedName(pathComponents) ? null
+        : INodesInPath.resolve(rootDir, pathComponents);
+    if (iip == null) {
+      byte[][] components = pathComponents.toArray();
+      boolean isRaw = isReservedRawName(components);
+      if (isPermissionEnabled && pc != null && isRaw) {
+        switch(dirOp) {
+          case READ_LINK:
+          case READ:
+            break;
+          default:
+            pc.checkSuperuserPrivilege();
+            break;
+        }
       }
+      components = resolveComponents(components, this);
+      iip = INodesInPath.resolve(rootDir, components, isRaw);
     }
-    components = resolveComponents(components, this);
-    INodesInPath iip = INodesInPath.resolve(rootDir, components, isRaw);
     // verify all ancestors are dirs and traversable.  note that only
     // methods that create new namespace items have the signature to throw
     // PNDE
@@ -943,10 +1084,14 @@ public class FSDirectory implements Closeable {
     if (numOfINodes > iip.length()) {
       numOfINodes = iip.length();
     }
-    if (checkQuota && !skipQuotaCheck) {
-      verifyQuota(iip, numOfINodes, counts, null);
+    // Partitioned writers share the ancestors above their parent directory,
+    // so the check and the update of the ancestors' usage must be atomic.
+    synchronized (quotaUpdateLock) {
+      if (checkQuota && !skipQuotaCheck) {
+        verifyQuota(iip, numOfINodes, counts, null);
+      }
+      unprotectedUpdateCount(iip, numOfINodes, counts);
     }
-    unprotectedUpdateCount(iip, numOfINodes, counts);
   }
   
   /** 
@@ -970,8 +1115,9 @@ public class FSDirectory implements Closeable {
   static void unprotectedUpdateCount(INodesInPath inodesInPath,
       int numOfINodes, QuotaCounts counts) {
     for(int i=0; i < numOfINodes; i++) {
-      if (inodesInPath.getINode(i).isQuotaSet()) { // a directory with quota
-        inodesInPath.getINode(i).asDirectory().getDirectoryWithQuotaFeature()
+      final INode inode = inodesInPath.getINode(i);
+      if (inode.isQuotaSet()) { // a directory with quota
+        inode.asDirectory().getDirectoryWithQuotaFeature()
             .addSpaceConsumed2Cache(counts);
       }
     }
@@ -1308,7 +1454,14 @@ public class FSDirectory implements Closeable {
    */
   public final void addToInodeMap(INode inode) {
     if (inode instanceof INodeWithAdditionalFields) {
-      inodeMap.put(inode);
+      if (namesystem.hasPartitionWriteLock()) {
+        // other partitioned writers may be adding inodes concurrently
+        synchronized (inodeMap) {
+          inodeMap.put(inode);
+        }
+      } else {
+        inodeMap.put(inode);
+      }
       if (!inode.isSymlink()) {
         final XAttrFeature xaf = inode.getXAttrFeature();
         addEncryptionZone((INodeWithAdditionalFields) inode, xaf);
@@ -1369,6 +1522,12 @@ public class FSDirectory implements Closeable {
   public INode getInode(long id) {
     readLock();
     try {
+      if (namesystem.hasPartitionWriteLock()) {
+        // other partitioned writers may be adding inodes concurrently
+        synchronized (inodeMap) {
+          return inodeMap.get(id);
+        }
+      }
       return inodeMap.get(id);
     } finally {
       readUnlock();
@@ -1392,9 +1551,16 @@ public class FSDirectory implements Closeable {
     try {
       rootDir = createRoot(getFSNamesystem());
       inodeMap.clear();
+      subtreeReclaimer.clear();
+      usageIndexer.clear();
+      indexedDirs.clear();
       addToInodeMap(rootDir);
       nameCache.reset();
       inodeId.setCurrentValue(INodeId.LAST_RESERVED_ID);
+      // the inode ids are reused
+      if (permissionCache != null) {
+        permissionCache.clear();
+      }
     } finally {
       writeUnlock();
     }
@@ -1483,6 +1649,12 @@ public class FSDirectory implements Closeable {
             Arrays.equals(DOT_RESERVED, components[1]);
   }
 
+  static boolean isReservedName(PathComponents components) {
+    return components.size() > 1 &&
+        components.equals(0, INodeDirectory.ROOT_NAME) &&
+        components.equals(1, DOT_RESERVED);
+  }
+
   static boolean isReservedRawName(byte[][] components) {
     return (components.length > 2) &&
            isReservedName(components) &&
@@ -1557,7 +1729,7 @@ public class FSDirectory implements Closeable {
       return new byte[][]{INodeDirectory.ROOT_NAME};
     }
     INode inode = fsd.getInode(id);
-    if (inode == null) {
+    if (inode == null || isDetached(inode)) {
       throw new FileNotFoundException(
           "File for given inode path does not exist: " +
               DFSUtil.byteArray2PathString(pathComponents));
@@ -1577,6 +1749,17 @@ public class FSDirectory implements Closeable {
         inode.getPathComponents(), pathComponents, 4);
   }
 
+  /**
+   * @return true if the inode is in a subtree detached by an asynchronous
+   *         delete and not reclaimed yet.
+   */
+  static boolean isDetached(INode inode) {
+    while (inode.getParent() != null) {
+      inode = inode.getParent();
+    }
+    return !inode.isRoot();
+  }
+
   private static byte[][] constructRemainingPath(byte[][] components,
       byte[][] extraComponents, int startAt) {
     int remainder = extraComponents.length - startAt;
@@ -1619,7 +1802,13 @@ public class FSDirectory implements Closeable {
   public INodesInPath getINodesInPath(String src, DirOp dirOp)
       throws UnresolvedLinkException, AccessControlException,
       ParentNotDirectoryException {
-    return getINodesInPath(INode.getPathComponents(src), dirOp);
+    final PathComponents components = PathComponents.get(src);
+    INodesInPath iip = INodesInPath.resolve(rootDir, components);
+    if (iip == null) {
+      return getINodesInPath(components.toArray(), dirOp);
+    }
+    checkTraverse(null, iip, dirOp);
+    return iip;
   }
 
   public INodesInPath getINodesInPath(byte[][] components, DirOp dirOp)
@@ -1672,8 +1861,24 @@ public class FSDirectory implements Closeable {
   @VisibleForTesting
   FSPermissionChecker getPermissionChecker(String fsOwner, String superGroup,
       UserGroupInformation ugi) throws AccessControlException {
-    return new FSPermissionChecker(
-        fsOwner, superGroup, ugi, getUserFilteredAttributeProvider(ugi));
+    return new FSPermissionChecker(fsOwner, superGroup, ugi,
+        getUserFilteredAttributeProvider(ugi), permissionCache);
+  }
+
+  /** @return the cache of the permission checks, or null if disabled. */
+  PermissionCache getPermissionCache() {
+    return permissionCache;
+  }
+
+  /**
+   * Invalidate the cached permission checks of an inode and its descendants
+   * after a change that may revoke them, e.g. a change of the permissions of
+   * the inode.
+   */
+  void invalidatePermissionCache(INode inode) {
+    if (permissionCache != null) {
+      permissionCache.invalidate(inode);
+    }
   }
 
   void checkOwner(FSPermissionChecker pc, INodesInPath iip)
@@ -275,9 +275,12 @@ public class FSEditLog implements LogsPurgeable {
     int minimumRedundantJournals = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_EDITS_DIR_MINIMUM_KEY,
         DFSConfigKeys.DFS_NAMENODE_EDITS_DIR_MINIMUM_DEFAULT);
+    boolean parallelFlush = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_EDITS_PARALLEL_FLUSH_KEY,
+        DFSConfigKeys.DFS_NAMENODE_EDITS_PARALLEL_FLUSH_DEFAULT);
 
     synchronized(journalSetLock) {
-      journalSet = new JournalSet(minimumRedundantJournals);
+      journalSet = new JournalSet(minimumRedundantJournals, parallelFlush);
 
       for (URI u : dirs) {
         boolean required = FSNamesystem.getRequiredNamespaceEditsDirs(conf)
@@ -724,6 +727,7 @@ public class FSEditLog implements LogsPurgeable {
       if (metrics != null) { // Metrics non-null only when used inside name node
         metrics.addSync(elapsed);
         metrics.incrTransactionsBatchedInSync(editsBatchedInSync);
+        metrics.addSyncBatchSize(editsBatchedInSync + 1);
         numTransactionsBatchedInSync.addAndGet(editsBatchedInSync);
       }
       
@@ -25,14 +25,17 @@ import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.util.ExitUtil;
+import org.apache.hadoop.util.Time;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 
@@ -53,10 +56,18 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
   // of the edit log buffer - ie. a sync will eventually be forced.
   private final Deque<Edit> syncWaitQ = new ArrayDeque<Edit>();
 
+  // only accessed by syncing thread.
+  private final GroupCommit groupCommit;
+
   FSEditLogAsync(Configuration conf, NNStorage storage, List<URI> editsDirs) {
     super(conf, storage, editsDirs);
     // op instances cannot be shared due to queuing for background thread.
     cache.disableCache();
+    long maxDelayUs = conf.getLong(DFSConfigKeys.
+        DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_MAX_DELAY_US_KEY,
+        DFSConfigKeys.
+        DFS_NAMENODE_EDITS_ASYNC_LOGGING_GROUP_COMMIT_MAX_DELAY_US_DEFAULT);
+    groupCommit = new GroupCommit(TimeUnit.MICROSECONDS.toNanos(maxDelayUs));
   }
 
   private boolean isSyncThreadAlive() {
@@ -218,7 +229,19 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
 
   private Edit dequeueEdit() throws InterruptedException {
     // only block for next edit if no pending syncs.
-    return syncWaitQ.isEmpty() ? editPendingQ.take() : editPendingQ.poll();
+    if (syncWaitQ.isEmpty()) {
+      return editPendingQ.take();
+    }
+    Edit edit = editPendingQ.poll();
+    if (edit == null) {
+      // wait a little for more edits to group into the sync.
+      long waitNanos = groupCommit.getWaitNanos(syncWaitQ.size(),
+          Time.monotonicNowNanos());
+      if (waitNanos > 0) {
+        edit = editPendingQ.poll(waitNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+    return edit;
   }
 
   @Override
@@ -239,11 +262,14 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
           // normally edit log exceptions cause the NN to terminate, but tests
           // relying on ExitUtil.terminate need to see the exception.
           RuntimeException syncEx = null;
+          final long syncStart = Time.monotonicNowNanos();
           try {
             logSync(getLastWrittenTxId());
           } catch (RuntimeException ex) {
             syncEx = ex;
           }
+          groupCommit.synced(syncWaitQ.size(),
+              Time.monotonicNowNanos() - syncStart);
           while ((edit = syncWaitQ.poll()) != null) {
             edit.logSyncNotify(syncEx);
           }
@@ -262,6 +288,65 @@ class FSEditLogAsync extends FSEditLog implements Runnable {
     ExitUtil.terminate(1, message);
   }
 
+  /**
+   * Decides how long the sync thread waits for more edits when the queue ran
+   * dry. Without load every edit is synced as soon as it is logged. When the
+   * syncs include more edits than the target batch size, i.e. the edits keep
+   * arriving while syncing, the target doubles, so that the next syncs wait
+   * for more edits and fewer syncs are needed for the same edits. When a sync
+   * includes fewer edits, the target halves. The wait is bounded by the
+   * configured maximum delay and by half the time of the previous sync.
+   */
+  @VisibleForTesting
+  static class GroupCommit {
+    private static final int MAX_BATCH_SIZE = 4096;
+
+    private final long maxDelayNanos;
+    private int targetBatchSize = 1;
+    private long lastSyncNanos = 0;
+    /** The time until which the current batch waits, or 0 if none. */
+    private long deadlineNanos = 0;
+
+    GroupCommit(long maxDelayNanos) {
+      this.maxDelayNanos = maxDelayNanos;
+    }
+
+    /**
+     * @param pending the number of edits pending a sync
+     * @param now the current time in nanoseconds
+     * @return the time to wait for more edits before syncing.
+     */
+    long getWaitNanos(int pending, long now) {
+      if (maxDelayNanos <= 0 || pending >= targetBatchSize) {
+        return 0;
+      }
+      if (deadlineNanos == 0) {
+        deadlineNanos = now + Math.min(maxDelayNanos, lastSyncNanos / 2);
+      }
+      return Math.max(0, deadlineNanos - now);
+    }
+
+    /**
+     * Called after a sync to adapt the target batch size.
+     * @param batchSize the number of edits synced
+     * @param syncNanos the time the sync took
+     */
+    void synced(int batchSize, long syncNanos) {
+      lastSyncNanos = syncNanos;
+      deadlineNanos = 0;
+      if (batchSize > targetBatchSize) {
+        targetBatchSize = Math.min(targetBatchSize * 2, MAX_BATCH_SIZE);
+      } else if (batchSize < targetBatchSize) {
+        targetBatchSize = Math.max(targetBatchSize / 2, 1);
+      }
+    }
+
+    @VisibleForTesting
+    int getTargetBatchSize() {
+      return targetBatchSize;
+    }
+  }
+
   private Edit getEditInstance(FSEditLogOp op) {
     final Edit edit;
     final Server.Call rpcCall = Server.getCurCall().get();
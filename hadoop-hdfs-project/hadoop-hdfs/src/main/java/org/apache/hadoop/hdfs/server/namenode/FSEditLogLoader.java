@@ -22,10 +22,13 @@ import static org.apache.hadoop.hdfs.server.namenode.FSImageFormat.renameReserve
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -95,6 +98,7 @@ import org.apache.hadoop.hdfs.server.namenode.INode.BlocksMapUpdateInfo;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeFile;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.Phase;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StartupProgress.Counter;
@@ -102,11 +106,13 @@ import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.util.Holder;
 import org.apache.hadoop.log.LogThrottlingHelper;
 import org.apache.hadoop.util.ChunkedArrayList;
+import org.apache.hadoop.util.Daemon;
 import org.apache.hadoop.util.Timer;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 
 import static org.apache.hadoop.log.LogThrottlingHelper.LogAction;
 
@@ -128,6 +134,8 @@ public class FSEditLogLoader {
   private long lastAppliedTxId;
   /** Total number of end transactions loaded. */
   private int totalEdits = 0;
+  /** Number of ops read ahead of the replay, 0 to read them inline. */
+  private int prefetchOps = 0;
   
   public FSEditLogLoader(FSNamesystem fsNamesys, long lastAppliedTxId) {
     this(fsNamesys, lastAppliedTxId, new Timer());
@@ -141,6 +149,15 @@ public class FSEditLogLoader {
     this.timer = timer;
   }
   
+  /**
+   * Read and decode the ops of a stream on a separate thread, up to the given
+   * number of ops ahead of the replay. Ops are always read inline in recovery
+   * mode.
+   */
+  void setPrefetchOps(int prefetchOps) {
+    this.prefetchOps = prefetchOps;
+  }
+
   long loadFSEdits(EditLogInputStream edits, long expectedStartingTxId)
       throws IOException {
     return loadFSEdits(edits, expectedStartingTxId, null, null);
@@ -211,15 +228,31 @@ public class FSEditLogLoader {
     Step step = createStartupProgressStep(in);
     prog.setTotal(Phase.LOADING_EDITS, step, numTxns);
     Counter counter = prog.getCounter(Phase.LOADING_EDITS, step);
-    long lastLogTime = timer.monotonicNow();
+    long startTime = timer.monotonicNow();
+    long lastLogTime = startTime;
     long lastInodeId = fsNamesys.dir.getLastInodeId();
+    OpPrefetcher prefetcher = null;
+    if (prefetchOps > 0 && recovery == null) {
+      prefetcher = new OpPrefetcher(in, prefetchOps);
+      prefetcher.start();
+    }
     
     try {
       while (true) {
         try {
           FSEditLogOp op;
+          long position;
+          int logVersion;
           try {
-            op = in.readOp();
+            if (prefetcher != null) {
+              op = prefetcher.next();
+              position = prefetcher.getPosition();
+              logVersion = prefetcher.getVersion();
+            } else {
+              op = in.readOp();
+              position = in.getPosition();
+              logVersion = op == null ? 0 : in.getVersion(true);
+            }
             if (op == null) {
               break;
             }
@@ -241,7 +274,7 @@ public class FSEditLogLoader {
             continue;
           }
           recentOpcodeOffsets[(int)(numEdits % recentOpcodeOffsets.length)] =
-            in.getPosition();
+            position;
           if (op.hasTransactionId()) {
             if (op.getTransactionId() > expectedTxId) { 
               MetaRecoveryContext.editLogLoaderPrompt("There appears " +
@@ -264,7 +297,7 @@ public class FSEditLogLoader {
                   + ", numEdits=" + numEdits + ", totalEdits=" + totalEdits);
             }
             long inodeId = applyEditLogOp(op, fsDir, startOpt,
-                in.getVersion(true), lastInodeId);
+                logVersion, lastInodeId);
             if (lastInodeId < inodeId) {
               lastInodeId = inodeId;
             }
@@ -312,6 +345,9 @@ public class FSEditLogLoader {
         }
       }
     } finally {
+      if (prefetcher != null) {
+        prefetcher.stop();
+      }
       fsNamesys.dir.resetLastInodeId(lastInodeId);
       if(closeOnExit) {
         in.close();
@@ -327,6 +363,10 @@ public class FSEditLogLoader {
         dumpOpCounts(opCounts);
       }
     }
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null && numEdits > 0) {
+      metrics.addEditLogReplay(numEdits, timer.monotonicNow() - startTime);
+    }
     return numEdits;
   }
   
@@ -1221,6 +1261,113 @@ public class FSEditLogLoader {
     boolean hasCorruptHeader() { return hasCorruptHeader; }
   }
 
+  /**
+   * Reads and decodes the ops of a stream on a separate thread, so that
+   * reading, checksum verification and deserialization of the following ops
+   * overlap with applying the current one. The ops are handed over through a
+   * bounded queue. A read error ends the stream and is rethrown by
+   * {@link #next()}.
+   */
+  private static class OpPrefetcher implements Runnable {
+    private final EditLogInputStream in;
+    private final BlockingQueue<Entry> queue;
+    private final Thread thread;
+    private volatile boolean stopped = false;
+    /** Position and version of the stream after the last op returned. */
+    private long position;
+    private int version;
+
+    private static class Entry {
+      private final FSEditLogOp op;
+      private final long position;
+      private final int version;
+      private final Throwable error;
+
+      Entry(FSEditLogOp op, long position, int version, Throwable error) {
+        this.op = op;
+        this.position = position;
+        this.version = version;
+        this.error = error;
+      }
+    }
+
+    OpPrefetcher(EditLogInputStream in, int queueSize) {
+      this.in = in;
+      this.queue = new ArrayBlockingQueue<Entry>(queueSize);
+      this.thread = new Daemon(this);
+      thread.setName("Edit log prefetcher for " + in.getName());
+    }
+
+    void start() {
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      // the ops are applied by another thread, so they cannot be reused
+      FSEditLogOp.OpInstanceCache.disableCacheForCurrentThread();
+      Entry entry;
+      do {
+        try {
+          FSEditLogOp op = in.readOp();
+          entry = op == null ? new Entry(null, in.getPosition(), 0, null)
+              : new Entry(op, in.getPosition(), in.getVersion(true), null);
+        } catch (Throwable t) {
+          entry = new Entry(null, -1, 0, t);
+        }
+        try {
+          queue.put(entry);
+        } catch (InterruptedException e) {
+          return;
+        }
+      } while (entry.op != null && !stopped);
+    }
+
+    /**
+     * @return the next op of the stream, or null at the end of the stream.
+     * @throws IOException if the op cannot be read
+     */
+    FSEditLogOp next() throws IOException {
+      final Entry entry;
+      try {
+        entry = queue.take();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while reading edits"
+            + " from " + in.getName());
+      }
+      if (entry.error != null) {
+        Throwables.propagateIfPossible(entry.error, IOException.class);
+        throw new IOException(entry.error);
+      }
+      position = entry.position;
+      version = entry.version;
+      return entry.op;
+    }
+
+    long getPosition() {
+      return position;
+    }
+
+    int getVersion() {
+      return version;
+    }
+
+    /** Stop reading and wait for the reading thread to exit. */
+    void stop() {
+      stopped = true;
+      while (thread.isAlive()) {
+        // unblock the reading thread if the queue is full
+        queue.clear();
+        try {
+          thread.join(100);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
   /**
    * Stream wrapper that keeps track of the current stream position.
    * 
@@ -173,13 +173,27 @@ public abstract class FSEditLogOp {
       useCache = false;
     }
 
+    /**
+     * Return new instances from all the caches used by the current thread,
+     * so that the ops it reads can be handed over to another thread.
+     */
+    static void disableCacheForCurrentThread() {
+      cache.set(null);
+    }
+
     public OpInstanceCache get() {
       return this;
     }
 
     @SuppressWarnings("unchecked")
     public <T extends FSEditLogOp> T get(FSEditLogOpCodes opCode) {
-      return useCache ? (T)cache.get().get(opCode) : (T)newInstance(opCode);
+      if (useCache) {
+        final OpInstanceCacheMap map = cache.get();
+        if (map != null) {
+          return (T)map.get(opCode);
+        }
+      }
+      return (T)newInstance(opCode);
     }
 
     private static FSEditLogOp newInstance(FSEditLogOpCodes opCode) {
@@ -895,6 +895,9 @@ public class FSImage implements Closeable {
     long prevLastAppliedTxId = lastAppliedTxId;  
     try {    
       FSEditLogLoader loader = new FSEditLogLoader(target, lastAppliedTxId);
+      loader.setPrefetchOps(conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_DEFAULT));
       
       // Load latest edits
       for (EditLogInputStream editIn : editStreams) {
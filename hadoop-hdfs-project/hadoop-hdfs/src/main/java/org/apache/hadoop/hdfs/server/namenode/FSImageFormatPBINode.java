@@ -18,16 +18,23 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -68,6 +75,7 @@ import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.util.EnumCounters;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.protobuf.ByteString;
 
@@ -731,18 +739,23 @@ public final class FSImageFormatPBINode {
       INodeSection s = b.build();
       s.writeDelimitedTo(out);
 
-      int i = 0;
       Iterator<INodeWithAdditionalFields> iter = inodesMap.getMapIterator();
-      while (iter.hasNext()) {
-        INodeWithAdditionalFields n = iter.next();
-        save(out, n);
-        ++i;
-        if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
-          context.checkCancelled();
-        }
-        if (i % parent.getInodesPerSubSection() == 0) {
-          parent.commitSubSection(summary,
-              FSImageFormatProtobuf.SectionName.INODE_SUB);
+      if (parent.getExecutorService() != null) {
+        serializeINodeSubSectionsInParallel(out, iter,
+            parent.getExecutorService());
+      } else {
+        int i = 0;
+        while (iter.hasNext()) {
+          INodeWithAdditionalFields n = iter.next();
+          save(out, n);
+          ++i;
+          if (i % FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL == 0) {
+            context.checkCancelled();
+          }
+          if (i % parent.getInodesPerSubSection() == 0) {
+            parent.commitSubSection(summary,
+                FSImageFormatProtobuf.SectionName.INODE_SUB);
+          }
         }
       }
       parent.commitSectionAndSubSection(summary,
@@ -750,6 +763,71 @@ public final class FSImageFormatPBINode {
           FSImageFormatProtobuf.SectionName.INODE_SUB);
     }
 
+    /**
+     * Serialize the inodes in batches on the given executor and write the
+     * batches to the output stream in order, committing a sub-section every
+     * {@link FSImageFormatProtobuf.Saver#getInodesPerSubSection()} inodes.
+     * At most two batches per thread are held in memory at any time.
+     */
+    private void serializeINodeSubSectionsInParallel(OutputStream out,
+        Iterator<INodeWithAdditionalFields> iter, ExecutorService service)
+        throws IOException {
+      final int inodesPerSubSection = parent.getInodesPerSubSection();
+      final int batchSize = Math.min(inodesPerSubSection,
+          FSImageFormatProtobuf.Saver.CHECK_CANCEL_INTERVAL * 16);
+      final int maxPending = 2 * parent.getNumSaverThreads();
+      final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+      final Deque<Boolean> endsSubSection = new ArrayDeque<>();
+      int inSubSection = 0;
+      while (iter.hasNext()) {
+        final int size = Math.min(batchSize,
+            inodesPerSubSection - inSubSection);
+        final List<INodeWithAdditionalFields> batch = new ArrayList<>(size);
+        while (batch.size() < size && iter.hasNext()) {
+          batch.add(iter.next());
+        }
+        inSubSection += batch.size();
+        pending.add(service.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (INodeWithAdditionalFields n : batch) {
+              save(bytes, n);
+            }
+            return bytes.toByteArray();
+          }
+        }));
+        endsSubSection.add(inSubSection == inodesPerSubSection);
+        if (inSubSection == inodesPerSubSection) {
+          inSubSection = 0;
+        }
+        context.checkCancelled();
+        if (pending.size() >= maxPending) {
+          writeBatch(out, pending.poll(), endsSubSection.poll());
+        }
+      }
+      while (!pending.isEmpty()) {
+        writeBatch(out, pending.poll(), endsSubSection.poll());
+      }
+    }
+
+    private void writeBatch(OutputStream out, Future<byte[]> batch,
+        boolean endsSubSection) throws IOException {
+      try {
+        out.write(batch.get());
+      } catch (InterruptedException e) {
+        throw (IOException) new InterruptedIOException(
+            "Interrupted while saving inodes").initCause(e);
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause(), IOException.class);
+        throw new IOException(e.getCause());
+      }
+      if (endsSubSection) {
+        parent.commitSubSection(summary,
+            FSImageFormatProtobuf.SectionName.INODE_SUB);
+      }
+    }
+
     void serializeFilesUCSection(OutputStream out) throws IOException {
       Collection<Long> filesWithUC = fsn.getLeaseManager()
               .getINodeIdWithLeases();
@@ -472,6 +472,8 @@ public final class FSImageFormatProtobuf {
       if (executorService != null) {
         executorService.shutdown();
       }
+      // reclaim the subtrees detached by asynchronous deletes again
+      fsn.getFSDirectory().getSubtreeReclaimer().addDetachedSubtrees();
     }
 
     private void loadNameSystemSection(InputStream in) throws IOException {
@@ -581,6 +583,8 @@ public final class FSImageFormatProtobuf {
     private CompressionCodec codec;
     private OutputStream underlyingOutputStream;
     private Configuration conf;
+    private ExecutorService executorService;
+    private int numSaverThreads = 1;
 
     Saver(SaveNamespaceContext context, Configuration conf) {
       this.context = context;
@@ -608,6 +612,18 @@ public final class FSImageFormatProtobuf {
       return writeSubSections;
     }
 
+    /**
+     * @return the executor used to serialize sub-sections in parallel, or
+     * null if they are serialized by the saving thread.
+     */
+    ExecutorService getExecutorService() {
+      return executorService;
+    }
+
+    int getNumSaverThreads() {
+      return numSaverThreads;
+    }
+
     /**
      * Commit the length and offset of a fsimage section to the summary index,
      * including the sub section, which will be committed before the section is
@@ -683,6 +699,16 @@ public final class FSImageFormatProtobuf {
       enableSubSectionsIfRequired();
       FileOutputStream fout = new FileOutputStream(file);
       fileChannel = fout.getChannel();
+      if (writeSubSections) {
+        int threads = conf.getInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY,
+            DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_DEFAULT);
+        if (threads > 1) {
+          numSaverThreads = threads;
+          executorService = Executors.newFixedThreadPool(threads);
+          LOG.info("The fsimage will be saved in parallel using {} threads",
+              threads);
+        }
+      }
       try {
         LOG.info("Saving image file {} using {}", file, compression);
         long startTime = monotonicNow();
@@ -693,6 +719,10 @@ public final class FSImageFormatProtobuf {
             (numErrors > 0 ? (" with" + numErrors + " errors") : ""));
         return numErrors;
       } finally {
+        if (executorService != null) {
+          executorService.shutdownNow();
+          executorService = null;
+        }
         fout.close();
       }
     }
@@ -178,6 +178,7 @@ import org.apache.hadoop.fs.StorageType;
 import org.apache.hadoop.fs.QuotaUsage;
 import org.apache.hadoop.ha.HAServiceProtocol.HAServiceState;
 import org.apache.hadoop.ha.ServiceFailedException;
+import org.apache.hadoop.hdfs.protocol.BatchEntryResult;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
@@ -209,6 +210,7 @@ import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotAccessControlException;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.protocol.datatransfer.ReplaceDatanodeOnFailure;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
@@ -223,6 +225,7 @@ import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeStatistics;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeStorageInfo;
+import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.BlockUCState;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.RollingUpgradeStartupOption;
@@ -402,6 +405,7 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
   private final String supergroup;
   private final boolean standbyShouldCheckpoint;
   private final int blockDeletionIncrement;
+  private final int batchOpsPerLock;
 
   /** Interval between each check of lease to release. */
   private final long leaseRecheckIntervalMs;
@@ -725,6 +729,13 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
       enableAsyncAuditLog();
     }
     fsLock = new FSNamesystemLock(conf, detailedLockHoldTimeMetrics);
+    if (fsLock.getProfiler() != null && DefaultMetricsSystem.instance()
+        .getSource(FSNamesystemLockProfiler.METRICS_SOURCE_NAME) == null) {
+      DefaultMetricsSystem.instance().register(
+          FSNamesystemLockProfiler.METRICS_SOURCE_NAME,
+          "Namesystem lock wait and hold times by operation",
+          fsLock.getProfiler());
+    }
     cond = fsLock.newWriteLockCondition();
     cpLock = new ReentrantLock();
 
@@ -882,6 +893,12 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
       Preconditions.checkArgument(blockDeletionIncrement > 0,
           DFSConfigKeys.DFS_NAMENODE_BLOCK_DELETION_INCREMENT_KEY +
               " must be a positive integer.");
+      this.batchOpsPerLock = conf.getInt(
+          DFSConfigKeys.DFS_NAMENODE_BATCH_OPS_PER_LOCK_KEY,
+          DFSConfigKeys.DFS_NAMENODE_BATCH_OPS_PER_LOCK_DEFAULT);
+      Preconditions.checkArgument(batchOpsPerLock > 0,
+          DFSConfigKeys.DFS_NAMENODE_BATCH_OPS_PER_LOCK_KEY +
+              " must be a positive integer.");
     } catch(IOException e) {
       LOG.error(getClass().getSimpleName() + " initialization failed.", e);
       close();
@@ -1152,6 +1169,8 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
       dir.setINodeAttributeProvider(inodeAttributeProvider);
     }
     snapshotManager.registerMXBean();
+    dir.getSubtreeReclaimer().start();
+    dir.getUsageIndexer().start();
     InetSocketAddress serviceAddress = NameNode.getServiceAddress(conf, true);
     this.nameNodeHostName = (serviceAddress != null) ?
         serviceAddress.getHostName() : "";
@@ -1161,6 +1180,10 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
    * Stop services common to both active and standby states
    */
   public void stopCommonServices() {
+    if (dir != null) {
+      dir.getSubtreeReclaimer().stop();
+      dir.getUsageIndexer().stop();
+    }
     writeLock();
     if (inodeAttributeProvider != null) {
       dir.setINodeAttributeProvider(null);
@@ -1566,6 +1589,16 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
   public void readUnlock(String opName) {
     this.fsLock.readUnlock(opName);
   }
+  /**
+   * Acquire the read lock for an operation which does not access block
+   * management state, so it is not blocked by block report processing.
+   */
+  void readLockNamespace() {
+    this.fsLock.readLockNamespace();
+  }
+  void readUnlockNamespace(String opName) {
+    this.fsLock.readUnlockNamespace(opName);
+  }
   @Override
   public void writeLock() {
     this.fsLock.writeLock();
@@ -1582,14 +1615,178 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
     this.fsLock.writeUnlock(opName);
   }
   @Override
+  public void blockWriteLock() {
+    if (fsLock.isBlockLockSeparate() && !fsLock.isWriteLockedByCurrentThread()
+        && (fsLock.isBlockWriteLockedByCurrentThread() || !isInSafeMode())) {
+      this.fsLock.blockWriteLock();
+    } else {
+      // safe mode transitions triggered by block reports need the full lock
+      writeLock();
+    }
+  }
+  @Override
+  public void blockWriteUnlock() {
+    blockWriteUnlock(FSNamesystemLock.OP_NAME_OTHER);
+  }
+  public void blockWriteUnlock(String opName) {
+    if (fsLock.isBlockWriteLockedByCurrentThread()) {
+      this.fsLock.blockWriteUnlock(opName);
+      // blocks committed under the block lock complete with the write lock,
+      // since completing a block updates the quota usage of its file
+      if (!fsLock.isBlockWriteLockedByCurrentThread()
+          && fsLock.getReadHoldCount() == 0
+          && blockManager.hasPendingCompleteBlocks()) {
+        writeLock();
+        try {
+          blockManager.completePendingBlocks();
+        } finally {
+          writeUnlock(opName);
+        }
+      }
+    } else {
+      writeUnlock(opName);
+    }
+  }
+  @Override
   public boolean hasWriteLock() {
     return this.fsLock.isWriteLockedByCurrentThread();
   }
   @Override
+  public boolean hasBlockWriteLock() {
+    return hasWriteLock() || this.fsLock.isBlockWriteLockedByCurrentThread();
+  }
+  @Override
   public boolean hasReadLock() {
     return this.fsLock.getReadHoldCount() > 0 || hasWriteLock();
   }
 
+  /**
+   * @return true if the current thread runs a read-only operation without
+   *         the lock, see {@link #readOptimistically(ReadOp, boolean, String)}.
+   */
+  @Override
+  public boolean isOptimisticReading() {
+    return this.fsLock.isOptimisticReading();
+  }
+
+  /** A read-only operation. */
+  private interface ReadOp<T> {
+    T read() throws IOException;
+  }
+
+  /**
+   * Run a read-only operation. If optimistic reads are enabled, it first
+   * runs without the lock; if a writer held the lock meanwhile, its result
+   * or failure may be based on inconsistent state, so it is discarded and
+   * the operation runs again with the read lock. Inconsistent state may make
+   * the operation fail in any way, e.g. with an AssertionError, or with a
+   * StackOverflowError on a cycle of inodes, so every failure is validated
+   * the same way as a result.
+   *
+   * @param op the operation, which checks the HA state itself
+   * @param needBlocks if the operation reads block management state
+   * @param operationName name of the operation for the lock metrics
+   */
+  private <T> T readOptimistically(ReadOp<T> op, boolean needBlocks,
+      String operationName) throws IOException {
+    if (fsLock.isOptimisticReadEnabled()) {
+      final long stamp = fsLock.beginOptimisticRead();
+      if (stamp != FSNamesystemLock.NO_STAMP) {
+        T result = null;
+        boolean valid = false;
+        try {
+          result = op.read();
+          valid = fsLock.endOptimisticRead(stamp);
+        } catch (Throwable t) {
+          if (fsLock.endOptimisticRead(stamp)) {
+            throw t;
+          }
+        }
+        if (valid) {
+          return result;
+        }
+      }
+    }
+    if (needBlocks) {
+      readLock();
+    } else {
+      readLockNamespace();
+    }
+    try {
+      return op.read();
+    } finally {
+      if (needBlocks) {
+        readUnlock(operationName);
+      } else {
+        readUnlockNamespace(operationName);
+      }
+    }
+  }
+
+  /**
+   * @return true if the current thread holds namespace partition locks
+   *         instead of the namesystem write lock.
+   */
+  public boolean hasPartitionWriteLock() {
+    return this.fsLock.hasPartitionWriteLock();
+  }
+
+  /**
+   * Lock the namespace for adding the last component of {@code src} to its
+   * parent directory. If namespace partition locks are enabled and the
+   * parent directory already exists, only the partitions of the path are
+   * locked, so that such additions to different directories can run in
+   * parallel. Otherwise, e.g. if missing ancestors have to be created, the
+   * namesystem write lock is taken.
+   *
+   * @param src the path to be created
+   * @param mayExist whether an existing inode at {@code src} may be left
+   *                 untouched by the operation; if false, an existing inode
+   *                 requires the write lock since it may be replaced
+   * @param opName name of the operation, used for lock metrics
+   * @return true if partition locks were taken, false if the write lock was
+   *         taken. The return value must be passed to
+   *         {@link #writeUnlockForAddChild(boolean, String)}.
+   */
+  private boolean writeLockForAddChild(String src, boolean mayExist,
+      String opName) {
+    if (fsLock.isPartitioned() && DFSUtil.isValidName(src) &&
+        !FSDirectory.isReservedName(src)) {
+      final byte[][] components = INode.getPathComponents(src);
+      if (components.length >= 2 && !hasSnapshotComponent(components)) {
+        fsLock.partitionWriteLock(components);
+        final INodesInPath iip =
+            INodesInPath.resolve(dir.getRoot(), components);
+        final INode parent = iip.length() == components.length ?
+            iip.getINode(-2) : null;
+        if (parent != null && parent.isDirectory() &&
+            (mayExist || iip.getLastINode() == null)) {
+          return true;
+        }
+        fsLock.partitionWriteUnlock(opName);
+      }
+    }
+    writeLock();
+    return false;
+  }
+
+  private void writeUnlockForAddChild(boolean partitioned, String opName) {
+    if (partitioned) {
+      fsLock.partitionWriteUnlock(opName);
+    } else {
+      writeUnlock(opName);
+    }
+  }
+
+  private static boolean hasSnapshotComponent(byte[][] components) {
+    for (byte[] c : components) {
+      if (Arrays.equals(HdfsServerConstants.DOT_SNAPSHOT_DIR_BYTES, c)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public int getReadHoldCount() {
     return this.fsLock.getReadHoldCount();
   }
@@ -1662,6 +1859,14 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
       } finally {
         IOUtils.cleanup(LOG, dir);
         IOUtils.cleanup(LOG, fsImage);
+        if (fsLock.getProfiler() != null) {
+          fsLock.getProfiler().stop();
+        }
+        for (AuditLogger logger : auditLoggers) {
+          if (logger instanceof BatchedAuditLogger) {
+            IOUtils.cleanup(LOG, (BatchedAuditLogger) logger);
+          }
+        }
       }
     }
   }
@@ -1827,50 +2032,63 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
     logAuditEvent(true, operationName, src, null, auditStat);
   }
 
+  /**
+   * Throw a retriable exception if the NameNode does not know the locations
+   * of some blocks yet.
+   */
+  private void checkBlockLocations(GetBlockLocationsResult res, String srcArg)
+      throws IOException {
+    if (isInSafeMode()) {
+      for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
+        // if safemode & no block locations yet then throw safemodeException
+        if ((b.getLocations() == null) || (b.getLocations().length == 0)) {
+          SafeModeException se = newSafemodeException(
+              "Zero blocklocations for " + srcArg);
+          if (haEnabled && haContext != null &&
+              (haContext.getState().getServiceState() == ACTIVE ||
+                  haContext.getState().getServiceState() == OBSERVER)) {
+            throw new RetriableException(se);
+          } else {
+            throw se;
+          }
+        }
+      }
+    } else if (haEnabled && haContext != null &&
+        haContext.getState().getServiceState() == OBSERVER) {
+      for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
+        if (b.getLocations() == null || b.getLocations().length == 0) {
+          throw new ObserverRetryOnActiveException("Zero blocklocations for "
+              + srcArg);
+        }
+      }
+    }
+  }
+
   /**
    * Get block locations within the specified range.
    * @see ClientProtocol#getBlockLocations(String, long, long)
    */
-  public LocatedBlocks getBlockLocations(String clientMachine, String srcArg,
-      long offset, long length) throws IOException {
+  public LocatedBlocks getBlockLocations(String clientMachine,
+      final String srcArg, final long offset, final long length)
+      throws IOException {
     final String operationName = "open";
     checkOperation(OperationCategory.READ);
     GetBlockLocationsResult res = null;
-    FSPermissionChecker pc = getPermissionChecker();
-    readLock();
+    final FSPermissionChecker pc = getPermissionChecker();
     try {
-      checkOperation(OperationCategory.READ);
-      res = FSDirStatAndListingOp.getBlockLocations(
-          dir, pc, srcArg, offset, length, true);
-      if (isInSafeMode()) {
-        for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
-          // if safemode & no block locations yet then throw safemodeException
-          if ((b.getLocations() == null) || (b.getLocations().length == 0)) {
-            SafeModeException se = newSafemodeException(
-                "Zero blocklocations for " + srcArg);
-            if (haEnabled && haContext != null &&
-                (haContext.getState().getServiceState() == ACTIVE ||
-                    haContext.getState().getServiceState() == OBSERVER)) {
-              throw new RetriableException(se);
-            } else {
-              throw se;
-            }
-          }
+      res = readOptimistically(new ReadOp<GetBlockLocationsResult>() {
+        @Override
+        public GetBlockLocationsResult read() throws IOException {
+          checkOperation(OperationCategory.READ);
+          GetBlockLocationsResult r = FSDirStatAndListingOp.getBlockLocations(
+              dir, pc, srcArg, offset, length, true);
+          checkBlockLocations(r, srcArg);
+          return r;
         }
-      } else if (haEnabled && haContext != null &&
-          haContext.getState().getServiceState() == OBSERVER) {
-        for (LocatedBlock b : res.blocks.getLocatedBlocks()) {
-          if (b.getLocations() == null || b.getLocations().length == 0) {
-            throw new ObserverRetryOnActiveException("Zero blocklocations for "
-                + srcArg);
-          }
-        }
-      }
+      }, true, operationName);
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, srcArg);
       throw e;
-    } finally {
-      readUnlock(operationName);
     }
 
     logAuditEvent(true, operationName, srcArg);
@@ -2187,12 +2405,12 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
 
   public long getPreferredBlockSize(String src) throws IOException {
     checkOperation(OperationCategory.READ);
-    readLock();
+    readLockNamespace();
     try {
       checkOperation(OperationCategory.READ);
       return FSDirAttrOp.getPreferredBlockSize(dir, src);
     } finally {
-      readUnlock("getPreferredBlockSize");
+      readUnlockNamespace("getPreferredBlockSize");
     }
   }
 
@@ -2301,7 +2519,15 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
     BlocksMapUpdateInfo toRemoveBlocks = null;
 
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    final boolean partitioned;
+    if (provider == null) {
+      partitioned = writeLockForAddChild(src, false, "create");
+    } else {
+      // The write lock is released while generating the EDEK for a file in
+      // an encryption zone, which is not supported for partition locks.
+      writeLock();
+      partitioned = false;
+    }
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create file" + src);
@@ -2340,7 +2566,7 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
         dir.writeUnlock();
       }
     } finally {
-      writeUnlock("create");
+      writeUnlockForAddChild(partitioned, "create");
       // There might be transactions logged while trying to recover the lease.
       // They need to be sync'ed even when an exception was thrown.
       if (!skipSync) {
@@ -2961,20 +3187,22 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
    *         or null if file not found
    * @throws StandbyException
    */
-  public HdfsFileStatus getFileInfo(final String src, boolean resolveLink)
-    throws IOException {
+  public HdfsFileStatus getFileInfo(final String src,
+      final boolean resolveLink) throws IOException {
     final String operationName = "getfileinfo";
     checkOperation(OperationCategory.READ);
     HdfsFileStatus stat = null;
-    readLock();
     try {
-      checkOperation(OperationCategory.READ);
-      stat = FSDirStatAndListingOp.getFileInfo(dir, src, resolveLink);
+      stat = readOptimistically(new ReadOp<HdfsFileStatus>() {
+        @Override
+        public HdfsFileStatus read() throws IOException {
+          checkOperation(OperationCategory.READ);
+          return FSDirStatAndListingOp.getFileInfo(dir, src, resolveLink);
+        }
+      }, false, operationName);
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
       throw e;
-    } finally {
-      readUnlock(operationName);
     }
     logAuditEvent(true, operationName, src);
     return stat;
@@ -2986,7 +3214,7 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
   public boolean isFileClosed(final String src) throws IOException {
     final String operationName = "isFileClosed";
     checkOperation(OperationCategory.READ);
-    readLock();
+    readLockNamespace();
     try {
       checkOperation(OperationCategory.READ);
       return FSDirStatAndListingOp.isFileClosed(dir, src);
@@ -2994,7 +3222,7 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
-      readUnlock(operationName);
+      readUnlockNamespace(operationName);
     }
   }
 
@@ -3006,7 +3234,7 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
     final String operationName = "mkdirs";
     FileStatus auditStat = null;
     checkOperation(OperationCategory.WRITE);
-    writeLock();
+    final boolean partitioned = writeLockForAddChild(src, true, operationName);
     try {
       checkOperation(OperationCategory.WRITE);
       checkNameNodeSafeMode("Cannot create directory " + src);
@@ -3015,13 +3243,184 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
-      writeUnlock(operationName);
+      writeUnlockForAddChild(partitioned, operationName);
     }
     getEditLog().logSync();
     logAuditEvent(true, operationName, src, null, auditStat);
     return true;
   }
 
+  /**
+   * An operation applied to each entry of a batch. The entries are processed
+   * in chunks of {@link #batchOpsPerLock} entries per lock acquisition, so
+   * that a large batch does not starve the other waiters on the lock. The
+   * failure of an entry is returned as its result and does not fail the
+   * batch.
+   */
+  private abstract class BatchOp<R> {
+    private final String operationName;
+    private final boolean write;
+    final String[] srcs;
+    /** The file status to audit each successful entry with. */
+    final FileStatus[] auditStats;
+
+    BatchOp(String operationName, boolean write, String[] srcs) {
+      this.operationName = operationName;
+      this.write = write;
+      this.srcs = srcs;
+      this.auditStats = new FileStatus[srcs.length];
+    }
+
+    /** Apply the operation to the i-th entry, with the lock held. */
+    abstract R apply(int i) throws IOException;
+
+    /** Called after the lock is released and the edits are synced. */
+    void complete() {
+    }
+
+    private void lock() {
+      if (write) {
+        writeLock();
+      } else {
+        readLockNamespace();
+      }
+    }
+
+    private void unlock() {
+      if (write) {
+        writeUnlock(operationName);
+      } else {
+        readUnlockNamespace(operationName);
+      }
+    }
+
+    List<BatchEntryResult<R>> run() throws IOException {
+      final OperationCategory category = write
+          ? OperationCategory.WRITE : OperationCategory.READ;
+      checkOperation(category);
+      final List<BatchEntryResult<R>> results =
+          new ArrayList<BatchEntryResult<R>>(srcs.length);
+      int i = 0;
+      while (i < srcs.length) {
+        final int end = Math.min(srcs.length, i + batchOpsPerLock);
+        lock();
+        try {
+          checkOperation(category);
+          if (write) {
+            checkNameNodeSafeMode("Cannot " + operationName + " " + srcs[i]);
+          }
+          for (; i < end; i++) {
+            try {
+              results.add(BatchEntryResult.success(apply(i)));
+            } catch (IOException e) {
+              results.add(BatchEntryResult.<R>failure(e));
+            }
+          }
+        } catch (IOException e) {
+          if (i == 0) {
+            throw e;
+          }
+          // e.g. a failover in the middle of the batch, the entries
+          // processed so far stay applied
+          for (; i < srcs.length; i++) {
+            results.add(BatchEntryResult.<R>failure(e));
+          }
+        } finally {
+          unlock();
+        }
+      }
+      if (write) {
+        getEditLog().logSync();
+      }
+      complete();
+      for (i = 0; i < srcs.length; i++) {
+        final BatchEntryResult<R> r = results.get(i);
+        if (r.isSuccess()) {
+          logAuditEvent(true, operationName, srcs[i], null, auditStats[i]);
+        } else if (r.getException() instanceof AccessControlException) {
+          logAuditEvent(false, operationName, srcs[i]);
+        }
+      }
+      return results;
+    }
+  }
+
+  /**
+   * Get the file info of each of the given paths.
+   * @see ClientProtocol#batchGetFileInfo(String[])
+   */
+  List<BatchEntryResult<HdfsFileStatus>> batchGetFileInfo(String[] srcs)
+      throws IOException {
+    return new BatchOp<HdfsFileStatus>("getfileinfo", false, srcs) {
+      @Override
+      HdfsFileStatus apply(int i) throws IOException {
+        return FSDirStatAndListingOp.getFileInfo(dir, srcs[i], true);
+      }
+    }.run();
+  }
+
+  /**
+   * Create each of the given directories.
+   * @see ClientProtocol#batchMkdirs(String[], FsPermission, boolean)
+   */
+  List<BatchEntryResult<Boolean>> batchMkdirs(String[] srcs,
+      final PermissionStatus permissions, final boolean createParent)
+      throws IOException {
+    return new BatchOp<Boolean>("mkdirs", true, srcs) {
+      @Override
+      Boolean apply(int i) throws IOException {
+        auditStats[i] = FSDirMkdirOp.mkdirs(FSNamesystem.this, srcs[i],
+            permissions, createParent);
+        return true;
+      }
+    }.run();
+  }
+
+  /**
+   * Delete each of the given paths. The blocks of all the deleted files are
+   * removed after the namespace changes of the whole batch.
+   * @see ClientProtocol#batchDelete(String[], boolean)
+   */
+  List<BatchEntryResult<Boolean>> batchDelete(String[] srcs,
+      final boolean recursive) throws IOException {
+    final List<BlocksMapUpdateInfo> toRemovedBlocks =
+        new ArrayList<BlocksMapUpdateInfo>();
+    return new BatchOp<Boolean>("delete", true, srcs) {
+      @Override
+      Boolean apply(int i) throws IOException {
+        final BlocksMapUpdateInfo blocks = FSDirDeleteOp.delete(
+            FSNamesystem.this, srcs[i], recursive, false);
+        if (blocks == null) {
+          return false;
+        }
+        toRemovedBlocks.add(blocks);
+        return true;
+      }
+
+      @Override
+      void complete() {
+        for (BlocksMapUpdateInfo blocks : toRemovedBlocks) {
+          removeBlocks(blocks);
+        }
+      }
+    }.run();
+  }
+
+  /**
+   * Set the modification and access time of each of the given paths.
+   * @see ClientProtocol#batchSetTimes(String[], long, long)
+   */
+  List<BatchEntryResult<Void>> batchSetTimes(String[] srcs, final long mtime,
+      final long atime) throws IOException {
+    return new BatchOp<Void>("setTimes", true, srcs) {
+      @Override
+      Void apply(int i) throws IOException {
+        auditStats[i] = FSDirAttrOp.setTimes(dir, srcs[i], mtime, atime);
+        return null;
+      }
+    }.run();
+  }
+
   /**
    * Get the content summary for a specific file/dir.
    *
@@ -3641,21 +4040,59 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
    * @throws UnresolvedLinkException if symbolic link is encountered
    * @throws IOException if other I/O error occurred
    */
-  public DirectoryListing getListing(String src, byte[] startAfter,
-      boolean needLocation) 
+  public DirectoryListing getListing(final String src,
+      final byte[] startAfter, final boolean needLocation)
       throws IOException {
     checkOperation(OperationCategory.READ);
     final String operationName = "listStatus";
     DirectoryListing dl = null;
-    readLock();
+    try {
+      // block locations are only looked up if they are requested
+      dl = readOptimistically(new ReadOp<DirectoryListing>() {
+        @Override
+        public DirectoryListing read() throws IOException {
+          checkOperation(NameNode.OperationCategory.READ);
+          return getListingInt(dir, src, startAfter, needLocation);
+        }
+      }, needLocation, operationName);
+    } catch (AccessControlException e) {
+      logAuditEvent(false, operationName, src);
+      throw e;
+    }
+    logAuditEvent(true, operationName, src);
+    return dl;
+  }
+
+  /**
+   * Get a partial depth-first listing of the subtree of the indicated
+   * directory.
+   *
+   * @see ClientProtocol#getListingRecursive(String, byte[], boolean)
+   */
+  DirectoryListing getListingRecursive(String src, byte[] startAfter,
+      boolean needLocation) throws IOException {
+    checkOperation(OperationCategory.READ);
+    final String operationName = "listStatusRecursive";
+    DirectoryListing dl = null;
+    // block locations are only looked up if they are requested
+    if (needLocation) {
+      readLock();
+    } else {
+      readLockNamespace();
+    }
     try {
       checkOperation(NameNode.OperationCategory.READ);
-      dl = getListingInt(dir, src, startAfter, needLocation);
+      dl = FSDirStatAndListingOp.getListingRecursiveInt(dir, src, startAfter,
+          needLocation);
     } catch (AccessControlException e) {
       logAuditEvent(false, operationName, src);
       throw e;
     } finally {
-      readUnlock(operationName);
+      if (needLocation) {
+        readUnlock(operationName);
+      } else {
+        readUnlockNamespace(operationName);
+      }
     }
     logAuditEvent(true, operationName, src);
     return dl;
@@ -4012,6 +4449,41 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
   public int getExpiredHeartbeats() {
     return datanodeStatistics.getExpiredHeartbeats();
   }
+
+  @Metric(value={"OptimisticReads", "Number of reads run without the lock"},
+      type=Metric.Type.COUNTER)
+  public long getNumOptimisticReads() {
+    return fsLock.getNumOptimisticReads();
+  }
+
+  @Metric(value={"OptimisticReadFailures",
+      "Number of reads run again with the lock since a writer held it"},
+      type=Metric.Type.COUNTER)
+  public long getNumOptimisticReadFailures() {
+    return fsLock.getNumOptimisticReadFailures();
+  }
+
+  @Metric(value={"PermissionCacheHits",
+      "Number of permission checks granted by the permission cache"},
+      type=Metric.Type.COUNTER)
+  public long getPermissionCacheHits() {
+    final PermissionCache cache = dir.getPermissionCache();
+    return cache == null ? 0 : cache.getHits();
+  }
+
+  @Metric(value={"PermissionCacheMisses",
+      "Number of permission checks missing from the permission cache"},
+      type=Metric.Type.COUNTER)
+  public long getPermissionCacheMisses() {
+    final PermissionCache cache = dir.getPermissionCache();
+    return cache == null ? 0 : cache.getMisses();
+  }
+
+  @Metric({"PermissionCacheSize", "Number of entries of the permission cache"})
+  public long getPermissionCacheSize() {
+    final PermissionCache cache = dir.getPermissionCache();
+    return cache == null ? 0 : cache.size();
+  }
   
   @Metric({"TransactionsSinceLastCheckpoint",
       "Number of transactions since last checkpoint"})
@@ -4491,11 +4963,11 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
   public void processIncrementalBlockReport(final DatanodeID nodeID,
       final StorageReceivedDeletedBlocks srdb)
       throws IOException {
-    writeLock();
+    blockWriteLock();
     try {
       blockManager.processIncrementalBlockReport(nodeID, srdb);
     } finally {
-      writeUnlock("processIncrementalBlockReport");
+      blockWriteUnlock("processIncrementalBlockReport");
     }
   }
   
@@ -4802,6 +5274,23 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
     return null;
   }
 
+  @Override // FSNamesystemMBean
+  public String getLockProfile() {
+    final FSNamesystemLockProfiler profiler = fsLock.getProfiler();
+    if (profiler == null) {
+      return null;
+    }
+    Map<String, Object> profile = new TreeMap<String, Object>(
+        profiler.getProfile());
+    profile.put("timestamp", DFSUtil.dateToIso8601String(new Date()));
+    try {
+      return JsonUtil.toJsonString(profile);
+    } catch (IOException e) {
+      LOG.warn("Failed to fetch the lock profile", e);
+    }
+    return null;
+  }
+
   /**
    * Increments, logs and then returns the stamp
    */
@@ -6157,6 +6646,46 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
         toSnapshotRoot, null);
     return diffs;
   }
+
+  /**
+   * Get a page of the difference between two snapshots (or between a
+   * snapshot and the current status) of a snapshottable directory. The read
+   * lock is only held while a page is computed.
+   *
+   * @param path The full path of the snapshottable directory.
+   * @param fromSnapshot Name of the snapshot to calculate the diff from. Null
+   *          or empty string indicates the current tree.
+   * @param toSnapshot Name of the snapshot to calculated the diff to. Null or
+   *          empty string indicates the current tree.
+   * @param startPath The path relative to the snapshottable directory to
+   *          start the page at, as returned by the previous page.
+   * @param index The number of entries of startPath already listed.
+   * @return A page of the difference between {@code fromSnapshot} and
+   *         {@code toSnapshot}.
+   * @throws IOException
+   */
+  public SnapshotDiffReportListing getSnapshotDiffReportListing(String path,
+      String fromSnapshot, String toSnapshot, byte[] startPath, int index)
+      throws IOException {
+    final String operationName = "computeSnapshotDiff";
+    SnapshotDiffReportListing diffs = null;
+    checkOperation(OperationCategory.READ);
+    readLock();
+    try {
+      checkOperation(OperationCategory.READ);
+      diffs = FSDirSnapshotOp.getSnapshotDiffReportListing(dir,
+          snapshotManager, path, fromSnapshot, toSnapshot, startPath, index);
+    } finally {
+      readUnlock(operationName);
+    }
+    String fromSnapshotRoot = (fromSnapshot == null || fromSnapshot.isEmpty()) ?
+        path : Snapshot.getSnapshotPath(path, fromSnapshot);
+    String toSnapshotRoot = (toSnapshot == null || toSnapshot.isEmpty()) ?
+        path : Snapshot.getSnapshotPath(path, toSnapshot);
+    logAuditEvent(diffs != null, operationName, fromSnapshotRoot,
+        toSnapshotRoot, null);
+    return diffs;
+  }
   
   /**
    * Delete a snapshot of a snapshottable directory
@@ -7001,65 +7530,90 @@ public class FSNamesystem implements Namesystem, FSNamesystemMBean,
         InetAddress addr, String cmd, String src, String dst,
         FileStatus status, CallerContext callerContext, UserGroupInformation ugi,
         DelegationTokenSecretManager dtSecretManager) {
+      if (isLogged(cmd)) {
+        logAuditMessage(formatAuditEvent(succeeded, userName, addr, cmd, src,
+            dst, status, callerContext, getTrackingId(ugi, dtSecretManager),
+            Server.getProtocol()));
+      }
+    }
 
-      if (auditLog.isDebugEnabled() ||
-          (auditLog.isInfoEnabled() && !debugCmdSet.contains(cmd))) {
-        final StringBuilder sb = STRING_BUILDER.get();
-        src = escapeJava(src);
-        dst = escapeJava(dst);
-        sb.setLength(0);
-        sb.append("allowed=").append(succeeded).append("\t");
-        sb.append("ugi=").append(userName).append("\t");
-        sb.append("ip=").append(addr).append("\t");
-        sb.append("cmd=").append(cmd).append("\t");
-        sb.append("src=").append(src).append("\t");
-        sb.append("dst=").append(dst).append("\t");
-        if (null == status) {
-          sb.append("perm=null");
-        } else {
-          sb.append("perm=");
-          sb.append(status.getOwner()).append(":");
-          sb.append(status.getGroup()).append(":");
-          sb.append(status.getPermission());
-        }
-        if (logTokenTrackingId) {
-          sb.append("\t").append("trackingId=");
-          String trackingId = null;
-          if (ugi != null && dtSecretManager != null
-              && ugi.getAuthenticationMethod() == AuthenticationMethod.TOKEN) {
-            for (TokenIdentifier tid: ugi.getTokenIdentifiers()) {
-              if (tid instanceof DelegationTokenIdentifier) {
-                DelegationTokenIdentifier dtid =
-                    (DelegationTokenIdentifier)tid;
-                trackingId = dtSecretManager.getTokenTrackingId(dtid);
-                break;
-              }
-            }
+    /** @return true if events of the given command are written. */
+    boolean isLogged(String cmd) {
+      return auditLog.isDebugEnabled() ||
+          (auditLog.isInfoEnabled() && !debugCmdSet.contains(cmd));
+    }
+
+    /**
+     * @return the tracking id of the delegation token used by the caller,
+     * or null if there is none or tracking ids are not logged.
+     */
+    String getTrackingId(UserGroupInformation ugi,
+        DelegationTokenSecretManager dtSecretManager) {
+      if (logTokenTrackingId && ugi != null && dtSecretManager != null
+          && ugi.getAuthenticationMethod() == AuthenticationMethod.TOKEN) {
+        for (TokenIdentifier tid: ugi.getTokenIdentifiers()) {
+          if (tid instanceof DelegationTokenIdentifier) {
+            DelegationTokenIdentifier dtid =
+                (DelegationTokenIdentifier)tid;
+            return dtSecretManager.getTokenTrackingId(dtid);
           }
-          sb.append(trackingId);
         }
-        sb.append("\t").append("proto=");
-        sb.append(Server.getProtocol());
-        if (isCallerContextEnabled &&
-            callerContext != null &&
-            callerContext.isContextValid()) {
-          sb.append("\t").append("callerContext=");
-          if (callerContext.getContext().length() > callerContextMaxLen) {
-            sb.append(callerContext.getContext().substring(0,
-                callerContextMaxLen));
-          } else {
-            sb.append(callerContext.getContext());
-          }
-          if (callerContext.getSignature() != null &&
-              callerContext.getSignature().length > 0 &&
-              callerContext.getSignature().length <= callerSignatureMaxLen) {
-            sb.append(":");
-            sb.append(new String(callerContext.getSignature(),
-                CallerContext.SIGNATURE_ENCODING));
-          }
+      }
+      return null;
+    }
+
+    /**
+     * Format an audit event. The caller context is only included if it is
+     * enabled, while the tracking id and the protocol are passed in since
+     * they depend on the thread handling the call.
+     */
+    String formatAuditEvent(boolean succeeded, String userName,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus status, CallerContext callerContext, String trackingId,
+        String protocol) {
+      final StringBuilder sb = STRING_BUILDER.get();
+      src = escapeJava(src);
+      dst = escapeJava(dst);
+      sb.setLength(0);
+      sb.append("allowed=").append(succeeded).append("\t");
+      sb.append("ugi=").append(userName).append("\t");
+      sb.append("ip=").append(addr).append("\t");
+      sb.append("cmd=").append(cmd).append("\t");
+      sb.append("src=").append(src).append("\t");
+      sb.append("dst=").append(dst).append("\t");
+      if (null == status) {
+        sb.append("perm=null");
+      } else {
+        sb.append("perm=");
+        sb.append(status.getOwner()).append(":");
+        sb.append(status.getGroup()).append(":");
+        sb.append(status.getPermission());
+      }
+      if (logTokenTrackingId) {
+        sb.append("\t").append("trackingId=");
+        sb.append(trackingId);
+      }
+      sb.append("\t").append("proto=");
+      sb.append(protocol);
+      if (isCallerContextEnabled &&
+          callerContext != null &&
+          callerContext.isContextValid()) {
+        sb.append("\t").append("callerContext=");
+        if (callerContext.getContext().length() > callerContextMaxLen) {
+          sb.append(callerContext.getContext().substring(0,
+              callerContextMaxLen));
+        } else {
+          sb.append(callerContext.getContext());
+        }
+        if (callerContext.getSignature() != null &&
+            callerContext.getSignature().length > 0 &&
+            callerContext.getSignature().length <= callerSignatureMaxLen) {
+          sb.append(":");
+          sb.append(new String(callerContext.getSignature(),
+              CallerContext.SIGNATURE_ENCODING));
         }
-        logAuditMessage(sb.toString());
       }
+      return sb.toString();
     }
 
     @Override
@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hdfs.server.namenode;
 
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -25,6 +26,7 @@ import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.ipc.Server;
 import org.apache.hadoop.log.LogThrottlingHelper;
@@ -34,10 +36,18 @@ import org.apache.hadoop.util.Timer;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_LOCK_SUPPRESS_WARNING_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_DETAILED_METRICS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_READ_LOCK_REPORTING_THRESHOLD_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT;
@@ -59,14 +69,79 @@ import static org.apache.hadoop.log.LogThrottlingHelper.LogAction;
  * most recent snapshot will be lost due to the use of
  * {@link MutableRatesWithAggregation}. However since threads are re-used
  * between operations this should not generally be an issue.
+ *
+ * If {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_FSLOCK_PARTITIONS_KEY}
+ * is positive, the namespace is additionally guarded by a fixed number of
+ * partition locks selected by hashing path prefixes. A partitioned writer
+ * holds the coarse lock in shared mode plus the partition locks of the path
+ * it modifies, so writers of disjoint directories run concurrently. Readers
+ * holding the coarse read lock also take every partition in shared mode so
+ * they never observe a partitioned writer's intermediate state, and holders
+ * of the coarse write lock exclude partitioned writers entirely. Partition
+ * locks are always acquired in ascending index order. The outermost read
+ * hold thus costs one shared acquisition and release per partition, about
+ * 20ns each when uncontended, and every reader updates the state of every
+ * partition lock, so the number of partitions should be kept small; see
+ * FSNamesystemLockBenchmark.
+ *
+ * If {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY}
+ * is true, block management state is guarded by a separate block lock.
+ * {@link #readLock()} takes it in shared mode after the namespace locks,
+ * while {@link #blockWriteLock()} takes the namespace locks in shared mode
+ * and the block lock exclusively, so block processing only excludes
+ * readers of block state and namespace writers. Readers which do not look
+ * at block state may use {@link #readLockNamespace()} instead. The block
+ * lock is always acquired after the namespace locks.
+ *
+ * If {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY}
+ * is true, read-only operations may run without any lock between
+ * {@link #beginOptimisticRead()} and {@link #endOptimisticRead(long)}.
+ * Every exclusive hold, i.e. of the write lock, of partition locks and of
+ * the block lock, is counted while it is held and increments a sequence
+ * number when it starts and ends. An optimistic read is only valid if no
+ * exclusive hold was in progress when it started and the sequence number
+ * did not change until it ended, the same way as a seqlock.
+ *
+ * If {@link org.apache.hadoop.hdfs.DFSConfigKeys#DFS_NAMENODE_LOCK_PROFILING_ENABLED_KEY}
+ * is true, the wait and hold times of the outermost holds are also
+ * attributed to the operations and users by a
+ * {@link FSNamesystemLockProfiler}.
  */
 class FSNamesystemLock {
   @VisibleForTesting
   protected ReentrantReadWriteLock coarseLock;
 
+  /** Namespace partition locks, or null if partitioned locking is off. */
+  private final ReentrantReadWriteLock[] partitionLocks;
+  /** Partition locks held by the current thread as a partitioned writer. */
+  private final ThreadLocal<PartitionHold> partitionHold =
+      new ThreadLocal<PartitionHold>();
+
+  /** Lock guarding block management state, or null if it is not separate. */
+  private final ReentrantReadWriteLock blockLock;
+
+  private final boolean optimisticReadsEnabled;
+  /** Number of exclusive holds in progress. */
+  private final AtomicInteger exclusiveHolds = new AtomicInteger();
+  /** Incremented when an exclusive hold starts and ends. */
+  private final AtomicLong exclusiveHoldSequence = new AtomicLong();
+  /** Set while the current thread runs an optimistic read. */
+  private final ThreadLocal<Boolean> optimisticRead =
+      new ThreadLocal<Boolean>();
+  private final AtomicLong numOptimisticReads = new AtomicLong();
+  private final AtomicLong numOptimisticReadFailures = new AtomicLong();
+  /** Returned by {@link #beginOptimisticRead()} if it cannot start. */
+  static final long NO_STAMP = -1;
+
   private final boolean metricsEnabled;
   private final MutableRatesWithAggregation detailedHoldTimeMetrics;
   private final Timer timer;
+  /** Attributes the lock wait and hold times, or null. */
+  private final FSNamesystemLockProfiler profiler;
+  /** Time the current write lock holder waited for the lock. */
+  private long writeLockWaitNanos;
+  /** Time the current thread waited for its outermost read lock. */
+  private final ThreadLocal<Long> readLockWaitNanos = new ThreadLocal<Long>();
 
   /**
    * Log statements about long lock hold times will not be produced more
@@ -124,6 +199,32 @@ class FSNamesystemLock {
     this.coarseLock = new ReentrantReadWriteLock(fair);
     this.timer = timer;
 
+    final int numPartitions = conf.getInt(DFS_NAMENODE_FSLOCK_PARTITIONS_KEY,
+        DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT);
+    if (numPartitions > 0) {
+      FSNamesystem.LOG.info("fsLock namespace partitions: " + numPartitions);
+      this.partitionLocks = new ReentrantReadWriteLock[numPartitions];
+      for (int i = 0; i < numPartitions; i++) {
+        partitionLocks[i] = new ReentrantReadWriteLock(fair);
+      }
+    } else {
+      this.partitionLocks = null;
+    }
+
+    if (conf.getBoolean(DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY,
+        DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_DEFAULT)) {
+      FSNamesystem.LOG.info("fsLock uses a separate block lock");
+      this.blockLock = new ReentrantReadWriteLock(fair);
+    } else {
+      this.blockLock = null;
+    }
+    this.optimisticReadsEnabled = conf.getBoolean(
+        DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY,
+        DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_DEFAULT);
+    if (optimisticReadsEnabled) {
+      FSNamesystem.LOG.info("fsLock allows optimistic reads");
+    }
+
     this.writeLockReportingThresholdMs = conf.getLong(
         DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_KEY,
         DFS_NAMENODE_WRITE_LOCK_REPORTING_THRESHOLD_MS_DEFAULT);
@@ -141,28 +242,92 @@ class FSNamesystemLock {
     FSNamesystem.LOG.info("Detailed lock hold time metrics enabled: " +
         this.metricsEnabled);
     this.detailedHoldTimeMetrics = detailedHoldTimeMetrics;
+    if (conf.getBoolean(DFS_NAMENODE_LOCK_PROFILING_ENABLED_KEY,
+        DFS_NAMENODE_LOCK_PROFILING_ENABLED_DEFAULT)) {
+      FSNamesystem.LOG.info("fsLock profiling enabled");
+      this.profiler = new FSNamesystemLockProfiler(conf, timer);
+    } else {
+      this.profiler = null;
+    }
+  }
+
+  /**
+   * @return the profiler of the lock, or null if profiling is disabled.
+   */
+  FSNamesystemLockProfiler getProfiler() {
+    return profiler;
   }
 
   public void readLock() {
-    doLock(false);
+    readLockNamespace();
+    if (blockLock != null) {
+      blockLock.readLock().lock();
+    }
   }
 
   public void readLockInterruptibly() throws InterruptedException {
-    doLockInterruptibly(false);
+    readLockNamespaceInterruptibly();
+    if (blockLock != null) {
+      try {
+        blockLock.readLock().lockInterruptibly();
+      } catch (InterruptedException e) {
+        readUnlockNamespace(OP_NAME_OTHER);
+        throw e;
+      }
+    }
   }
 
   public void readUnlock() {
-    readUnlock(OP_NAME_OTHER);
+    if (blockLock != null) {
+      blockLock.readLock().unlock();
+    }
+    readUnlockNamespace(OP_NAME_OTHER);
   }
 
   public void readUnlock(String opName) {
+    if (blockLock != null) {
+      blockLock.readLock().unlock();
+    }
+    readUnlockNamespace(opName);
+  }
+
+  /**
+   * Acquire the read lock without the block lock. Only for operations which
+   * do not access block management state. Must be released with
+   * {@link #readUnlockNamespace(String)}.
+   */
+  public void readLockNamespace() {
+    doLock(false);
+    if (needsPartitionReadLocks()) {
+      lockAllPartitionsForRead();
+    }
+  }
+
+  private void readLockNamespaceInterruptibly() throws InterruptedException {
+    doLockInterruptibly(false);
+    if (needsPartitionReadLocks()) {
+      try {
+        lockAllPartitionsForReadInterruptibly();
+      } catch (InterruptedException e) {
+        coarseLock.readLock().unlock();
+        readLockHeldTimeStampNanos.remove();
+        readLockWaitNanos.remove();
+        throw e;
+      }
+    }
+  }
+
+  public void readUnlockNamespace(String opName) {
     final boolean needReport = coarseLock.getReadHoldCount() == 1;
     final long readLockIntervalNanos =
         timer.monotonicNowNanos() - readLockHeldTimeStampNanos.get();
+    if (needsPartitionReadLocks()) {
+      unlockAllPartitionsForRead();
+    }
     coarseLock.readLock().unlock();
 
     if (needReport) {
-      addMetric(opName, readLockIntervalNanos, false);
+      addMetric(opName, getReadLockWaitNanos(), readLockIntervalNanos, false);
       readLockHeldTimeStampNanos.remove();
     }
     final long readLockIntervalMs =
@@ -200,11 +365,21 @@ class FSNamesystemLock {
   }
   
   public void writeLock() {
+    checkNotHoldingBlockWriteLock();
     doLock(true);
+    beginExclusiveHold();
   }
 
   public void writeLockInterruptibly() throws InterruptedException {
+    checkNotHoldingBlockWriteLock();
     doLockInterruptibly(true);
+    beginExclusiveHold();
+  }
+
+  /** The write lock cannot be taken while its read lock is held. */
+  private void checkNotHoldingBlockWriteLock() {
+    Preconditions.checkState(!isBlockWriteLockedByCurrentThread(),
+        "Write lock cannot be acquired while holding the block lock");
   }
 
   public void writeUnlock() {
@@ -220,6 +395,7 @@ class FSNamesystemLock {
     final long currentTimeMs = TimeUnit.NANOSECONDS.toMillis(currentTimeNanos);
     final long writeLockIntervalMs =
         TimeUnit.NANOSECONDS.toMillis(writeLockIntervalNanos);
+    final long waitNanos = writeLockWaitNanos;
 
     LogAction logAction = LogThrottlingHelper.DO_NOT_LOG;
     if (needReport &&
@@ -228,10 +404,11 @@ class FSNamesystemLock {
           .record("write", currentTimeMs, writeLockIntervalMs);
     }
 
+    endExclusiveHold();
     coarseLock.writeLock().unlock();
 
     if (needReport) {
-      addMetric(opName, writeLockIntervalNanos, true);
+      addMetric(opName, waitNanos, writeLockIntervalNanos, true);
     }
 
     if (logAction.shouldLog()) {
@@ -247,6 +424,193 @@ class FSNamesystemLock {
     }
   }
 
+  /**
+   * @return true if block management state has its own lock.
+   */
+  public boolean isBlockLockSeparate() {
+    return blockLock != null;
+  }
+
+  /**
+   * Acquire the locks needed to modify block management state only: the
+   * namespace read lock and the block lock exclusively.
+   * Must only be called if {@link #isBlockLockSeparate()} is true and the
+   * current thread does not hold the block lock in shared mode.
+   */
+  public void blockWriteLock() {
+    Preconditions.checkState(isBlockLockSeparate(),
+        "Separate block lock is disabled");
+    Preconditions.checkState(blockLock.isWriteLockedByCurrentThread() ||
+        blockLock.getReadHoldCount() == 0,
+        "Block read lock cannot be upgraded");
+    readLockNamespace();
+    blockLock.writeLock().lock();
+    beginExclusiveHold();
+  }
+
+  /**
+   * Release the locks taken by {@link #blockWriteLock()}.
+   * @param opName name of the operation, used for the lock hold time metrics
+   */
+  public void blockWriteUnlock(String opName) {
+    endExclusiveHold();
+    blockLock.writeLock().unlock();
+    readUnlockNamespace(opName);
+  }
+
+  /**
+   * @return true if the current thread holds the block lock exclusively.
+   */
+  public boolean isBlockWriteLockedByCurrentThread() {
+    return blockLock != null && blockLock.isWriteLockedByCurrentThread();
+  }
+
+  /**
+   * @return true if namespace partition locks are enabled.
+   */
+  public boolean isPartitioned() {
+    return partitionLocks != null;
+  }
+
+  /**
+   * Acquire the locks needed to add or remove the last component of a path
+   * in its parent directory without excluding writers of other directories:
+   * the coarse lock in shared mode, the parent's partition exclusively and
+   * the partitions of all other ancestors in shared mode.
+   * Must only be called if {@link #isPartitioned()} is true and the current
+   * thread does not hold any namesystem lock yet.
+   *
+   * @param pathComponents components of an absolute path, at least two
+   */
+  public void partitionWriteLock(byte[][] pathComponents) {
+    Preconditions.checkState(isPartitioned(), "Partitioned lock is disabled");
+    Preconditions.checkState(partitionHold.get() == null &&
+        coarseLock.getReadHoldCount() == 0 &&
+        !coarseLock.isWriteLockedByCurrentThread(),
+        "Partition locks cannot be nested in other namesystem locks");
+    final PartitionHold hold = getPartitions(pathComponents);
+    final long startNanos = timer.monotonicNowNanos();
+    coarseLock.readLock().lock();
+    for (int i = 0; i < hold.partitions.length; i++) {
+      final ReentrantReadWriteLock l = partitionLocks[hold.partitions[i]];
+      if (hold.exclusive[i]) {
+        l.writeLock().lock();
+      } else {
+        l.readLock().lock();
+      }
+    }
+    final long now = timer.monotonicNowNanos();
+    updateProcessingDetails(Timing.LOCKWAIT, now - startNanos);
+    hold.waitNanos = now - startNanos;
+    hold.heldTimeStampNanos = now;
+    partitionHold.set(hold);
+    beginExclusiveHold();
+  }
+
+  /**
+   * Release the locks taken by {@link #partitionWriteLock(byte[][])}.
+   * @param opName name of the operation, used for the lock hold time metrics
+   */
+  public void partitionWriteUnlock(String opName) {
+    final PartitionHold hold = partitionHold.get();
+    Preconditions.checkState(hold != null, "No partition locks held");
+    endExclusiveHold();
+    partitionHold.remove();
+    for (int i = hold.partitions.length - 1; i >= 0; i--) {
+      final ReentrantReadWriteLock l = partitionLocks[hold.partitions[i]];
+      if (hold.exclusive[i]) {
+        l.writeLock().unlock();
+      } else {
+        l.readLock().unlock();
+      }
+    }
+    coarseLock.readLock().unlock();
+    addMetric(opName, hold.waitNanos,
+        timer.monotonicNowNanos() - hold.heldTimeStampNanos, true);
+  }
+
+  /**
+   * @return true if the current thread holds partition locks taken by
+   *         {@link #partitionWriteLock(byte[][])}.
+   */
+  public boolean hasPartitionWriteLock() {
+    return partitionLocks != null && partitionHold.get() != null;
+  }
+
+  private void beginExclusiveHold() {
+    if (optimisticReadsEnabled) {
+      exclusiveHolds.incrementAndGet();
+      exclusiveHoldSequence.incrementAndGet();
+    }
+  }
+
+  private void endExclusiveHold() {
+    if (optimisticReadsEnabled) {
+      exclusiveHoldSequence.incrementAndGet();
+      exclusiveHolds.decrementAndGet();
+    }
+  }
+
+  /**
+   * @return true if read-only operations may run without the lock.
+   */
+  public boolean isOptimisticReadEnabled() {
+    return optimisticReadsEnabled;
+  }
+
+  /**
+   * Start a read-only operation without taking the lock. The operation must
+   * be ended with {@link #endOptimisticRead(long)}, and its result may only
+   * be used if that returns true.
+   *
+   * @return a stamp for {@link #endOptimisticRead(long)}, or
+   *         {@link #NO_STAMP} if an exclusive hold is in progress.
+   */
+  public long beginOptimisticRead() {
+    Preconditions.checkState(optimisticReadsEnabled,
+        "Optimistic reads are disabled");
+    final long stamp = exclusiveHoldSequence.get();
+    if (exclusiveHolds.get() != 0) {
+      numOptimisticReads.incrementAndGet();
+      numOptimisticReadFailures.incrementAndGet();
+      return NO_STAMP;
+    }
+    optimisticRead.set(Boolean.TRUE);
+    return stamp;
+  }
+
+  /**
+   * End an optimistic read started by {@link #beginOptimisticRead()}.
+   * @return true if no exclusive hold started since the read began, so the
+   *         state the read observed was consistent.
+   */
+  public boolean endOptimisticRead(long stamp) {
+    optimisticRead.remove();
+    // The atomic update keeps the reads of the operation from being
+    // reordered after the validation below.
+    numOptimisticReads.incrementAndGet();
+    if (exclusiveHolds.get() == 0 && exclusiveHoldSequence.get() == stamp) {
+      return true;
+    }
+    numOptimisticReadFailures.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * @return true if the current thread runs an optimistic read.
+   */
+  public boolean isOptimisticReading() {
+    return optimisticReadsEnabled && optimisticRead.get() != null;
+  }
+
+  public long getNumOptimisticReads() {
+    return numOptimisticReads.get();
+  }
+
+  public long getNumOptimisticReadFailures() {
+    return numOptimisticReadFailures.get();
+  }
+
   public int getReadHoldCount() {
     return coarseLock.getReadHoldCount();
   }
@@ -277,9 +641,14 @@ class FSNamesystemLock {
   /**
    * Add the lock hold time for a recent operation to the metrics.
    * @param operationName Name of the operation for which to record the time
+   * @param waitNanos Length of time the operation waited for the lock
    * @param value Length of time the lock was held (nanoseconds)
    */
-  private void addMetric(String operationName, long value, boolean isWrite) {
+  private void addMetric(String operationName, long waitNanos, long value,
+      boolean isWrite) {
+    if (profiler != null) {
+      profiler.record(operationName, isWrite, waitNanos, value);
+    }
     if (metricsEnabled) {
       String opMetric = getMetricName(operationName, isWrite);
       detailedHoldTimeMetrics.add(opMetric, value);
@@ -318,11 +687,115 @@ class FSNamesystemLock {
     if (isWrite) {
       if (coarseLock.getWriteHoldCount() == 1) {
         writeLockHeldTimeStampNanos = now;
+        writeLockWaitNanos = now - startNanos;
       }
     } else {
       if (coarseLock.getReadHoldCount() == 1) {
         readLockHeldTimeStampNanos.set(now);
+        if (profiler != null) {
+          readLockWaitNanos.set(now - startNanos);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the time the current thread waited for its outermost read lock,
+   *         if the lock is profiled.
+   */
+  private long getReadLockWaitNanos() {
+    if (profiler == null) {
+      return 0;
+    }
+    final Long waitNanos = readLockWaitNanos.get();
+    readLockWaitNanos.remove();
+    return waitNanos == null ? 0 : waitNanos;
+  }
+
+  /**
+   * A reader takes every partition in shared mode with its outermost read
+   * hold. Partitioned writers already hold the coarse read lock, so nested
+   * read locks never touch the partitions.
+   */
+  private boolean needsPartitionReadLocks() {
+    return partitionLocks != null && coarseLock.getReadHoldCount() == 1 &&
+        partitionHold.get() == null;
+  }
+
+  private void lockAllPartitionsForRead() {
+    for (ReentrantReadWriteLock l : partitionLocks) {
+      l.readLock().lock();
+    }
+  }
+
+  private void lockAllPartitionsForReadInterruptibly()
+      throws InterruptedException {
+    int locked = 0;
+    try {
+      for (; locked < partitionLocks.length; locked++) {
+        partitionLocks[locked].readLock().lockInterruptibly();
       }
+    } finally {
+      if (locked < partitionLocks.length) {
+        while (--locked >= 0) {
+          partitionLocks[locked].readLock().unlock();
+        }
+      }
+    }
+  }
+
+  private void unlockAllPartitionsForRead() {
+    for (int i = partitionLocks.length - 1; i >= 0; i--) {
+      partitionLocks[i].readLock().unlock();
+    }
+  }
+
+  /**
+   * Map the ancestors of the last path component to partitions. Each prefix
+   * of the path is hashed to a partition; the parent's partition is taken
+   * exclusively. A partition hit by several prefixes is only locked once,
+   * exclusively if any of them requires it.
+   */
+  @VisibleForTesting
+  PartitionHold getPartitions(byte[][] pathComponents) {
+    Preconditions.checkArgument(pathComponents.length >= 2,
+        "Cannot partition-lock the root directory");
+    final int parentLength = pathComponents.length - 1;
+    final int[] partitions = new int[parentLength];
+    int hash = 1;
+    for (int i = 0; i < parentLength; i++) {
+      hash = 31 * hash + Arrays.hashCode(pathComponents[i]);
+      partitions[i] = ((hash % partitionLocks.length) + partitionLocks.length)
+          % partitionLocks.length;
+    }
+    final int parentPartition = partitions[parentLength - 1];
+    Arrays.sort(partitions);
+    int n = 0;
+    for (int i = 0; i < partitions.length; i++) {
+      if (n == 0 || partitions[n - 1] != partitions[i]) {
+        partitions[n++] = partitions[i];
+      }
+    }
+    final PartitionHold hold = new PartitionHold(Arrays.copyOf(partitions, n));
+    for (int i = 0; i < n; i++) {
+      hold.exclusive[i] = hold.partitions[i] == parentPartition;
+    }
+    return hold;
+  }
+
+  /** Partition locks and their modes held by a partitioned writer. */
+  @VisibleForTesting
+  static final class PartitionHold {
+    /** Partition indexes in ascending order. */
+    final int[] partitions;
+    /** Whether the partition at the same position is held exclusively. */
+    final boolean[] exclusive;
+    private long heldTimeStampNanos;
+    private long waitNanos;
+
+    private PartitionHold(int[] partitions) {
+      this.partitions = partitions;
+      this.exclusive = new boolean[partitions.length];
     }
   }
 
@@ -0,0 +1,295 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.top.TopConf;
+import org.apache.hadoop.hdfs.server.namenode.top.window.RollingWindowManager;
+import org.apache.hadoop.hdfs.server.namenode.top.window.RollingWindowManager.Op;
+import org.apache.hadoop.hdfs.server.namenode.top.window.RollingWindowManager.TopWindow;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Timer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Attributes the time spent waiting for and holding the
+ * {@link FSNamesystemLock} to operations and users.
+ *
+ * For every operation, the percentiles of the wait and hold times in read
+ * and write mode are emitted in the {@link #METRICS_SOURCE_NAME} metrics
+ * source, with names of the form
+ * FSN(Read|Write)Lock(Wait|Hold)OperationNameNanos.
+ *
+ * The hold times are also summed per operation and user over the nntop
+ * windows, the same way {@link org.apache.hadoop.hdfs.server.namenode.top
+ * .metrics.TopMetrics} counts the operations of users, so that the
+ * operations holding the lock the longest and their top users can be
+ * listed. The user is the caller of the RPC holding the lock, or
+ * {@link #INTERNAL_USER} for the threads of the NameNode itself.
+ *
+ * Holds longer than a threshold are traced: the stack traces of the longest
+ * of them within the longest window are kept.
+ *
+ * Thread-safe.
+ */
+class FSNamesystemLockProfiler implements MetricsSource {
+  static final String METRICS_SOURCE_NAME = "FSNamesystemLockProfile";
+  /** The user of the holds outside of RPC calls. */
+  static final String INTERNAL_USER = "internal";
+
+  private static final String READ_LOCK_PREFIX = "FSNReadLock";
+  private static final String WRITE_LOCK_PREFIX = "FSNWriteLock";
+
+  private final Timer timer;
+  private final int intervalSecs;
+  /** The wait and hold time percentiles by metric name. */
+  private final ConcurrentMap<String, MutableQuantiles> quantiles =
+      new ConcurrentHashMap<String, MutableQuantiles>();
+
+  /** The hold time in microseconds per operation and user, by window. */
+  private final List<RollingWindowManager> windowManagers =
+      new ArrayList<RollingWindowManager>();
+  private final int topOps;
+
+  private final int traceSize;
+  private final long traceThresholdNanos;
+  private final long traceWindowMs;
+  /** The longest traced holds, the shortest first. */
+  private final PriorityQueue<LockHoldTrace> traces;
+
+  FSNamesystemLockProfiler(Configuration conf, Timer timer) {
+    this.timer = timer;
+    this.intervalSecs = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_INTERVAL_SECONDS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_INTERVAL_SECONDS_DEFAULT);
+    Preconditions.checkArgument(intervalSecs > 0,
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_INTERVAL_SECONDS_KEY +
+            " must be positive");
+    int longestWindowMs = 0;
+    for (int windowMs : new TopConf(conf).nntopReportingPeriodsMs) {
+      windowManagers.add(new RollingWindowManager(conf, windowMs));
+      longestWindowMs = Math.max(longestWindowMs, windowMs);
+    }
+    this.topOps = conf.getInt(DFSConfigKeys.NNTOP_NUM_USERS_KEY,
+        DFSConfigKeys.NNTOP_NUM_USERS_DEFAULT);
+    this.traceWindowMs = longestWindowMs;
+    this.traceSize = Math.max(0, conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_TRACE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_TRACE_SIZE_DEFAULT));
+    this.traceThresholdNanos = TimeUnit.MILLISECONDS.toNanos(conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_TRACE_THRESHOLD_MS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_TRACE_THRESHOLD_MS_DEFAULT));
+    this.traces = new PriorityQueue<LockHoldTrace>(Math.max(1, traceSize),
+        new Comparator<LockHoldTrace>() {
+          @Override
+          public int compare(LockHoldTrace a, LockHoldTrace b) {
+            return Long.compare(a.holdNanos, b.holdNanos);
+          }
+        });
+  }
+
+  /**
+   * Record a lock hold which just ended.
+   * @param opName the name of the operation which held the lock
+   * @param isWrite whether the lock was held exclusively
+   * @param waitNanos the time the operation waited for the lock
+   * @param holdNanos the time the operation held the lock
+   */
+  void record(String opName, boolean isWrite, long waitNanos,
+      long holdNanos) {
+    final String prefix = isWrite ? WRITE_LOCK_PREFIX : READ_LOCK_PREFIX;
+    final String op = StringUtils.capitalize(opName);
+    getQuantiles(prefix + "Wait" + op + "Nanos").add(waitNanos);
+    getQuantiles(prefix + "Hold" + op + "Nanos").add(holdNanos);
+
+    final String user = getCurrentUser();
+    final String command = (isWrite ? "write." : "read.") + opName;
+    final long now = timer.monotonicNow();
+    final long holdMicros = TimeUnit.NANOSECONDS.toMicros(holdNanos);
+    for (RollingWindowManager manager : windowManagers) {
+      manager.recordMetric(now, command, user, holdMicros);
+      manager.recordMetric(now, TopConf.ALL_CMDS, user, holdMicros);
+    }
+
+    if (traceSize > 0 && holdNanos >= traceThresholdNanos) {
+      trace(new LockHoldTrace(opName, user, isWrite, holdNanos, now,
+          org.apache.hadoop.util.StringUtils.getStackTrace(
+              Thread.currentThread())));
+    }
+  }
+
+  private MutableQuantiles getQuantiles(String name) {
+    MutableQuantiles q = quantiles.get(name);
+    if (q == null) {
+      q = new MutableQuantiles(name, "Namesystem lock time of an operation",
+          "Ops", "Nanos", intervalSecs);
+      final MutableQuantiles prev = quantiles.putIfAbsent(name, q);
+      if (prev != null) {
+        q.stop();
+        q = prev;
+      }
+    }
+    return q;
+  }
+
+  private static String getCurrentUser() {
+    final UserGroupInformation ugi = Server.getRemoteUser();
+    return ugi == null ? INTERNAL_USER : ugi.getShortUserName();
+  }
+
+  private synchronized void trace(LockHoldTrace trace) {
+    expireTraces(trace.timeMs);
+    if (traces.size() < traceSize) {
+      traces.add(trace);
+    } else if (traces.peek().holdNanos < trace.holdNanos) {
+      traces.poll();
+      traces.add(trace);
+    }
+  }
+
+  private void expireTraces(long now) {
+    for (Iterator<LockHoldTrace> it = traces.iterator(); it.hasNext(); ) {
+      if (now - it.next().timeMs > traceWindowMs) {
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return the traces of the longest holds within the longest window, the
+   *         longest first.
+   */
+  synchronized List<LockHoldTrace> getLongestHolds() {
+    expireTraces(timer.monotonicNow());
+    final List<LockHoldTrace> list = new ArrayList<LockHoldTrace>(traces);
+    Collections.sort(list, Collections.reverseOrder(traces.comparator()));
+    return list;
+  }
+
+  /**
+   * @return one TopWindow per nntop window, listing the operations which
+   *         held the lock the longest, in microseconds, with their top users.
+   *         The operations are prefixed with the lock mode, e.g.
+   *         write.create, and {@link TopConf#ALL_CMDS} sums all of them.
+   */
+  List<TopWindow> getTopWindows() {
+    final long now = timer.monotonicNow();
+    final List<TopWindow> windows = new ArrayList<TopWindow>();
+    for (RollingWindowManager manager : windowManagers) {
+      final TopWindow snapshot = manager.snapshot(now);
+      final List<Op> ops = new ArrayList<Op>(snapshot.getOps());
+      Collections.sort(ops, new Comparator<Op>() {
+        @Override
+        public int compare(Op a, Op b) {
+          return Long.compare(b.getTotalCount(), a.getTotalCount());
+        }
+      });
+      final TopWindow window = new TopWindow(snapshot.getWindowLenMs());
+      // the sum of all operations is always listed
+      for (int i = 0; i < ops.size() && i <= topOps; i++) {
+        window.addOp(ops.get(i));
+      }
+      windows.add(window);
+    }
+    return windows;
+  }
+
+  /** @return the lock profile to be published as JSON. */
+  Map<String, Object> getProfile() {
+    final Map<String, Object> profile = new LinkedHashMap<String, Object>();
+    profile.put("windows", getTopWindows());
+    profile.put("longestHolds", getLongestHolds());
+    return profile;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    final MetricsRecordBuilder rb = collector.addRecord(METRICS_SOURCE_NAME)
+        .setContext("dfs");
+    for (MutableQuantiles q : quantiles.values()) {
+      q.snapshot(rb, all);
+    }
+  }
+
+  /** Stop rolling over the percentiles. */
+  void stop() {
+    for (MutableQuantiles q : quantiles.values()) {
+      q.stop();
+    }
+  }
+
+  /** A traced lock hold. */
+  static class LockHoldTrace {
+    private final String opName;
+    private final String user;
+    private final boolean isWrite;
+    private final long holdNanos;
+    private final long timeMs;
+    private final String stackTrace;
+
+    LockHoldTrace(String opName, String user, boolean isWrite,
+        long holdNanos, long timeMs, String stackTrace) {
+      this.opName = opName;
+      this.user = user;
+      this.isWrite = isWrite;
+      this.holdNanos = holdNanos;
+      this.timeMs = timeMs;
+      this.stackTrace = stackTrace;
+    }
+
+    public String getOpName() {
+      return opName;
+    }
+
+    public String getUser() {
+      return user;
+    }
+
+    public String getMode() {
+      return isWrite ? "write" : "read";
+    }
+
+    public long getHoldMs() {
+      return TimeUnit.NANOSECONDS.toMillis(holdNanos);
+    }
+
+    public String getStackTrace() {
+      return stackTrace;
+    }
+  }
+}
@@ -31,6 +31,7 @@ import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
 import org.apache.hadoop.hdfs.server.namenode.INodeAttributeProvider.AccessControlEnforcer;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.apache.hadoop.hdfs.util.ReadOnlyList;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.UserGroupInformation;
@@ -80,11 +81,19 @@ public class FSPermissionChecker implements AccessControlEnforcer {
   private final Collection<String> groups;
   private final boolean isSuper;
   private final INodeAttributeProvider attributeProvider;
+  private final PermissionCache permissionCache;
 
 
   protected FSPermissionChecker(String fsOwner, String supergroup,
       UserGroupInformation callerUgi,
       INodeAttributeProvider attributeProvider) {
+    this(fsOwner, supergroup, callerUgi, attributeProvider, null);
+  }
+
+  FSPermissionChecker(String fsOwner, String supergroup,
+      UserGroupInformation callerUgi,
+      INodeAttributeProvider attributeProvider,
+      PermissionCache permissionCache) {
     this.fsOwner = fsOwner;
     this.supergroup = supergroup;
     this.callerUgi = callerUgi;
@@ -92,6 +101,7 @@ public class FSPermissionChecker implements AccessControlEnforcer {
     user = callerUgi.getShortUserName();
     isSuper = user.equals(fsOwner) || groups.contains(supergroup);
     this.attributeProvider = attributeProvider;
+    this.permissionCache = permissionCache;
   }
 
   public boolean isMemberOfGroup(String group) {
@@ -102,6 +112,10 @@ public class FSPermissionChecker implements AccessControlEnforcer {
     return user;
   }
 
+  Collection<String> getGroups() {
+    return groups;
+  }
+
   public boolean isSuperUser() {
     return isSuper;
   }
@@ -178,14 +192,34 @@ public class FSPermissionChecker implements AccessControlEnforcer {
     final INode[] inodes = inodesInPath.getINodesArray();
     final INodeAttributes[] inodeAttrs = new INodeAttributes[inodes.length];
     final byte[][] components = inodesInPath.getPathComponents();
+    int ancestorIndex = inodes.length - 2;
+
+    AccessControlEnforcer enforcer = getAccessControlEnforcer();
+    if (enforcer == this && permissionCache != null
+        && snapshotId == Snapshot.CURRENT_STATE_ID) {
+      // the stamp must be read before the inodes
+      final long stamp = permissionCache.getStamp();
+      for(; ancestorIndex >= 0 && inodes[ancestorIndex] == null;
+          ancestorIndex--);
+      final boolean traversable = ancestorIndex < 0
+          || permissionCache.isGranted(this, inodes, ancestorIndex,
+              PermissionCache.TRAVERSE);
+      // the attributes of the ancestors are only needed to traverse them
+      for (int i = traversable ? Math.max(ancestorIndex, 0) : 0;
+          i < inodes.length && inodes[i] != null; i++) {
+        inodeAttrs[i] = getINodeAttrs(components, i, inodes[i], snapshotId);
+      }
+      checkPermission(inodeAttrs, inodes, components, snapshotId,
+          ancestorIndex, doCheckOwner, ancestorAccess, parentAccess, access,
+          subAccess, ignoreEmptyDir, permissionCache, traversable, stamp);
+      return;
+    }
+
     for (int i = 0; i < inodes.length && inodes[i] != null; i++) {
       inodeAttrs[i] = getINodeAttrs(components, i, inodes[i], snapshotId);
     }
 
     String path = inodesInPath.getPath();
-    int ancestorIndex = inodes.length - 2;
-
-    AccessControlEnforcer enforcer = getAccessControlEnforcer();
     enforcer.checkPermission(fsOwner, supergroup, callerUgi, inodeAttrs, inodes,
         components, snapshotId, path, ancestorIndex, doCheckOwner,
         ancestorAccess, parentAccess, access, subAccess, ignoreEmptyDir);
@@ -233,13 +267,39 @@ public class FSPermissionChecker implements AccessControlEnforcer {
       throws AccessControlException {
     for(; ancestorIndex >= 0 && inodes[ancestorIndex] == null;
         ancestorIndex--);
+    checkPermission(inodeAttrs, inodes, components, snapshotId,
+        ancestorIndex, doCheckOwner, ancestorAccess, parentAccess, access,
+        subAccess, ignoreEmptyDir, null, false, -1);
+  }
 
-    try {
-      checkTraverse(inodeAttrs, inodes, components, ancestorIndex);
-    } catch (UnresolvedPathException | ParentNotDirectoryException ex) {
-      // must tunnel these exceptions out to avoid breaking interface for
-      // external enforcer
-      throw new TraverseAccessControlException(ex);
+  /**
+   * Check the permissions, recording the checks granted in the cache if
+   * there is one.
+   *
+   * @param cache the cache of the checks, or null.
+   * @param traversable whether the traverse of the path to the ancestor was
+   *                    already granted by the cache.
+   * @param stamp the counter of the changes of the cache read before the
+   *              inodes.
+   */
+  private void checkPermission(INodeAttributes[] inodeAttrs, INode[] inodes,
+      byte[][] components, int snapshotId, int ancestorIndex,
+      boolean doCheckOwner, FsAction ancestorAccess, FsAction parentAccess,
+      FsAction access, FsAction subAccess, boolean ignoreEmptyDir,
+      PermissionCache cache, boolean traversable, long stamp)
+      throws AccessControlException {
+    if (!traversable) {
+      try {
+        checkTraverse(inodeAttrs, inodes, components, ancestorIndex);
+      } catch (UnresolvedPathException | ParentNotDirectoryException ex) {
+        // must tunnel these exceptions out to avoid breaking interface for
+        // external enforcer
+        throw new TraverseAccessControlException(ex);
+      }
+      if (cache != null && ancestorIndex >= 0) {
+        cache.grant(this, inodes, ancestorIndex, stamp,
+            PermissionCache.TRAVERSE);
+      }
     }
 
     final INodeAttributes last = inodeAttrs[inodeAttrs.length - 1];
@@ -248,13 +308,16 @@ public class FSPermissionChecker implements AccessControlEnforcer {
       checkStickyBit(inodeAttrs, components, inodeAttrs.length - 2);
     }
     if (ancestorAccess != null && inodeAttrs.length > 1) {
-      check(inodeAttrs, components, ancestorIndex, ancestorAccess);
+      check(inodeAttrs, inodes, components, ancestorIndex, ancestorAccess,
+          cache, stamp);
     }
     if (parentAccess != null && inodeAttrs.length > 1) {
-      check(inodeAttrs, components, inodeAttrs.length - 2, parentAccess);
+      check(inodeAttrs, inodes, components, inodeAttrs.length - 2,
+          parentAccess, cache, stamp);
     }
     if (access != null) {
-      check(inodeAttrs, components, inodeAttrs.length - 1, access);
+      check(inodeAttrs, inodes, components, inodeAttrs.length - 1, access,
+          cache, stamp);
     }
     if (subAccess != null) {
       INode rawLast = inodes[inodeAttrs.length - 1];
@@ -342,6 +405,24 @@ public class FSPermissionChecker implements AccessControlEnforcer {
     }
   }
 
+  /**
+   * Check the access to an inode through the cache, if there is one.
+   * Guarded by {@link FSNamesystem#readLock()}
+   */
+  private void check(INodeAttributes[] inodeAttrs, INode[] inodes,
+      byte[][] components, int i, FsAction access, PermissionCache cache,
+      long stamp) throws AccessControlException {
+    if (cache == null || i < 0 || inodes[i] == null) {
+      check(inodeAttrs, components, i, access);
+      return;
+    }
+    final int mask = PermissionCache.mask(access);
+    if (!cache.isGranted(this, inodes, i, mask)) {
+      check(inodeAttrs, components, i, access);
+      cache.grant(this, inodes, i, stamp, mask);
+    }
+  }
+
   /** Guarded by {@link FSNamesystem#readLock()} */
   private void check(INodeAttributes[] inodes, byte[][] components, int i,
       FsAction access) throws AccessControlException {
@@ -223,6 +223,27 @@ public class INodeDirectory extends INodeWithAdditionalFields
     return getFeature(DirectoryWithSnapshotFeature.class);
   }
 
+  /**
+   * If the directory contains a {@link DirectoryUsageFeature}, return it;
+   * otherwise, return null.
+   */
+  final DirectoryUsageFeature getDirectoryUsageFeature() {
+    return getFeature(DirectoryUsageFeature.class);
+  }
+
+  /**
+   * Add a {@link DirectoryUsageFeature} if the directory does not have one.
+   * The caller must hold the write lock.
+   */
+  DirectoryUsageFeature addDirectoryUsageFeature(FSDirectory fsd) {
+    DirectoryUsageFeature f = getDirectoryUsageFeature();
+    if (f == null) {
+      f = new DirectoryUsageFeature(fsd);
+      addFeature(f);
+    }
+    return f;
+  }
+
   /** Is this file has the snapshot feature? */
   public final boolean isWithSnapshot() {
     return getDirectoryWithSnapshotFeature() != null;
@@ -330,6 +351,7 @@ public class INodeDirectory extends INodeWithAdditionalFields
       withCount.removeReference(oldChild.asReference());
     }
     children.set(i, newChild);
+    DirectoryUsageFeature.resetAncestors(this);
     
     // replace the instance in the created list of the diff list
     DirectoryWithSnapshotFeature sf = this.getDirectoryWithSnapshotFeature();
@@ -417,6 +439,54 @@ public class INodeDirectory extends INodeWithAdditionalFields
     return sf.getChild(this, name, snapshotId);
   }
 
+  /**
+   * Get the child of the current state whose name is a range of bytes, the
+   * same as {@link #getChild(byte[], int)} with
+   * {@link Snapshot#CURRENT_STATE_ID} but without a copy of the name.
+   *
+   * @param bytes the bytes containing the name of the child
+   * @param offset the offset of the name in the bytes
+   * @param length the length of the name
+   * @return the child inode, or null.
+   */
+  INode getChild(byte[] bytes, int offset, int length) {
+    if (children == null) {
+      return null;
+    }
+    int lower = 0;
+    for (int upper = children.size() - 1; lower <= upper; ) {
+      final int mid = (upper + lower) >>> 1;
+      final INode child = children.get(mid);
+      final int d = compareName(child.getLocalNameBytes(), bytes, offset,
+          length);
+      if (d == 0) {
+        return child;
+      } else if (d > 0) {
+        upper = mid - 1;
+      } else {
+        lower = mid + 1;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Compare a name to a range of bytes in the order of
+   * {@link INode#compareTo(byte[])}, i.e. lexicographically as signed bytes.
+   */
+  private static int compareName(byte[] name, byte[] bytes, int offset,
+      int length) {
+    final int nameLength = name == null ? 0 : name.length;
+    final int n = Math.min(nameLength, length);
+    for (int i = 0; i < n; i++) {
+      final int d = name[i] - bytes[offset + i];
+      if (d != 0) {
+        return d;
+      }
+    }
+    return nameLength - length;
+  }
+
   /**
    * Search for the given INode in the children list and the deleted lists of
    * snapshots.
@@ -485,6 +555,8 @@ public class INodeDirectory extends INodeWithAdditionalFields
    */
   public boolean removeChild(INode child, int latestSnapshotId) {
     if (isInLatestSnapshot(latestSnapshotId)) {
+      // the child is moved to the snapshot data
+      DirectoryUsageFeature.resetAncestors(this);
       // create snapshot feature if necessary
       DirectoryWithSnapshotFeature sf = this.getDirectoryWithSnapshotFeature();
       if (sf == null) {
@@ -504,6 +576,21 @@ public class INodeDirectory extends INodeWithAdditionalFields
    * @return true if the child is removed; false if the child is not found.
    */
   public boolean removeChild(final INode child) {
+    if (!detachChild(child)) {
+      return false;
+    }
+    DirectoryUsageFeature.removeUsage(this, child);
+    return true;
+  }
+
+  /**
+   * Remove the specified child from this directory without removing its
+   * usage from the {@link DirectoryUsageFeature}s of this directory and its
+   * ancestors, see {@link DetachedSubtreeReclaimer}.
+   *
+   * @return true if the child is removed; false if the child is not found.
+   */
+  boolean detachChild(final INode child) {
     final int i = searchChildren(child.getLocalNameBytes());
     if (i < 0) {
       return false;
@@ -532,6 +619,8 @@ public class INodeDirectory extends INodeWithAdditionalFields
     }
 
     if (isInLatestSnapshot(latestSnapshotId)) {
+      // the child is recorded in the snapshot data
+      DirectoryUsageFeature.resetAncestors(this);
       // create snapshot feature if necessary
       DirectoryWithSnapshotFeature sf = this.getDirectoryWithSnapshotFeature();
       if (sf == null) {
@@ -570,6 +659,7 @@ public class INodeDirectory extends INodeWithAdditionalFields
     if (node.getGroupName() == null) {
       node.setGroup(getGroupName());
     }
+    DirectoryUsageFeature.addUsage(this, node);
   }
 
   @Override
@@ -635,6 +725,19 @@ public class INodeDirectory extends INodeWithAdditionalFields
   @Override
   public ContentSummaryComputationContext computeContentSummary(int snapshotId,
       ContentSummaryComputationContext summary) throws AccessControlException {
+    if (snapshotId == Snapshot.CURRENT_STATE_ID && summary.isUsageIndexed()) {
+      return DirectoryUsageFeature.computeContentSummary(this, summary);
+    }
+    return computeUncachedContentSummary(snapshotId, summary);
+  }
+
+  /**
+   * Compute the content summary without the cached counts of this
+   * directory, see {@link DirectoryUsageFeature}.
+   */
+  ContentSummaryComputationContext computeUncachedContentSummary(
+      int snapshotId, ContentSummaryComputationContext summary)
+      throws AccessControlException {
     final DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     if (sf != null && snapshotId == Snapshot.CURRENT_STATE_ID) {
       final ContentCounts counts = new ContentCounts.Builder().build();
@@ -727,6 +830,7 @@ public class INodeDirectory extends INodeWithAdditionalFields
       final INode newChild) throws QuotaExceededException {
     DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     assert sf != null : "Directory does not have snapshot feature";
+    DirectoryUsageFeature.resetAncestors(this);
     sf.getDiffs().removeChild(ListType.DELETED, oldChild);
     sf.getDiffs().replaceChild(ListType.CREATED, oldChild, newChild);
     addChild(newChild, true, Snapshot.CURRENT_STATE_ID);
@@ -742,6 +846,7 @@ public class INodeDirectory extends INodeWithAdditionalFields
       int latestSnapshotId) throws QuotaExceededException {
     DirectoryWithSnapshotFeature sf = getDirectoryWithSnapshotFeature();
     assert sf != null : "Directory does not have snapshot feature";
+    DirectoryUsageFeature.resetAncestors(this);
     boolean removeDeletedChild = sf.getDiffs().removeChild(ListType.DELETED,
         deletedChild);
     int sid = removeDeletedChild ? Snapshot.CURRENT_STATE_ID : latestSnapshotId;
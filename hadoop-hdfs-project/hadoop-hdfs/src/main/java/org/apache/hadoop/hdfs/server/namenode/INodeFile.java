@@ -194,7 +194,10 @@ public class INodeFile extends INodeWithAdditionalFields
         "file is already under construction");
     FileUnderConstructionFeature uc = new FileUnderConstructionFeature(
         clientName, clientMachine);
+    // move the file from the counts to the open files of the usage
+    DirectoryUsageFeature.removeUsage(getParent(), this);
     addFeature(uc);
+    DirectoryUsageFeature.addUsage(getParent(), this);
     return this;
   }
 
@@ -206,7 +209,10 @@ public class INodeFile extends INodeWithAdditionalFields
     final FileUnderConstructionFeature uc = getFileUnderConstructionFeature();
     Preconditions.checkNotNull(uc, "File %s is not under construction", this);
     assertAllBlocksComplete(numCommittedAllowed, minReplication);
+    // move the file from the open files to the counts of the usage
+    DirectoryUsageFeature.removeUsage(getParent(), this);
     removeFeature(uc);
+    DirectoryUsageFeature.addUsage(getParent(), this);
     setModificationTime(mtime);
   }
 
@@ -646,6 +652,13 @@ public class INodeFile extends INodeWithAdditionalFields
   public final ContentSummaryComputationContext computeContentSummary(
       int snapshotId, final ContentSummaryComputationContext summary) {
     final ContentCounts counts = summary.getCounts();
+    if (isUnderConstruction()) {
+      summary.addOpenFile(this);
+      if (summary.isDeferringOpenFiles()) {
+        // counted with its current length by the users of the usage
+        return summary;
+      }
+    }
     counts.addContent(Content.FILE, 1);
     final long fileLen = computeFileSize(snapshotId);
     counts.addContent(Content.LENGTH, fileLen);
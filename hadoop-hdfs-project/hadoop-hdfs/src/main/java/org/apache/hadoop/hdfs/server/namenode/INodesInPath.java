@@ -22,6 +22,7 @@ import java.util.Arrays;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.namenode.snapshot.DirectoryWithSnapshotFeature;
@@ -149,41 +150,11 @@ public class INodesInPath {
     while (count < components.length && curNode != null) {
       final boolean lastComp = (count == components.length - 1);
       inodes[inodeNum++] = curNode;
-      final boolean isRef = curNode.isReference();
       final boolean isDir = curNode.isDirectory();
       final INodeDirectory dir = isDir? curNode.asDirectory(): null;
-      if (!isRef && isDir && dir.isWithSnapshot()) {
-        //if the path is a non-snapshot path, update the latest snapshot.
-        if (!isSnapshot && shouldUpdateLatestId(
-            dir.getDirectoryWithSnapshotFeature().getLastSnapshotId(),
-            snapshotId)) {
-          snapshotId = dir.getDirectoryWithSnapshotFeature().getLastSnapshotId();
-        }
-      } else if (isRef && isDir && !lastComp) {
-        // If the curNode is a reference node, need to check its dstSnapshot:
-        // 1. if the existing snapshot is no later than the dstSnapshot (which
-        // is the latest snapshot in dst before the rename), the changes 
-        // should be recorded in previous snapshots (belonging to src).
-        // 2. however, if the ref node is already the last component, we still 
-        // need to know the latest snapshot among the ref node's ancestors, 
-        // in case of processing a deletion operation. Thus we do not overwrite
-        // the latest snapshot if lastComp is true. In case of the operation is
-        // a modification operation, we do a similar check in corresponding 
-        // recordModification method.
-        if (!isSnapshot) {
-          int dstSnapshotId = curNode.asReference().getDstSnapshotId();
-          if (snapshotId == CURRENT_STATE_ID || // no snapshot in dst tree of rename
-              (dstSnapshotId != CURRENT_STATE_ID &&
-               dstSnapshotId >= snapshotId)) { // the above scenario
-            int lastSnapshot = CURRENT_STATE_ID;
-            DirectoryWithSnapshotFeature sf;
-            if (curNode.isDirectory() && 
-                (sf = curNode.asDirectory().getDirectoryWithSnapshotFeature()) != null) {
-              lastSnapshot = sf.getLastSnapshotId();
-            }
-            snapshotId = lastSnapshot;
-          }
-        }
+      //if the path is a non-snapshot path, update the latest snapshot.
+      if (!isSnapshot) {
+        snapshotId = getLatestSnapshotId(curNode, lastComp, snapshotId);
       }
       if (lastComp || !isDir) {
         break;
@@ -228,6 +199,104 @@ public class INodesInPath {
     return new INodesInPath(inodes, components, isRaw, isSnapshot, snapshotId);
   }
 
+  /**
+   * Resolve the inodes of the components of a path split in a
+   * {@link PathComponents} buffer, the same as
+   * {@link #resolve(INodeDirectory, byte[][], boolean)} but without copying
+   * the components that exist: the names of their inodes are used instead.
+   * Only the missing components are copied.
+   *
+   * @return the resolved inodes, or null if the path has to be resolved by
+   *         {@link #resolve(INodeDirectory, byte[][], boolean)}, i.e. if it
+   *         is a relative or a snapshot path.
+   */
+  static INodesInPath resolve(final INodeDirectory startingDir,
+      final PathComponents components) {
+    if (!components.isRoot() && components.getLength(0) != 0) {
+      return null;
+    }
+    Preconditions.checkArgument(startingDir.compareTo((byte[]) null) == 0);
+
+    final int length = components.size();
+    final INode[] inodes = new INode[length];
+    final byte[][] path = new byte[length][];
+    path[0] = components.isRoot() ? null : DFSUtilClient.EMPTY_BYTES;
+    INode curNode = startingDir;
+    int count = 0;
+    int snapshotId = CURRENT_STATE_ID;
+    while (true) {
+      final boolean lastComp = (count == length - 1);
+      inodes[count] = curNode;
+      if (count > 0) {
+        path[count] = curNode.getLocalNameBytes();
+      }
+      snapshotId = getLatestSnapshotId(curNode, lastComp, snapshotId);
+      if (lastComp || !curNode.isDirectory()) {
+        break;
+      }
+      final INodeDirectory dir = curNode.asDirectory();
+      count++;
+      // the components of a snapshot path are combined, see above
+      if (components.equals(count, HdfsServerConstants.DOT_SNAPSHOT_DIR_BYTES)
+          && dir.isSnapshottable()) {
+        return null;
+      }
+      curNode = dir.getChild(components.getBytes(),
+          components.getOffset(count), components.getLength(count));
+      if (curNode == null) {
+        break;
+      }
+    }
+    for (int i = count; i < length; i++) {
+      if (path[i] == null && i > 0) {
+        path[i] = components.copy(i);
+      }
+    }
+    return new INodesInPath(inodes, path, false, false, snapshotId);
+  }
+
+  /**
+   * @return the latest snapshot id of a non-snapshot path after resolving
+   *         {@code curNode}, given the latest snapshot id of its ancestors.
+   */
+  private static int getLatestSnapshotId(INode curNode, boolean lastComp,
+      int snapshotId) {
+    final boolean isRef = curNode.isReference();
+    final boolean isDir = curNode.isDirectory();
+    final INodeDirectory dir = isDir? curNode.asDirectory(): null;
+    if (!isRef && isDir && dir.isWithSnapshot()) {
+      if (shouldUpdateLatestId(
+          dir.getDirectoryWithSnapshotFeature().getLastSnapshotId(),
+          snapshotId)) {
+        snapshotId = dir.getDirectoryWithSnapshotFeature().getLastSnapshotId();
+      }
+    } else if (isRef && isDir && !lastComp) {
+      // If the curNode is a reference node, need to check its dstSnapshot:
+      // 1. if the existing snapshot is no later than the dstSnapshot (which
+      // is the latest snapshot in dst before the rename), the changes 
+      // should be recorded in previous snapshots (belonging to src).
+      // 2. however, if the ref node is already the last component, we still 
+      // need to know the latest snapshot among the ref node's ancestors, 
+      // in case of processing a deletion operation. Thus we do not overwrite
+      // the latest snapshot if lastComp is true. In case of the operation is
+      // a modification operation, we do a similar check in corresponding 
+      // recordModification method.
+      int dstSnapshotId = curNode.asReference().getDstSnapshotId();
+      if (snapshotId == CURRENT_STATE_ID || // no snapshot in dst tree of rename
+          (dstSnapshotId != CURRENT_STATE_ID &&
+           dstSnapshotId >= snapshotId)) { // the above scenario
+        int lastSnapshot = CURRENT_STATE_ID;
+        DirectoryWithSnapshotFeature sf;
+        if (curNode.isDirectory() && 
+            (sf = curNode.asDirectory().getDirectoryWithSnapshotFeature()) != null) {
+          lastSnapshot = sf.getLastSnapshotId();
+        }
+        snapshotId = lastSnapshot;
+      }
+    }
+    return snapshotId;
+  }
+
   private static boolean shouldUpdateLatestId(int sid, int snapshotId) {
     return snapshotId == CURRENT_STATE_ID || (sid != CURRENT_STATE_ID &&
         ID_INTEGER_COMPARATOR.compare(snapshotId, sid) < 0);
@@ -28,16 +28,24 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLog;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLogManifest;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.util.Time;
 
 import static org.apache.hadoop.util.ExitUtil.terminate;
 
@@ -48,11 +56,17 @@ import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Manages a collection of Journals. None of the methods are synchronized, it is
  * assumed that FSEditLog methods, that use this class, use proper
  * synchronization.
+ *
+ * If there are several active journals, every op is serialized only once and
+ * the serialized op is copied to the buffers of all the journals. If parallel
+ * flush is enabled, the journals are flushed in parallel, so that the time
+ * of a flush is the time of the slowest journal instead of the sum of all.
  */
 public class JournalSet implements JournalManager {
 
@@ -194,9 +208,22 @@ public class JournalSet implements JournalManager {
   final int minimumRedundantJournals;
 
   private boolean closed;
-  
+
+  /** Flushes the journals in parallel, or null if parallel flush is off. */
+  private final ExecutorService flushExecutor;
+
   JournalSet(int minimumRedundantResources) {
+    this(minimumRedundantResources, false);
+  }
+
+  JournalSet(int minimumRedundantResources, boolean parallelFlush) {
     this.minimumRedundantJournals = minimumRedundantResources;
+    if (parallelFlush) {
+      flushExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("JournalSet flush #%d").build());
+    } else {
+      flushExecutor = null;
+    }
   }
   
   @Override
@@ -247,6 +274,9 @@ public class JournalSet implements JournalManager {
         jas.close();
       }
     }, "close journal");
+    if (flushExecutor != null) {
+      flushExecutor.shutdown();
+    }
     closed = true;
   }
 
@@ -396,26 +426,95 @@ public class JournalSet implements JournalManager {
       try {
         closure.apply(jas);
       } catch (Throwable t) {
-        if (jas.isRequired()) {
-          final String msg = "Error: " + status + " failed for required journal ("
-            + jas + ")";
-          LOG.fatal(msg, t);
-          // If we fail on *any* of the required journals, then we must not
-          // continue on any of the other journals. Abort them to ensure that
-          // retry behavior doesn't allow them to keep going in any way.
-          abortAllJournals();
-          // the current policy is to shutdown the NN on errors to shared edits
-          // dir. There are many code paths to shared edits failures - syncs,
-          // roll of edits etc. All of them go through this common function 
-          // where the isRequired() check is made. Applying exit policy here 
-          // to catch all code paths.
-          terminate(1, msg);
-        } else {
-          LOG.error("Error: " + status + " failed for (journal " + jas + ")", t);
-          badJAS.add(jas);          
+        handleJournalError(jas, t, status, badJAS);
+      }
+    }
+    disableAndReportErrors(badJAS, status);
+  }
+
+  /**
+   * Apply the given operation to all of the active journals in parallel,
+   * disabling any for which the closure throws an IOException. The errors are
+   * handled the same way as by {@link #mapJournalsAndReportErrors} after the
+   * operation completed on all the journals. If parallel flush is disabled or
+   * there are less than two active journals, the operation is applied by the
+   * calling thread.
+   * @param closure {@link JournalClosure} object encapsulating the operation.
+   * @param status message used for logging errors (e.g. "flush")
+   * @throws IOException If the operation fails on all the journals.
+   */
+  private void mapActiveJournalsInParallelAndReportErrors(
+      final JournalClosure closure, String status) throws IOException {
+    final List<JournalAndStream> active = getActiveJournals();
+    if (flushExecutor == null || active.size() < 2) {
+      mapJournalsAndReportErrors(closure, status);
+      return;
+    }
+
+    final List<Future<Void>> futures = new ArrayList<>(active.size());
+    for (final JournalAndStream jas : active) {
+      futures.add(flushExecutor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          closure.apply(jas);
+          return null;
+        }
+      }));
+    }
+    // wait for all the journals before handling errors, since a failed
+    // required journal aborts the others
+    final Throwable[] errors = new Throwable[active.size()];
+    boolean interrupted = false;
+    for (int i = 0; i < futures.size(); i++) {
+      while (true) {
+        try {
+          futures.get(i).get();
+          break;
+        } catch (ExecutionException e) {
+          errors[i] = e.getCause();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
         }
       }
     }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    List<JournalAndStream> badJAS = Lists.newLinkedList();
+    for (int i = 0; i < errors.length; i++) {
+      if (errors[i] != null) {
+        handleJournalError(active.get(i), errors[i], status, badJAS);
+      }
+    }
+    disableAndReportErrors(badJAS, status);
+  }
+
+  private void handleJournalError(JournalAndStream jas, Throwable t,
+      String status, List<JournalAndStream> badJAS) {
+    if (jas.isRequired()) {
+      final String msg = "Error: " + status + " failed for required journal ("
+        + jas + ")";
+      LOG.fatal(msg, t);
+      // If we fail on *any* of the required journals, then we must not
+      // continue on any of the other journals. Abort them to ensure that
+      // retry behavior doesn't allow them to keep going in any way.
+      abortAllJournals();
+      // the current policy is to shutdown the NN on errors to shared edits
+      // dir. There are many code paths to shared edits failures - syncs,
+      // roll of edits etc. All of them go through this common function 
+      // where the isRequired() check is made. Applying exit policy here 
+      // to catch all code paths.
+      terminate(1, msg);
+    } else {
+      LOG.error("Error: " + status + " failed for (journal " + jas + ")", t);
+      badJAS.add(jas);
+    }
+  }
+
+  private void disableAndReportErrors(List<JournalAndStream> badJAS,
+      String status) throws IOException {
     disableAndReportErrorOnJournals(badJAS);
     if (!NameNodeResourcePolicy.areResourcesAvailable(journals,
         minimumRedundantJournals)) {
@@ -441,6 +540,10 @@ public class JournalSet implements JournalManager {
    * all the journals that are currently active.
    */
   private class JournalSetOutputStream extends EditLogOutputStream {
+    /** Buffer an op is serialized to once for all the journals. */
+    private final DataOutputBuffer serialized = new DataOutputBuffer();
+    private final FSEditLogOp.Writer writer =
+        new FSEditLogOp.Writer(serialized);
 
     JournalSetOutputStream() throws IOException {
       super();
@@ -449,11 +552,32 @@ public class JournalSet implements JournalManager {
     @Override
     public void write(final FSEditLogOp op)
         throws IOException {
+      int numActive = 0;
+      for (JournalAndStream jas : journals) {
+        if (jas.isActive()) {
+          numActive++;
+        }
+      }
+      if (numActive < 2) {
+        mapJournalsAndReportErrors(new JournalClosure() {
+          @Override
+          public void apply(JournalAndStream jas) throws IOException {
+            if (jas.isActive()) {
+              jas.getCurrentStream().write(op);
+            }
+          }
+        }, "write op");
+        return;
+      }
+
+      serialized.reset();
+      writer.writeOp(op);
       mapJournalsAndReportErrors(new JournalClosure() {
         @Override
         public void apply(JournalAndStream jas) throws IOException {
           if (jas.isActive()) {
-            jas.getCurrentStream().write(op);
+            jas.getCurrentStream().writeSerialized(op, serialized.getData(),
+                0, serialized.getLength());
           }
         }
       }, "write op");
@@ -518,7 +642,7 @@ public class JournalSet implements JournalManager {
 
     @Override
     protected void flushAndSync(final boolean durable) throws IOException {
-      mapJournalsAndReportErrors(new JournalClosure() {
+      mapActiveJournalsInParallelAndReportErrors(new JournalClosure() {
         @Override
         public void apply(JournalAndStream jas) throws IOException {
           if (jas.isActive()) {
@@ -530,11 +654,18 @@ public class JournalSet implements JournalManager {
     
     @Override
     public void flush() throws IOException {
-      mapJournalsAndReportErrors(new JournalClosure() {
+      final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      mapActiveJournalsInParallelAndReportErrors(new JournalClosure() {
         @Override
         public void apply(JournalAndStream jas) throws IOException {
           if (jas.isActive()) {
+            final long start = Time.monotonicNow();
             jas.getCurrentStream().flush();
+            if (metrics != null) {
+              metrics.addJournalSync(
+                  jas.getManager().getClass().getSimpleName(),
+                  Time.monotonicNow() - start);
+            }
           }
         }
       }, "flush");
@@ -579,6 +710,16 @@ public class JournalSet implements JournalManager {
     return journals;
   }
 
+  private List<JournalAndStream> getActiveJournals() {
+    List<JournalAndStream> active = new ArrayList<>(journals.size());
+    for (JournalAndStream jas : journals) {
+      if (jas.isActive()) {
+        active.add(jas);
+      }
+    }
+    return active;
+  }
+
   List<JournalManager> getJournalManagers() {
     List<JournalManager> jList = new ArrayList<JournalManager>();
     for (JournalAndStream j : journals) {
@@ -23,14 +23,13 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.NavigableSet;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -92,18 +91,12 @@ public class LeaseManager {
   // Mapping: leaseHolder -> Lease
   //
   private final SortedMap<String, Lease> leases = new TreeMap<>();
-  // Set of: Lease
-  private final NavigableSet<Lease> sortedLeases = new TreeSet<>(
-      new Comparator<Lease>() {
-        @Override
-        public int compare(Lease o1, Lease o2) {
-          if (o1.getLastUpdate() != o2.getLastUpdate()) {
-            return Long.signum(o1.getLastUpdate() - o2.getLastUpdate());
-          } else {
-            return o1.holder.compareTo(o2.holder);
-          }
-        }
-  });
+  // Set of: Lease, in the order of their last renewal. A lease is renewed
+  // with the monotonic clock and moved to the end of the set, so the set is
+  // sorted by the last update time, which is also the expiry order as all
+  // the leases have the same limits. Unlike a sorted set, a renewal takes
+  // constant time.
+  private final LinkedHashSet<Lease> sortedLeases = new LinkedHashSet<>();
   // INodeID -> Lease
   private final TreeMap<Long, Lease> leasesById = new TreeMap<>();
 
@@ -193,16 +186,21 @@ public class LeaseManager {
     synchronized (this) {
       remainingLeases = leasesById.tailMap(prevId, false);
     }
-    Collection<Long> inodeIds = remainingLeases.keySet();
-    final int numResponses = Math.min(
-        this.fsnamesystem.getMaxListOpenFilesResponses(), inodeIds.size());
-    final List<OpenFileEntry> openFileEntries =
-        Lists.newArrayListWithExpectedSize(numResponses);
+    // the size of a tail map is computed by iterating over it, so only the
+    // entries of the batch are visited
+    final Iterator<Long> inodeIds = remainingLeases.keySet().iterator();
+    final int numResponses = this.fsnamesystem.getMaxListOpenFilesResponses();
+    final List<OpenFileEntry> openFileEntries = Lists.newArrayList();
 
     int count = 0;
-    for (Long inodeId: inodeIds) {
+    while (count < numResponses && inodeIds.hasNext()) {
+      final long inodeId = inodeIds.next();
       final INodeFile inodeFile =
           fsnamesystem.getFSDirectory().getInode(inodeId).asFile();
+      if (FSDirectory.isDetached(inodeFile)) {
+        // deleted, the lease is removed when the subtree is reclaimed
+        continue;
+      }
       if (!inodeFile.isUnderConstruction()) {
         LOG.warn("The file " + inodeFile.getFullPathName()
             + " is not under construction but has lease.");
@@ -213,12 +211,8 @@ public class LeaseManager {
           inodeFile.getFileUnderConstructionFeature().getClientName(),
           inodeFile.getFileUnderConstructionFeature().getClientMachine()));
       count++;
-      if (count >= numResponses) {
-        break;
-      }
     }
-    boolean hasMore = (numResponses < remainingLeases.size());
-    return new BatchedListEntries<>(openFileEntries, hasMore);
+    return new BatchedListEntries<>(openFileEntries, inodeIds.hasNext());
   }
 
   /**
@@ -284,6 +278,10 @@ public class LeaseManager {
             if (!inode.isFile()) {
               continue;
             }
+            if (ancestorDir != null && !isAncestor(ancestorDir, inode)) {
+              // skip resolving the path of a file in another subtree
+              continue;
+            }
             INodesInPath inodesInPath = INodesInPath.fromINode(
                 fsnamesystem.getFSDirectory().getRoot(), inode.asFile());
             if (ancestorDir != null &&
@@ -318,6 +316,15 @@ public class LeaseManager {
     return iipSet;
   }
 
+  private static boolean isAncestor(INodeDirectory dir, INode inode) {
+    for (INode p = inode.getParent(); p != null; p = p.getParent()) {
+      if (p == dir) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** @return the lease containing src */
   public synchronized Lease getLease(INodeFile src) {return leasesById.get(src.getId());}
 
@@ -546,75 +553,108 @@ public class LeaseManager {
     assert fsnamesystem.hasWriteLock();
 
     long start = monotonicNow();
+    // Each lease which expired when the run started is checked once, so a
+    // lease whose files could not be released does not hold up the recovery
+    // of the other expired leases. Releasing leases modifies the set, so they
+    // are collected in one pass rather than by rescanning it from the head.
+    for (Lease leaseToCheck : getExpiredLeases()) {
+      if (isMaxLockHoldToReleaseLease(start)) {
+        break;
+      }
+      if (!leaseToCheck.hasFiles()) {
+        // released with the files of another lease
+        continue;
+      }
+      needSync |= releaseExpiredLease(leaseToCheck, start);
+    }
+
+    return needSync;
+  }
+
+  /**
+   * @return the leases which expired the hard limit, from the oldest.
+   */
+  private List<Lease> getExpiredLeases() {
+    final List<Lease> expired = new ArrayList<>();
+    for (Lease lease : sortedLeases) {
+      if (!lease.expiredHardLimit()) {
+        break;
+      }
+      expired.add(lease);
+    }
+    return expired;
+  }
 
-    while(!sortedLeases.isEmpty() &&
-        sortedLeases.first().expiredHardLimit()
-        && !isMaxLockHoldToReleaseLease(start)) {
-      Lease leaseToCheck = sortedLeases.first();
-      LOG.info(leaseToCheck + " has expired hard limit");
-
-      final List<Long> removing = new ArrayList<>();
-      // need to create a copy of the oldest lease files, because
-      // internalReleaseLease() removes files corresponding to empty files,
-      // i.e. it needs to modify the collection being iterated over
-      // causing ConcurrentModificationException
-      Collection<Long> files = leaseToCheck.getFiles();
-      Long[] leaseINodeIds = files.toArray(new Long[files.size()]);
-      FSDirectory fsd = fsnamesystem.getFSDirectory();
-      String p = null;
-      String newHolder = getInternalLeaseHolder();
-      for(Long id : leaseINodeIds) {
+  /**
+   * Release the files of a lease which expired the hard limit.
+   * @return true if sync is needed.
+   */
+  private boolean releaseExpiredLease(Lease leaseToCheck, long start) {
+    boolean needSync = false;
+    LOG.info(leaseToCheck + " has expired hard limit");
+    final List<Long> removing = new ArrayList<>();
+    // need to create a copy of the oldest lease files, because
+    // internalReleaseLease() removes files corresponding to empty files,
+    // i.e. it needs to modify the collection being iterated over
+    // causing ConcurrentModificationException
+    Collection<Long> files = leaseToCheck.getFiles();
+    Long[] leaseINodeIds = files.toArray(new Long[files.size()]);
+    FSDirectory fsd = fsnamesystem.getFSDirectory();
+    String p = null;
+    String newHolder = getInternalLeaseHolder();
+    for(Long id : leaseINodeIds) {
+      try {
+        final INode inode = fsd.getInode(id);
+        if (inode != null && inode.isFile()
+            && fsnamesystem.isFileDeleted(inode.asFile())) {
+          // INode referred by the lease could have been deleted, e.g. in a
+          // subtree detached by an asynchronous delete, which has no path.
+          removeLease(id);
+          continue;
+        }
+        INodesInPath iip = INodesInPath.fromINode(inode);
+        p = iip.getPath();
+        // Sanity check to make sure the path is correct
+        if (!p.startsWith("/")) {
+          throw new IOException("Invalid path in the lease " + p);
+        }
+        boolean completed = false;
         try {
-          INodesInPath iip = INodesInPath.fromINode(fsd.getInode(id));
-          p = iip.getPath();
-          // Sanity check to make sure the path is correct
-          if (!p.startsWith("/")) {
-            throw new IOException("Invalid path in the lease " + p);
-          }
-          final INodeFile lastINode = iip.getLastINode().asFile();
-          if (fsnamesystem.isFileDeleted(lastINode)) {
-            // INode referred by the lease could have been deleted.
-            removeLease(lastINode.getId());
-            continue;
-          }
-          boolean completed = false;
-          try {
-            completed = fsnamesystem.internalReleaseLease(
-                leaseToCheck, p, iip, newHolder);
-          } catch (IOException e) {
-            LOG.warn("Cannot release the path " + p + " in the lease "
-                + leaseToCheck + ". It will be retried.", e);
-            continue;
-          }
-          if (LOG.isDebugEnabled()) {
-            if (completed) {
-              LOG.debug("Lease recovery for inode " + id + " is complete. " +
-                            "File closed.");
-            } else {
-              LOG.debug("Started block recovery " + p + " lease " + leaseToCheck);
-            }
-          }
-          // If a lease recovery happened, we need to sync later.
-          if (!needSync && !completed) {
-            needSync = true;
-          }
+          completed = fsnamesystem.internalReleaseLease(
+              leaseToCheck, p, iip, newHolder);
         } catch (IOException e) {
-          LOG.warn("Removing lease with an invalid path: " + p + ","
-              + leaseToCheck, e);
-          removing.add(id);
+          LOG.warn("Cannot release the path " + p + " in the lease "
+              + leaseToCheck + ". It will be retried.", e);
+          continue;
+        }
+        if (LOG.isDebugEnabled()) {
+          if (completed) {
+            LOG.debug("Lease recovery for inode " + id + " is complete. " +
+                          "File closed.");
+          } else {
+            LOG.debug("Started block recovery " + p + " lease " + leaseToCheck);
+          }
         }
-        if (isMaxLockHoldToReleaseLease(start)) {
-          LOG.debug("Breaking out of checkLeases after " +
-              fsnamesystem.getMaxLockHoldToReleaseLeaseMs() + "ms.");
-          break;
+        // If a lease recovery happened, we need to sync later.
+        if (!needSync && !completed) {
+          needSync = true;
         }
+      } catch (IOException e) {
+        LOG.warn("Removing lease with an invalid path: " + p + ","
+            + leaseToCheck, e);
+        removing.add(id);
       }
-
-      for(Long id : removing) {
-        removeLease(leaseToCheck, id);
+      if (isMaxLockHoldToReleaseLease(start)) {
+        LOG.debug("Breaking out of checkLeases after " +
+            fsnamesystem.getMaxLockHoldToReleaseLeaseMs() + "ms.");
+        break;
       }
     }
 
+    for(Long id : removing) {
+      removeLease(leaseToCheck, id);
+    }
+
     return needSync;
   }
 
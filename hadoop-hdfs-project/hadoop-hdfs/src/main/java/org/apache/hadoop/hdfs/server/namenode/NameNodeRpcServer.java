@@ -38,13 +38,13 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
 
 import com.google.common.collect.Lists;
 
@@ -88,6 +88,7 @@ import org.apache.hadoop.hdfs.inotify.EventBatch;
 import org.apache.hadoop.hdfs.inotify.EventBatchList;
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.AlreadyBeingCreatedException;
+import org.apache.hadoop.hdfs.protocol.BatchEntryResult;
 import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CacheDirectiveEntry;
@@ -116,6 +117,7 @@ import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.RecoveryInProgressException;
 import org.apache.hadoop.hdfs.protocol.RollingUpgradeInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
 import org.apache.hadoop.hdfs.protocol.UnregisteredNodeException;
 import org.apache.hadoop.hdfs.protocol.UnresolvedPathException;
@@ -1153,6 +1155,19 @@ public class NameNodeRpcServer implements NamenodeProtocols {
     return files;
   }
 
+  @Override // ClientProtocol
+  public DirectoryListing getListingRecursive(String src, byte[] startAfter,
+      boolean needLocation) throws IOException {
+    checkNNStartup();
+    DirectoryListing files = namesystem.getListingRecursive(
+        src, startAfter, needLocation);
+    if (files != null) {
+      metrics.incrGetListingOps();
+      metrics.incrFilesInGetListingOps(files.getPartialListing().length);
+    }
+    return files;
+  }
+
   @Override // ClientProtocol
   public HdfsFileStatus getFileInfo(String src)  throws IOException {
     checkNNStartup();
@@ -1334,6 +1349,95 @@ public class NameNodeRpcServer implements NamenodeProtocols {
     namesystem.checkOperation(OperationCategory.WRITE);
   }
 
+  @Override // ClientProtocol
+  public List<BatchEntryResult<HdfsFileStatus>> batchGetFileInfo(
+      String[] srcs) throws IOException {
+    checkNNStartup();
+    List<BatchEntryResult<HdfsFileStatus>> ret =
+        namesystem.batchGetFileInfo(srcs);
+    for (int i = 0; i < srcs.length; i++) {
+      metrics.incrFileInfoOps();
+    }
+    return ret;
+  }
+
+  @Override // ClientProtocol
+  public List<BatchEntryResult<Boolean>> batchMkdirs(String[] srcs,
+      FsPermission masked, boolean createParent) throws IOException {
+    checkNNStartup();
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* NameNode.batchMkdirs: " + srcs.length
+          + " paths");
+    }
+    // an over-long path fails its own entry only, the others are created
+    final boolean[] tooLong = new boolean[srcs.length];
+    final List<String> valid = new ArrayList<String>(srcs.length);
+    for (int i = 0; i < srcs.length; i++) {
+      tooLong[i] = !checkPathLength(srcs[i]);
+      if (!tooLong[i]) {
+        valid.add(srcs[i]);
+      }
+    }
+    final List<BatchEntryResult<Boolean>> created = namesystem.batchMkdirs(
+        valid.toArray(new String[valid.size()]),
+        new PermissionStatus(getRemoteUser().getShortUserName(),
+            null, masked), createParent);
+    if (valid.size() == srcs.length) {
+      return created;
+    }
+    final List<BatchEntryResult<Boolean>> ret =
+        new ArrayList<BatchEntryResult<Boolean>>(srcs.length);
+    int j = 0;
+    for (int i = 0; i < srcs.length; i++) {
+      if (tooLong[i]) {
+        ret.add(BatchEntryResult.<Boolean>failure(new IOException(
+            "batchMkdirs: Pathname too long.  Limit " + MAX_PATH_LENGTH
+            + " characters, " + MAX_PATH_DEPTH + " levels: " + srcs[i])));
+      } else {
+        ret.add(created.get(j++));
+      }
+    }
+    return ret;
+  }
+
+  @Override // ClientProtocol
+  @SuppressWarnings("unchecked")
+  public List<BatchEntryResult<Boolean>> batchDelete(String[] srcs,
+      boolean recursive) throws IOException {
+    checkNNStartup();
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* Namenode.batchDelete: " + srcs.length
+          + " paths, recursive=" + recursive);
+    }
+    namesystem.checkOperation(OperationCategory.WRITE);
+    CacheEntryWithPayload cacheEntry = RetryCache.waitForCompletion(
+        retryCache, null);
+    if (cacheEntry != null && cacheEntry.isSuccess()) {
+      // Return previous response
+      return (List<BatchEntryResult<Boolean>>) cacheEntry.getPayload();
+    }
+
+    List<BatchEntryResult<Boolean>> ret = null;
+    try {
+      ret = namesystem.batchDelete(srcs, recursive);
+    } finally {
+      RetryCache.setState(cacheEntry, ret != null, ret);
+    }
+    for (BatchEntryResult<Boolean> r : ret) {
+      if (r.isSuccess() && r.getValue()) {
+        metrics.incrDeleteFileOps();
+      }
+    }
+    return ret;
+  }
+
+  @Override // ClientProtocol
+  public List<BatchEntryResult<Void>> batchSetTimes(String[] srcs,
+      long mtime, long atime) throws IOException {
+    checkNNStartup();
+    return namesystem.batchSetTimes(srcs, mtime, atime);
+  }
+
   @Override // ClientProtocol
   public HAServiceState getHAServiceState() throws IOException {
     checkNNStartup();
@@ -1504,14 +1608,8 @@ public class NameNodeRpcServer implements NamenodeProtocols {
           // for the same node and storage, so the value returned by the last
           // call of this loop is the final updated value for noStaleStorage.
           //
-          final int index = r;
-          noStaleStorages = bm.runBlockOp(new Callable<Boolean>() {
-            @Override
-            public Boolean call() throws IOException {
-              return bm.processReport(nodeReg, reports[index].getStorage(),
-                  blocks, context);
-            }
-          });
+          noStaleStorages = bm.runBlockReport(nodeReg,
+              reports[r].getStorage(), blocks, context);
           metrics.incrStorageBlockReportOps();
         }
       }
@@ -1901,6 +1999,19 @@ public class NameNodeRpcServer implements NamenodeProtocols {
     return report;
   }
 
+  @Override // ClientProtocol
+  public SnapshotDiffReportListing getSnapshotDiffReportListing(
+      String snapshotRoot, String earlierSnapshotName,
+      String laterSnapshotName, byte[] startPath, int index)
+      throws IOException {
+    checkNNStartup();
+    SnapshotDiffReportListing report = namesystem
+        .getSnapshotDiffReportListing(snapshotRoot, earlierSnapshotName,
+            laterSnapshotName, startPath, index);
+    metrics.incrSnapshotDiffReportOps();
+    return report;
+  }
+
   @Override // ClientProtocol
   public long addCacheDirective(
       CacheDirectiveInfo path, EnumSet<CacheFlag> flags) throws IOException {
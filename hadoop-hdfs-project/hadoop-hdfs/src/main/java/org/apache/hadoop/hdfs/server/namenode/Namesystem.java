@@ -44,4 +44,26 @@ public interface Namesystem extends RwLock, SafeMode {
    *         middle of the starting active services.
    */
   boolean inTransitionToActive();
+
+  /**
+   * Acquire the lock needed to modify block management state only. This is
+   * the write lock unless block management state has a separate lock.
+   */
+  void blockWriteLock();
+
+  /** Release the lock taken by {@link #blockWriteLock()}. */
+  void blockWriteUnlock();
+
+  /**
+   * @return true if the current thread holds the write lock, or the lock
+   *         taken by {@link #blockWriteLock()}.
+   */
+  boolean hasBlockWriteLock();
+
+  /**
+   * @return true if the current thread runs a read-only operation without
+   *         any lock, which is validated against the writers when it ends.
+   *         {@link #hasReadLock()} is false during such an operation.
+   */
+  boolean isOptimisticReading();
 }
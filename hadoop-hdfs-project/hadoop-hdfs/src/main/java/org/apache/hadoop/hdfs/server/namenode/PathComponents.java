@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.DFSUtilClient;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The components of a path, split in a buffer reused by the calls of a
+ * thread. Unlike {@link INode#getPathComponents(String)}, splitting a path
+ * allocates neither the UTF8 bytes of the path nor an array per component,
+ * so that the inodes of a path can be resolved without garbage, see
+ * {@link INodesInPath#resolve(INodeDirectory, PathComponents)}.
+ *
+ * The components are the same as those of
+ * {@link INode#getPathComponents(String)}: a path starting with a separator
+ * has an empty first component, repeated and trailing separators are
+ * ignored, and the root path has a single null component.
+ *
+ * The buffer of a thread is overwritten by the next {@link #get(String)},
+ * hence the components must not be retained; {@link #copy(int)} returns a
+ * component that can be.
+ */
+final class PathComponents {
+  private static final byte SEPARATOR = (byte) Path.SEPARATOR_CHAR;
+
+  private static final ThreadLocal<PathComponents> BUFFERS =
+      new ThreadLocal<PathComponents>() {
+        @Override
+        protected PathComponents initialValue() {
+          return new PathComponents();
+        }
+      };
+
+  /** The UTF8 bytes of the path. */
+  private byte[] bytes = new byte[256];
+  /** The start and end offsets of the components in {@link #bytes}. */
+  private int[] starts = new int[16];
+  private int[] ends = new int[16];
+  private int size;
+  /** Whether the path is the root, i.e. its single component is null. */
+  private boolean root;
+
+  @VisibleForTesting
+  PathComponents() {
+  }
+
+  /**
+   * Split a path in the buffer of the current thread.
+   * @return the buffer, valid until the next call of the thread.
+   */
+  static PathComponents get(String path) {
+    final PathComponents components = BUFFERS.get();
+    components.split(path);
+    return components;
+  }
+
+  @VisibleForTesting
+  void split(String path) {
+    final int length = encode(path);
+    size = 0;
+    int next = 0;
+    do {
+      final int start = next;
+      while (next < length && bytes[next] != SEPARATOR) {
+        next++;
+      }
+      add(start, next);
+      while (next < length && bytes[next] == SEPARATOR) {
+        next++;
+      }
+    } while (next < length);
+    root = size == 1 && (length == 0 || bytes[0] == SEPARATOR);
+  }
+
+  private void add(int start, int end) {
+    if (size == starts.length) {
+      starts = Arrays.copyOf(starts, size * 2);
+      ends = Arrays.copyOf(ends, size * 2);
+    }
+    starts[size] = start;
+    ends[size] = end;
+    size++;
+  }
+
+  /**
+   * Encode a string in UTF8 in {@link #bytes}, as
+   * {@link DFSUtil#string2Bytes(String)} does.
+   * @return the number of bytes.
+   */
+  private int encode(String s) {
+    final int n = s.length();
+    // a char takes at most 3 bytes, a surrogate pair 4
+    if (bytes.length < n * 3) {
+      bytes = new byte[Math.max(n * 3, bytes.length * 2)];
+    }
+    int length = 0;
+    for (int i = 0; i < n; i++) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        bytes[length++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[length++] = (byte) (0xc0 | (c >> 6));
+        bytes[length++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < n
+            && Character.isLowSurrogate(s.charAt(i + 1))) {
+          final int cp = Character.toCodePoint(c, s.charAt(++i));
+          bytes[length++] = (byte) (0xf0 | (cp >> 18));
+          bytes[length++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+          bytes[length++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+          bytes[length++] = (byte) (0x80 | (cp & 0x3f));
+        } else {
+          // the replacement of a malformed surrogate
+          bytes[length++] = (byte) '?';
+        }
+      } else {
+        bytes[length++] = (byte) (0xe0 | (c >> 12));
+        bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[length++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return length;
+  }
+
+  /** @return the number of components. */
+  int size() {
+    return size;
+  }
+
+  /** @return true if the path is the root, whose single component is null. */
+  boolean isRoot() {
+    return root;
+  }
+
+  /** @return the bytes of the path, which the components are ranges of. */
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  int getOffset(int i) {
+    return starts[i];
+  }
+
+  int getLength(int i) {
+    return ends[i] - starts[i];
+  }
+
+  /** @return true if the component i has the given name. */
+  boolean equals(int i, byte[] name) {
+    if (root) {
+      return name == null;
+    }
+    final int length = getLength(i);
+    if (name == null || name.length != length) {
+      return false;
+    }
+    for (int j = 0, k = starts[i]; j < length; j++, k++) {
+      if (name[j] != bytes[k]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return a copy of the component i. */
+  byte[] copy(int i) {
+    if (root) {
+      return null;
+    }
+    return starts[i] == ends[i] ? DFSUtilClient.EMPTY_BYTES
+        : Arrays.copyOfRange(bytes, starts[i], ends[i]);
+  }
+
+  /** @return a copy of the components, as {@link INode#getPathComponents}. */
+  byte[][] toArray() {
+    final byte[][] components = new byte[size][];
+    for (int i = 0; i < size; i++) {
+      components[i] = copy(i);
+    }
+    return components;
+  }
+}
@@ -0,0 +1,239 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.fs.permission.FsAction;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Caches the permission checks granted to users by {@link FSPermissionChecker},
+ * so that the ancestors of the paths a user accesses repeatedly are not
+ * checked on every operation.
+ *
+ * An entry holds the checks granted to a user on an inode: the
+ * {@link FsAction}s granted on the inode itself, and whether the user may
+ * traverse the path from the root to the inode. Only grants are cached, a
+ * denied check is always checked again.
+ *
+ * Every change that may revoke a grant, i.e. a change of the permissions,
+ * owner, ACLs or security xattrs of an inode or the move of a directory,
+ * must be followed by {@link #invalidate(INode)} of the changed inode, which
+ * stamps the inode with a new value of a counter of the changes. A grant is
+ * stamped with the counter read before the check read the inodes, and is
+ * only valid while no inode of the path from the root to its inode has a
+ * later stamp. A change thus only revokes the grants below the changed
+ * inode, e.g. the rename of a staging directory leaves the grants of the
+ * rest of the namespace valid.
+ *
+ * The stamps of the changed inodes are kept as long as the grants which
+ * were stamped before them, i.e. they expire like the grants: the grants
+ * are recorded under the namesystem lock, before any later change. Changes
+ * of the attributes returned by an {@link INodeAttributeProvider} are not
+ * notified, hence the entries also expire after a while.
+ *
+ * This class is thread safe.
+ */
+class PermissionCache {
+  /** The bit of the mask of a traverse check of the path to an inode. */
+  static final int TRAVERSE = 1 << FsAction.values().length;
+
+  /** @return the bit of the mask of a check of the access to an inode. */
+  static int mask(FsAction access) {
+    // the checks of combined actions are cached separately since an ACL may
+    // grant them only separately
+    return 1 << access.ordinal();
+  }
+
+  private static final class Key {
+    private final String user;
+    private final long inodeId;
+
+    Key(String user, long inodeId) {
+      this.user = user;
+      this.inodeId = inodeId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key that = (Key) obj;
+      return inodeId == that.inodeId && user.equals(that.user);
+    }
+
+    @Override
+    public int hashCode() {
+      return user.hashCode() * 31 + (int) (inodeId ^ (inodeId >>> 32));
+    }
+  }
+
+  /** The checks granted to a user on an inode. */
+  private static final class Grant {
+    /** The counter of the changes read before the checks. */
+    private final long stamp;
+    /** The groups of the user, which the checks depend on. */
+    private final Collection<String> groups;
+    private final AtomicInteger mask;
+
+    Grant(long stamp, Collection<String> groups, int mask) {
+      this.stamp = stamp;
+      this.groups = groups;
+      this.mask = new AtomicInteger(mask);
+    }
+
+    void add(int m) {
+      for (int current; ((current = mask.get()) & m) != m; ) {
+        if (mask.compareAndSet(current, current | m)) {
+          return;
+        }
+      }
+    }
+  }
+
+  private final FSNamesystem namesystem;
+  private final Cache<Key, Grant> cache;
+  /** The stamps of the inodes changed since the oldest grants. */
+  private final Cache<Long, Long> changes;
+  /** The counter of the changes. */
+  private final AtomicLong counter = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  PermissionCache(FSNamesystem namesystem, long maxSize, long expiryMs) {
+    this.namesystem = namesystem;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+    // not bounded in size: a stamp dropped before the grants it revokes
+    // would make them valid again
+    this.changes = CacheBuilder.newBuilder()
+        .expireAfterWrite(expiryMs, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /** @return the counter of the changes, to be read before the inodes. */
+  long getStamp() {
+    return counter.get();
+  }
+
+  /**
+   * Invalidate the entries of an inode and of its descendants, after a
+   * change of the permissions of the inode or of its ancestors.
+   */
+  void invalidate(INode inode) {
+    changes.put(inode.getId(), counter.incrementAndGet());
+  }
+
+  /** Invalidate and remove all the entries, e.g. when inode ids are reset. */
+  void clear() {
+    counter.incrementAndGet();
+    cache.invalidateAll();
+    changes.invalidateAll();
+  }
+
+  /**
+   * @return true if no inode from {@code inodes[0]} to {@code inodes[i]} was
+   *         changed since the grant.
+   */
+  private boolean isValid(Grant grant, INode[] inodes, int i) {
+    if (grant.stamp >= counter.get()) {
+      return true;
+    }
+    for (int k = 0; k <= i; k++) {
+      if (inodes[k] != null) {
+        final Long changed = changes.getIfPresent(inodes[k].getId());
+        if (changed != null && changed > grant.stamp) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private boolean isValid(Grant grant, FSPermissionChecker pc,
+      INode[] inodes, int i) {
+    final Collection<String> groups = pc.getGroups();
+    return (grant.groups == groups || grant.groups.equals(groups))
+        && isValid(grant, inodes, i);
+  }
+
+  /**
+   * @return true if the checks of {@code mask} were granted to the user of
+   *         {@code pc} on {@code inodes[i]}, reached through
+   *         {@code inodes[0]} to {@code inodes[i - 1]}.
+   */
+  boolean isGranted(FSPermissionChecker pc, INode[] inodes, int i,
+      int mask) {
+    final Grant grant =
+        cache.getIfPresent(new Key(pc.getUser(), inodes[i].getId()));
+    if (grant != null && (grant.mask.get() & mask) == mask
+        && isValid(grant, pc, inodes, i)) {
+      hits.incrementAndGet();
+      return true;
+    }
+    misses.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Record that the checks of {@code mask} were granted to the user of
+   * {@code pc} on {@code inodes[i]}, by a check which read the counter of
+   * the changes {@code stamp} before the inodes.
+   */
+  void grant(FSPermissionChecker pc, INode[] inodes, int i, long stamp,
+      int mask) {
+    if (namesystem.isOptimisticReading() || stamp != counter.get()) {
+      // the inodes read without the lock, or before a change, may be
+      // inconsistent
+      return;
+    }
+    final Key key = new Key(pc.getUser(), inodes[i].getId());
+    final Grant grant = cache.getIfPresent(key);
+    if (grant != null && isValid(grant, pc, inodes, i)) {
+      grant.add(mask);
+    } else {
+      // racing grants of the same key may drop each other's checks, which
+      // are only checked again
+      cache.put(key, new Grant(stamp, pc.getGroups(), mask));
+    }
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long getMisses() {
+    return misses.get();
+  }
+
+  long size() {
+    return cache.size();
+  }
+}
@@ -185,6 +185,15 @@ public interface FSNamesystemMBean {
    */
   public String getTopUserOpCounts();
 
+  /**
+   * Returns a nested JSON object listing the operations and users which held
+   * the FSNamesystem lock the longest over tracked time windows, and the
+   * traces of the longest lock holds, if lock profiling is enabled.
+   *
+   * @return JSON string, or null if lock profiling is disabled
+   */
+  String getLockProfile();
+
   /**
    * Return the number of encryption zones in the system.
    */
@@ -20,6 +20,9 @@ package org.apache.hadoop.hdfs.server.namenode.metrics;
 import static org.apache.hadoop.metrics2.impl.MsInfo.ProcessName;
 import static org.apache.hadoop.metrics2.impl.MsInfo.SessionId;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
@@ -30,8 +33,10 @@ import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableCounterLong;
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
+import org.apache.hadoop.metrics2.lib.MutableGaugeLong;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
 /**
@@ -64,6 +69,13 @@ public class NameNodeMetrics {
   MutableCounterLong numTimesReReplicationNotScheduled;
   @Metric("Number of timed out block re-replications")
   MutableCounterLong timeoutReReplications;
+  @Metric("Number of blocks scheduled for re-replication")
+  MutableCounterLong scheduledReReplications;
+  @Metric("Blocks scheduled for re-replication per second by the last" +
+      " replication iteration")
+  MutableGaugeLong scheduledReReplicationsPerSec;
+  @Metric("Number of blocks queued for re-replication at the datanodes")
+  MutableGaugeLong reReplicationsQueued;
   @Metric("Number of allowSnapshot operations")
   MutableCounterLong allowSnapshotOps;
   @Metric("Number of disallowSnapshot operations")
@@ -117,6 +129,13 @@ public class NameNodeMetrics {
   final MutableQuantiles[] syncsQuantiles;
   @Metric("Journal transactions batched in sync")
   MutableCounterLong transactionsBatchedInSync;
+  final MutableQuantiles[] syncBatchSizeQuantiles;
+  @Metric("Journal syncs by journal type")
+  MutableRatesWithAggregation journalSyncs;
+  /** Journal sync quantiles by journal type, added on the first sync. */
+  private final ConcurrentMap<String, MutableQuantiles[]>
+      journalSyncQuantiles = new ConcurrentHashMap<>();
+  private final int[] intervals;
   @Metric("Block report") MutableRate blockReport;
   final MutableQuantiles[] blockReportQuantiles;
   @Metric("Cache report") MutableRate cacheReport;
@@ -132,6 +151,10 @@ public class NameNodeMetrics {
   MutableGaugeInt safeModeTime;
   @Metric("Time loading FS Image at startup in msec")
   MutableGaugeInt fsImageLoadTime;
+  @Metric("Number of edit log ops replayed")
+  MutableCounterLong editLogOpsReplayed;
+  @Metric("Edit log ops replayed per second by the last replayed stream")
+  MutableGaugeLong editLogReplayOpsPerSec;
 
   @Metric("GetImageServlet getEdit")
   MutableRate getEdit;
@@ -146,9 +169,11 @@ public class NameNodeMetrics {
       final JvmMetrics jvmMetrics) {
     this.jvmMetrics = jvmMetrics;
     registry.tag(ProcessName, processName).tag(SessionId, sessionId);
+    this.intervals = intervals;
     
     final int len = intervals.length;
     syncsQuantiles = new MutableQuantiles[len];
+    syncBatchSizeQuantiles = new MutableQuantiles[len];
     blockReportQuantiles = new MutableQuantiles[len];
     cacheReportQuantiles = new MutableQuantiles[len];
     generateEDEKTimeQuantiles = new MutableQuantiles[len];
@@ -160,6 +185,9 @@ public class NameNodeMetrics {
       syncsQuantiles[i] = registry.newQuantiles(
           "syncs" + interval + "s",
           "Journal syncs", "ops", "latency", interval);
+      syncBatchSizeQuantiles[i] = registry.newQuantiles(
+          "syncBatchSize" + interval + "s",
+          "Journal transactions per sync", "ops", "transactions", interval);
       blockReportQuantiles[i] = registry.newQuantiles(
           "blockReport" + interval + "s", 
           "Block report", "ops", "latency", interval);
@@ -311,6 +339,22 @@ public class NameNodeMetrics {
     transactionsBatchedInSync.incr(count);
   }
 
+  /**
+   * Add the replication work scheduled by an iteration of the replication
+   * monitor.
+   * @param numBlocks the number of blocks scheduled for replication
+   * @param elapsedMs the time the iteration took to schedule them
+   */
+  public void addReReplicationWork(long numBlocks, long elapsedMs) {
+    scheduledReReplications.incr(numBlocks);
+    scheduledReReplicationsPerSec.set(
+        numBlocks * 1000 / Math.max(elapsedMs, 1));
+  }
+
+  public void setReReplicationsQueued(long numBlocks) {
+    reReplicationsQueued.set(numBlocks);
+  }
+
   public void incSuccessfulReReplications() {
     successfulReReplications.incr();
   }
@@ -330,10 +374,53 @@ public class NameNodeMetrics {
     }
   }
 
+  public void addSyncBatchSize(long transactions) {
+    for (MutableQuantiles q : syncBatchSizeQuantiles) {
+      q.add(transactions);
+    }
+  }
+
+  /**
+   * Add the time a journal took to sync.
+   * @param journalType simple class name of the journal manager
+   * @param elapsed time in milliseconds
+   */
+  public void addJournalSync(String journalType, long elapsed) {
+    journalSyncs.add("JournalSync" + journalType, elapsed);
+    MutableQuantiles[] quantiles = journalSyncQuantiles.get(journalType);
+    if (quantiles == null) {
+      quantiles = newJournalSyncQuantiles(journalType);
+    }
+    for (MutableQuantiles q : quantiles) {
+      q.add(elapsed);
+    }
+  }
+
+  private synchronized MutableQuantiles[] newJournalSyncQuantiles(
+      String journalType) {
+    MutableQuantiles[] quantiles = journalSyncQuantiles.get(journalType);
+    if (quantiles == null) {
+      quantiles = new MutableQuantiles[intervals.length];
+      for (int i = 0; i < intervals.length; i++) {
+        int interval = intervals[i];
+        quantiles[i] = registry.newQuantiles(
+            "journalSync" + journalType + interval + "s",
+            "Journal syncs of " + journalType, "ops", "latency", interval);
+      }
+      journalSyncQuantiles.put(journalType, quantiles);
+    }
+    return quantiles;
+  }
+
   public void setFsImageLoadTime(long elapsed) {
     fsImageLoadTime.set((int) elapsed);
   }
 
+  public void addEditLogReplay(long numOps, long elapsedMs) {
+    editLogOpsReplayed.incr(numOps);
+    editLogReplayOpsPerSec.set(numOps * 1000 / Math.max(elapsedMs, 1));
+  }
+
   public void addBlockReport(long latency) {
     blockReport.add(latency);
     for (MutableQuantiles q : blockReportQuantiles) {
@@ -19,6 +19,7 @@ package org.apache.hadoop.hdfs.server.namenode.snapshot;
 
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -27,8 +28,12 @@ import java.util.Set;
 
 import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.protocol.QuotaExceededException;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing.DiffReportListingEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.hdfs.server.namenode.Content;
@@ -274,6 +279,40 @@ public class DirectorySnapshottableFeature extends DirectoryWithSnapshotFeature
     return diffs;
   }
 
+  /**
+   * Compute a page of the difference between two snapshots (or a snapshot
+   * and the current directory) of the directory. The subtree is walked in
+   * the same order as by {@link #computeDiff}, starting at the given cursor.
+   *
+   * @param from The name of the start point of the comparison. Null
+   *          indicating the current tree.
+   * @param to The name of the end point. Null indicating the current tree.
+   * @param startPath The path of the node to start at, relative to the
+   *          snapshot root. An empty array to start at the snapshot root.
+   * @param index The number of entries of the start node already listed.
+   * @param limit The maximum number of entries of the page.
+   * @return A page of the difference between the start/end points.
+   * @throws SnapshotException If there is no snapshot matching the starting
+   *           point, or if endSnapshotName is not null but cannot be identified
+   *           as a previous snapshot.
+   */
+  SnapshotDiffReportListing computeDiffListing(
+      final INodeDirectory snapshotRoot, final String from, final String to,
+      byte[] startPath, int index, int limit) throws SnapshotException {
+    Snapshot fromSnapshot = getSnapshotByName(snapshotRoot, from);
+    Snapshot toSnapshot = getSnapshotByName(snapshotRoot, to);
+    SnapshotDiffListingInfo diffs = new SnapshotDiffListingInfo(snapshotRoot,
+        fromSnapshot, toSnapshot, limit);
+    // if the start point is equal to the end point, the listing is empty
+    if (!from.equals(to)) {
+      final byte[][] resumePath = startPath.length == 0 ? new byte[0][] :
+          DFSUtil.bytes2byteArray(startPath, (byte) Path.SEPARATOR_CHAR);
+      computeDiffListingRecursively(snapshotRoot, snapshotRoot,
+          new ArrayList<byte[]>(), resumePath, index, diffs);
+    }
+    return diffs.generateReport();
+  }
+
   /**
    * Find the snapshot matching the given name.
    *
@@ -355,6 +394,141 @@ public class DirectorySnapshottableFeature extends DirectoryWithSnapshotFeature
     }
   }
 
+  /**
+   * Recursively list the difference between snapshots under a given
+   * directory/file, see {@link #computeDiffRecursively}. The entries of a
+   * changed directory are its MODIFY entry followed by its created and its
+   * deleted children, which are listed before the subtree of the directory.
+   *
+   * @param snapshotRoot The directory where snapshots were taken.
+   * @param node The directory/file under which the diff is computed.
+   * @param path Relative path (corresponding to the snapshot root) of the
+   *             node.
+   * @param resumePath The path of the node to resume the listing at, or null
+   *                   if the node comes after it. If not null, the path of
+   *                   the node is a prefix of it.
+   * @param resumeIndex The number of entries of the resumed node already
+   *                    listed.
+   * @param diffs data structure used to store the page of the diff.
+   * @return false if the page is full.
+   */
+  private boolean computeDiffListingRecursively(
+      final INodeDirectory snapshotRoot, INode node, List<byte[]> path,
+      byte[][] resumePath, int resumeIndex, SnapshotDiffListingInfo diffs) {
+    final Snapshot earlierSnapshot = diffs.getEarlier();
+    final Snapshot laterSnapshot = diffs.getLater();
+    final int laterId = laterSnapshot == null ? Snapshot.CURRENT_STATE_ID
+        : laterSnapshot.getId();
+    final byte[][] relativePath = path.toArray(new byte[path.size()][]);
+    // the ancestors of the resumed node were listed by a previous page
+    final boolean listNode = resumePath == null
+        || path.size() == resumePath.length;
+    final int startIndex = resumePath == null ? 0 : resumeIndex;
+    if (resumePath == null && !diffs.visit(relativePath)) {
+      return false;
+    }
+    if (node.isDirectory()) {
+      final ChildrenDiff diff = new ChildrenDiff();
+      INodeDirectory dir = node.asDirectory();
+      DirectoryWithSnapshotFeature sf = dir.getDirectoryWithSnapshotFeature();
+      if (sf != null) {
+        boolean change = sf.computeDiffBetweenSnapshots(earlierSnapshot,
+            laterSnapshot, diff, dir);
+        if (change && listNode && !addDirDiffListing(snapshotRoot, dir,
+            relativePath, diff, startIndex, laterId, diffs)) {
+          return false;
+        }
+      }
+      ReadOnlyList<INode> children = dir.getChildrenList(earlierSnapshot
+          .getId());
+      int i = 0;
+      byte[][] childResumePath = null;
+      if (!listNode) {
+        // resume at the child on the path, or at the next child if the
+        // child is gone
+        i = ReadOnlyList.Util.binarySearch(children,
+            resumePath[path.size()]);
+        if (i >= 0) {
+          childResumePath = resumePath;
+        } else {
+          i = -i - 1;
+        }
+      }
+      for (; i < children.size(); i++) {
+        final INode child = children.get(i);
+        final byte[] name = child.getLocalNameBytes();
+        boolean toProcess = diff.searchIndex(ListType.DELETED, name) < 0;
+        if (!toProcess && child instanceof INodeReference.WithName) {
+          toProcess = findRenameTargetPath(snapshotRoot, (WithName) child,
+              laterId) != null;
+        }
+        if (toProcess) {
+          path.add(name);
+          final boolean more = computeDiffListingRecursively(snapshotRoot,
+              child, path, childResumePath, resumeIndex, diffs);
+          path.remove(path.size() - 1);
+          if (!more) {
+            return false;
+          }
+        }
+        childResumePath = null;
+      }
+    } else if (listNode && startIndex == 0 && node.isFile()
+        && node.asFile().isWithSnapshot()) {
+      INodeFile file = node.asFile();
+      boolean change = file.getFileWithSnapshotFeature()
+          .changedBetweenSnapshots(file, earlierSnapshot, laterSnapshot);
+      if (change) {
+        if (!diffs.hasRoom(relativePath, 0)) {
+          return false;
+        }
+        diffs.add(new DiffReportListingEntry(DiffType.MODIFY, relativePath,
+            file.getId(), false, null));
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Add the entries of a changed directory to a page of the diff listing,
+   * starting at the given index. A deleted {@link WithName} child is listed
+   * as a reference with its path in the later snapshot, if the path is in
+   * the snapshottable directory.
+   * @return false if the page is full.
+   */
+  private boolean addDirDiffListing(final INodeDirectory snapshotRoot,
+      INodeDirectory dir, byte[][] relativePath, ChildrenDiff diff,
+      int startIndex, int laterId, SnapshotDiffListingInfo diffs) {
+    final List<INode> created = diff.getList(ListType.CREATED);
+    final List<INode> deleted = diff.getList(ListType.DELETED);
+    final int numEntries = 1 + created.size() + deleted.size();
+    final byte[][] childPath = Arrays.copyOf(relativePath,
+        relativePath.length + 1);
+    for (int index = startIndex; index < numEntries; index++) {
+      if (!diffs.hasRoom(relativePath, index)) {
+        return false;
+      }
+      if (index == 0) {
+        diffs.add(new DiffReportListingEntry(DiffType.MODIFY, relativePath,
+            dir.getId(), false, null));
+      } else if (index <= created.size()) {
+        final INode cnode = created.get(index - 1);
+        childPath[relativePath.length] = cnode.getLocalNameBytes();
+        diffs.add(new DiffReportListingEntry(DiffType.CREATE, childPath,
+            cnode.getId(), cnode.isReference(), null));
+      } else {
+        final INode dnode = deleted.get(index - 1 - created.size());
+        childPath[relativePath.length] = dnode.getLocalNameBytes();
+        final boolean isRenameSource = dnode instanceof WithName;
+        final byte[][] targetPath = isRenameSource ? findRenameTargetPath(
+            snapshotRoot, (WithName) dnode, laterId) : null;
+        diffs.add(new DiffReportListingEntry(DiffType.DELETE, childPath,
+            dnode.getId(), isRenameSource, targetPath));
+      }
+    }
+    return true;
+  }
+
   /**
    * We just found a deleted WithName node as the source of a rename operation.
    * However, we should include it in our snapshot diff report as rename only
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.snapshot;
+
+import java.util.List;
+
+import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing.DiffReportListingEntry;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.apache.hadoop.util.ChunkedArrayList;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A page of the difference between snapshots of a snapshottable directory.
+ * The page ends when it holds the maximum number of entries, or when the
+ * walk of the subtree visited the maximum number of files and directories,
+ * so that a large subtree without changes does not hold the lock for long
+ * either. The cursor of the next page is the path of the node the walk
+ * stopped at and the number of entries of the node already listed.
+ */
+class SnapshotDiffListingInfo {
+  /** The number of nodes visited per page, relative to the entries. */
+  private static final int VISITS_PER_ENTRY = 100;
+
+  /** The starting point of the difference */
+  private final Snapshot from;
+  /** The end point of the difference */
+  private final Snapshot to;
+  private final int limit;
+  private final long maxVisits;
+
+  private final List<DiffReportListingEntry> entries =
+      new ChunkedArrayList<>();
+  private long visits = 0;
+  private byte[] lastPath = DFSUtilClient.EMPTY_BYTES;
+  private int lastIndex = 0;
+  private boolean hasMore = false;
+
+  SnapshotDiffListingInfo(INodeDirectory snapshotRoot, Snapshot start,
+      Snapshot end, int limit) {
+    Preconditions.checkArgument(snapshotRoot.isSnapshottable());
+    this.from = start;
+    this.to = end;
+    this.limit = Math.max(limit, 1);
+    this.maxVisits = (long) this.limit * VISITS_PER_ENTRY;
+  }
+
+  /** @return True if {@link #from} is earlier than {@link #to} */
+  boolean isFromEarlier() {
+    return Snapshot.ID_COMPARATOR.compare(from, to) < 0;
+  }
+
+  Snapshot getEarlier() {
+    return isFromEarlier() ? from : to;
+  }
+
+  Snapshot getLater() {
+    return isFromEarlier() ? to : from;
+  }
+
+  /**
+   * Count a visited node.
+   * @return false, after recording the node as the cursor of the next page,
+   *         if the page visited the maximum number of nodes.
+   */
+  boolean visit(byte[][] path) {
+    if (visits >= maxVisits) {
+      stop(path, 0);
+      return false;
+    }
+    visits++;
+    return true;
+  }
+
+  /**
+   * Check whether the index-th entry of the node at the given path can be
+   * added to the page.
+   * @return false, after recording the entry as the cursor of the next page,
+   *         if the page is full.
+   */
+  boolean hasRoom(byte[][] path, int index) {
+    if (entries.size() >= limit) {
+      stop(path, index);
+      return false;
+    }
+    return true;
+  }
+
+  void add(DiffReportListingEntry entry) {
+    entries.add(entry);
+  }
+
+  private void stop(byte[][] path, int index) {
+    lastPath = DFSUtilClient.byteArray2bytes(path);
+    lastIndex = index;
+    hasMore = true;
+  }
+
+  /**
+   * Generate a {@link SnapshotDiffReportListing} of the listed entries.
+   */
+  SnapshotDiffReportListing generateReport() {
+    return new SnapshotDiffReportListing(entries, isFromEarlier(), lastPath,
+        lastIndex, hasMore);
+  }
+}
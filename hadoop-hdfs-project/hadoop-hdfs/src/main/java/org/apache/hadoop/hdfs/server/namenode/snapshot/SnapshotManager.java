@@ -19,6 +19,8 @@ package org.apache.hadoop.hdfs.server.namenode.snapshot;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_CAPTURE_OPENFILES;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_CAPTURE_OPENFILES_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_SKIP_CAPTURE_ACCESSTIME_ONLY_CHANGE;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_SKIP_CAPTURE_ACCESSTIME_ONLY_CHANGE_DEFAULT;
 
@@ -40,6 +42,8 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing.DiffReportListingEntry;
 import org.apache.hadoop.hdfs.protocol.SnapshotException;
 import org.apache.hadoop.hdfs.protocol.SnapshotInfo;
 import org.apache.hadoop.hdfs.protocol.SnapshottableDirectoryStatus;
@@ -81,6 +85,8 @@ public class SnapshotManager implements SnapshotStatsMXBean {
    * together with the modification in next snapshot.
    */
   private boolean skipCaptureAccessTimeOnlyChange = false;
+  /** The maximum number of entries of a page of a snapshot diff listing. */
+  private final int diffListingLimit;
 
   private final AtomicInteger numSnapshots = new AtomicInteger();
   private static final int SNAPSHOT_ID_BIT_WIDTH = 24;
@@ -100,6 +106,9 @@ public class SnapshotManager implements SnapshotStatsMXBean {
     this.skipCaptureAccessTimeOnlyChange = conf.getBoolean(
         DFS_NAMENODE_SNAPSHOT_SKIP_CAPTURE_ACCESSTIME_ONLY_CHANGE,
         DFS_NAMENODE_SNAPSHOT_SKIP_CAPTURE_ACCESSTIME_ONLY_CHANGE_DEFAULT);
+    this.diffListingLimit = conf.getInt(
+        DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT,
+        DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT_DEFAULT);
     LOG.info("Loaded config captureOpenFiles: " + captureOpenFiles
         + "skipCaptureAccessTimeOnlyChange: " +
         skipCaptureAccessTimeOnlyChange);
@@ -158,6 +167,7 @@ public class SnapshotManager implements SnapshotStatsMXBean {
       d.addSnapshottableFeature();
     }
     addSnapshottable(d);
+    fsdir.invalidateUsage(d);
   }
   
   /** Add the given snapshottable directory to {@link #snapshottables}. */
@@ -204,6 +214,7 @@ public class SnapshotManager implements SnapshotStatsMXBean {
       d.removeSnapshottableFeature();
     }
     removeSnapshottable(d);
+    fsdir.invalidateUsage(d);
   }
 
   /**
@@ -259,6 +270,7 @@ public class SnapshotManager implements SnapshotStatsMXBean {
     //create success, update id
     snapshotCounter++;
     numSnapshots.getAndIncrement();
+    fsdir.invalidateUsage(srcRoot);
     return Snapshot.getSnapshotPath(snapshotRoot, snapshotName);
   }
   
@@ -273,6 +285,7 @@ public class SnapshotManager implements SnapshotStatsMXBean {
     INodeDirectory srcRoot = getSnapshottableRoot(iip);
     srcRoot.removeSnapshot(reclaimContext, snapshotName);
     numSnapshots.getAndDecrement();
+    fsdir.invalidateUsage(srcRoot);
   }
 
   /**
@@ -314,7 +327,7 @@ public class SnapshotManager implements SnapshotStatsMXBean {
     snapshotCounter = counter;
   }
 
-  INodeDirectory[] getSnapshottableDirs() {
+  public INodeDirectory[] getSnapshottableDirs() {
     return snapshottables.values().toArray(
         new INodeDirectory[snapshottables.size()]);
   }
@@ -410,6 +423,27 @@ public class SnapshotManager implements SnapshotStatsMXBean {
     return diffs != null ? diffs.generateReport() : new SnapshotDiffReport(
         snapshotRootPath, from, to, Collections.<DiffReportEntry> emptyList());
   }
+
+  /**
+   * Compute a page of the difference between two snapshots of a directory,
+   * or between a snapshot of the directory and its current tree, starting
+   * at the cursor returned by the previous page.
+   */
+  public SnapshotDiffReportListing diff(final INodesInPath iip,
+      final String from, final String to, byte[] startPath, int index)
+      throws IOException {
+    final INodeDirectory snapshotRoot = getSnapshottableRoot(iip);
+
+    if ((from == null || from.isEmpty())
+        && (to == null || to.isEmpty())) {
+      // both fromSnapshot and toSnapshot indicate the current tree
+      return new SnapshotDiffReportListing(
+          Collections.<DiffReportListingEntry> emptyList(), true,
+          DFSUtilClient.EMPTY_BYTES, 0, false);
+    }
+    return snapshotRoot.getDirectorySnapshottableFeature().computeDiffListing(
+        snapshotRoot, from, to, startPath, index, diffListingLimit);
+  }
   
   public void clearSnapshottableDirs() {
     snapshottables.clear();
@@ -0,0 +1,170 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.client.HdfsClientConfigKeys;
+import org.apache.hadoop.hdfs.protocol.BatchEntryResult;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the batched namespace operations of {@link DistributedFileSystem}.
+ */
+public class TestBatchedOps {
+  private static final int NUM_DIRS = 25;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    // split the batches on both the client and the NameNode
+    conf.setInt(HdfsClientConfigKeys.DFS_CLIENT_BATCH_OPS_SIZE_KEY, 10);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_BATCH_OPS_PER_LOCK_KEY, 3);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static List<Path> getDirs() {
+    List<Path> dirs = new ArrayList<Path>();
+    for (int i = 0; i < NUM_DIRS; i++) {
+      dirs.add(new Path("/batch/dir" + i));
+    }
+    return dirs;
+  }
+
+  @Test(timeout=120000)
+  public void testBatchedOps() throws Exception {
+    final NamenodeProtocols nn = cluster.getNameNodeRpc();
+    final List<Path> dirs = getDirs();
+    List<BatchEntryResult<Boolean>> created = fs.mkdirs(dirs,
+        FsPermission.getDirDefault());
+    assertEquals(NUM_DIRS, created.size());
+    for (int i = 0; i < NUM_DIRS; i++) {
+      assertTrue(created.get(i).get());
+      assertTrue(nn.getFileInfo("/batch/dir" + i).isDir());
+    }
+
+    // a file below an existing file fails, the other entries succeed
+    DFSTestUtil.createFile(fs, new Path("/batch/dir0/file"), 10, (short) 1,
+        0L);
+    List<Path> paths = new ArrayList<Path>(dirs);
+    paths.add(new Path("/batch/dir0/file/sub"));
+    created = fs.mkdirs(paths, FsPermission.getDirDefault());
+    assertEquals(NUM_DIRS + 1, created.size());
+    assertTrue(created.get(NUM_DIRS - 1).isSuccess());
+    assertFalse(created.get(NUM_DIRS).isSuccess());
+    assertNull(created.get(NUM_DIRS).getValue());
+
+    paths = new ArrayList<Path>(dirs);
+    paths.add(new Path("/batch/missing"));
+    paths.add(new Path("/batch/dir0/file"));
+    List<BatchEntryResult<FileStatus>> statuses = fs.getFileStatus(paths);
+    assertEquals(NUM_DIRS + 2, statuses.size());
+    for (int i = 0; i < NUM_DIRS; i++) {
+      FileStatus st = statuses.get(i).get();
+      assertTrue(st.isDirectory());
+      assertEquals(fs.makeQualified(dirs.get(i)), st.getPath());
+    }
+    assertTrue(statuses.get(NUM_DIRS).isSuccess());
+    assertNull(statuses.get(NUM_DIRS).getValue());
+    assertEquals(10, statuses.get(NUM_DIRS + 1).get().getLen());
+
+    List<BatchEntryResult<Void>> times = fs.setTimes(
+        Arrays.asList(new Path("/batch/dir0/file"), new Path("/batch/missing")),
+        1000L, 2000L);
+    assertTrue(times.get(0).isSuccess());
+    assertTrue(times.get(1).getException() instanceof FileNotFoundException);
+    HdfsFileStatus st = nn.getFileInfo("/batch/dir0/file");
+    assertEquals(1000L, st.getModificationTime());
+    assertEquals(2000L, st.getAccessTime());
+
+    // a non-empty directory is not deleted without recursive
+    List<BatchEntryResult<Boolean>> deleted = fs.delete(dirs, false);
+    assertFalse(deleted.get(0).isSuccess());
+    for (int i = 1; i < NUM_DIRS; i++) {
+      assertTrue(deleted.get(i).get());
+      assertNull(nn.getFileInfo("/batch/dir" + i));
+    }
+    deleted = fs.delete(Arrays.asList(new Path("/batch/dir0"),
+        new Path("/batch/dir1")), true);
+    assertTrue(deleted.get(0).get());
+    assertFalse(deleted.get(1).get());
+    assertNull(nn.getFileInfo("/batch/dir0"));
+  }
+
+  @Test(timeout=120000)
+  public void testPermissionDenied() throws Exception {
+    fs.mkdirs(new Path("/private/dir"));
+    fs.mkdirs(new Path("/public"));
+    fs.setPermission(new Path("/private"), new FsPermission((short) 0700));
+    fs.setPermission(new Path("/public"), new FsPermission((short) 0777));
+
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "user", new String[] {"group"});
+    List<BatchEntryResult<FileStatus>> statuses = user.doAs(
+        new PrivilegedExceptionAction<List<BatchEntryResult<FileStatus>>>() {
+          @Override
+          public List<BatchEntryResult<FileStatus>> run() throws Exception {
+            DistributedFileSystem userFs = (DistributedFileSystem)
+                DFSTestUtil.getFileSystemAs(UserGroupInformation
+                    .getCurrentUser(), cluster.getConfiguration(0));
+            userFs.mkdirs(Arrays.asList(new Path("/public/dir"),
+                new Path("/private/dir2")), FsPermission.getDirDefault());
+            return userFs.getFileStatus(Arrays.asList(
+                new Path("/private/dir"), new Path("/public/dir")));
+          }
+        });
+    assertTrue(statuses.get(0).getException()
+        instanceof AccessControlException);
+    FileStatus st = statuses.get(1).get();
+    assertNotNull(st);
+    assertEquals("user", st.getOwner());
+    assertNull(cluster.getNameNodeRpc().getFileInfo("/private/dir2"));
+  }
+}
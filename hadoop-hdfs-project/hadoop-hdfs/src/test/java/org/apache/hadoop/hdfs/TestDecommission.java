@@ -1074,6 +1074,94 @@ public class TestDecommission extends AdminStatesBaseTest {
     }
   }
 
+  @Test(timeout=120000)
+  public void testIncrementalTracking() throws Exception {
+    getConf().setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_KEY,
+        true);
+    getConf().setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    // Disable the normal monitor runs
+    getConf().setInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY,
+        Integer.MAX_VALUE);
+    startCluster(1, 3);
+    final FileSystem fs = getCluster().getFileSystem();
+    final DatanodeManager datanodeManager =
+        getCluster().getNamesystem().getBlockManager().getDatanodeManager();
+    final DatanodeAdminManager decomManager =
+        datanodeManager.getDatanodeAdminManager();
+
+    // 10 blocks on every node, which cannot be re-replicated
+    final int numBlocks = 10;
+    DFSTestUtil.createFile(fs, new Path("/file1"), 1024, numBlocks * 1024,
+        1024, (short) 3, 0xBAD1DEA);
+    DataNode d = getCluster().getDataNodes().get(0);
+    takeNodeOutofService(0, d.getDatanodeUuid(), 0, null,
+        AdminStates.DECOMMISSION_INPROGRESS);
+    final DatanodeDescriptor dn = datanodeManager.getDatanode(
+        d.getDatanodeId());
+
+    // the first check scans all the blocks of the node
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(numBlocks, decomManager.getNumBlocksChecked());
+    assertEquals(numBlocks, decomManager.getNumTrackedBlocks(dn));
+    assertEquals(numBlocks,
+        dn.getLeavingServiceStatus().getUnderReplicatedBlocks());
+    // nothing changed, so no block is checked again
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(0, decomManager.getNumBlocksChecked());
+    assertEquals(numBlocks, decomManager.getNumTrackedBlocks(dn));
+    assertTrue(dn.isDecommissionInProgress());
+
+    // the other two replicas are sufficient after lowering the replication
+    getCluster().getNameNodeRpc().setReplication("/file1", (short) 2);
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    // the changed blocks and the final full scan
+    assertEquals(2 * numBlocks, decomManager.getNumBlocksChecked());
+    assertTrue(dn.isDecommissioned());
+    assertEquals(0, decomManager.getNumTrackedNodes());
+  }
+
+  @Test(timeout=120000)
+  public void testIncrementalTrackingPrune() throws Exception {
+    getConf().setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_KEY,
+        true);
+    getConf().setInt(DFSConfigKeys
+        .DFS_NAMENODE_DECOMMISSION_INCREMENTAL_TRACKING_PRUNE_INTERVAL_KEY, 2);
+    getConf().setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    // Disable the normal monitor runs
+    getConf().setInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY,
+        Integer.MAX_VALUE);
+    startCluster(1, 3);
+    final FileSystem fs = getCluster().getFileSystem();
+    final DatanodeManager datanodeManager =
+        getCluster().getNamesystem().getBlockManager().getDatanodeManager();
+    final DatanodeAdminManager decomManager =
+        datanodeManager.getDatanodeAdminManager();
+
+    // 10 blocks on every node, which cannot be re-replicated
+    final int numBlocks = 10;
+    DFSTestUtil.createFile(fs, new Path("/file1"), 1024, numBlocks * 1024,
+        1024, (short) 3, 0xBAD1DEA);
+    DataNode d = getCluster().getDataNodes().get(0);
+    takeNodeOutofService(0, d.getDatanodeUuid(), 0, null,
+        AdminStates.DECOMMISSION_INPROGRESS);
+    final DatanodeDescriptor dn = datanodeManager.getDatanode(
+        d.getDatanodeId());
+
+    BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+    assertEquals(numBlocks, decomManager.getNumBlocksChecked());
+    // the tracked blocks are checked again on every second check of the node
+    for (int i = 0; i < 3; i++) {
+      BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+      assertEquals(0, decomManager.getNumBlocksChecked());
+      BlockManagerTestUtil.recheckDecommissionState(datanodeManager);
+      assertEquals(numBlocks, decomManager.getNumBlocksChecked());
+    }
+    assertEquals(numBlocks, decomManager.getNumTrackedBlocks(dn));
+    assertTrue(dn.isDecommissionInProgress());
+  }
+
   private void doDecomCheck(DatanodeManager datanodeManager,
       DatanodeAdminManager decomManager, int expectedNumCheckedNodes)
       throws IOException, ExecutionException, InterruptedException {
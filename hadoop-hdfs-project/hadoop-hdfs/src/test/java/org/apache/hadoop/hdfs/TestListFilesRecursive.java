@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the recursive listing of a subtree by the NameNode.
+ */
+public class TestListFilesRecursive {
+  private static final int LS_LIMIT = 3;
+  /** The entries of /tree in depth-first order. */
+  private static final String[] ENTRIES = {"a", "a/b", "a/b/c", "a/b/f2",
+      "a/f1", "d", "d/f3", "e", "f4"};
+  private static final String[] FILES = {"a/b/f2", "a/f1", "d/f3", "f4"};
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private NamenodeProtocols nn;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, LS_LIMIT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    nn = cluster.getNameNodeRpc();
+    for (String file : FILES) {
+      DFSTestUtil.createFile(fs, new Path("/tree/" + file), 10, (short) 1,
+          0L);
+    }
+    fs.mkdirs(new Path("/tree/a/b/c"));
+    fs.mkdirs(new Path("/tree/e"));
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private List<String> listAll(String src, byte[] startAfter)
+      throws Exception {
+    List<String> names = new ArrayList<String>();
+    DirectoryListing listing;
+    do {
+      listing = nn.getListingRecursive(src, startAfter, false);
+      assertTrue(listing.getPartialListing().length <= LS_LIMIT);
+      for (HdfsFileStatus st : listing.getPartialListing()) {
+        names.add(st.getLocalName());
+      }
+      startAfter = listing.getLastName();
+    } while (listing.hasMore());
+    return names;
+  }
+
+  @Test(timeout=120000)
+  public void testListingOrder() throws Exception {
+    assertEquals(Arrays.asList(ENTRIES),
+        listAll("/tree", HdfsFileStatus.EMPTY_NAME));
+    // resume from any entry
+    for (int i = 0; i < ENTRIES.length; i++) {
+      assertEquals(Arrays.asList(ENTRIES).subList(i + 1, ENTRIES.length),
+          listAll("/tree", DFSUtil.string2Bytes(ENTRIES[i])));
+    }
+    assertNull(nn.getListingRecursive("/missing", HdfsFileStatus.EMPTY_NAME,
+        false));
+    // a file lists itself
+    DirectoryListing file = nn.getListingRecursive("/tree/f4",
+        HdfsFileStatus.EMPTY_NAME, false);
+    assertEquals(1, file.getPartialListing().length);
+    assertEquals("", file.getPartialListing()[0].getLocalName());
+    assertFalse(file.hasMore());
+  }
+
+  @Test(timeout=120000)
+  public void testResumeAfterDelete() throws Exception {
+    DirectoryListing first = nn.getListingRecursive("/tree",
+        HdfsFileStatus.EMPTY_NAME, false);
+    assertEquals("a/b/c", DFSUtil.bytes2String(first.getLastName()));
+    fs.delete(new Path("/tree/a/b"), true);
+    assertEquals(Arrays.asList("a/f1", "d", "d/f3", "e", "f4"),
+        listAll("/tree", first.getLastName()));
+  }
+
+  @Test(timeout=120000)
+  public void testListFiles() throws Exception {
+    List<String> files = new ArrayList<String>();
+    RemoteIterator<LocatedFileStatus> it =
+        fs.listFiles(new Path("/tree"), true);
+    while (it.hasNext()) {
+      LocatedFileStatus st = it.next();
+      assertTrue(st.isFile());
+      assertEquals(1, st.getBlockLocations().length);
+      files.add(st.getPath().toUri().getPath());
+    }
+    List<String> expected = new ArrayList<String>();
+    for (String file : FILES) {
+      expected.add("/tree/" + file);
+    }
+    assertEquals(expected, files);
+
+    it = fs.listFiles(new Path("/tree/f4"), true);
+    assertEquals(fs.makeQualified(new Path("/tree/f4")), it.next().getPath());
+    assertFalse(it.hasNext());
+  }
+
+  @Test(timeout=120000)
+  public void testPermissionDenied() throws Exception {
+    fs.setPermission(new Path("/tree/d"), new FsPermission((short) 0700));
+    UserGroupInformation user = UserGroupInformation.createUserForTesting(
+        "user", new String[] {"group"});
+    user.doAs(new PrivilegedExceptionAction<Void>() {
+      @Override
+      public Void run() throws Exception {
+        DistributedFileSystem userFs = (DistributedFileSystem)
+            DFSTestUtil.getFileSystemAs(UserGroupInformation.getCurrentUser(),
+                cluster.getConfiguration(0));
+        // the listing fails when it reaches /tree/d
+        RemoteIterator<LocatedFileStatus> it =
+            userFs.listFiles(new Path("/tree/a"), true);
+        assertEquals("f2", it.next().getPath().getName());
+        try {
+          it = userFs.listFiles(new Path("/tree"), true);
+          while (it.hasNext()) {
+            it.next();
+          }
+          fail("Listing /tree/d should have failed");
+        } catch (AccessControlException e) {
+          // expected
+        }
+        return null;
+      }
+    });
+    assertArrayEquals(ENTRIES, listAll("/tree", HdfsFileStatus.EMPTY_NAME)
+        .toArray(new String[0]));
+  }
+}
@@ -85,6 +85,9 @@ abstract public class BaseReplicationPolicyTest {
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_READ_KEY, true);
     conf.setBoolean(
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_KEY, true);
+    // the tests update the heartbeats between the choices of targets
+    conf.setLong(DFSConfigKeys
+        .DFS_NAMENODE_BLOCKPLACEMENTPOLICY_INDEXED_REFRESH_INTERVAL_MS_KEY, 0);
     DFSTestUtil.formatNameNode(conf);
     namenode = new NameNode(conf);
     nameNodeRpc = namenode.getRpcServer();
@@ -48,9 +48,14 @@ public class TestBlockInfo {
   private static final Log LOG = LogFactory
       .getLog("org.apache.hadoop.hdfs.TestBlockInfo");
 
+  /** Create the blocks under test. */
+  protected BlockInfoContiguous newBlockInfo(Block blk, short replication) {
+    return new BlockInfoContiguous(blk, replication);
+  }
+
   @Test
   public void testIsDeleted() {
-    BlockInfo blockInfo = new BlockInfoContiguous((short) 3);
+    BlockInfo blockInfo = newBlockInfo(new Block(), (short) 3);
     BlockCollection bc = Mockito.mock(BlockCollection.class);
     blockInfo.setBlockCollectionId(1000);
     Assert.assertFalse(blockInfo.isDeleted());
@@ -60,7 +65,7 @@ public class TestBlockInfo {
 
   @Test
   public void testAddStorage() throws Exception {
-    BlockInfo blockInfo = new BlockInfoContiguous((short) 3);
+    BlockInfo blockInfo = newBlockInfo(new Block(), (short) 3);
 
     final DatanodeStorageInfo storage = DFSTestUtil.createDatanodeStorageInfo("storageID", "127.0.0.1");
 
@@ -72,7 +77,7 @@ public class TestBlockInfo {
 
   @Test
   public void testCopyConstructor() {
-    BlockInfoContiguous old = new BlockInfoContiguous((short) 3);
+    BlockInfoContiguous old = newBlockInfo(new Block(), (short) 3);
     try {
       BlockInfoContiguous copy = new BlockInfoContiguous(old);
       assertEquals(old.getBlockCollectionId(), copy.getBlockCollectionId());
@@ -93,7 +98,7 @@ public class TestBlockInfo {
 
     // Create a few dummy blocks and add them to the first storage.
     for (int i = 0; i < NUM_BLOCKS; ++i) {
-      blockInfos[i] = new BlockInfoContiguous((short) 3);
+      blockInfos[i] = newBlockInfo(new Block(), (short) 3);
       storage1.addBlock(blockInfos[i]);
     }
 
@@ -119,7 +124,7 @@ public class TestBlockInfo {
     LOG.info("Building block list...");
     for (int i = 0; i < MAX_BLOCKS; i++) {
       blockList.add(new Block(i, 0, GenerationStamp.LAST_RESERVED_STAMP));
-      blockInfoList.add(new BlockInfoContiguous(blockList.get(i), (short) 3));
+      blockInfoList.add(newBlockInfo(blockList.get(i), (short) 3));
       dd.addBlock(blockInfoList.get(i));
 
       // index of the datanode should be 0
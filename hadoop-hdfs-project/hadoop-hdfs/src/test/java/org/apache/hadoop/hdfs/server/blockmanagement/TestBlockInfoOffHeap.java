@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import com.google.common.base.Supplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Run the {@link TestBlockInfo} tests with the triplets kept in
+ * {@link OffHeapTriplets}.
+ */
+public class TestBlockInfoOffHeap extends TestBlockInfo {
+  private OffHeapTriplets store;
+
+  @Before
+  public void createStore() {
+    store = new OffHeapTriplets();
+  }
+
+  @After
+  public void closeStore() {
+    store.close();
+  }
+
+  @Override
+  protected BlockInfoContiguous newBlockInfo(Block blk, short replication) {
+    final BlockInfoContiguous b = super.newBlockInfo(blk, replication);
+    b.moveOffHeap(store);
+    return b;
+  }
+
+  /**
+   * A record is allocated with the first replica, grows beyond the
+   * replication factor and is reused once the last replica is removed.
+   */
+  @Test
+  public void testRecordLifecycle() throws Exception {
+    final long used = store.getUsedBytes();
+    final DatanodeStorageInfo[] storages =
+        DFSTestUtil.createDatanodeStorageInfos(4);
+
+    BlockInfo b = newBlockInfo(new Block(), (short) 2);
+    assertTrue(b.isOffHeap());
+    assertEquals(2, b.getCapacity());
+    assertNull(b.getStorageInfo(0));
+    assertEquals(used, store.getUsedBytes());
+
+    for (DatanodeStorageInfo s : storages) {
+      assertTrue(b.addStorage(s));
+    }
+    assertEquals(4, b.numNodes());
+    assertEquals(4, b.getCapacity());
+    for (int i = 0; i < storages.length; i++) {
+      assertSame(storages[i], b.getStorageInfo(i));
+    }
+    assertTrue(store.getUsedBytes() > used);
+
+    for (DatanodeStorageInfo s : storages) {
+      assertTrue(b.removeStorage(s));
+    }
+    assertFalse(b.removeStorage(storages[0]));
+    assertEquals(0, b.numNodes());
+    assertEquals(OffHeapTriplets.NONE, b.getOffHeapIndex());
+    assertEquals(used, store.getUsedBytes());
+  }
+
+  /**
+   * Blocks which had replicas before being moved off heap keep their
+   * on-heap triplets and can share block lists with off heap blocks.
+   */
+  @Test
+  public void testMixedBlockList() throws Exception {
+    final DatanodeStorageInfo storage =
+        DFSTestUtil.createDatanodeStorageInfo("s1", "1.1.1.1");
+    final BlockInfo onHeap = new BlockInfoContiguous((short) 3);
+    storage.addBlock(onHeap);
+    onHeap.moveOffHeap(store);
+    assertFalse(onHeap.isOffHeap());
+
+    final BlockInfo offHeap = newBlockInfo(new Block(1), (short) 3);
+    storage.addBlock(offHeap);
+    assertSame(offHeap, storage.getBlockListHeadForTesting());
+    assertSame(onHeap, offHeap.getNext(0));
+    assertSame(offHeap, onHeap.getPrevious(0));
+
+    assertTrue(storage.removeBlock(offHeap));
+    assertNull(onHeap.getPrevious(0));
+    assertEquals(1, storage.numBlocks());
+  }
+
+  /**
+   * An on-heap block which got an index by being linked from an off heap
+   * record releases it once it is removed from the blocks map.
+   */
+  @Test
+  public void testOnHeapIndexReleased() throws Exception {
+    final BlocksMap map = new BlocksMap(16, true);
+    try {
+      final BlockCollection bc = Mockito.mock(BlockCollection.class);
+      Mockito.when(bc.getId()).thenReturn(1L);
+      final DatanodeStorageInfo storage =
+          DFSTestUtil.createDatanodeStorageInfo("s1", "1.1.1.1");
+
+      final BlockInfo onHeap =
+          new BlockInfoContiguous(new Block(1), (short) 3);
+      storage.addBlock(onHeap);
+      map.addBlockCollection(onHeap, bc);
+      assertFalse(onHeap.isOffHeap());
+
+      final BlockInfo offHeap =
+          new BlockInfoContiguous(new Block(2), (short) 3);
+      map.addBlockCollection(offHeap, bc);
+      assertTrue(offHeap.isOffHeap());
+      storage.addBlock(offHeap);
+      assertSame(onHeap, offHeap.getNext(0));
+      assertTrue(onHeap.getOffHeapIndex() != OffHeapTriplets.NONE);
+
+      onHeap.delete();
+      map.removeBlock(onHeap);
+      assertEquals(OffHeapTriplets.NONE, onHeap.getOffHeapIndex());
+      assertNull(offHeap.getNext(0));
+      assertEquals(1, storage.numBlocks());
+    } finally {
+      map.close();
+    }
+  }
+
+  /**
+   * Block reports and replication work with the option enabled, and every
+   * NameNode keeps its blocks in its own store, closed with the NameNode.
+   */
+  @Test(timeout=120000)
+  public void testMiniCluster() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_BLOCKSMAP_OFFHEAP_KEY, true);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1L);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(3).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      final NamenodeProtocols nn = cluster.getNameNodeRpc();
+      final Path file = new Path("/file");
+      DFSTestUtil.createFile(fs, file, 1024, (short) 2, 0L);
+      waitForReplicas(nn, file, 2);
+      cluster.triggerBlockReports();
+      waitForReplicas(nn, file, 2);
+      fs.setReplication(file, (short) 3);
+      waitForReplicas(nn, file, 3);
+      final OffHeapTriplets oldStore = cluster.getNamesystem()
+          .getBlockManager().blocksMap.getOffHeapTriplets();
+      assertTrue(oldStore.getUsedBytes() > 0);
+
+      cluster.restartNameNode(true);
+      waitForReplicas(cluster.getNameNodeRpc(), file, 3);
+      assertEquals(0, oldStore.getUsedBytes());
+      assertEquals(0, oldStore.getReservedBytes());
+      final OffHeapTriplets newStore = cluster.getNamesystem()
+          .getBlockManager().blocksMap.getOffHeapTriplets();
+      assertTrue(newStore != oldStore);
+      assertTrue(newStore.getUsedBytes() > 0);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static void waitForReplicas(final NamenodeProtocols nn,
+      final Path file, final int expected) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          LocatedBlocks blocks = nn.getBlockLocations(file.toString(), 0,
+              Long.MAX_VALUE);
+          return blocks.get(0).getLocations().length == expected;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 60000);
+  }
+}
@@ -144,6 +144,7 @@ public class TestBlockManager {
              "need to set a dummy value here so it assumes a multi-rack cluster");
     fsn = Mockito.mock(FSNamesystem.class);
     Mockito.doReturn(true).when(fsn).hasWriteLock();
+    Mockito.doReturn(true).when(fsn).hasBlockWriteLock();
     Mockito.doReturn(true).when(fsn).hasReadLock();
     Mockito.doReturn(true).when(fsn).isRunning();
     bm = new BlockManager(fsn, false, conf);
@@ -671,6 +672,27 @@ public class TestBlockManager {
             UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY));
   }
 
+  @Test
+  public void testAdaptiveReplicationStreamsLimit() {
+    bm.maxReplicationStreams = 2;
+    bm.replicationStreamsHardLimit = 4;
+    bm.replicationStreamsAdaptive = true;
+    final DatanodeDescriptor fast = nodes.get(0);
+    final DatanodeDescriptor slow = nodes.get(1);
+    // nodes without heartbeats use the configured limit
+    assertEquals(2, bm.getReplicationStreamsLimit(nodes.get(2)));
+
+    for (int i = 0; i < 20; i++) {
+      fast.updateReplicationCapacity(2);
+      slow.updateReplicationCapacity(0);
+    }
+    assertEquals(4, bm.getReplicationStreamsLimit(fast));
+    assertEquals(1, bm.getReplicationStreamsLimit(slow));
+
+    bm.replicationStreamsAdaptive = false;
+    assertEquals(2, bm.getReplicationStreamsLimit(slow));
+  }
+
   @Test
   public void testFavorDecomUntilHardLimit() throws Exception {
     bm.maxReplicationStreams = 0;
@@ -711,7 +733,31 @@ public class TestBlockManager {
             UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED));
   }
 
+  @Test
+  public void testPrioritizeLeavingServiceSources() throws Exception {
+    bm.prioritizeLeavingServiceSources = true;
+    long blockId = 42;         // arbitrary
+    Block aBlock = new Block(blockId, 0, 0);
+    List<DatanodeDescriptor> origNodes = getNodes(0, 1, 2);
+    addBlockOnNodes(blockId, origNodes);
+    origNodes.get(1).startDecommission();
+    origNodes.get(1).getLeavingServiceStatus().set(5, 0, 0);
+    origNodes.get(2).startDecommission();
+    origNodes.get(2).getLeavingServiceStatus().set(10, 0, 0);
 
+    List<DatanodeDescriptor> cntNodes = new LinkedList<DatanodeDescriptor>();
+    List<DatanodeStorageInfo> liveNodes = new LinkedList<DatanodeStorageInfo>();
+    // the decommissioning node with the most blocks left is always chosen
+    for (int i = 0; i < 10; i++) {
+      assertEquals(origNodes.get(2), bm.chooseSourceDatanode(aBlock, cntNodes,
+          liveNodes, new NumberReplicas(),
+          UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED));
+    }
+    origNodes.get(2).getLeavingServiceStatus().set(1, 0, 0);
+    assertEquals(origNodes.get(1), bm.chooseSourceDatanode(aBlock, cntNodes,
+        liveNodes, new NumberReplicas(),
+        UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED));
+  }
 
   @Test
   public void testSafeModeIBR() throws Exception {
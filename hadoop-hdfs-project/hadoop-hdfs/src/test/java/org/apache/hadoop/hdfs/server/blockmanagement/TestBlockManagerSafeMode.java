@@ -93,6 +93,7 @@ public class TestBlockManagerSafeMode {
 
     fsn = mock(FSNamesystem.class);
     doReturn(true).when(fsn).hasWriteLock();
+    doReturn(true).when(fsn).hasBlockWriteLock();
     doReturn(true).when(fsn).hasReadLock();
     doReturn(true).when(fsn).isRunning();
     NameNode.initMetrics(conf, NamenodeRole.NAMENODE);
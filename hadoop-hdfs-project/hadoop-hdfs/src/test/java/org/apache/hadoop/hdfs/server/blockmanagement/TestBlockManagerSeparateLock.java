@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Supplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test block management with
+ * {@link DFSConfigKeys#DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY} enabled.
+ */
+public class TestBlockManagerSeparateLock {
+  private static final short REPLICATION = 3;
+
+  private MiniDFSCluster cluster;
+  private FileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY,
+        true);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1L);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY, 0);
+    cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(REPLICATION + 1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Block reports, replication and invalidation work as usual when block
+   * management uses its own lock.
+   */
+  @Test(timeout=120000)
+  public void testReplicationWithSeparateLock() throws Exception {
+    final Path file = new Path("/testReplication");
+    DFSTestUtil.createFile(fs, file, 1024, REPLICATION, 0L);
+    waitForReplicas(file, REPLICATION);
+
+    // full block reports are processed under the block lock
+    cluster.triggerBlockReports();
+    waitForReplicas(file, REPLICATION);
+
+    // lose a replica so that the replication monitor re-replicates it
+    cluster.stopDataNode(0);
+    cluster.setDataNodesDead();
+    waitForReplicas(file, REPLICATION);
+
+    // excess replicas are invalidated
+    fs.setReplication(file, (short) 2);
+    waitForReplicas(file, 2);
+    assertFalse(cluster.getNamesystem().hasWriteLock());
+  }
+
+  /**
+   * Holding the block lock blocks readers of block locations, but not
+   * readers of the namespace only.
+   */
+  @Test(timeout=60000)
+  public void testNamespaceReadsDuringBlockProcessing() throws Exception {
+    final Path file = new Path("/testReads");
+    DFSTestUtil.createFile(fs, file, 1024, REPLICATION, 0L);
+    final FSNamesystem fsn = cluster.getNamesystem();
+    final NamenodeProtocols nn = cluster.getNameNodeRpc();
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    fsn.blockWriteLock();
+    try {
+      assertTrue(fsn.hasBlockWriteLock());
+      assertFalse(fsn.hasWriteLock());
+      Future<HdfsFileStatus> stat = executor.submit(
+          new Callable<HdfsFileStatus>() {
+            @Override
+            public HdfsFileStatus call() throws Exception {
+              return nn.getFileInfo(file.toString());
+            }
+          });
+      assertNotNull(stat.get(10, TimeUnit.SECONDS));
+      assertEquals(1, nn.getListing("/", HdfsFileStatus.EMPTY_NAME, false)
+          .getPartialListing().length);
+
+      Future<LocatedBlocks> locations = executor.submit(
+          new Callable<LocatedBlocks>() {
+            @Override
+            public LocatedBlocks call() throws Exception {
+              return nn.getBlockLocations(file.toString(), 0, 1024);
+            }
+          });
+      Thread.sleep(100);
+      assertFalse(locations.isDone());
+      fsn.blockWriteUnlock();
+      assertEquals(1, locations.get(10, TimeUnit.SECONDS)
+          .locatedBlockCount());
+    } finally {
+      if (fsn.hasBlockWriteLock()) {
+        fsn.blockWriteUnlock();
+      }
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Blocks completed by incremental block reports, which are processed
+   * under the block lock, update the quota usage with the write lock.
+   */
+  @Test(timeout=60000)
+  public void testQuotaOfBlocksCompletedByBlockReports() throws Exception {
+    final Path dir = new Path("/testQuota");
+    final Path file = new Path(dir, "file");
+    final long blockSize = 1024;
+    fs.mkdirs(dir);
+    ((DistributedFileSystem) fs).setQuota(dir, HdfsConstants.QUOTA_DONT_SET,
+        blockSize * 100);
+    // the client commits each block but the last when adding the next one,
+    // which the block reports of the datanodes then complete
+    DFSTestUtil.createFile(fs, file, 4096, 10 * blockSize + 100, blockSize,
+        REPLICATION, 0L);
+    assertEquals((10 * blockSize + 100) * REPLICATION,
+        fs.getContentSummary(dir).getSpaceConsumed());
+    assertEquals((10 * blockSize + 100) * REPLICATION,
+        ((DistributedFileSystem) fs).getQuotaUsage(dir).getSpaceConsumed());
+    assertFalse(cluster.getNamesystem().getBlockManager()
+        .hasPendingCompleteBlocks());
+  }
+
+  private void waitForReplicas(final Path file, final int expected)
+      throws Exception {
+    final NamenodeProtocols nn = cluster.getNameNodeRpc();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          LocatedBlocks blocks = nn.getBlockLocations(file.toString(), 0,
+              Long.MAX_VALUE);
+          return blocks.get(0).getLocations().length == expected;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 60000);
+  }
+}
@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Supplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs;
+import org.apache.hadoop.hdfs.protocol.BlockListAsLongs.BlockReportReplica;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager.ChunkedBlockReport;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test processing full block reports in chunks.
+ */
+public class TestChunkedBlockReport {
+  private static final int CHUNK_SIZE = 10;
+  private static final int NUM_FILES = 35;
+
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FULL_BLOCK_REPORT_CHUNK_SIZE_KEY,
+        CHUNK_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1)
+        .storagesPerDatanode(1).build();
+    cluster.waitActive();
+    FileSystem fs = cluster.getFileSystem();
+    for (int i = 0; i < NUM_FILES; i++) {
+      DFSTestUtil.createFile(fs, new Path("/file" + i), 10, (short) 1, 0L);
+    }
+    waitForStoredReplicas(NUM_FILES);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private DatanodeStorageInfo getStorageInfo() {
+    DataNode dn = cluster.getDataNodes().get(0);
+    DatanodeDescriptor node = cluster.getNamesystem().getBlockManager()
+        .getDatanodeManager().getDatanode(dn.getDatanodeUuid());
+    return node == null ? null : node.getStorageInfos()[0];
+  }
+
+  private void waitForStoredReplicas(final int expected) throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        DatanodeStorageInfo storage = getStorageInfo();
+        return storage != null && storage.numBlocks() == expected;
+      }
+    }, 100, 60000);
+  }
+
+  @Test(timeout=120000)
+  public void testFirstReportInChunks() throws Exception {
+    cluster.restartNameNode(true);
+    waitForStoredReplicas(NUM_FILES);
+    assertEquals(1, getStorageInfo().getBlockReportCount());
+  }
+
+  @Test(timeout=120000)
+  public void testUnreportedReplicasRemoved() throws Exception {
+    final DataNode dn = cluster.getDataNodes().get(0);
+    final String bpid = cluster.getNamesystem().getBlockPoolId();
+    final BlockManager bm = cluster.getNamesystem().getBlockManager();
+    Map<DatanodeStorage, BlockListAsLongs> reports =
+        dn.getFSDataset().getBlockReports(bpid);
+    assertEquals(1, reports.size());
+    final DatanodeStorage storage = reports.keySet().iterator().next();
+    final BlockListAsLongs full = reports.get(storage);
+
+    // leave out a few replicas spread over the chunks
+    List<BlockReportReplica> kept = new ArrayList<BlockReportReplica>();
+    List<BlockReportReplica> left = new ArrayList<BlockReportReplica>();
+    int i = 0;
+    for (BlockReportReplica r : full) {
+      (i++ % 7 == 0 ? left : kept).add(new BlockReportReplica(r));
+    }
+    final DatanodeStorageInfo storageInfo = getStorageInfo();
+    final int reportCount = storageInfo.getBlockReportCount();
+    assertTrue(bm.runBlockReport(dn.getDatanodeId(), storage,
+        BlockListAsLongs.encode(kept), null));
+    assertEquals(kept.size(), storageInfo.numBlocks());
+    assertNull(storageInfo.getFirstUnreported());
+    assertEquals(reportCount + 1, storageInfo.getBlockReportCount());
+    for (BlockReportReplica r : left) {
+      assertEquals(0, bm.getStoredBlock(r).numNodes());
+    }
+    for (BlockReportReplica r : kept) {
+      assertEquals(1, bm.getStoredBlock(r).numNodes());
+    }
+
+    // the full report adds them back
+    assertTrue(bm.runBlockReport(dn.getDatanodeId(), storage, full, null));
+    assertEquals(NUM_FILES, storageInfo.numBlocks());
+    for (BlockReportReplica r : left) {
+      assertEquals(1, bm.getStoredBlock(r).numNodes());
+    }
+  }
+
+  /**
+   * Between the chunks, the block list of the storage only holds stored
+   * blocks, and a newer report of the storage cancels the chunked one.
+   */
+  @Test(timeout=120000)
+  public void testStateBetweenChunks() throws Exception {
+    final DataNode dn = cluster.getDataNodes().get(0);
+    final String bpid = cluster.getNamesystem().getBlockPoolId();
+    final BlockManager bm = cluster.getNamesystem().getBlockManager();
+    Map<DatanodeStorage, BlockListAsLongs> reports =
+        dn.getFSDataset().getBlockReports(bpid);
+    final DatanodeStorage storage = reports.keySet().iterator().next();
+    final BlockListAsLongs full = reports.get(storage);
+    final DatanodeStorageInfo storageInfo = getStorageInfo();
+    final int reportCount = storageInfo.getBlockReportCount();
+
+    final ChunkedBlockReport report =
+        bm.new ChunkedBlockReport(dn.getDatanodeId(), storage, full, null);
+    report.call();
+    assertFalse(report.isDone());
+    assertNotNull(storageInfo.getFirstUnreported());
+    assertEquals(NUM_FILES, storageInfo.numBlocks());
+    int numBlocks = 0;
+    for (Iterator<BlockInfo> it = storageInfo.getBlockIterator();
+        it.hasNext(); numBlocks++) {
+      BlockInfo b = it.next();
+      assertSame(b, bm.getStoredBlock(b));
+    }
+    assertEquals(NUM_FILES, numBlocks);
+
+    // a newer report supersedes the chunked one
+    assertTrue(bm.runBlockReport(dn.getDatanodeId(), storage, full, null));
+    assertNull(storageInfo.getFirstUnreported());
+    assertEquals(reportCount + 1, storageInfo.getBlockReportCount());
+    report.call();
+    assertTrue(report.isDone());
+    assertEquals(reportCount + 1, storageInfo.getBlockReportCount());
+    assertEquals(NUM_FILES, storageInfo.numBlocks());
+  }
+
+  /**
+   * The first unreported block follows the blocks which are reported,
+   * added and removed.
+   */
+  @Test
+  public void testFirstUnreported() throws Exception {
+    final DatanodeStorageInfo storage =
+        DFSTestUtil.createDatanodeStorageInfo("s1", "1.1.1.1");
+    final BlockInfo[] blocks = new BlockInfo[4];
+    for (int i = 0; i < blocks.length; i++) {
+      blocks[i] = new BlockInfoContiguous(new Block(i), (short) 1);
+      storage.addBlock(blocks[i]);
+    }
+    // the list is 3, 2, 1, 0
+    final Object report = new Object();
+    storage.startChunkedReport(report);
+    assertTrue(storage.isChunkedReport(report));
+    assertSame(blocks[3], storage.getFirstUnreported());
+
+    // report 3 and 1
+    storage.moveBlockToHead(blocks[3], 0, 0);
+    assertSame(blocks[2], storage.getFirstUnreported());
+    storage.moveBlockToHead(blocks[1], 0, 0);
+    assertSame(blocks[2], storage.getFirstUnreported());
+    // a new block goes in front of the unreported ones
+    final BlockInfo added = new BlockInfoContiguous(new Block(4), (short) 1);
+    storage.addBlock(added);
+    // 2 is removed
+    storage.removeBlock(blocks[2]);
+    assertSame(blocks[0], storage.getFirstUnreported());
+
+    final List<BlockInfo> unreported = new ArrayList<BlockInfo>();
+    Iterator<BlockInfo> it =
+        storage.new BlockIterator(storage.getFirstUnreported());
+    while (it.hasNext()) {
+      unreported.add(it.next());
+    }
+    assertEquals(Collections.singletonList(blocks[0]), unreported);
+
+    storage.startChunkedReport(new Object());
+    assertFalse(storage.isChunkedReport(report));
+    storage.endChunkedReport();
+    assertNull(storage.getFirstUnreported());
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.StorageType;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.net.NetworkTopology;
+import org.apache.hadoop.net.Node;
+import org.apache.hadoop.net.NodeBase;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the choice of datanodes by {@link DatanodePlacementIndex}.
+ */
+public class TestDatanodePlacementIndex {
+  private static final long BLOCK_SIZE = 1024;
+  private static final int CHOOSE_TIMES = 1000;
+
+  private final Random random = new Random(0);
+  private DatanodeDescriptor[] dataNodes;
+
+  @Before
+  public void setUp() {
+    final String[] racks = {
+        "/d1/r1", "/d1/r1", "/d1/r1",
+        "/d1/r2", "/d1/r2", "/d1/r2",
+        "/d2/r3", "/d2/r3", "/d2/r3",
+        "/d2/r4"};
+    final StorageType[] types = new StorageType[racks.length];
+    Arrays.fill(types, StorageType.DISK);
+    types[racks.length - 1] = StorageType.SSD;
+    dataNodes = DFSTestUtil.toDatanodeDescriptor(
+        DFSTestUtil.createDatanodeStorageInfos(racks.length, racks, null,
+            types));
+    for (int i = 0; i < dataNodes.length; i++) {
+      setRemaining(i, 2 * BLOCK_SIZE);
+    }
+  }
+
+  private void setRemaining(int i, long remaining) {
+    dataNodes[i].getStorageInfos()[0].setUtilizationForTesting(
+        2 * BLOCK_SIZE, 0, remaining, 0);
+  }
+
+  private DatanodePlacementIndex newIndex(StorageType type) {
+    return new DatanodePlacementIndex(Arrays.asList(dataNodes), type,
+        dataNodes.length, 0);
+  }
+
+  /** @return the datanodes chosen by many choices. */
+  private Set<DatanodeDescriptor> choose(DatanodePlacementIndex index,
+      String scope, Collection<? extends Node> excludedNodes,
+      Collection<String> excludedRacks) {
+    final Set<DatanodeDescriptor> chosen = new HashSet<>();
+    for (int i = 0; i < CHOOSE_TIMES; i++) {
+      final DatanodeDescriptor node = index.chooseRandom(scope,
+          excludedNodes, excludedRacks, BLOCK_SIZE, random);
+      if (node == null) {
+        assertTrue(chosen.isEmpty());
+        return chosen;
+      }
+      chosen.add(node);
+    }
+    return chosen;
+  }
+
+  private Set<DatanodeDescriptor> nodes(int... indices) {
+    final Set<DatanodeDescriptor> nodes = new HashSet<>();
+    for (int i : indices) {
+      nodes.add(dataNodes[i]);
+    }
+    return nodes;
+  }
+
+  @Test
+  public void testScope() {
+    final DatanodePlacementIndex index = newIndex(StorageType.DISK);
+    assertEquals(9, index.size());
+    assertEquals(nodes(0, 1, 2, 3, 4, 5, 6, 7, 8),
+        choose(index, NodeBase.ROOT, null, null));
+    assertEquals(nodes(0, 1, 2, 3, 4, 5), choose(index, "/d1", null, null));
+    assertEquals(nodes(3, 4, 5), choose(index, "/d1/r2", null, null));
+    assertEquals(nodes(6, 7, 8), choose(index, "~/d1", null, null));
+    assertEquals(nodes(0, 1, 2, 6, 7, 8),
+        choose(index, "~/d1/r2", null, null));
+    // a location which is a prefix of another one is not a parent
+    assertEquals(nodes(), choose(index, "/d1/r", null, null));
+    assertEquals(nodes(), choose(index, "/d3", null, null));
+  }
+
+  @Test
+  public void testExcluded() {
+    final DatanodePlacementIndex index = newIndex(StorageType.DISK);
+    assertEquals(nodes(1, 2, 5, 6, 7, 8), choose(index, NodeBase.ROOT,
+        nodes(0, 3, 4), null));
+    assertEquals(nodes(0, 1, 2, 8), choose(index, NodeBase.ROOT,
+        nodes(6, 7), Collections.singleton("/d1/r2")));
+    assertEquals(nodes(2), choose(index, "~/d2",
+        nodes(0, 1, 6), Collections.singleton("/d1/r2")));
+    assertEquals(nodes(), choose(index, "/d1/r1", nodes(0, 1, 2), null));
+    assertEquals(nodes(), choose(index, "/d1",
+        null, Arrays.asList("/d1/r1", "/d1/r2")));
+  }
+
+  @Test
+  public void testRequiredSize() {
+    setRemaining(0, BLOCK_SIZE - 1);
+    setRemaining(4, 0);
+    setRemaining(5, BLOCK_SIZE);
+    setRemaining(7, BLOCK_SIZE - 1);
+    setRemaining(8, BLOCK_SIZE - 1);
+    final DatanodePlacementIndex index = newIndex(StorageType.DISK);
+    assertEquals(nodes(1, 2, 3, 5, 6), choose(index, NodeBase.ROOT,
+        null, null));
+    assertEquals(nodes(1, 2, 3, 5), choose(index, "~/d2/r3", null, null));
+    assertEquals(nodes(), choose(index, "/d2/r3", nodes(6), null));
+    assertNull(index.chooseRandom(NodeBase.ROOT, null, null,
+        3 * BLOCK_SIZE, random));
+  }
+
+  @Test
+  public void testStorageType() {
+    final DatanodePlacementIndex index = newIndex(StorageType.SSD);
+    assertEquals(1, index.size());
+    assertEquals(nodes(9), choose(index, NodeBase.ROOT, null, null));
+    assertEquals(nodes(), choose(index, "/d1", null, null));
+    assertEquals(nodes(), choose(index, NodeBase.ROOT, nodes(9), null));
+    assertEquals(-1,
+        DatanodePlacementIndex.getRemaining(dataNodes[0], StorageType.SSD));
+  }
+
+  @Test
+  public void testUniform() {
+    final DatanodePlacementIndex index = newIndex(StorageType.DISK);
+    final int[] counts = new int[dataNodes.length];
+    final int n = 60000;
+    for (int i = 0; i < n; i++) {
+      final DatanodeDescriptor node = index.chooseRandom("~/d1/r1",
+          nodes(4), null, BLOCK_SIZE, random);
+      counts[Arrays.asList(dataNodes).indexOf(node)]++;
+    }
+    // 5 datanodes, each should be chosen about 12000 times
+    for (int i : new int[] {3, 5, 6, 7, 8}) {
+      assertTrue("counts=" + Arrays.toString(counts),
+          Math.abs(counts[i] - n / 5) < n / 50);
+    }
+    assertFalse(counts[0] + counts[1] + counts[2] + counts[4] + counts[9] > 0);
+  }
+
+  /**
+   * Test that {@link IndexedBlockPlacementPolicy} chooses a datanode with
+   * any of the storage types of the replicas when the topology is not a
+   * DFSNetworkTopology, as for the ONE_SSD storage policy.
+   */
+  @Test
+  public void testPolicyWithMultipleStorageTypes() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_CONSIDERLOAD_KEY, false);
+    final NetworkTopology clusterMap = new NetworkTopology();
+    for (DatanodeDescriptor node : dataNodes) {
+      clusterMap.add(node);
+    }
+    final IndexedBlockPlacementPolicy policy =
+        new IndexedBlockPlacementPolicy();
+    policy.initialize(conf, null, clusterMap, new Host2NodesMap());
+
+    // the only datanode with a SSD is chosen for the SSD replica
+    final Set<Node> excludedNodes = new HashSet<>();
+    final List<DatanodeStorageInfo> results = new ArrayList<>();
+    DatanodeStorageInfo storage = policy.chooseRandom(1, NodeBase.ROOT,
+        excludedNodes, BLOCK_SIZE, 3, results, false,
+        newStorageTypes(StorageType.SSD, StorageType.DISK));
+    assertEquals(dataNodes[9], storage.getDatanodeDescriptor());
+    assertEquals(StorageType.SSD, storage.getStorageType());
+
+    // a datanode without a SSD is chosen for the DISK replica
+    for (int i = 0; i < 20; i++) {
+      excludedNodes.clear();
+      excludedNodes.add(dataNodes[9]);
+      results.clear();
+      storage = policy.chooseRandom(1, NodeBase.ROOT, excludedNodes,
+          BLOCK_SIZE, 3, results, false,
+          newStorageTypes(StorageType.SSD, StorageType.DISK));
+      assertEquals(StorageType.DISK, storage.getStorageType());
+      assertEquals(1, results.size());
+    }
+  }
+
+  private static EnumMap<StorageType, Integer> newStorageTypes(
+      StorageType... types) {
+    final EnumMap<StorageType, Integer> storageTypes =
+        new EnumMap<>(StorageType.class);
+    for (StorageType type : types) {
+      storageTypes.put(type, 1);
+    }
+    return storageTypes;
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Iterator;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test adding the replicas of the first block reports in parallel during
+ * startup safe mode.
+ */
+public class TestParallelInitialBlockReport {
+  private static final int NUM_DATANODES = 2;
+  private static final int NUM_FILES = 35;
+
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_INITIAL_BLOCK_REPORT_THREADS_KEY,
+        4);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_INITIAL_BLOCK_REPORT_PARALLEL_MIN_KEY, 1);
+    // both reports are received in safe mode, before the repl queues
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_SAFEMODE_REPLICATION_MIN_KEY,
+        NUM_DATANODES);
+    conf.setFloat(DFSConfigKeys.DFS_NAMENODE_REPL_QUEUE_THRESHOLD_PCT_KEY,
+        1.5f);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATANODES)
+        .storagesPerDatanode(1).build();
+    cluster.waitActive();
+    FileSystem fs = cluster.getFileSystem();
+    for (int i = 0; i < NUM_FILES; i++) {
+      DFSTestUtil.createFile(fs, new Path("/file" + i), 10,
+          (short) NUM_DATANODES, 0L);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testParallelFirstReport() throws Exception {
+    final LogCapturer logs = LogCapturer.captureLogs(BlockManager.blockLog);
+    cluster.restartNameNode(true);
+    final BlockManager bm = cluster.getNamesystem().getBlockManager();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return !bm.isInSafeMode();
+      }
+    }, 100, 60000);
+    logs.stopCapturing();
+    assertEquals(NUM_DATANODES, StringUtils.countMatches(logs.getOutput(),
+        "replicas serially"));
+
+    // the storages are added to the blocks and their lists are linked
+    for (DataNode dn : cluster.getDataNodes()) {
+      final DatanodeStorageInfo storage = bm.getDatanodeManager()
+          .getDatanode(dn.getDatanodeUuid()).getStorageInfos()[0];
+      assertEquals(NUM_FILES, storage.numBlocks());
+      int listed = 0;
+      for (Iterator<BlockInfo> it = storage.getBlockIterator();
+          it.hasNext(); it.next()) {
+        listed++;
+      }
+      assertEquals(NUM_FILES, listed);
+    }
+    for (int i = 0; i < NUM_FILES; i++) {
+      for (LocatedBlock b : cluster.getNameNodeRpc().getBlockLocations(
+          "/file" + i, 0, 10).getLocatedBlocks()) {
+        assertEquals(NUM_DATANODES, b.getLocations().length);
+      }
+    }
+    assertEquals(NUM_FILES, cluster.getNamesystem().getBlocksTotal());
+    assertFalse(cluster.getNamesystem().isInStartupSafeMode());
+  }
+}
@@ -93,7 +93,8 @@ public class TestReplicationPolicy extends BaseReplicationPolicyTest {
   public static Iterable<Object[]> data() {
     return Arrays.asList(new Object[][] {
         { BlockPlacementPolicyDefault.class.getName() },
-        { BlockPlacementPolicyWithUpgradeDomain.class.getName() } });
+        { BlockPlacementPolicyWithUpgradeDomain.class.getName() },
+        { IndexedBlockPlacementPolicy.class.getName() } });
   }
 
   private void updateHeartbeatForExtraStorage(long capacity,
@@ -1334,6 +1335,7 @@ public class TestReplicationPolicy extends BaseReplicationPolicyTest {
       throws IOException {
     FSNamesystem mockNS = mock(FSNamesystem.class);
     when(mockNS.hasWriteLock()).thenReturn(true);
+    when(mockNS.hasBlockWriteLock()).thenReturn(true);
     when(mockNS.hasReadLock()).thenReturn(true);
     BlockManager bm = new BlockManager(mockNS, false, new HdfsConfiguration());
     UnderReplicatedBlocks underReplicatedBlocks = bm.neededReplications;
@@ -1384,6 +1386,7 @@ public class TestReplicationPolicy extends BaseReplicationPolicyTest {
           throws IOException {
     Namesystem mockNS = mock(Namesystem.class);
     when(mockNS.hasWriteLock()).thenReturn(true);
+    when(mockNS.hasBlockWriteLock()).thenReturn(true);
 
     BlockManager bm = new BlockManager(mockNS, false, new HdfsConfiguration());
     UnderReplicatedBlocks underReplicatedBlocks = bm.neededReplications;
@@ -47,7 +47,8 @@ public class TestReplicationPolicyConsiderLoad
   public static Iterable<Object[]> data() {
     return Arrays.asList(new Object[][] {
         { BlockPlacementPolicyDefault.class.getName() },
-        { BlockPlacementPolicyWithUpgradeDomain.class.getName() } });
+        { BlockPlacementPolicyWithUpgradeDomain.class.getName() },
+        { IndexedBlockPlacementPolicy.class.getName() } });
   }
 
   @Override
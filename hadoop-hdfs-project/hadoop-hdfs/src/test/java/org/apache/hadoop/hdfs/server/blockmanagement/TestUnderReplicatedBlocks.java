@@ -17,6 +17,8 @@
  */
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -31,8 +33,14 @@ import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Test;
 
+import com.google.common.base.Supplier;
+
+import java.io.IOException;
 import java.util.Iterator;
 
 
@@ -70,6 +78,55 @@ public class TestUnderReplicatedBlocks {
     
   }
 
+  /**
+   * Test the replication work scheduled by several threads choosing targets
+   * and committed in small batches.
+   */
+  @Test(timeout=120000)
+  public void testParallelReplicationWork() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_THREADS_KEY, 4);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_WORK_COMMIT_BATCH_KEY,
+        2);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_REPLICATION_STREAMS_ADAPTIVE_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
+    final int numFiles = 10;
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3)
+        .build();
+    try {
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      final NamenodeProtocols nn = cluster.getNameNodeRpc();
+      for (int i = 0; i < numFiles; i++) {
+        DFSTestUtil.createFile(fs, new Path("/file" + i), 1024, (short) 1, 0L);
+      }
+      for (int i = 0; i < numFiles; i++) {
+        nn.setReplication("/file" + i, (short) 3);
+      }
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          try {
+            for (int i = 0; i < numFiles; i++) {
+              LocatedBlocks blocks = nn.getBlockLocations("/file" + i, 0, 1024);
+              if (blocks.get(0).getLocations().length != 3) {
+                return false;
+              }
+            }
+            return true;
+          } catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }, 100, 60000);
+      assertTrue(getLongCounter("ScheduledReReplications",
+          getMetrics("NameNodeActivity")) >= numFiles);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   /**
    * The test verifies the number of outstanding replication requests for a
    * given DN shouldn't exceed the limit set by configuration property
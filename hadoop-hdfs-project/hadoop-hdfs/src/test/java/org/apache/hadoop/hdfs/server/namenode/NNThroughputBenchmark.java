@@ -226,6 +226,20 @@ public class NNThroughputBenchmark implements Tool {
      */
     abstract void printResults();
 
+    /**
+     * Start the load which runs alongside the timed operations, if any.
+     *
+     * @throws IOException
+     */
+    void startBackgroundLoad() throws IOException {
+    }
+
+    /**
+     * Stop the load started by {@link #startBackgroundLoad()}.
+     */
+    void stopBackgroundLoad() {
+    }
+
     OperationStatsBase() {
       baseDir = BASE_DIR_NAME + "/" + getOpName();
       replication = (short) config.getInt(DFSConfigKeys.DFS_REPLICATION_KEY, 3);
@@ -259,6 +273,7 @@ public class NNThroughputBenchmark implements Tool {
         setNameNodeLoggingLevel(logLevel);
         for(tIdx=0; tIdx < numThreads; tIdx++)
           daemons.add(new StatsDaemon(tIdx, opsPerThread[tIdx], this));
+        startBackgroundLoad();
         start = Time.now();
         LOG.info("Starting " + numOpsRequired + " " + getOpName() + "(s).");
         for(StatsDaemon d : daemons)
@@ -268,6 +283,7 @@ public class NNThroughputBenchmark implements Tool {
           // try {Thread.sleep(500);} catch (InterruptedException e) {}
         }
         elapsedTime = Time.now() - start;
+        stopBackgroundLoad();
         for(StatsDaemon d : daemons) {
           incrementStats(d.localNumOpsExecuted, d.localCumulativeTime);
           // System.out.println(d.toString() + ": ops Exec = " + d.localNumOpsExecuted);
@@ -375,6 +391,18 @@ public class NNThroughputBenchmark implements Tool {
       return false;
     }
 
+    /**
+     * Print the namesystem lock settings the results were measured with.
+     */
+    void printLockSettings() {
+      LOG.info("fslock partitions = " + config.getInt(
+          DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_DEFAULT));
+      LOG.info("fslock optimistic reads = " + config.getBoolean(
+          DFSConfigKeys.DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY,
+          DFSConfigKeys.DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_DEFAULT));
+    }
+
     void printStats() {
       LOG.info("--- " + getOpName() + " stats  ---");
       LOG.info("# operations: " + getNumOpsExecuted());
@@ -442,6 +470,56 @@ public class NNThroughputBenchmark implements Tool {
     }
   }
 
+  /**
+   * A thread writing to the namespace while the timed operations run. It
+   * alternately creates a directory in its parent directory, which may use
+   * the namespace partition locks, and deletes it, which takes the
+   * namesystem write lock.
+   */
+  private static class WriterDaemon extends Thread {
+    private final String parent;
+    private volatile boolean running = true;
+    private long numOps = 0;
+
+    WriterDaemon(int writerId, String parent) {
+      this.parent = parent;
+      setName("WriterDaemon-" + writerId);
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        for (long n = 0; running; n++) {
+          final String dir = parent + "/dir" + (n / 2);
+          if (n % 2 == 0) {
+            clientProto.mkdirs(dir, FsPermission.getDefault(), false);
+          } else {
+            clientProto.delete(dir, false);
+          }
+          numOps++;
+        }
+      } catch (IOException ex) {
+        LOG.error(getName() + " failed: \n"
+            + StringUtils.stringifyException(ex));
+      }
+    }
+
+    /**
+     * Stop the writer.
+     * @return the number of operations it executed.
+     */
+    long terminate() {
+      running = false;
+      try {
+        join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return numOps;
+    }
+  }
+
   /**
    * Clean all benchmark result directories.
    */
@@ -716,11 +794,20 @@ public class NNThroughputBenchmark implements Tool {
     // Operation types
     static final String OP_OPEN_NAME = "open";
     static final String OP_USAGE_ARGS = 
-      " [-threads T] [-files N] [-filesPerDir P] [-useExisting]";
+      " [-threads T] [-files N] [-filesPerDir P] [-useExisting]"
+      + " [-writerThreads W]";
+    static final String WRITERS_DIR_NAME = BASE_DIR_NAME + "/writers";
     static final String OP_OPEN_USAGE = 
       "-op " + OP_OPEN_NAME + OP_USAGE_ARGS;
 
     private boolean useExisting;  // do not generate files, use existing ones
+    private int numWriterThreads; // threads writing during the benchmark
+    private List<WriterDaemon> writers;
+    private long writerStart;
+    private long writerOps;
+    private long writerElapsedTime;
+    private long optimisticReads;
+    private long optimisticReadFailures;
 
     OpenFileStats(List<String> args) {
       super(args);
@@ -738,9 +825,78 @@ public class NNThroughputBenchmark implements Tool {
       if(useExisting) {
         args.remove(ueIndex);
       }
+      int wtIndex = args.indexOf("-writerThreads");
+      numWriterThreads = 0;
+      if(wtIndex >= 0) {
+        if(args.size() <= wtIndex + 1)
+          printUsage();
+        numWriterThreads = Integer.parseInt(args.get(wtIndex+1));
+        args.remove(wtIndex+1);
+        args.remove(wtIndex);
+      }
       super.parseArguments(args);
     }
 
+    /**
+     * Start the writer threads, and record the optimistic read counters of
+     * an in-process NameNode.
+     */
+    @Override
+    void startBackgroundLoad() throws IOException {
+      writers = new ArrayList<WriterDaemon>();
+      for(int idx=0; idx < numWriterThreads; idx++) {
+        String parent = WRITERS_DIR_NAME + "/" + getOpName() + idx;
+        clientProto.mkdirs(parent, FsPermission.getDefault(), true);
+        writers.add(new WriterDaemon(idx, parent));
+      }
+      if(nameNode != null) {
+        FSNamesystem fsn = nameNode.getNamesystem();
+        optimisticReads = -fsn.getNumOptimisticReads();
+        optimisticReadFailures = -fsn.getNumOptimisticReadFailures();
+      }
+      writerStart = Time.now();
+      for(WriterDaemon w : writers)
+        w.start();
+    }
+
+    @Override
+    void stopBackgroundLoad() {
+      if(writers == null)
+        return;
+      writerOps = 0;
+      for(WriterDaemon w : writers)
+        writerOps += w.terminate();
+      writerElapsedTime = Time.now() - writerStart;
+      if(nameNode != null) {
+        FSNamesystem fsn = nameNode.getNamesystem();
+        optimisticReads += fsn.getNumOptimisticReads();
+        optimisticReadFailures += fsn.getNumOptimisticReadFailures();
+      }
+    }
+
+    @Override
+    void cleanUp() throws IOException {
+      super.cleanUp();
+      if(numWriterThreads > 0 && !keepResults)
+        clientProto.delete(WRITERS_DIR_NAME, true);
+    }
+
+    @Override
+    void printResults() {
+      super.printResults();
+      LOG.info("nrWriterThreads = " + numWriterThreads);
+      if(numWriterThreads > 0) {
+        LOG.info("Writer ops: " + writerOps);
+        LOG.info("Writer ops per sec: " + (writerElapsedTime == 0 ? 0
+            : 1000 * (double) writerOps / writerElapsedTime));
+      }
+      if(nameNode != null) {
+        printLockSettings();
+        LOG.info("Optimistic reads: " + optimisticReads
+            + ", failed: " + optimisticReadFailures);
+      }
+    }
+
     @Override
     void generateInputs(int[] opsPerThread) throws IOException {
       // create files using opsPerThread
@@ -889,6 +1045,121 @@ public class NNThroughputBenchmark implements Tool {
     }
   }
 
+  /**
+   * Multi-directory write mix statistics.
+   *
+   * Each thread alternately creates a directory and a file in one of a fixed
+   * set of existing parent directories; thread i writes to parent directory
+   * i modulo the number of directories. Comparing runs with a varying number
+   * of threads and directories, with and without
+   * {@link DFSConfigKeys#DFS_NAMENODE_FSLOCK_PARTITIONS_KEY}, shows how
+   * writes to disjoint directories scale compared to the global lock.
+   * Running {@link FileStatusStats} with writer threads at the same
+   * partition counts shows what the partitioning costs the readers.
+   */
+  class MultiDirWriteStats extends OperationStatsBase {
+    // Operation types
+    static final String OP_MULTI_DIR_WRITE_NAME = "multiDirWrite";
+    static final String OP_MULTI_DIR_WRITE_USAGE =
+        "-op multiDirWrite [-threads T] [-ops N] [-dirs D]";
+
+    private int numDirs;
+    protected String[][] paths;
+
+    MultiDirWriteStats(List<String> args) {
+      super();
+      parseArguments(args);
+    }
+
+    @Override
+    String getOpName() {
+      return OP_MULTI_DIR_WRITE_NAME;
+    }
+
+    @Override
+    void parseArguments(List<String> args) {
+      boolean ignoreUnrelatedOptions = verifyOpArgument(args);
+      numDirs = 4;
+      for (int i = 2; i < args.size(); i++) {       // parse command line
+        if(args.get(i).equals("-ops")) {
+          if(i+1 == args.size())  printUsage();
+          numOpsRequired = Integer.parseInt(args.get(++i));
+        } else if(args.get(i).equals("-threads")) {
+          if(i+1 == args.size())  printUsage();
+          numThreads = Integer.parseInt(args.get(++i));
+        } else if(args.get(i).equals("-dirs")) {
+          if(i+1 == args.size())  printUsage();
+          numDirs = Integer.parseInt(args.get(++i));
+        } else if(!ignoreUnrelatedOptions)
+          printUsage();
+      }
+      if (numDirs < 1) {
+        printUsage();
+      }
+    }
+
+    @Override
+    void generateInputs(int[] opsPerThread) throws IOException {
+      assert opsPerThread.length == numThreads : "Error opsPerThread.length";
+      clientProto.setSafeMode(HdfsConstants.SafeModeAction.SAFEMODE_LEAVE,
+          false);
+      LOG.info("Generate " + numOpsRequired + " inputs for " + getOpName());
+      // create the parent directories up front, so that the timed
+      // operations only add children to existing directories
+      String[] parents = new String[numDirs];
+      for(int idx=0; idx < numDirs; idx++) {
+        parents[idx] = getBaseDir() + "/dir" + idx;
+        clientProto.mkdirs(parents[idx], FsPermission.getDefault(), true);
+      }
+      paths = new String[numThreads][];
+      for(int idx=0; idx < numThreads; idx++) {
+        int threadOps = opsPerThread[idx];
+        paths[idx] = new String[threadOps];
+        for(int jdx=0; jdx < threadOps; jdx++)
+          paths[idx][jdx] = parents[idx % numDirs] + "/ThroughputBench"
+              + idx + "-" + jdx;
+      }
+    }
+
+    /**
+     * returns client name
+     */
+    @Override
+    String getExecutionArgument(int daemonId) {
+      return getClientName(daemonId);
+    }
+
+    /**
+     * Create a directory for even and a file for odd input indexes.
+     */
+    @Override
+    long executeOp(int daemonId, int inputIdx, String clientName)
+        throws IOException {
+      final String path = paths[daemonId][inputIdx];
+      long start = Time.now();
+      if (inputIdx % 2 == 0) {
+        clientProto.mkdirs(path, FsPermission.getDefault(), false);
+      } else {
+        clientProto.create(path, FsPermission.getDefault(), clientName,
+            new EnumSetWritable<CreateFlag>(EnumSet.of(CreateFlag.CREATE)),
+            false, replication, BLOCK_SIZE, CryptoProtocolVersion.supported());
+      }
+      long end = Time.now();
+      return end-start;
+    }
+
+    @Override
+    void printResults() {
+      LOG.info("--- " + getOpName() + " inputs ---");
+      LOG.info("nrOps = " + numOpsRequired);
+      LOG.info("nrThreads = " + numThreads);
+      LOG.info("nrDirs = " + numDirs);
+      if(nameNode != null)
+        printLockSettings();
+      printStats();
+    }
+  }
+
   /**
    * Minimal data-node simulator.
    */
@@ -1416,6 +1687,7 @@ public class NNThroughputBenchmark implements Tool {
         + " | \n\t" + DeleteFileStats.OP_DELETE_USAGE
         + " | \n\t" + FileStatusStats.OP_FILE_STATUS_USAGE
         + " | \n\t" + RenameFileStats.OP_RENAME_USAGE
+        + " | \n\t" + MultiDirWriteStats.OP_MULTI_DIR_WRITE_USAGE
         + " | \n\t" + BlockReportStats.OP_BLOCK_REPORT_USAGE
         + " | \n\t" + ReplicationStats.OP_REPLICATION_USAGE
         + " | \n\t" + CleanAllStats.OP_CLEAN_USAGE
@@ -1484,6 +1756,10 @@ public class NNThroughputBenchmark implements Tool {
         opStat = new RenameFileStats(args);
         ops.add(opStat);
       }
+      if(runAll || MultiDirWriteStats.OP_MULTI_DIR_WRITE_NAME.equals(type)) {
+        opStat = new MultiDirWriteStats(args);
+        ops.add(opStat);
+      }
       if(runAll || BlockReportStats.OP_BLOCK_REPORT_NAME.equals(type)) {
         opStat = new BlockReportStats(args);
         ops.add(opStat);
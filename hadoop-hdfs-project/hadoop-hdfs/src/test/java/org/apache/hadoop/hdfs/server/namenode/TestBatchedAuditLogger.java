@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.google.common.base.Supplier;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.namenode.FSNamesystem.DefaultAuditLogger;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.apache.log4j.Level;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link BatchedAuditLogger}.
+ */
+public class TestBatchedAuditLogger {
+  private static final InetAddress ADDR = InetAddress.getLoopbackAddress();
+  private static final FileStatus STATUS = new FileStatus(0, true, 0, 0, 0,
+      0, new FsPermission((short) 0755), "user", "group", new Path("/dir"));
+
+  /** Collects the messages, optionally blocking until released. */
+  private static class CollectingLogger extends BatchedAuditLogger {
+    private final List<String> messages =
+        Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch release;
+
+    CollectingLogger(CountDownLatch release) {
+      this.release = release;
+    }
+
+    @Override
+    public void logAuditMessage(String message) {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      messages.add(message);
+    }
+  }
+
+  @Before
+  public void setUp() {
+    GenericTestUtils.setLogLevel(FSNamesystem.auditLog, Level.INFO);
+  }
+
+  private static void logEvent(HdfsAuditLogger logger, int i) {
+    logger.logAuditEvent(true, "user", ADDR, "mkdirs", "/dir" + i, null,
+        STATUS, null, null, null);
+  }
+
+  @Test(timeout=60000)
+  public void testSameMessagesAsDefault() throws Exception {
+    final List<String> expected = new ArrayList<String>();
+    DefaultAuditLogger defaultLogger = new DefaultAuditLogger() {
+      @Override
+      public void logAuditMessage(String message) {
+        expected.add(message);
+      }
+    };
+    Configuration conf = new HdfsConfiguration();
+    defaultLogger.initialize(conf);
+    CollectingLogger logger = new CollectingLogger(new CountDownLatch(0));
+    logger.initialize(conf);
+    try {
+      for (int i = 0; i < 100; i++) {
+        logEvent(defaultLogger, i);
+        logEvent(logger, i);
+      }
+    } finally {
+      logger.close();
+    }
+    assertEquals(expected, logger.messages);
+    assertEquals(100, logger.getNumWritten());
+    assertEquals(0, logger.getNumQueued());
+
+    // events logged after close are written directly
+    logEvent(logger, 100);
+    assertEquals(101, logger.messages.size());
+  }
+
+  @Test(timeout=60000)
+  public void testDropWhenFull() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_BATCHED_BUFFER_SIZE_KEY,
+        3);
+    conf.set(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_BATCHED_OVERFLOW_POLICY_KEY,
+        "drop");
+    final CountDownLatch release = new CountDownLatch(1);
+    CollectingLogger logger = new CollectingLogger(release);
+    logger.initialize(conf);
+    assertEquals(4, logger.getCapacity());
+    int logged = 0;
+    try {
+      // the writer blocks on the first event, so the ring fills up
+      while (logger.getNumDropped() == 0) {
+        logEvent(logger, logged++);
+      }
+      assertTrue(logger.getNumQueued() <= 4);
+      release.countDown();
+    } finally {
+      logger.close();
+    }
+    assertEquals(logged, logger.messages.size() + logger.getNumDropped());
+    assertEquals(logger.getNumWritten(), logger.messages.size());
+  }
+
+  @Test(timeout=60000)
+  public void testBlockWhenFull() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_BATCHED_BUFFER_SIZE_KEY,
+        2);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CollectingLogger logger = new CollectingLogger(release);
+    logger.initialize(conf);
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 10; i++) {
+          logEvent(logger, i);
+        }
+      }
+    };
+    t.start();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return logger.getNumQueued() == 2;
+      }
+    }, 10, 10000);
+    assertTrue(t.isAlive());
+    release.countDown();
+    t.join();
+    logger.close();
+    assertEquals(10, logger.messages.size());
+    assertEquals(0, logger.getNumDropped());
+  }
+
+  @Test(timeout=120000)
+  public void testMiniCluster() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY,
+        BatchedAuditLogger.class.getName());
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      final FileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        fs.mkdirs(new Path("/dir" + i));
+      }
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return getLongCounter("WrittenAuditEvents",
+              getMetrics(BatchedAuditLogger.METRICS_SOURCE_NAME)) >= 10;
+        }
+      }, 100, 10000);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
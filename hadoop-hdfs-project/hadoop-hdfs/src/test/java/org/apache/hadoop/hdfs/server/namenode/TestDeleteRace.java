@@ -20,13 +20,12 @@ package org.apache.hadoop.hdfs.server.namenode;
 import java.io.FileNotFoundException;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -409,20 +408,13 @@ public class TestDeleteRace {
       final LeaseManager lm = (LeaseManager) Whitebox
           .getInternalState(cluster.getNameNode().getNamesystem(),
               "leaseManager");
-      final TreeSet<Lease> leases =
-          (TreeSet<Lease>) Whitebox.getInternalState(lm, "sortedLeases");
-      final TreeSet<Lease> spyLeases = new TreeSet<>(new Comparator<Lease>() {
-        @Override
-        public int compare(Lease o1, Lease o2) {
-          return Long.signum(o1.getLastUpdate() - o2.getLastUpdate());
-        }
-      });
-      while (!leases.isEmpty()) {
-        final Lease lease = leases.first();
+      final LinkedHashSet<Lease> leases = (LinkedHashSet<Lease>)
+          Whitebox.getInternalState(lm, "sortedLeases");
+      final LinkedHashSet<Lease> spyLeases = new LinkedHashSet<>();
+      for (Lease lease : leases) {
         final Lease spyLease = Mockito.spy(lease);
         Mockito.doReturn(true).when(spyLease).expiredHardLimit();
         spyLeases.add(spyLease);
-        leases.remove(lease);
       }
       Whitebox.setInternalState(lm, "sortedLeases", spyLeases);
 
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.QuotaUsage;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test the asynchronous delete of large directories.
+ */
+public class TestDetachedSubtreeReclaimer {
+  private static final int BATCH_SIZE = 4;
+  private static final short REPLICATION = 1;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_BATCH_SIZE_KEY,
+        BATCH_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private DetachedSubtreeReclaimer getReclaimer() {
+    return cluster.getNamesystem().getFSDirectory().getSubtreeReclaimer();
+  }
+
+  /** Create 3 directories with 5 files each under the given directory. */
+  private void createTree(Path dir) throws Exception {
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 5; j++) {
+        DFSTestUtil.createFile(fs, new Path(dir, "d" + i + "/f" + j), 10,
+            REPLICATION, 0L);
+      }
+    }
+  }
+
+  private void waitForReclaim(final long filesTotal, final long blocksTotal)
+      throws Exception {
+    final FSNamesystem fsn = cluster.getNamesystem();
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        return getReclaimer().getPendingSubtrees() == 0
+            && fsn.getFilesTotal() == filesTotal
+            && fsn.getBlocksTotal() == blocksTotal;
+      }
+    }, 100, 60000);
+  }
+
+  @Test(timeout=120000)
+  public void testAsyncDelete() throws Exception {
+    final FSNamesystem fsn = cluster.getNamesystem();
+    fs.mkdirs(new Path("/q"));
+    fs.setQuota(new Path("/q"), 100, HdfsConstants.QUOTA_DONT_SET);
+    DFSTestUtil.createFile(fs, new Path("/q/small/f"), 10, REPLICATION, 0L);
+    final long filesTotal = fsn.getFilesTotal();
+    final long blocksTotal = fsn.getBlocksTotal();
+    createTree(new Path("/q/a"));
+    final FSDataOutputStream out = fs.create(new Path("/q/a/d1/open"));
+    out.write(new byte[10]);
+    out.hflush();
+    assertEquals(1, fsn.getLeaseManager().countLease());
+
+    // the subtree is detached at once and reclaimed in the background
+    getReclaimer().stop();
+    final long count = cluster.getNameNodeRpc().getQuotaUsage("/q")
+        .getFileAndDirectoryCount();
+    assertTrue(fs.delete(new Path("/q/a"), true));
+    assertNull(cluster.getNameNodeRpc().getFileInfo("/q/a"));
+    assertEquals(1, getReclaimer().getPendingSubtrees());
+    assertEquals(1, fsn.getLeaseManager().countLease());
+    assertEquals(count, cluster.getNameNodeRpc().getQuotaUsage("/q")
+        .getFileAndDirectoryCount());
+    assertTrue(fsn.getFilesTotal() > filesTotal);
+
+    // a batch reclaims at most BATCH_SIZE inodes and releases their quota
+    final long before = fsn.getFilesTotal();
+    assertTrue(getReclaimer().reclaimBatch());
+    assertEquals(before - BATCH_SIZE, fsn.getFilesTotal());
+    assertEquals(count - BATCH_SIZE, cluster.getNameNodeRpc()
+        .getQuotaUsage("/q").getFileAndDirectoryCount());
+
+    getReclaimer().start();
+    waitForReclaim(filesTotal, blocksTotal);
+    assertEquals(0, fsn.getLeaseManager().countLease());
+    final QuotaUsage usage = cluster.getNameNodeRpc().getQuotaUsage("/q");
+    assertEquals(3, usage.getFileAndDirectoryCount());
+    assertEquals(10, usage.getSpaceConsumed());
+
+    // a small directory is deleted at once
+    assertTrue(fs.delete(new Path("/q/small"), true));
+    assertEquals(0, getReclaimer().getPendingSubtrees());
+    assertEquals(filesTotal - 2, fsn.getFilesTotal());
+  }
+
+  @Test(timeout=120000)
+  public void testAsyncDeleteOfDirectoryWithQuota() throws Exception {
+    final FSNamesystem fsn = cluster.getNamesystem();
+    fs.mkdirs(new Path("/p"));
+    final long filesTotal = fsn.getFilesTotal();
+    final long blocksTotal = fsn.getBlocksTotal();
+    final QuotaUsage usage = cluster.getNameNodeRpc().getQuotaUsage("/");
+    fs.mkdirs(new Path("/p/a"));
+    fs.setQuota(new Path("/p/a"), 100, HdfsConstants.QUOTA_DONT_SET);
+    createTree(new Path("/p/a"));
+    final FSDataOutputStream out = fs.create(new Path("/p/a/d2/open"));
+    out.write(new byte[10]);
+    out.hflush();
+
+    getReclaimer().stop();
+    assertTrue(fs.delete(new Path("/p/a"), true));
+    assertEquals(1, getReclaimer().getPendingSubtrees());
+    getReclaimer().start();
+    waitForReclaim(filesTotal, blocksTotal);
+    assertEquals(0, fsn.getLeaseManager().countLease());
+    assertEquals(usage, cluster.getNameNodeRpc().getQuotaUsage("/"));
+
+    // a subtree with a snapshottable directory is deleted at once
+    createTree(new Path("/p/b"));
+    fs.allowSnapshot(new Path("/p/b/d1"));
+    assertTrue(fs.delete(new Path("/p/b"), true));
+    assertEquals(0, getReclaimer().getPendingSubtrees());
+    assertEquals(filesTotal, fsn.getFilesTotal());
+  }
+
+  @Test(timeout=120000)
+  public void testReclaimAfterRestart() throws Exception {
+    final FSNamesystem fsn = cluster.getNamesystem();
+    fs.mkdirs(new Path("/x"));
+    final long filesTotal = fsn.getFilesTotal();
+    createTree(new Path("/x/a"));
+    createTree(new Path("/x/b"));
+
+    getReclaimer().stop();
+    assertTrue(fs.delete(new Path("/x/a"), true));
+    // the detached subtree of /x/a is saved in the image
+    fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+    fs.saveNamespace();
+    fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+    // the delete of /x/b is replayed from the edit log
+    assertTrue(fs.delete(new Path("/x/b"), true));
+
+    // the pending subtrees are reclaimed even if asynchronous deletes are
+    // disabled meanwhile
+    cluster.getConfiguration(0).setBoolean(
+        DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_ENABLED_KEY, false);
+    cluster.restartNameNode(true);
+    fs = cluster.getFileSystem();
+    waitForReclaim(filesTotal, 0);
+    assertEquals(1, cluster.getNameNodeRpc().getQuotaUsage("/x")
+        .getFileAndDirectoryCount());
+
+    // otherwise the reclaimer is not started
+    fs.setSafeMode(SafeModeAction.SAFEMODE_ENTER);
+    fs.saveNamespace();
+    fs.setSafeMode(SafeModeAction.SAFEMODE_LEAVE);
+    cluster.restartNameNode(true);
+    assertFalse(getReclaimer().isRunning());
+  }
+}
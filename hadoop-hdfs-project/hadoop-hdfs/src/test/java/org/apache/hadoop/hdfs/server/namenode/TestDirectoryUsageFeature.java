@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the content summary counts maintained by {@link DirectoryUsageFeature}.
+ */
+public class TestDirectoryUsageFeature {
+  private static final short REPLICATION = 2;
+  private static final int BATCH_SIZE = 10;
+  private static final String[] DIRS = {"/", "/a", "/a/b", "/a/b/c", "/d"};
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private NamenodeProtocols nn;
+  private FSNamesystem fsn;
+  private FSDirectory fsd;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_CONTENT_SUMMARY_USAGE_INDEX_ENABLED_KEY,
+        true);
+    conf.setLong(
+        DFSConfigKeys.DFS_CONTENT_SUMMARY_USAGE_INDEX_MIN_ENTRIES_KEY, 2);
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_DELETE_ASYNC_BATCH_SIZE_KEY,
+        BATCH_SIZE);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    nn = cluster.getNameNodeRpc();
+    fsn = cluster.getNamesystem();
+    fsd = fsn.getFSDirectory();
+
+    DFSTestUtil.createFile(fs, new Path("/a/b/c/f1"), 1500, REPLICATION, 0L);
+    DFSTestUtil.createFile(fs, new Path("/a/b/c/f2"), 10, REPLICATION, 0L);
+    DFSTestUtil.createFile(fs, new Path("/a/b/f3"), 100, REPLICATION, 0L);
+    DFSTestUtil.createFile(fs, new Path("/d/f4"), 2000, REPLICATION, 0L);
+    fs.mkdirs(new Path("/d/e"));
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /** Compare the maintained counts with a computation of the subtree. */
+  private void verifySummaries() throws Exception {
+    for (String dir : DIRS) {
+      final ContentSummary expected;
+      fsn.readLock();
+      try {
+        final INode inode = fsd.getINode(dir);
+        if (inode == null) {
+          continue;
+        }
+        expected = inode.computeContentSummary(
+            fsd.getBlockStoragePolicySuite());
+      } finally {
+        fsn.readUnlock();
+      }
+      assertEquals(dir, expected, nn.getContentSummary(dir));
+    }
+  }
+
+  /** Add the features of the directories found by the computations. */
+  private void addUsageFeatures() {
+    fsd.getUsageIndexer().addPendingFeatures();
+  }
+
+  private boolean isCounted(String dir) throws Exception {
+    fsn.readLock();
+    try {
+      final DirectoryUsageFeature f =
+          fsd.getINode(dir).asDirectory().getDirectoryUsageFeature();
+      return f != null && f.isCounted();
+    } finally {
+      fsn.readUnlock();
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testMaintainedSummaries() throws Exception {
+    verifySummaries();
+    addUsageFeatures();
+    // the first computation of "/" only found the directory
+    assertFalse(isCounted("/"));
+    verifySummaries();
+    assertTrue(isCounted("/"));
+    assertTrue(isCounted("/d"));
+    assertTrue(isCounted("/a/b"));
+    // the subtree of /d/e is too small for the feature
+    assertNull(fsd.getINode("/d/e").asDirectory()
+        .getDirectoryUsageFeature());
+
+    // the operations update the counts of the ancestors
+    DFSTestUtil.createFile(fs, new Path("/a/b/c/f5"), 10, REPLICATION, 0L);
+    assertTrue(isCounted("/"));
+    assertTrue(isCounted("/a/b/c"));
+    verifySummaries();
+
+    fs.delete(new Path("/a/b/c/f2"), false);
+    verifySummaries();
+    fs.rename(new Path("/a/b/c"), new Path("/d/c"));
+    verifySummaries();
+    fs.rename(new Path("/d/c"), new Path("/a/b/c"));
+    fs.setReplication(new Path("/a/b/f3"), (short) 1);
+    verifySummaries();
+    fs.mkdirs(new Path("/a/b/c/g/h"));
+    verifySummaries();
+    assertTrue(fs.truncate(new Path("/a/b/c/f1"), 1024));
+    verifySummaries();
+    DFSTestUtil.createFile(fs, new Path("/a/b/c/t"), 2048, REPLICATION, 0L);
+    DFSTestUtil.createFile(fs, new Path("/a/b/c/s"), 1024, REPLICATION, 0L);
+    verifySummaries();
+    fs.concat(new Path("/a/b/c/t"), new Path[] {new Path("/a/b/c/s")});
+    verifySummaries();
+    assertTrue(isCounted("/"));
+
+    // a storage policy resets the counts of the subtree and its ancestors
+    fs.setStoragePolicy(new Path("/a"),
+        HdfsConstants.ALLSSD_STORAGE_POLICY_NAME);
+    assertFalse(isCounted("/"));
+    assertFalse(isCounted("/a/b/c"));
+    assertTrue(isCounted("/d"));
+    verifySummaries();
+    fs.delete(new Path("/a/b"), true);
+    verifySummaries();
+  }
+
+  @Test(timeout=120000)
+  public void testOpenFiles() throws Exception {
+    verifySummaries();
+    addUsageFeatures();
+    verifySummaries();
+    final FSDataOutputStream out = fs.append(new Path("/a/b/c/f2"));
+    try {
+      verifySummaries();
+      // the length of the open file changes without a namespace operation
+      out.write(new byte[500]);
+      out.hflush();
+      assertTrue(isCounted("/a/b"));
+      verifySummaries();
+    } finally {
+      out.close();
+    }
+    assertTrue(isCounted("/a/b"));
+    verifySummaries();
+
+    final FSDataOutputStream out2 = fs.append(new Path("/a/b/c/f2"));
+    try {
+      verifySummaries();
+      fs.delete(new Path("/a/b/c/f2"), false);
+      assertTrue(isCounted("/a/b"));
+      verifySummaries();
+    } finally {
+      // the file was deleted, so closing it fails
+      IOUtils.closeStream(out2);
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testSnapshots() throws Exception {
+    verifySummaries();
+    addUsageFeatures();
+    verifySummaries();
+    fs.allowSnapshot(new Path("/a/b"));
+    assertTrue(isCounted("/d"));
+    fs.createSnapshot(new Path("/a/b"), "s1");
+    verifySummaries();
+    fs.delete(new Path("/a/b/c/f1"), false);
+    verifySummaries();
+    fs.deleteSnapshot(new Path("/a/b"), "s1");
+    verifySummaries();
+  }
+
+  @Test(timeout=120000)
+  public void testAsyncDelete() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 5; j++) {
+        DFSTestUtil.createFile(fs, new Path("/a/big/d" + i + "/f" + j), 10,
+            REPLICATION, 0L);
+      }
+    }
+    verifySummaries();
+    addUsageFeatures();
+    verifySummaries();
+    assertTrue(isCounted("/a"));
+
+    // the detached subtree stays counted until the batches destroy it
+    final DetachedSubtreeReclaimer reclaimer = fsd.getSubtreeReclaimer();
+    reclaimer.stop();
+    final long files = nn.getContentSummary("/a").getFileCount();
+    assertTrue(fs.delete(new Path("/a/big"), true));
+    assertEquals(1, reclaimer.getPendingSubtrees());
+    assertEquals(files, nn.getContentSummary("/a").getFileCount());
+    assertTrue(reclaimer.reclaimBatch());
+    assertTrue(nn.getContentSummary("/a").getFileCount() < files);
+    while (reclaimer.reclaimBatch()) {
+      // reclaim the rest of the subtree
+    }
+    assertEquals(files - 15, nn.getContentSummary("/a").getFileCount());
+    assertTrue(isCounted("/a"));
+    verifySummaries();
+  }
+
+  @Test(timeout=120000)
+  public void testCountsComputedWithYields() throws Exception {
+    verifySummaries();
+    addUsageFeatures();
+    assertFalse(isCounted("/"));
+
+    fsn.readLock();
+    fsd.readLock();
+    try {
+      final INode root = fsd.getINode("/");
+      final ContentSummary expected =
+          root.computeContentSummary(fsd.getBlockStoragePolicySuite());
+      // release the locks after every entry
+      final ContentSummaryComputationContext summary =
+          new ContentSummaryComputationContext(fsd, fsn, 1, 0);
+      root.computeContentSummary(Snapshot.CURRENT_STATE_ID, summary);
+      assertTrue(summary.getYieldCount() > 0);
+      assertEquals(expected.getFileCount(),
+          summary.getCounts().getFileCount());
+      assertEquals(expected.getDirectoryCount(),
+          summary.getCounts().getDirectoryCount());
+      assertEquals(expected.getLength(), summary.getCounts().getLength());
+    } finally {
+      fsd.readUnlock();
+      fsn.readUnlock();
+    }
+    // nothing changed while the locks were released
+    assertTrue(isCounted("/"));
+    verifySummaries();
+  }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.hadoop.hdfs.server.namenode.FSEditLogAsync.GroupCommit;
+import org.junit.Test;
+
+/**
+ * Test the adaptive group commit of {@link FSEditLogAsync}.
+ */
+public class TestEditLogGroupCommit {
+  private static final long MS = 1000000L;
+
+  @Test
+  public void testDisabled() {
+    GroupCommit gc = new GroupCommit(0);
+    gc.synced(100, 10 * MS);
+    assertEquals(0, gc.getWaitNanos(1, 0));
+  }
+
+  @Test
+  public void testAdaptiveBatchSize() {
+    GroupCommit gc = new GroupCommit(4 * MS);
+    // without load, every edit is synced immediately
+    assertEquals(0, gc.getWaitNanos(1, 0));
+    gc.synced(1, 10 * MS);
+    assertEquals(1, gc.getTargetBatchSize());
+    assertEquals(0, gc.getWaitNanos(1, 0));
+
+    // larger batches raise the target
+    gc.synced(5, 10 * MS);
+    gc.synced(5, 10 * MS);
+    assertEquals(4, gc.getTargetBatchSize());
+    // wait for at most the maximum delay from the first wait
+    assertEquals(4 * MS, gc.getWaitNanos(1, 100 * MS));
+    assertEquals(3 * MS, gc.getWaitNanos(2, 101 * MS));
+    assertEquals(0, gc.getWaitNanos(2, 105 * MS));
+    assertEquals(0, gc.getWaitNanos(4, 102 * MS));
+
+    // and for at most half the time of the last sync
+    gc.synced(4, 2 * MS);
+    assertEquals(MS, gc.getWaitNanos(1, 200 * MS));
+
+    // smaller batches lower the target
+    gc.synced(2, 2 * MS);
+    assertEquals(2, gc.getTargetBatchSize());
+    gc.synced(1, 2 * MS);
+    assertEquals(1, gc.getTargetBatchSize());
+    assertEquals(0, gc.getWaitNanos(1, 300 * MS));
+  }
+}
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.spy;
 
@@ -56,23 +57,29 @@ public class TestEditLogJournalFailures {
   private MiniDFSCluster cluster;
   private FileSystem fs;
   private boolean useAsyncEdits;
+  private boolean parallelFlush;
 
   @Parameters
   public static Collection<Object[]> data() {
     Collection<Object[]> params = new ArrayList<Object[]>();
-    params.add(new Object[]{Boolean.FALSE});
-    params.add(new Object[]{Boolean.TRUE});
+    params.add(new Object[]{Boolean.FALSE, Boolean.FALSE});
+    params.add(new Object[]{Boolean.TRUE, Boolean.FALSE});
+    params.add(new Object[]{Boolean.TRUE, Boolean.TRUE});
     return params;
   }
 
-  public TestEditLogJournalFailures(boolean useAsyncEdits) {
+  public TestEditLogJournalFailures(boolean useAsyncEdits,
+      boolean parallelFlush) {
     this.useAsyncEdits = useAsyncEdits;
+    this.parallelFlush = parallelFlush;
   }
 
   private Configuration getConf() {
     Configuration conf = new HdfsConfiguration();
     conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_ASYNC_LOGGING,
         useAsyncEdits);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_EDITS_PARALLEL_FLUSH_KEY,
+        parallelFlush);
     return conf;
   }
 
@@ -276,6 +283,10 @@ public class TestEditLogJournalFailures {
     if (failOnWrite) {
       doThrow(new IOException("fail on write()")).when(spyElos).write(
           (FSEditLogOp) any());
+      // ops serialized once for several journals
+      doThrow(new IOException("fail on write()")).when(spyElos)
+          .writeSerialized((FSEditLogOp) any(), (byte[]) any(), anyInt(),
+              anyInt());
     }
     if (failOnFlush) {
       doThrow(new IOException("fail on flush()")).when(spyElos).flush();
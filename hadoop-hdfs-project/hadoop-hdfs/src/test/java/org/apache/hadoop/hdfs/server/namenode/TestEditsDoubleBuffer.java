@@ -23,6 +23,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.test.GenericTestUtils;
@@ -70,6 +71,38 @@ public class TestEditsDoubleBuffer {
     outBuf.close();
   }
   
+  @Test
+  public void testWriteSerializedOp() throws IOException {
+    FSEditLogOp.OpInstanceCache cache = new FSEditLogOp.OpInstanceCache();
+    EditsDoubleBuffer opBuf = new EditsDoubleBuffer(1024);
+    EditsDoubleBuffer serializedBuf = new EditsDoubleBuffer(1024);
+    DataOutputBuffer serialized = new DataOutputBuffer();
+    FSEditLogOp.Writer writer = new FSEditLogOp.Writer(serialized);
+    for (int i = 1; i <= 3; i++) {
+      FSEditLogOp op = FSEditLogOp.DeleteOp.getInstance(cache.get())
+          .setPath("/file" + i)
+          .setTimestamp(i);
+      op.setTransactionId(i);
+      opBuf.writeOp(op);
+      serialized.reset();
+      writer.writeOp(op);
+      serializedBuf.writeSerializedOp(op.txid, serialized.getData(), 0,
+          serialized.getLength());
+    }
+    opBuf.setReadyToFlush();
+    serializedBuf.setReadyToFlush();
+    assertEquals(3, serializedBuf.countReadyTxns());
+    assertEquals(1, serializedBuf.getFirstReadyTxId());
+
+    DataOutputBuffer opOut = new DataOutputBuffer();
+    DataOutputBuffer serializedOut = new DataOutputBuffer();
+    opBuf.flushTo(opOut);
+    serializedBuf.flushTo(serializedOut);
+    Assert.assertArrayEquals(
+        Arrays.copyOf(opOut.getData(), opOut.getLength()),
+        Arrays.copyOf(serializedOut.getData(), serializedOut.getLength()));
+  }
+
   @Test
   public void shouldFailToCloseWhenUnflushed() throws IOException {
     EditsDoubleBuffer buf = new EditsDoubleBuffer(1024);
@@ -19,7 +19,10 @@ package org.apache.hadoop.hdfs.server.namenode;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.doNothing;
@@ -43,6 +46,7 @@ import java.util.SortedMap;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
@@ -51,6 +55,7 @@ import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
 import org.apache.hadoop.hdfs.server.namenode.FSEditLogLoader.EditLogValidation;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
@@ -96,11 +101,24 @@ public class TestFSEditLogLoader {
 
   private static final int NUM_DATA_NODES = 0;
   private static final String FAKE_EDIT_STREAM_NAME = "FAKE_STREAM";
+  private static final String NN_METRICS = "NameNodeActivity";
 
   @Test
   public void testDisplayRecentEditLogOpCodes() throws IOException {
-    // start a cluster
+    checkDisplayRecentEditLogOpCodes(getConf());
+  }
+
+  @Test
+  public void testDisplayRecentEditLogOpCodesWithPrefetch()
+      throws IOException {
     Configuration conf = getConf();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_KEY, 4);
+    checkDisplayRecentEditLogOpCodes(conf);
+  }
+
+  private void checkDisplayRecentEditLogOpCodes(Configuration conf)
+      throws IOException {
+    // start a cluster
     MiniDFSCluster cluster = null;
     FileSystem fileSys = null;
     cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
@@ -142,6 +160,44 @@ public class TestFSEditLogLoader {
     }
   }
   
+  /**
+   * Edits read ahead of the replay by a separate thread are applied in order.
+   */
+  @Test
+  public void testPrefetchedReplay() throws Exception {
+    Configuration conf = getConf();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_EDITS_REPLAY_PREFETCH_OPS_KEY, 4);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(NUM_DATA_NODES)
+          .build();
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 100; i++) {
+        fs.mkdirs(new Path("/dir" + i));
+        // ops of the same type follow each other
+        fs.setPermission(new Path("/dir" + i), new FsPermission((short) i));
+      }
+      DFSTestUtil.createFile(fs, new Path("/dir0/file"), 0, (short) 1, 0L);
+      fs.delete(new Path("/dir1"), true);
+
+      cluster.restartNameNode(true);
+      NamenodeProtocols nn = cluster.getNameNodeRpc();
+      for (int i = 2; i < 100; i++) {
+        assertEquals((short) i,
+            nn.getFileInfo("/dir" + i).getPermission().toShort());
+      }
+      assertNull(nn.getFileInfo("/dir1"));
+      assertEquals(0, nn.getFileInfo("/dir0/file").getLen());
+      assertTrue(getLongCounter("EditLogOpsReplayed",
+          getMetrics(NN_METRICS)) > 200);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   /**
    * Test that, if the NN restarts with a new minimum replication,
    * any files created with the old replication count will get
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 
 import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Assume;
 
@@ -50,6 +51,7 @@ import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage.NameNodeDirType;
 import org.apache.hadoop.hdfs.server.namenode.FsImageProto.FileSummary.Section;
 import org.apache.hadoop.hdfs.server.namenode.FSImageFormatProtobuf.SectionName;
+import org.apache.hadoop.hdfs.util.Canceler;
 import org.apache.hadoop.hdfs.util.MD5FileUtils;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.PathUtils;
@@ -415,6 +417,53 @@ public class TestFSImage {
     }
   }
 
+  /**
+   * Saving the inode sub-sections with several threads writes the same image
+   * as saving them serially.
+   */
+  @Test
+  public void testParallelSaveMatchesSerialSave() throws Exception {
+    Configuration conf = new Configuration();
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_LOAD_KEY, "true");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_INODE_THRESHOLD_KEY, "1");
+    conf.set(DFSConfigKeys.DFS_IMAGE_PARALLEL_TARGET_SECTIONS_KEY, "7");
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+      for (int i = 0; i < 10; i++) {
+        for (int j = 0; j < 5; j++) {
+          fs.create(new Path("/dir" + i + "/" + j)).close();
+        }
+      }
+      FSNamesystem fsn = cluster.getNamesystem();
+      File dir = new File(MiniDFSCluster.getBaseDirectory());
+      File serial = new File(dir, "serial.img");
+      File parallel = new File(dir, "parallel.img");
+      conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 1);
+      saveImage(fsn, conf, serial);
+      conf.setInt(DFSConfigKeys.DFS_IMAGE_PARALLEL_THREADS_KEY, 4);
+      saveImage(fsn, conf, parallel);
+      Assert.assertArrayEquals(FileUtils.readFileToByteArray(serial),
+          FileUtils.readFileToByteArray(parallel));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static void saveImage(FSNamesystem fsn, Configuration conf,
+      File file) throws IOException {
+    SaveNamespaceContext context = new SaveNamespaceContext(fsn, 1L,
+        new Canceler());
+    fsn.readLock();
+    try {
+      new FSImageFormatProtobuf.Saver(context, conf).save(file,
+          FSImageCompression.createNoopCompression());
+    } finally {
+      fsn.readUnlock();
+    }
+  }
+
   @Test
   public void testNoParallelSectionsWithCompressionEnabled()
       throws IOException {
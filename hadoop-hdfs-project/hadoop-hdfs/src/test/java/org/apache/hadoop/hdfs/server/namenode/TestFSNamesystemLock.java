@@ -21,6 +21,9 @@ package org.apache.hadoop.hdfs.server.namenode;
 import com.google.common.base.Supplier;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.top.TopConf;
+import org.apache.hadoop.hdfs.server.namenode.top.window.RollingWindowManager;
+import org.apache.hadoop.hdfs.web.JsonUtil;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.metrics2.lib.MetricsRegistry;
 import org.apache.hadoop.metrics2.lib.MutableRatesWithAggregation;
@@ -32,15 +35,20 @@ import org.apache.log4j.Level;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_FAIR_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY;
 import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
 import static org.apache.hadoop.test.MetricsAsserts.assertGauge;
 
@@ -366,4 +374,316 @@ public class TestFSNamesystemLock {
     assertCounter("FSNWriteLockOverallNanosNumOps", 1L, rb);
   }
 
-}
\ No newline at end of file
+  @Test(timeout=30000)
+  public void testLockProfiling() throws Exception {
+    assertNull(new FSNamesystemLock(new Configuration(), null).getProfiler());
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_ENABLED_KEY,
+        true);
+    conf.setInt(
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_INTERVAL_SECONDS_KEY, 1);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_TRACE_SIZE_KEY, 2);
+    conf.setLong(
+        DFSConfigKeys.DFS_NAMENODE_LOCK_PROFILING_TRACE_THRESHOLD_MS_KEY, 10);
+    FakeTimer timer = new FakeTimer();
+    FSNamesystemLock fsLock = new FSNamesystemLock(conf, null, timer);
+    final FSNamesystemLockProfiler profiler = fsLock.getProfiler();
+
+    fsLock.writeLock();
+    timer.advance(20);
+    fsLock.writeUnlock("baz");
+    fsLock.writeLock();
+    timer.advance(40);
+    fsLock.writeUnlock("baz");
+    fsLock.readLock();
+    timer.advance(5);
+    fsLock.readUnlock("foo");
+    fsLock.readLock();
+    timer.advance(50);
+    fsLock.readUnlock("bar");
+
+    // the operations are ranked by hold time after the sum of all of them
+    List<RollingWindowManager.Op> ops =
+        profiler.getTopWindows().get(0).getOps();
+    assertEquals(4, ops.size());
+    assertEquals(TopConf.ALL_CMDS, ops.get(0).getOpType());
+    assertEquals(115000, ops.get(0).getTotalCount());
+    assertEquals("write.baz", ops.get(1).getOpType());
+    assertEquals(60000, ops.get(1).getTotalCount());
+    assertEquals("read.bar", ops.get(2).getOpType());
+    assertEquals(FSNamesystemLockProfiler.INTERNAL_USER,
+        ops.get(2).getTopUsers().get(0).getUser());
+    assertEquals("read.foo", ops.get(3).getOpType());
+
+    // only the longest holds above the threshold are traced
+    List<FSNamesystemLockProfiler.LockHoldTrace> holds =
+        profiler.getLongestHolds();
+    assertEquals(2, holds.size());
+    assertEquals("bar", holds.get(0).getOpName());
+    assertEquals("read", holds.get(0).getMode());
+    assertEquals(50, holds.get(0).getHoldMs());
+    assertEquals("baz", holds.get(1).getOpName());
+    assertEquals(40, holds.get(1).getHoldMs());
+    assertTrue(holds.get(0).getStackTrace().contains("testLockProfiling"));
+    String json = JsonUtil.toJsonString(profiler.getProfile());
+    assertTrue(json, json.contains("\"opType\":\"read.bar\""));
+    assertTrue(json, json.contains("\"holdMs\":50"));
+
+    // the percentiles are emitted once the interval rolled over
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        MetricsRecordBuilder rb = MetricsAsserts.getMetrics(profiler);
+        return MetricsAsserts.getLongGauge(
+            "FSNWriteLockHoldBazNanosNumOps", rb) == 2 &&
+            MetricsAsserts.getLongGauge(
+                "FSNReadLockWaitFooNanosNumOps", rb) == 1;
+      }
+    }, 100, 10000);
+    profiler.stop();
+  }
+
+  @Test
+  public void testPartitionsForPath() {
+    Configuration conf = new Configuration();
+    assertFalse(new FSNamesystemLock(conf, null).isPartitioned());
+
+    conf.setInt(DFS_NAMENODE_FSLOCK_PARTITIONS_KEY, 1);
+    FSNamesystemLock fsnLock = new FSNamesystemLock(conf, null);
+    assertTrue(fsnLock.isPartitioned());
+    // all prefixes map to the single partition, which must be exclusive
+    FSNamesystemLock.PartitionHold hold =
+        fsnLock.getPartitions(INode.getPathComponents("/a/b/c"));
+    assertArrayEquals(new int[] {0}, hold.partitions);
+    assertTrue(hold.exclusive[0]);
+
+    conf.setInt(DFS_NAMENODE_FSLOCK_PARTITIONS_KEY, 1024);
+    fsnLock = new FSNamesystemLock(conf, null);
+    hold = fsnLock.getPartitions(INode.getPathComponents("/a/b/c"));
+    int exclusive = 0;
+    for (int i = 0; i < hold.partitions.length; i++) {
+      if (i > 0) {
+        assertTrue(hold.partitions[i - 1] < hold.partitions[i]);
+      }
+      if (hold.exclusive[i]) {
+        exclusive++;
+      }
+    }
+    assertEquals(1, exclusive);
+    // "/", "/a" and "/a/b" are locked, unless their partitions collide
+    assertTrue(hold.partitions.length <= 3);
+    // the same parent always maps to the same exclusive partition
+    assertEquals(getExclusive(hold), getExclusive(
+        fsnLock.getPartitions(INode.getPathComponents("/a/b/d"))));
+  }
+
+  @Test(timeout=30000)
+  public void testPartitionLockCompatibility() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setInt(DFS_NAMENODE_FSLOCK_PARTITIONS_KEY, 64);
+    final FSNamesystemLock fsnLock = new FSNamesystemLock(conf, null);
+    final byte[][] path = INode.getPathComponents("/a/b/c");
+    final FSNamesystemLock.PartitionHold hold = fsnLock.getPartitions(path);
+
+    // find a path whose partitions do not conflict with the ones above
+    byte[][] other = null;
+    for (int i = 0; other == null; i++) {
+      byte[][] candidate = INode.getPathComponents("/d" + i + "/e");
+      FSNamesystemLock.PartitionHold h = fsnLock.getPartitions(candidate);
+      if (!contains(h.partitions, getExclusive(hold)) &&
+          !contains(hold.partitions, getExclusive(h))) {
+        other = candidate;
+      }
+    }
+    final byte[][] otherPath = other;
+
+    fsnLock.partitionWriteLock(path);
+    ExecutorService helper = Executors.newFixedThreadPool(3);
+    try {
+      assertTrue(fsnLock.hasPartitionWriteLock());
+      assertFalse(fsnLock.isWriteLockedByCurrentThread());
+      // nested read locks do not wait for the partitions
+      fsnLock.readLock();
+      fsnLock.readUnlock();
+
+      // writers of other directories are not blocked
+      helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          fsnLock.partitionWriteLock(otherPath);
+          fsnLock.partitionWriteUnlock("other");
+        }
+      }).get(10, TimeUnit.SECONDS);
+
+      // writers of the same directory, readers and global writers are
+      Future<?> sameDir = helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          fsnLock.partitionWriteLock(INode.getPathComponents("/a/b/d"));
+          fsnLock.partitionWriteUnlock("sameDir");
+        }
+      });
+      Future<?> reader = helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          fsnLock.readLock();
+          fsnLock.readUnlock();
+        }
+      });
+      Future<?> writer = helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          fsnLock.writeLock();
+          fsnLock.writeUnlock();
+        }
+      });
+      Thread.sleep(100);
+      assertFalse(sameDir.isDone());
+      assertFalse(reader.isDone());
+      assertFalse(writer.isDone());
+
+      fsnLock.partitionWriteUnlock("test");
+      assertFalse(fsnLock.hasPartitionWriteLock());
+      sameDir.get(10, TimeUnit.SECONDS);
+      reader.get(10, TimeUnit.SECONDS);
+      writer.get(10, TimeUnit.SECONDS);
+    } finally {
+      helper.shutdownNow();
+    }
+    assertEquals(0, fsnLock.getReadHoldCount());
+  }
+
+  /**
+   * Test that holding the separate block lock only excludes readers of block
+   * state and writers, but not readers of the namespace.
+   */
+  @Test(timeout=60000)
+  public void testSeparateBlockLock() throws Exception {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY, true);
+    final FSNamesystemLock fsnLock = new FSNamesystemLock(conf, null);
+    assertTrue(fsnLock.isBlockLockSeparate());
+
+    fsnLock.blockWriteLock();
+    ExecutorService helper = Executors.newFixedThreadPool(3);
+    try {
+      assertTrue(fsnLock.isBlockWriteLockedByCurrentThread());
+      assertFalse(fsnLock.isWriteLockedByCurrentThread());
+      // the block lock is reentrant, including for reads
+      fsnLock.blockWriteLock();
+      fsnLock.readLock();
+      fsnLock.readUnlock();
+      fsnLock.blockWriteUnlock("test");
+
+      helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          fsnLock.readLockNamespace();
+          fsnLock.readUnlockNamespace("namespace");
+        }
+      }).get(10, TimeUnit.SECONDS);
+
+      Future<?> blockWriter = helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          fsnLock.blockWriteLock();
+          fsnLock.blockWriteUnlock("block");
+        }
+      });
+      Future<?> reader = helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          fsnLock.readLock();
+          fsnLock.readUnlock();
+        }
+      });
+      Future<?> writer = helper.submit(new Runnable() {
+        @Override
+        public void run() {
+          fsnLock.writeLock();
+          fsnLock.writeUnlock();
+        }
+      });
+      Thread.sleep(100);
+      assertFalse(blockWriter.isDone());
+      assertFalse(reader.isDone());
+      assertFalse(writer.isDone());
+
+      fsnLock.blockWriteUnlock("test");
+      assertFalse(fsnLock.isBlockWriteLockedByCurrentThread());
+      blockWriter.get(10, TimeUnit.SECONDS);
+      reader.get(10, TimeUnit.SECONDS);
+      writer.get(10, TimeUnit.SECONDS);
+    } finally {
+      helper.shutdownNow();
+    }
+    assertEquals(0, fsnLock.getReadHoldCount());
+
+    // a shared block lock cannot be upgraded
+    fsnLock.readLock();
+    try {
+      fsnLock.blockWriteLock();
+      fail("Expected upgrade of the block read lock to fail");
+    } catch (IllegalStateException e) {
+      // expected
+    } finally {
+      fsnLock.readUnlock();
+    }
+  }
+
+  @Test
+  public void testOptimisticReads() {
+    Configuration conf = new Configuration();
+    conf.setBoolean(DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY, true);
+    conf.setBoolean(DFS_NAMENODE_FSLOCK_BLOCK_SEPARATE_KEY, true);
+    FSNamesystemLock fsnLock = new FSNamesystemLock(conf, null);
+    assertTrue(fsnLock.isOptimisticReadEnabled());
+
+    long stamp = fsnLock.beginOptimisticRead();
+    assertNotEquals(FSNamesystemLock.NO_STAMP, stamp);
+    assertTrue(fsnLock.isOptimisticReading());
+    // shared holds do not invalidate the read
+    fsnLock.readLock();
+    fsnLock.readUnlock();
+    assertTrue(fsnLock.endOptimisticRead(stamp));
+    assertFalse(fsnLock.isOptimisticReading());
+
+    // a write lock held during the read invalidates it
+    stamp = fsnLock.beginOptimisticRead();
+    fsnLock.writeLock();
+    fsnLock.writeUnlock();
+    assertFalse(fsnLock.endOptimisticRead(stamp));
+
+    stamp = fsnLock.beginOptimisticRead();
+    fsnLock.blockWriteLock();
+    fsnLock.blockWriteUnlock("test");
+    assertFalse(fsnLock.endOptimisticRead(stamp));
+
+    // no read starts while the write lock is held
+    fsnLock.writeLock();
+    assertEquals(FSNamesystemLock.NO_STAMP, fsnLock.beginOptimisticRead());
+    assertFalse(fsnLock.isOptimisticReading());
+    fsnLock.writeUnlock();
+
+    assertEquals(4, fsnLock.getNumOptimisticReads());
+    assertEquals(3, fsnLock.getNumOptimisticReadFailures());
+  }
+
+  private static int getExclusive(FSNamesystemLock.PartitionHold hold) {
+    for (int i = 0; i < hold.partitions.length; i++) {
+      if (hold.exclusive[i]) {
+        return hold.partitions[i];
+      }
+    }
+    throw new AssertionError("No exclusive partition");
+  }
+
+  private static boolean contains(int[] partitions, int partition) {
+    for (int p : partitions) {
+      if (p == partition) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -41,6 +41,7 @@ import org.apache.hadoop.hdfs.server.namenode.snapshot.Snapshot;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
+import org.mockito.InOrder;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -103,6 +104,46 @@ public class TestLeaseManager {
     assertTrue(lm.countLease() < numLease);
   }
 
+  /**
+   * Check that the expired leases are checked from the least recently
+   * renewed, and that a lease whose files are not released is only checked
+   * once by a run.
+   */
+  @Test
+  public void testCheckLeaseOrder() throws Exception {
+    FSNamesystem fsn = makeMockFsNameSystem();
+    FSDirectory fsd = fsn.getFSDirectory();
+    LeaseManager lm = new LeaseManager(fsn);
+    final PermissionStatus perm = PermissionStatus.createImmutable(
+        "user", "group", FsPermission.createImmutable((short)0755));
+    INodeDirectory root = new INodeDirectory(
+        HdfsConstants.GRANDFATHER_INODE_ID, DFSUtil.string2Bytes(""),
+        perm, 0L);
+    final String[] holders = {"holder1", "holder2", "holder3"};
+    for (int i = 0; i < holders.length; i++) {
+      INodeFile file = stubInodeFile(INodeId.ROOT_INODE_ID + i);
+      file.setParent(root);
+      when(fsd.getInode(file.getId())).thenReturn(file);
+      lm.addLease(holders[i], file.getId());
+    }
+    Thread.sleep(1);
+    lm.renewLease("holder1");
+    lm.setLeasePeriod(0, 0);
+    Thread.sleep(1);
+
+    // the mocked release neither closes the files nor removes the leases
+    lm.checkLeases();
+    InOrder inOrder = inOrder(fsn);
+    for (String holder : new String[] {"holder2", "holder3", "holder1"}) {
+      inOrder.verify(fsn).internalReleaseLease(eq(lm.getLease(holder)),
+          anyString(), any(INodesInPath.class), anyString());
+    }
+    verify(fsn, times(holders.length)).internalReleaseLease(
+        any(LeaseManager.Lease.class), anyString(), any(INodesInPath.class),
+        anyString());
+    assertEquals(holders.length, lm.countLease());
+  }
+
   /**
    * Test whether the internal lease holder name is updated properly.
    */
@@ -71,6 +71,24 @@ public class TestNNThroughputBenchmark {
         new String[] {"-fs", "file:///", "-op", "all"});
   }
 
+  /**
+   * This test runs the fileStatus benchmark with concurrent writers, using
+   * optimistic reads and partitioned namespace locks.
+   */
+  @Test(timeout = 120000)
+  public void testNNThroughputWithWriters() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    File nameDir = new File(MiniDFSCluster.getBaseDirectory(), "name");
+    conf.set(DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY,
+        nameDir.getAbsolutePath());
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY, 16);
+    DFSTestUtil.formatNameNode(conf);
+    NNThroughputBenchmark.runBenchmark(conf, new String[] {"-op",
+        "fileStatus", "-threads", "2", "-files", "100", "-writerThreads", "2"});
+  }
+
   /**
    * This test runs {@link NNThroughputBenchmark} against a mini DFS cluster.
    */
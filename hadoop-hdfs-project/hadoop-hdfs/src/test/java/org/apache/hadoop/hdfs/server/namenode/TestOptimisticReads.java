@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Test the read-only operations which run without the namesystem lock.
+ */
+public class TestOptimisticReads {
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private NamenodeProtocols nn;
+  private FSNamesystem fsn;
+
+  /**
+   * Fails an optimistic read with an AssertionError after a writer held the
+   * lock, as a read of state torn by the writer may, once it is armed.
+   */
+  public static class TornReadProvider extends INodeAttributeProvider {
+    static final AtomicBoolean ARMED = new AtomicBoolean();
+    static volatile FSNamesystem namesystem;
+    static volatile boolean hadReadLock;
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public INodeAttributes getAttributes(String[] pathElements,
+        INodeAttributes inode) {
+      final FSNamesystem fsn = namesystem;
+      if (fsn != null && fsn.isOptimisticReading()
+          && ARMED.compareAndSet(true, false)) {
+        hadReadLock = fsn.hasReadLock();
+        final Thread writer = new Thread() {
+          @Override
+          public void run() {
+            fsn.writeLock();
+            fsn.writeUnlock();
+          }
+        };
+        writer.start();
+        try {
+          writer.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        throw new AssertionError("torn read");
+      }
+      return inode;
+    }
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_FSLOCK_OPTIMISTIC_READS_KEY,
+        true);
+    // keep the access time update from taking the write lock
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_KEY, 0);
+    conf.setClass(DFSConfigKeys.DFS_NAMENODE_INODE_ATTRIBUTES_PROVIDER_KEY,
+        TornReadProvider.class, INodeAttributeProvider.class);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    nn = cluster.getNameNodeRpc();
+    fsn = cluster.getNamesystem();
+    TornReadProvider.namesystem = fsn;
+    DFSTestUtil.createFile(fs, new Path("/dir/file"), 100, (short) 1, 0L);
+  }
+
+  @After
+  public void tearDown() {
+    TornReadProvider.ARMED.set(false);
+    TornReadProvider.namesystem = null;
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testReads() throws Exception {
+    final long reads = fsn.getNumOptimisticReads();
+    final long failures = fsn.getNumOptimisticReadFailures();
+
+    HdfsFileStatus st = nn.getFileInfo("/dir/file");
+    assertEquals(100, st.getLen());
+    assertNull(nn.getFileInfo("/missing"));
+    DirectoryListing listing = nn.getListing("/dir",
+        HdfsFileStatus.EMPTY_NAME, true);
+    assertEquals(1, listing.getPartialListing().length);
+    LocatedBlocks blocks = nn.getBlockLocations("/dir/file", 0, 100);
+    assertEquals(1, blocks.locatedBlockCount());
+    assertEquals(1, blocks.get(0).getLocations().length);
+
+    assertEquals(reads + 4, fsn.getNumOptimisticReads());
+    assertEquals(failures, fsn.getNumOptimisticReadFailures());
+    MetricsRecordBuilder rb = getMetrics("FSNamesystem");
+    assertCounter("OptimisticReads", reads + 4, rb);
+    assertCounter("OptimisticReadFailures", failures, rb);
+  }
+
+  @Test(timeout=120000)
+  public void testFallbackWhileWriteLocked() throws Exception {
+    final long failures = fsn.getNumOptimisticReadFailures();
+    ExecutorService reader = Executors.newSingleThreadExecutor();
+    Future<HdfsFileStatus> st;
+    fsn.writeLock();
+    try {
+      st = reader.submit(new Callable<HdfsFileStatus>() {
+        @Override
+        public HdfsFileStatus call() throws Exception {
+          return nn.getFileInfo("/dir/file");
+        }
+      });
+      // the reader falls back to the lock and waits for the writer
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return fsn.getNumOptimisticReadFailures() == failures + 1;
+        }
+      }, 10, 10000);
+      assertFalse(st.isDone());
+    } finally {
+      fsn.writeUnlock();
+    }
+    try {
+      assertEquals(100, st.get(10, TimeUnit.SECONDS).getLen());
+    } finally {
+      reader.shutdownNow();
+    }
+    assertEquals(failures + 1, fsn.getNumOptimisticReadFailures());
+  }
+
+  @Test(timeout=120000)
+  public void testFallbackAfterErrorOfTornRead() throws Exception {
+    final long failures = fsn.getNumOptimisticReadFailures();
+    TornReadProvider.hadReadLock = true;
+    TornReadProvider.ARMED.set(true);
+    // the error is discarded since a writer held the lock during the read
+    assertEquals(100, nn.getFileInfo("/dir/file").getLen());
+    assertFalse(TornReadProvider.ARMED.get());
+    // an optimistic read does not hold the read lock
+    assertFalse(TornReadProvider.hadReadLock);
+    assertEquals(failures + 1, fsn.getNumOptimisticReadFailures());
+  }
+}
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test namespace operations with
+ * {@link DFSConfigKeys#DFS_NAMENODE_FSLOCK_PARTITIONS_KEY} enabled.
+ */
+public class TestPartitionedNamespaceLock {
+  private static final int NUM_WRITERS = 4;
+  private static final int OPS_PER_WRITER = 50;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_FSLOCK_PARTITIONS_KEY, 16);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+      cluster = null;
+    }
+  }
+
+  /**
+   * Run concurrent mkdirs and creates in disjoint directories alongside
+   * readers and writers that need the global lock, then verify the
+   * namespace before and after replaying the edit log.
+   */
+  @Test(timeout=120000)
+  public void testConcurrentWrites() throws Exception {
+    final Path base = new Path("/test");
+    for (int i = 0; i < NUM_WRITERS; i++) {
+      fs.mkdirs(new Path(base, "dir" + i));
+    }
+    fs.setQuota(base, 10000, Long.MAX_VALUE);
+
+    ExecutorService executor = Executors.newFixedThreadPool(NUM_WRITERS + 2);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < NUM_WRITERS; i++) {
+        final Path dir = new Path(base, "dir" + i);
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            for (int j = 0; j < OPS_PER_WRITER; j++) {
+              if (j % 2 == 0) {
+                assertTrue(fs.mkdirs(new Path(dir, "sub" + j)));
+              } else {
+                fs.create(new Path(dir, "file" + j)).close();
+              }
+            }
+            // creating missing ancestors falls back to the write lock
+            assertTrue(fs.mkdirs(new Path(dir, "a/b/c")));
+            return null;
+          }
+        }));
+      }
+      final NamenodeProtocols nn = cluster.getNameNodeRpc();
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int j = 0; j < OPS_PER_WRITER; j++) {
+            nn.getListing(base.toString(), HdfsFileStatus.EMPTY_NAME, false);
+            nn.getContentSummary(base.toString());
+          }
+          return null;
+        }
+      }));
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          for (int j = 0; j < OPS_PER_WRITER; j++) {
+            Path p = new Path("/other" + j);
+            assertTrue(fs.mkdirs(p));
+            assertTrue(fs.delete(p, true));
+          }
+          return null;
+        }
+      }));
+      for (Future<Void> f : futures) {
+        f.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verifyNamespace(base);
+    cluster.restartNameNode(true);
+    fs = cluster.getFileSystem();
+    verifyNamespace(base);
+  }
+
+  /**
+   * Creating an existing file must not take the partition locks fast path
+   * since the existing file may be replaced.
+   */
+  @Test(timeout=60000)
+  public void testCreateExistingFile() throws Exception {
+    final Path file = new Path("/dir/file");
+    fs.mkdirs(file.getParent());
+    fs.create(file).close();
+    fs.create(file, true).close();
+    assertNotNull(cluster.getNameNodeRpc().getFileInfo(file.toString()));
+    assertFalse(cluster.getNamesystem().hasPartitionWriteLock());
+  }
+
+  private void verifyNamespace(Path base) throws Exception {
+    ContentSummary summary = fs.getContentSummary(base);
+    // base, dirN, the created sub dirs and a/b/c in each dirN
+    assertEquals(1 + NUM_WRITERS * (1 + OPS_PER_WRITER / 2 + 3),
+        summary.getDirectoryCount());
+    assertEquals(NUM_WRITERS * (OPS_PER_WRITER / 2), summary.getFileCount());
+    // quota usage is maintained across concurrent partitioned writers
+    assertEquals(summary.getDirectoryCount() + summary.getFileCount(),
+        fs.getQuotaUsage(base).getFileAndDirectoryCount());
+  }
+}
@@ -17,7 +17,10 @@
  */
 package org.apache.hadoop.hdfs.server.namenode;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.util.Arrays;
 
 import org.apache.hadoop.hdfs.DFSUtil;
@@ -91,6 +94,29 @@ public class TestPathComponents {
     assertEquals("2/3", DFSUtil.byteArray2PathString(components, 1, 2));
   }
 
+  @Test
+  public void testPathComponentsEncoding() {
+    final String[] paths = {"", "/\u00e9t\u00e9/\u6587\u4ef6",
+        "/\ud83d\ude00/a", "/lone/\ud83d/\ude00x", "/a/\ud83d"};
+    for (String path : paths) {
+      assertPathComponents(path, DFSUtil.getPathComponents(path));
+    }
+  }
+
+  /** The components split by {@link PathComponents} must be the same. */
+  private static void assertPathComponents(String path,
+      byte[][] expected) {
+    final PathComponents components = new PathComponents();
+    components.split(path);
+    assertEquals(expected.length, components.size());
+    assertEquals(expected.length == 1 && expected[0] == null,
+        components.isRoot());
+    for (int i = 0; i < expected.length; i++) {
+      assertTrue(path, components.equals(i, expected[i]));
+    }
+    assertArrayEquals(path, expected, components.toArray());
+  }
+
   public void testString(String path, String[] expected) throws Exception {
     byte[][] components = DFSUtil.getPathComponents(path);
     String[] actual = new String[components.length];
@@ -100,6 +126,7 @@ public class TestPathComponents {
       }
     }
     assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+    assertPathComponents(path, components);
 
     // test the reconstituted path
     path = path.replaceAll("/+", "/");
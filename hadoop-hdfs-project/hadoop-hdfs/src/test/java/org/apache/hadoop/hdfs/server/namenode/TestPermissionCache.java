@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.fs.permission.AclEntryScope.ACCESS;
+import static org.apache.hadoop.fs.permission.AclEntryType.USER;
+import static org.apache.hadoop.hdfs.server.namenode.AclTestHelpers.aclEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that the permission checks cached by {@link PermissionCache} are
+ * invalidated by the changes that may revoke them.
+ */
+public class TestPermissionCache {
+  private static final UserGroupInformation BRUCE =
+      UserGroupInformation.createUserForTesting("bruce", new String[] { });
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private FileSystem userFs;
+  private FSNamesystem fsn;
+
+  @Before
+  public void setUp() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_PERMISSION_CACHE_ENABLED_KEY,
+        true);
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    fsn = cluster.getNamesystem();
+    userFs = DFSTestUtil.getFileSystemAs(BRUCE, cluster.getConfiguration(0));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (userFs != null) {
+      userFs.close();
+    }
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static void assertDenied(FileSystem fs, Path path)
+      throws IOException {
+    try {
+      fs.getAclStatus(path);
+      fail("Access to " + path + " should be denied");
+    } catch (AccessControlException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testHits() throws IOException {
+    final Path path = new Path("/a/b/c/file");
+    fs.mkdirs(path);
+    userFs.getAclStatus(path);
+    final long hits = fsn.getPermissionCacheHits();
+    final long misses = fsn.getPermissionCacheMisses();
+    assertTrue(fsn.getPermissionCacheSize() > 0);
+
+    userFs.getAclStatus(path);
+    assertTrue(fsn.getPermissionCacheHits() > hits);
+    assertEquals(misses, fsn.getPermissionCacheMisses());
+  }
+
+  @Test
+  public void testSetPermission() throws IOException {
+    final Path dir = new Path("/a/b");
+    final Path path = new Path(dir, "c");
+    fs.mkdirs(path);
+    userFs.getAclStatus(path);
+    userFs.getAclStatus(path);
+
+    fs.setPermission(dir, new FsPermission((short) 0700));
+    assertDenied(userFs, path);
+    fs.setPermission(dir, new FsPermission((short) 0755));
+    userFs.getAclStatus(path);
+  }
+
+  @Test
+  public void testSetOwner() throws IOException {
+    final Path dir = new Path("/a/b");
+    final Path path = new Path(dir, "c");
+    fs.mkdirs(path);
+    fs.setPermission(dir, new FsPermission((short) 0700));
+    fs.setOwner(dir, "bruce", null);
+    userFs.getAclStatus(path);
+
+    fs.setOwner(dir, "diana", null);
+    assertDenied(userFs, path);
+  }
+
+  @Test
+  public void testAcl() throws IOException {
+    final Path dir = new Path("/a/b");
+    final Path path = new Path(dir, "c");
+    fs.mkdirs(path);
+    fs.setPermission(dir, new FsPermission((short) 0700));
+    fs.modifyAclEntries(dir, Arrays.asList(
+        aclEntry(ACCESS, USER, "bruce", FsAction.EXECUTE)));
+    userFs.getAclStatus(path);
+
+    fs.removeAcl(dir);
+    assertDenied(userFs, path);
+  }
+
+  @Test
+  public void testRename() throws IOException {
+    final Path src = new Path("/a/b/c");
+    final Path path = new Path(src, "d");
+    fs.mkdirs(path);
+    fs.mkdirs(new Path("/private"));
+    fs.setPermission(new Path("/private"), new FsPermission((short) 0700));
+    userFs.getAclStatus(path);
+    userFs.getAclStatus(path);
+
+    final Path dst = new Path("/private/c");
+    fs.rename(src, dst);
+    assertDenied(userFs, new Path(dst, "d"));
+  }
+
+  @Test
+  public void testUnrelatedChanges() throws IOException {
+    final Path path = new Path("/warehouse/db/table/part");
+    fs.mkdirs(path);
+    fs.mkdirs(new Path("/warehouse/db/staging/dir"));
+    userFs.getAclStatus(path);
+    final long misses = fsn.getPermissionCacheMisses();
+
+    // the changes outside of the path or of user xattrs keep the grants
+    fs.rename(new Path("/warehouse/db/staging"),
+        new Path("/warehouse/db/table2"));
+    fs.setPermission(new Path("/warehouse/db/table2"),
+        new FsPermission((short) 0700));
+    fs.setXAttr(path, "user.a1", new byte[] {0x31});
+    final long hits = fsn.getPermissionCacheHits();
+    userFs.getAclStatus(path);
+    assertTrue(fsn.getPermissionCacheHits() > hits);
+    assertEquals(misses, fsn.getPermissionCacheMisses());
+  }
+
+  @Test
+  public void testWrite() throws IOException {
+    final Path dir = new Path("/a/b");
+    fs.mkdirs(dir);
+    fs.setPermission(dir, new FsPermission((short) 0777));
+    userFs.mkdirs(new Path(dir, "c"));
+
+    fs.setPermission(dir, new FsPermission((short) 0755));
+    try {
+      userFs.mkdirs(new Path(dir, "d"));
+      fail("Creating a directory in " + dir + " should be denied");
+    } catch (AccessControlException e) {
+      // expected
+    }
+  }
+}
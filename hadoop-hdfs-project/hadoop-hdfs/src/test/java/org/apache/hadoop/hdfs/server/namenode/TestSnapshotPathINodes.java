@@ -19,6 +19,7 @@ package org.apache.hadoop.hdfs.server.namenode;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.FileNotFoundException;
@@ -438,6 +439,49 @@ public class TestSnapshotPathINodes {
     hdfs.disallowSnapshot(sub1);
   }
 
+  /**
+   * Test that the paths resolved from {@link PathComponents} are the same as
+   * those resolved from a copy of their components.
+   */
+  @Test (timeout=15000)
+  public void testResolvePathComponents() throws Exception {
+    hdfs.allowSnapshot(dir);
+    hdfs.createSnapshot(dir, "s1");
+    // the renamed directory is a reference
+    final Path sub2 = new Path(dir, "sub2");
+    hdfs.rename(sub1, sub2);
+    try {
+      final String[] paths = {"/", "//", dir.toString(), sub2 + "/",
+          "//TestSnapshot//sub2//file1", sub2 + "/file1/not/a/dir",
+          dir + "/missing", dir + "/missing/child", sub2 + "/\u00e9"};
+      for (String path : paths) {
+        final INodesInPath expected = INodesInPath.resolve(fsdir.rootDir,
+            INode.getPathComponents(path), false);
+        final INodesInPath actual = INodesInPath.resolve(fsdir.rootDir,
+            PathComponents.get(path));
+        assertEquals(path, expected.length(), actual.length());
+        for (int i = 0; i < expected.length(); i++) {
+          assertSame(path, expected.getINode(i), actual.getINode(i));
+          Assert.assertArrayEquals(path, expected.getPathComponent(i),
+              actual.getPathComponent(i));
+        }
+        assertEquals(path, expected.getLatestSnapshotId(),
+            actual.getLatestSnapshotId());
+        assertEquals(path, expected.getPath(), actual.getPath());
+        Assert.assertFalse(actual.isSnapshot());
+      }
+      // snapshot and relative paths are not resolved from PathComponents
+      assertNull(INodesInPath.resolve(fsdir.rootDir,
+          PathComponents.get(dir + "/.snapshot/s1/sub1")));
+      assertNull(INodesInPath.resolve(fsdir.rootDir,
+          PathComponents.get("TestSnapshot/sub2")));
+    } finally {
+      hdfs.rename(sub2, sub1);
+      hdfs.deleteSnapshot(dir, "s1");
+      hdfs.disallowSnapshot(dir);
+    }
+  }
+
   @Test
   public void testShortCircuitSnapshotSearch() throws SnapshotException {
     FSNamesystem fsn = cluster.getNamesystem();
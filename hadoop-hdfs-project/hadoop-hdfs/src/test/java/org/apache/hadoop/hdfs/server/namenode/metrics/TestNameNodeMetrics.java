@@ -680,6 +680,7 @@ public class TestNameNodeMetrics {
     // Check that the percentiles were updated
     assertQuantileGauges("Syncs1s", rb);
     assertQuantileGauges("BlockReport1s", rb);
+    assertQuantileGauges("JournalSyncFileJournalManager1s", rb);
   }
 
   /**
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DFSUtilClient;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffReportEntry;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReport.DiffType;
+import org.apache.hadoop.hdfs.protocol.SnapshotDiffReportListing;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the paged snapshot diff report.
+ */
+public class TestSnapshotDiffReportListing {
+  private static final int LISTING_LIMIT = 3;
+  private static final Path ROOT = new Path("/root");
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem fs;
+  private NamenodeProtocols nn;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_SNAPSHOT_DIFF_LISTING_LIMIT,
+        LISTING_LIMIT);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    fs = cluster.getFileSystem();
+    nn = cluster.getNameNodeRpc();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private void createFile(String path) throws Exception {
+    DFSTestUtil.createFile(fs, new Path(ROOT, path), 10, (short) 1, 0L);
+  }
+
+  private void rename(String src, String dst) throws Exception {
+    nn.rename(src.startsWith("/") ? src : ROOT + "/" + src,
+        dst.startsWith("/") ? dst : ROOT + "/" + dst);
+  }
+
+  private List<DiffReportEntry> listAll(String from, String to)
+      throws Exception {
+    List<DiffReportEntry> entries = new ArrayList<DiffReportEntry>();
+    RemoteIterator<DiffReportEntry> it =
+        fs.snapshotDiffReportIterator(ROOT, from, to);
+    while (it.hasNext()) {
+      entries.add(it.next());
+    }
+    return entries;
+  }
+
+  /** @return the sorted entries, whose hash codes depend on identity. */
+  private static List<String> sorted(List<DiffReportEntry> entries) {
+    List<String> sorted = new ArrayList<String>();
+    for (DiffReportEntry entry : entries) {
+      sorted.add(entry.toString());
+    }
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+  /** Compare the paged report with the report computed at once. */
+  private void verifyDiff(String from, String to) throws Exception {
+    List<DiffReportEntry> expected =
+        nn.getSnapshotDiffReport(ROOT.toString(), from, to).getDiffList();
+    assertEquals(from + " -> " + to, sorted(expected),
+        sorted(listAll(from, to)));
+  }
+
+  @Test(timeout=120000)
+  public void testDiffListing() throws Exception {
+    for (String file : new String[] {"a/f1", "a/f2", "a/b/f3", "a/b/f4",
+        "c/f5", "c/d/f6", "e/f7", "f8"}) {
+      createFile(file);
+    }
+    DFSTestUtil.createFile(fs, new Path("/other/g1"), 10, (short) 1, 0L);
+    fs.allowSnapshot(ROOT);
+    fs.createSnapshot(ROOT, "s0");
+
+    for (int i = 0; i < 10; i++) {
+      createFile("a/new" + i);
+    }
+    createFile("n/m/f9");
+    fs.delete(new Path(ROOT, "a/f2"), false);
+    fs.delete(new Path(ROOT, "c/d"), true);
+    fs.setReplication(new Path(ROOT, "a/b/f3"), (short) 2);
+    rename("a/b/f4", "c/f4");
+    rename("e", "n/e");
+    rename("f8", "/other/f8");
+    rename("/other/g1", "a/g1");
+    fs.createSnapshot(ROOT, "s1");
+
+    rename("c/f4", "a/f4");
+    fs.delete(new Path(ROOT, "a/new3"), false);
+    createFile("c/f10");
+    fs.createSnapshot(ROOT, "s2");
+    fs.delete(new Path(ROOT, "a/b"), true);
+
+    String[] snapshots = {"s0", "s1", "s2", ""};
+    for (String from : snapshots) {
+      for (String to : snapshots) {
+        verifyDiff(from, to);
+      }
+    }
+
+    // the pages are bounded and the renames are resolved by the client
+    SnapshotDiffReportListing listing = null;
+    int pages = 0;
+    do {
+      listing = nn.getSnapshotDiffReportListing(ROOT.toString(), "s0", "s1",
+          listing == null ? DFSUtilClient.EMPTY_BYTES : listing.getLastPath(),
+          listing == null ? 0 : listing.getLastIndex());
+      assertTrue(listing.getEntries().size() <= LISTING_LIMIT);
+      assertTrue(listing.isFromEarlier());
+      for (SnapshotDiffReportListing.DiffReportListingEntry entry :
+          listing.getEntries()) {
+        assertTrue(entry.getType() != DiffType.RENAME);
+      }
+      pages++;
+    } while (listing.hasMore());
+    assertTrue(pages > 1);
+    assertTrue(listAll("s0", "s1").contains(new DiffReportEntry(
+        DiffType.RENAME, DFSUtilClient.string2Bytes("a/b/f4"),
+        DFSUtilClient.string2Bytes("c/f4"))));
+    assertFalse(listAll("s2", "s2").iterator().hasNext());
+  }
+}
@@ -22,6 +22,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.hdfs.DFSUtilClient;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -194,15 +195,18 @@ class DistCpSync {
           (DistributedFileSystem) ssDir.getFileSystem(conf);
       final String from = getSnapshotName(inputOptions.getFromSnapshot());
       final String to = getSnapshotName(inputOptions.getToSnapshot());
-      SnapshotDiffReport report = fs.getSnapshotDiffReport(ssDir,
-          from, to);
+      // fetch the diff page by page instead of as one report, so that the
+      // NameNode neither computes nor returns the whole diff at once
+      RemoteIterator<SnapshotDiffReport.DiffReportEntry> entries =
+          fs.snapshotDiffReportIterator(ssDir, from, to);
       this.diffMap = new EnumMap<>(SnapshotDiffReport.DiffType.class);
       for (SnapshotDiffReport.DiffType type :
           SnapshotDiffReport.DiffType.values()) {
         diffMap.put(type, new ArrayList<DiffInfo>());
       }
 
-      for (SnapshotDiffReport.DiffReportEntry entry : report.getDiffList()) {
+      while (entries.hasNext()) {
+        SnapshotDiffReport.DiffReportEntry entry = entries.next();
         // If the entry is the snapshot root, usually a item like "M\t."
         // in the diff report. We don't need to handle it and cannot handle it,
         // since its sourcepath is empty.
@@ -274,9 +278,8 @@ class DistCpSync {
   private boolean checkNoChange(DistributedFileSystem fs, Path path) {
     try {
       final String from = getSnapshotName(inputOptions.getFromSnapshot());
-      SnapshotDiffReport targetDiff =
-          fs.getSnapshotDiffReport(path, from, "");
-      if (!targetDiff.getDiffList().isEmpty()) {
+      // the first entry is enough to tell that the diff is not empty
+      if (fs.snapshotDiffReportIterator(path, from, "").hasNext()) {
         DistCp.LOG.warn("The target has been modified since snapshot "
             + inputOptions.getFromSnapshot());
         return false;